@@ -0,0 +1,90 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.ITag;
+import org.red5.io.flv.impl.FLVReader;
+import org.red5.io.flv.impl.Tag;
+
+/**
+ * Recorded media used as benchmark input. The files are the test fixtures of the io module; another
+ * directory can be given with the <i>red5.benchmark.fixtures</i> system property.
+ *
+ * @author The Red5 Project
+ */
+public final class Fixtures {
+
+    /** Recorded H.264 / Speex stream, with metadata */
+    public static final String FLV = "h264_speex.flv";
+
+    /** Recorded H.264 / AAC file */
+    public static final String MP4 = "sample.mp4";
+
+    private Fixtures() {
+    }
+
+    /**
+     * Returns the fixture file with the given name.
+     *
+     * @param name file name
+     * @return file
+     */
+    public static File file(String name) {
+        File dir = new File(System.getProperty("red5.benchmark.fixtures", "../io/src/test/resources/fixtures"));
+        File file = new File(dir, name);
+        if (!file.isFile()) {
+            throw new IllegalStateException("Fixture not found: " + file.getAbsolutePath() + ", set red5.benchmark.fixtures to the fixture directory");
+        }
+        return file;
+    }
+
+    /**
+     * Returns the contents of the fixture file with the given name.
+     *
+     * @param name file name
+     * @return file contents
+     * @throws IOException on read failure
+     */
+    public static byte[] bytes(String name) throws IOException {
+        return Files.readAllBytes(file(name).toPath());
+    }
+
+    /**
+     * Returns all tags of a recorded flv file, with their bodies copied out of the file.
+     *
+     * @param name file name
+     * @return tags in file order
+     * @throws IOException on read failure
+     */
+    public static List<ITag> tags(String name) throws IOException {
+        List<ITag> tags = new ArrayList<>();
+        FLVReader reader = new FLVReader(IoBuffer.wrap(bytes(name)), false);
+        try {
+            while (reader.hasMoreTags()) {
+                ITag tag = reader.readTag();
+                if (tag != null) {
+                    IoBuffer body = tag.getBody().duplicate();
+                    byte[] data = new byte[body.remaining()];
+                    body.get(data);
+                    tags.add(new Tag(tag.getDataType(), tag.getTimestamp(), data.length, IoBuffer.wrap(data), tag.getPreviousTagSize()));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return tags;
+    }
+
+}
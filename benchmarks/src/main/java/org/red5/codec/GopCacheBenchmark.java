@@ -0,0 +1,95 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.codec;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.benchmarks.Fixtures;
+import org.red5.codec.IVideoStreamCodec.FrameData;
+import org.red5.io.IoConstants;
+import org.red5.io.ITag;
+
+/**
+ * Publisher side cost of the group of pictures kept by a live AVC stream, all video tags of a recorded stream being added to the codec as a publisher does, with and without
+ * buffering the interframes; run with <i>-prof gc</i> for the allocation per stream. The prime benchmark takes the buffered group for a new subscriber and releases it.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GopCacheBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean bufferInterframes;
+
+    private IoBuffer[] frames;
+
+    private int[] timestamps;
+
+    private AVCVideo codec;
+
+    @Setup
+    public void setup() throws IOException {
+        List<ITag> video = new ArrayList<>();
+        for (ITag tag : Fixtures.tags(Fixtures.FLV)) {
+            if (tag.getDataType() == IoConstants.TYPE_VIDEO) {
+                video.add(tag);
+            }
+        }
+        frames = new IoBuffer[video.size()];
+        timestamps = new int[video.size()];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = video.get(i).getBody();
+            timestamps[i] = video.get(i).getTimestamp();
+        }
+        codec = new AVCVideo();
+        codec.setBufferInterframes(bufferInterframes);
+        publish();
+    }
+
+    @Benchmark
+    public int publish() {
+        for (int i = 0; i < frames.length; i++) {
+            IoBuffer frame = frames[i];
+            frame.rewind();
+            codec.addData(frame, timestamps[i]);
+        }
+        return codec.getNumInterframes();
+    }
+
+    @Benchmark
+    public int prime() {
+        FrameData[] gop = codec.getGroupOfPictures();
+        int size = 0;
+        for (FrameData frame : gop) {
+            size += frame.getSize();
+            frame.release();
+        }
+        return size;
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.benchmarks.Fixtures;
+import org.red5.io.object.Deserializer;
+import org.red5.io.object.Input;
+import org.red5.io.object.Output;
+import org.red5.io.object.Serializer;
+
+/**
+ * Writes and reads the metadata object of a recorded stream with AMF0 and AMF3.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AMFBenchmark {
+
+    @Param({ "AMF0", "AMF3" })
+    public String encoding;
+
+    private Object metadata;
+
+    private byte[] encoded;
+
+    private IoBuffer buf;
+
+    @Setup
+    public void setup() throws IOException {
+        for (ITag tag : Fixtures.tags(Fixtures.FLV)) {
+            if (tag.getDataType() == ITag.TYPE_METADATA) {
+                Input in = new org.red5.io.amf.Input(tag.getBody().duplicate());
+                // skip the handler name
+                Deserializer.deserialize(in, String.class);
+                metadata = Deserializer.deserialize(in, Object.class);
+                break;
+            }
+        }
+        if (metadata == null) {
+            throw new IllegalStateException("No metadata in " + Fixtures.FLV);
+        }
+        buf = IoBuffer.allocate(4096);
+        buf.setAutoExpand(true);
+        write();
+        buf.flip();
+        encoded = new byte[buf.remaining()];
+        buf.get(encoded);
+    }
+
+    private Output output(IoBuffer out) {
+        return "AMF3".equals(encoding) ? new org.red5.io.amf3.Output(out) : new org.red5.io.amf.Output(out);
+    }
+
+    private Input input(IoBuffer in) {
+        return "AMF3".equals(encoding) ? new org.red5.io.amf3.Input(in) : new org.red5.io.amf.Input(in);
+    }
+
+    @Benchmark
+    public IoBuffer write() {
+        buf.clear();
+        Serializer.serialize(output(buf), metadata);
+        return buf;
+    }
+
+    @Benchmark
+    public Object read() {
+        return Deserializer.deserialize(input(IoBuffer.wrap(encoded)), Object.class);
+    }
+
+    @Benchmark
+    public Object roundTrip() {
+        buf.clear();
+        Serializer.serialize(output(buf), metadata);
+        buf.flip();
+        return Deserializer.deserialize(input(buf), Object.class);
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
+
+/**
+ * Loads keyframe metadata which isn't cached in memory yet, from the binary index and from the xml
+ * metadata files, as done the first time a file is played after a restart.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KeyFrameMetaCacheBenchmark {
+
+    /** Number of keyframes; one every two seconds is about an hour and two days */
+    @Param({ "1800", "86400" })
+    public int keyframes;
+
+    private File binaryFile;
+
+    private File xmlFile;
+
+    @Setup
+    public void setup() throws IOException {
+        KeyFrameMeta meta = new KeyFrameMeta();
+        meta.duration = keyframes * 2000L;
+        meta.videoCodecId = 7;
+        meta.audioCodecId = 10;
+        meta.positions = new long[keyframes];
+        meta.timestamps = new int[keyframes];
+        for (int i = 0; i < keyframes; i++) {
+            meta.positions[i] = 13L + (i * 65536L);
+            meta.timestamps[i] = i * 2000;
+        }
+        binaryFile = File.createTempFile("red5", ".flv");
+        new BinaryKeyFrameMetaCache().saveKeyFrameMeta(binaryFile, meta);
+        xmlFile = File.createTempFile("red5", ".flv");
+        new FileKeyFrameMetaCache().saveKeyFrameMeta(xmlFile, meta);
+    }
+
+    @TearDown
+    public void tearDown() {
+        for (File file : new File[] { binaryFile, xmlFile }) {
+            new File(file.getAbsolutePath() + BinaryKeyFrameMetaCache.EXTENSION).delete();
+            new File(file.getAbsolutePath() + ".meta").delete();
+            file.delete();
+        }
+    }
+
+    @Benchmark
+    public KeyFrameMeta loadBinary() {
+        return new BinaryKeyFrameMetaCache().loadKeyFrameMeta(binaryFile);
+    }
+
+    @Benchmark
+    public KeyFrameMeta loadXml() {
+        return new FileKeyFrameMetaCache().loadKeyFrameMeta(xmlFile);
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.flv.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.red5.benchmarks.Fixtures;
+import org.red5.io.ITag;
+
+/**
+ * Reads all tags of recorded flv files, from memory and from the file system.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FLVReaderBenchmark {
+
+    @Param({ Fixtures.FLV, "h264_mp3.flv" })
+    public String fixture;
+
+    private File file;
+
+    private byte[] data;
+
+    @Setup
+    public void setup() throws IOException {
+        file = Fixtures.file(fixture);
+        data = Fixtures.bytes(fixture);
+    }
+
+    @Benchmark
+    public int readTagsFromMemory(Blackhole bh) {
+        return readTags(new FLVReader(IoBuffer.wrap(data), false), bh);
+    }
+
+    @Benchmark
+    public int readTagsFromFile(Blackhole bh) throws IOException {
+        return readTags(new FLVReader(file), bh);
+    }
+
+    private static int readTags(FLVReader reader, Blackhole bh) {
+        int count = 0;
+        try {
+            while (reader.hasMoreTags()) {
+                ITag tag = reader.readTag();
+                bh.consume(tag);
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+}
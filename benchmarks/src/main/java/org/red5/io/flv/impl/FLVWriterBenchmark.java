@@ -0,0 +1,91 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.flv.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.io.ITag;
+
+/**
+ * Close latency of a recording: before each iteration a writer records 1 or 10 GiB of 1 MiB video tags
+ * into its data file, the measured <code>close</code> then writes the header and metadata and merges the
+ * data file into the flv, with <code>FileChannel.transferTo</code> or through a user space buffer.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class FLVWriterBenchmark {
+
+    private static final int BODY_SIZE = 1024 * 1024;
+
+    /** Size of the recording in GiB */
+    @Param({ "1", "10" })
+    public int gigabytes;
+
+    @Param({ "true", "false" })
+    public boolean zeroCopyFinalization;
+
+    private Path dir;
+
+    private FLVWriter writer;
+
+    @Setup(Level.Iteration)
+    public void record() throws IOException {
+        dir = Files.createTempDirectory("flvwriterbenchmark");
+        writer = new FLVWriter(dir.resolve("recording.flv"), false);
+        writer.setZeroCopyFinalization(zeroCopyFinalization);
+        IoBuffer body = IoBuffer.allocate(BODY_SIZE);
+        // sorenson inter frame, which needs no configuration tag
+        body.put((byte) 0x22);
+        body.position(BODY_SIZE);
+        body.flip();
+        long tags = ((long) gigabytes << 30) / BODY_SIZE;
+        int previousTagSize = 0;
+        for (int t = 0; t < tags; t++) {
+            // the writer takes a view of the body, so it is shared by all tags
+            writer.writeTag(new Tag(ITag.TYPE_VIDEO, t * 33, BODY_SIZE, body, previousTagSize));
+            previousTagSize = 11 + BODY_SIZE;
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void delete() throws IOException {
+        Files.deleteIfExists(dir.resolve("recording.flv.ser"));
+        Files.deleteIfExists(dir.resolve("recording.flv"));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public long close() throws IOException {
+        writer.close();
+        return Files.size(dir.resolve("recording.flv"));
+    }
+
+}
@@ -0,0 +1,175 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.matroska;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.io.matroska.dtd.Tag;
+import org.red5.io.matroska.parser.TagCrawler;
+import org.red5.io.matroska.parser.TagHandler;
+
+/**
+ * Full pass over a multi gigabyte file of 2 MiB clusters of 16 KiB simple blocks, written at setup.
+ * <code>crawlStream</code> runs the {@link TagCrawler} over a buffered file stream as the webm
+ * reader used to, <code>crawlCursor</code> runs it over an {@link EbmlCursor} on the mapped file;
+ * both still copy the block data into their tags. <code>walkCursor</code> walks the element headers
+ * with the cursor alone and skips the block data. Each returns the number of elements seen.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class EbmlParserBenchmark {
+
+    private static final int ID_EBML = 0x1a45dfa3;
+
+    private static final int ID_DOCTYPE = 0x4282;
+
+    private static final int ID_SEGMENT = 0x18538067;
+
+    private static final int ID_CLUSTER = 0x1f43b675;
+
+    private static final int ID_TIMECODE = 0xe7;
+
+    private static final int ID_SIMPLEBLOCK = 0xa3;
+
+    /** Size of the file in GiB */
+    @Param({ "1", "4" })
+    public int gigabytes;
+
+    private File file;
+
+    private FileChannel channel;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = File.createTempFile("ebmlbenchmark", ".webm");
+        file.deleteOnExit();
+        write(file, (long) gigabytes << 30);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        channel.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public long crawlStream() throws IOException, ConverterException {
+        CountingCrawler crawler = new CountingCrawler();
+        try (InputStream input = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            crawler.process(input);
+        }
+        return crawler.count;
+    }
+
+    @Benchmark
+    public long crawlCursor() throws IOException, ConverterException {
+        CountingCrawler crawler = new CountingCrawler();
+        crawler.process(EbmlCursor.map(channel));
+        return crawler.count;
+    }
+
+    @Benchmark
+    public long walkCursor() throws IOException {
+        EbmlCursor cursor = EbmlCursor.map(channel);
+        long count = 0;
+        while (cursor.next(cursor.length())) {
+            count++;
+            int id = cursor.getId();
+            if (id != ID_SEGMENT && id != ID_CLUSTER) {
+                // master elements are entered, their children follow
+                cursor.skip();
+            }
+        }
+        return count;
+    }
+
+    /** Crawler handing every tag to a handler which counts it; value tags have read their data. */
+    private static final class CountingCrawler extends TagCrawler {
+
+        long count;
+
+        @Override
+        public TagHandler createSkipHandler() {
+            return new TagHandler() {
+                @Override
+                public void handle(Tag tag, InputStream input) {
+                    count++;
+                }
+            };
+        }
+    }
+
+    /** Writes the file: an EBML header, then a segment of unknown size holding the clusters. */
+    static void write(File file, long length) throws IOException {
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        write(blocks, element(ID_TIMECODE, new byte[8]));
+        byte[] block = new byte[4 + 16 * 1024];
+        block[0] = (byte) 0x81;
+        for (int i = 0; i < 128; i++) {
+            write(blocks, element(ID_SIMPLEBLOCK, block));
+        }
+        ByteBuffer cluster = ByteBuffer.wrap(element(ID_CLUSTER, blocks.toByteArray()));
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.wrap(element(ID_EBML, element(ID_DOCTYPE, "webm".getBytes()))));
+            out.write(ByteBuffer.wrap(new byte[] { 0x18, 0x53, (byte) 0x80, 0x67, 0x01, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff }));
+            while (out.position() < length) {
+                cluster.rewind();
+                while (cluster.hasRemaining()) {
+                    out.write(cluster);
+                }
+            }
+        }
+    }
+
+    /** Element with its size on 4 bytes */
+    private static byte[] element(int id, byte[] payload) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int length = id > 0xffffff ? 4 : id > 0xffff ? 3 : id > 0xff ? 2 : 1;
+        for (int i = length - 1; i >= 0; i--) {
+            out.write(id >> (8 * i));
+        }
+        int size = payload.length;
+        write(out, new byte[] { (byte) (0x10 | (size >> 24)), (byte) (size >> 16), (byte) (size >> 8), (byte) size });
+        write(out, payload);
+        return out.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.mp4.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.red5.benchmarks.Fixtures;
+
+/**
+ * Opens a recorded mp4 file, which parses its sample tables, and iterates its samples as a VOD
+ * subscriber does. With <i>shared</i> the sample table comes from the {@link MP4SampleTableCache}
+ * after the first open, as it does for every viewer after the first; run with <code>-prof gc</code>
+ * to compare the allocation per opened reader.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MP4ReaderBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean shared;
+
+    private File file;
+
+    @Setup
+    public void setup() {
+        file = Fixtures.file(Fixtures.MP4);
+        new MP4Reader().setSampleTableCache(shared ? new MP4SampleTableCache() : null);
+    }
+
+    @Benchmark
+    public MP4Reader open() throws IOException {
+        MP4Reader reader = new MP4Reader(file);
+        reader.close();
+        return reader;
+    }
+
+    @Benchmark
+    public int readSamples(Blackhole bh) throws IOException {
+        MP4Reader reader = new MP4Reader(file);
+        int count = 0;
+        try {
+            while (reader.hasMoreTags()) {
+                bh.consume(reader.readTag());
+                count++;
+            }
+        } finally {
+            reader.close();
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.object;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.beanutils.BeanMap;
+import org.apache.commons.beanutils.BeanUtils;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Writes and reads a list of typed value objects, as remoting and shared object applications do. The <i>reflective</i> benchmarks replay what the writer and reader did per
+ * property before {@link ClassCodec}: bean map introspection, declared field lookup and bean utils property setting.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ClassCodecBenchmark {
+
+    @Param({ "AMF0", "AMF3" })
+    public String encoding;
+
+    private List<Quote> quotes;
+
+    private byte[] encoded;
+
+    private IoBuffer buf;
+
+    @Setup
+    public void setup() {
+        quotes = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Quote quote = new Quote();
+            quote.setSymbol("SYM" + i);
+            quote.setBid(100d + i);
+            quote.setAsk(100.5d + i);
+            quote.setVolume(1000 * i);
+            quote.setTime(new Date(1700000000000L + i));
+            quotes.add(quote);
+        }
+        buf = IoBuffer.allocate(16384);
+        buf.setAutoExpand(true);
+        write();
+        buf.flip();
+        encoded = new byte[buf.remaining()];
+        buf.get(encoded);
+    }
+
+    private Output output(IoBuffer out) {
+        return "AMF3".equals(encoding) ? new org.red5.io.amf3.Output(out) : new org.red5.io.amf.Output(out);
+    }
+
+    private Input input(IoBuffer in) {
+        return "AMF3".equals(encoding) ? new org.red5.io.amf3.Input(in) : new org.red5.io.amf.Input(in);
+    }
+
+    @Benchmark
+    public IoBuffer write() {
+        buf.clear();
+        Serializer.serialize(output(buf), quotes);
+        return buf;
+    }
+
+    @Benchmark
+    public Object read() {
+        return Deserializer.deserialize(input(IoBuffer.wrap(encoded)), Object.class);
+    }
+
+    /** Property access of the codec based writer, without the encoding. */
+    @Benchmark
+    public void compiledGet(Blackhole bh) {
+        for (Quote quote : quotes) {
+            ClassCodec codec = ClassCodec.forClass(quote.getClass());
+            for (ClassCodec.Property property : codec.getProperties()) {
+                bh.consume(property.getEncodedName());
+                bh.consume(property.get(quote));
+            }
+        }
+    }
+
+    /** Property access of the former bean map based writer, without the encoding. */
+    @Benchmark
+    public void reflectiveGet(Blackhole bh) {
+        for (Quote quote : quotes) {
+            BeanMap beanMap = new BeanMap(quote);
+            for (Object key : beanMap.keySet()) {
+                String name = key.toString();
+                Field field = null;
+                for (Class<?> clazz = quote.getClass(); !clazz.equals(Object.class); clazz = clazz.getSuperclass()) {
+                    for (Field fld : clazz.getDeclaredFields()) {
+                        if (fld.getName().equals(name)) {
+                            field = fld;
+                        }
+                    }
+                }
+                Method getter = beanMap.getReadMethod(name);
+                if (Serializer.serializeField(name, field, getter)) {
+                    bh.consume(name.getBytes());
+                    bh.consume(beanMap.get(key));
+                }
+            }
+        }
+    }
+
+    /** Property setting of the codec based readers. */
+    @Benchmark
+    public Object compiledSet() {
+        Quote quote = new Quote();
+        ClassCodec codec = ClassCodec.forClass(Quote.class);
+        codec.setProperty(quote, "symbol", "SYM");
+        codec.setProperty(quote, "bid", 100d);
+        codec.setProperty(quote, "ask", 100.5d);
+        codec.setProperty(quote, "volume", 1000d);
+        codec.setProperty(quote, "time", new Date(1700000000000L));
+        return quote;
+    }
+
+    /** Property setting of the former bean utils based readers. */
+    @Benchmark
+    public Object reflectiveSet() throws Exception {
+        Quote quote = new Quote();
+        BeanUtils.setProperty(quote, "symbol", "SYM");
+        BeanUtils.setProperty(quote, "bid", 100d);
+        BeanUtils.setProperty(quote, "ask", 100.5d);
+        BeanUtils.setProperty(quote, "volume", 1000d);
+        BeanUtils.setProperty(quote, "time", new Date(1700000000000L));
+        return quote;
+    }
+
+    public static class Quote {
+
+        private String symbol;
+
+        private double bid;
+
+        private double ask;
+
+        private int volume;
+
+        private Date time;
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public void setSymbol(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public double getBid() {
+            return bid;
+        }
+
+        public void setBid(double bid) {
+            this.bid = bid;
+        }
+
+        public double getAsk() {
+            return ask;
+        }
+
+        public void setAsk(double ask) {
+            this.ask = ask;
+        }
+
+        public int getVolume() {
+            return volume;
+        }
+
+        public void setVolume(int volume) {
+            this.volume = volume;
+        }
+
+        public Date getTime() {
+            return time;
+        }
+
+        public void setTime(Date time) {
+            this.time = time;
+        }
+    }
+
+}
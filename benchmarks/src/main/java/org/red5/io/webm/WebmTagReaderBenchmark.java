@@ -0,0 +1,199 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.webm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.io.ITag;
+import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
+
+/**
+ * Open time and seek latency of {@link WebmTagReader} on an hour long VP8 / Opus file with a
+ * cluster every two seconds, written at setup. Without <i>cues</i> the seek points come from a walk
+ * over the cluster headers; <code>firstSeek</code> opens the file and seeks once, which includes
+ * loading the seek points, <code>seek</code> seeks an opened reader to a random time.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebmTagReaderBenchmark {
+
+    /** Length of the file in seconds */
+    @Param({ "3600" })
+    public int seconds;
+
+    @Param({ "true", "false" })
+    public boolean cues;
+
+    private File file;
+
+    private WebmTagReader reader;
+
+    private KeyFrameMeta meta;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        file = File.createTempFile("webmbenchmark", ".webm");
+        file.deleteOnExit();
+        write(file, seconds, cues);
+        reader = new WebmTagReader(file);
+        meta = reader.analyzeKeyFrames();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        reader.close();
+        file.delete();
+    }
+
+    @Benchmark
+    public WebmTagReader open() throws IOException {
+        WebmTagReader opened = new WebmTagReader(file);
+        opened.close();
+        return opened;
+    }
+
+    @Benchmark
+    public ITag firstSeek() throws IOException {
+        WebmTagReader opened = new WebmTagReader(file);
+        try {
+            return seek(opened, opened.analyzeKeyFrames());
+        } finally {
+            opened.close();
+        }
+    }
+
+    @Benchmark
+    public ITag seek() {
+        return seek(reader, meta);
+    }
+
+    /** Seeks as the file provider does and reads the first frame. */
+    private ITag seek(WebmTagReader target, KeyFrameMeta keyFrames) {
+        int ts = ThreadLocalRandom.current().nextInt(seconds * 1000);
+        int frame = Arrays.binarySearch(keyFrames.timestamps, ts);
+        if (frame < 0) {
+            frame = Math.min(-frame - 1, keyFrames.timestamps.length - 1);
+        }
+        target.position(keyFrames.positions[frame]);
+        return target.readTag();
+    }
+
+    /** Writes the file: 30 fps video of 400 byte frames, 20 ms audio frames of 80 bytes. */
+    static void write(File file, int seconds, boolean cues) throws IOException {
+        try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            out.write(ByteBuffer.wrap(element(WebmTagReader.ID_EBML, string(WebmTagReader.ID_DOCTYPE, "webm"))));
+            // segment of unknown size, it ends with the file
+            out.write(ByteBuffer.wrap(concat(id(WebmTagReader.ID_SEGMENT), new byte[] { 0x01, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff })));
+            long segmentStart = out.position();
+            // seek position written once the cues are
+            byte[] seekHead = seekHead(0);
+            out.write(ByteBuffer.wrap(seekHead));
+            out.write(ByteBuffer.wrap(element(WebmTagReader.ID_INFO, concat(uint(WebmTagReader.ID_TIMECODESCALE, 1000000L), floating(WebmTagReader.ID_DURATION, seconds * 1000d)))));
+            out.write(ByteBuffer.wrap(element(WebmTagReader.ID_TRACKS,
+                    concat(element(WebmTagReader.ID_TRACKENTRY, concat(uint(WebmTagReader.ID_TRACKNUMBER, 1), uint(WebmTagReader.ID_TRACKTYPE, 1), string(WebmTagReader.ID_CODECID, "V_VP8"), element(WebmTagReader.ID_VIDEO, concat(uint(WebmTagReader.ID_PIXELWIDTH, 640), uint(WebmTagReader.ID_PIXELHEIGHT, 360))))),
+                            element(WebmTagReader.ID_TRACKENTRY, concat(uint(WebmTagReader.ID_TRACKNUMBER, 2), uint(WebmTagReader.ID_TRACKTYPE, 2), string(WebmTagReader.ID_CODECID, "A_OPUS"), element(WebmTagReader.ID_AUDIO, concat(floating(WebmTagReader.ID_SAMPLINGFREQUENCY, 48000d), uint(WebmTagReader.ID_CHANNELS, 2)))))))));
+            ByteArrayOutputStream cuePoints = new ByteArrayOutputStream();
+            byte[] video = new byte[400];
+            byte[] audio = new byte[80];
+            for (int clusterTime = 0; clusterTime < seconds * 1000; clusterTime += 2000) {
+                ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+                write(blocks, uint(WebmTagReader.ID_TIMECODE, clusterTime));
+                for (int t = 0; t < 2000; t += 20) {
+                    if (t % 100 == 0 || t % 100 == 40 || t % 100 == 60) {
+                        // 3 of every 5 slots of 20 ms carry a video frame
+                        write(blocks, simpleBlock(1, t, t == 0, video));
+                    }
+                    write(blocks, simpleBlock(2, t, true, audio));
+                }
+                long clusterPosition = out.position() - segmentStart;
+                out.write(ByteBuffer.wrap(element(WebmTagReader.ID_CLUSTER, blocks.toByteArray())));
+                write(cuePoints, element(WebmTagReader.ID_CUEPOINT, concat(uint(WebmTagReader.ID_CUETIME, clusterTime), element(WebmTagReader.ID_CUETRACKPOSITIONS, concat(uint(WebmTagReader.ID_CUETRACK, 1), uint(WebmTagReader.ID_CUECLUSTERPOSITION, clusterPosition))))));
+            }
+            if (cues) {
+                long cuesPosition = out.position() - segmentStart;
+                out.write(ByteBuffer.wrap(element(WebmTagReader.ID_CUES, cuePoints.toByteArray())));
+                out.write(ByteBuffer.wrap(seekHead(cuesPosition)), segmentStart);
+            }
+        }
+    }
+
+    private static byte[] seekHead(long cuesPosition) {
+        return element(WebmTagReader.ID_SEEKHEAD, element(WebmTagReader.ID_SEEK, concat(element(WebmTagReader.ID_SEEKID, id(WebmTagReader.ID_CUES)), uint(WebmTagReader.ID_SEEKPOSITION, cuesPosition))));
+    }
+
+    private static byte[] simpleBlock(int track, int time, boolean key, byte[] data) {
+        return element(WebmTagReader.ID_SIMPLEBLOCK, concat(new byte[] { (byte) (0x80 | track), (byte) (time >> 8), (byte) time, (byte) (key ? 0x80 : 0) }, data));
+    }
+
+    private static byte[] uint(int id, long value) {
+        return element(id, ByteBuffer.allocate(8).putLong(value).array());
+    }
+
+    private static byte[] floating(int id, double value) {
+        return element(id, ByteBuffer.allocate(8).putDouble(value).array());
+    }
+
+    private static byte[] string(int id, String value) {
+        return element(id, value.getBytes());
+    }
+
+    /** Element with its size on 4 bytes */
+    private static byte[] element(int id, byte[] payload) {
+        int size = payload.length;
+        return concat(id(id), new byte[] { (byte) (0x10 | (size >> 24)), (byte) (size >> 16), (byte) (size >> 8), (byte) size }, payload);
+    }
+
+    private static byte[] id(int id) {
+        int length = id > 0xffffff ? 4 : id > 0xffff ? 3 : id > 0xff ? 2 : 1;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (id >> (8 * (length - i - 1)));
+        }
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            write(out, part);
+        }
+        return out.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.messaging;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.benchmarks.Fixtures;
+import org.red5.io.ITag;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.stream.message.RTMPMessage;
+
+/**
+ * Pushes the messages of a recorded stream through a pipe to its consumers, which only take note of
+ * them, so the fan-out of the pipe itself is measured.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InMemoryPushPushPipeBenchmark {
+
+    @Param({ "1", "100", "10000" })
+    public int consumers;
+
+    private InMemoryPushPushPipe pipe;
+
+    private RTMPMessage[] messages;
+
+    private int next;
+
+    /** Consumer doing the least a subscriber does with a message */
+    static final class CountingConsumer implements IPushableConsumer {
+
+        long received;
+
+        int lastTimestamp;
+
+        @Override
+        public void pushMessage(IPipe pipe, IMessage message) throws IOException {
+            received++;
+            lastTimestamp = ((RTMPMessage) message).getBody().getTimestamp();
+        }
+
+        @Override
+        public void onOOBControlMessage(IMessageComponent source, IPipe pipe, OOBControlMessage oobCtrlMsg) {
+        }
+
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        pipe = new InMemoryPushPushPipe();
+        for (int i = 0; i < consumers; i++) {
+            pipe.subscribe(new CountingConsumer(), null);
+        }
+        List<ITag> tags = Fixtures.tags(Fixtures.FLV);
+        messages = tags.stream().filter(tag -> tag.getDataType() == ITag.TYPE_AUDIO || tag.getDataType() == ITag.TYPE_VIDEO).map(tag -> {
+            IRTMPEvent event = tag.getDataType() == ITag.TYPE_AUDIO ? new AudioData(tag.getBody()) : new VideoData(tag.getBody());
+            event.setTimestamp(tag.getTimestamp());
+            return RTMPMessage.build(event);
+        }).toArray(RTMPMessage[]::new);
+    }
+
+    @Benchmark
+    public RTMPMessage pushMessage() throws IOException {
+        RTMPMessage message = messages[next];
+        next = (next + 1) % messages.length;
+        pipe.pushMessage(message);
+        return message;
+    }
+
+}
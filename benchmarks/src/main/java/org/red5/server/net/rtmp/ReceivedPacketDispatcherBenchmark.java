@@ -0,0 +1,141 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.server.net.rtmp.ReceivedPacketDispatcher.ReceiveMode;
+import org.red5.server.net.rtmp.codec.RTMP;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Received packet handling of many connections, with a receive thread per connection handing every packet to the message executor as
+ * before, and with the shared dispatcher on as many worker threads as the executor has. A round hands one packet to every connection and
+ * ends when all of them were handled; the sampled round times give the percentiles, the live thread count is the aux counter.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReceivedPacketDispatcherBenchmark {
+
+    @Param({ "EXECUTOR", "STRIPED" })
+    public ReceiveMode mode;
+
+    @Param({ "100", "1000" })
+    public int connections;
+
+    /** Message executor threads, and dispatcher workers */
+    @Param({ "16" })
+    public int threads;
+
+    private ThreadPoolTaskExecutor executor;
+
+    private ReceivedPacketDispatcher dispatcher;
+
+    private final List<RTMPConnection> conns = new ArrayList<>();
+
+    private volatile CountDownLatch round;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public long liveThreads;
+
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setDaemon(true);
+        executor.initialize();
+        dispatcher = new ReceivedPacketDispatcher();
+        dispatcher.setMode(mode);
+        dispatcher.setStripes(threads);
+        dispatcher.afterPropertiesSet();
+        IRTMPHandler handler = new IRTMPHandler() {
+
+            @Override
+            public void connectionOpened(RTMPConnection conn) {
+            }
+
+            @Override
+            public void messageReceived(RTMPConnection conn, Packet packet) {
+                round.countDown();
+            }
+
+            @Override
+            public void messageSent(RTMPConnection conn, Packet packet) {
+            }
+
+            @Override
+            public void connectionClosed(RTMPConnection conn) {
+            }
+
+        };
+        for (int i = 0; i < connections; i++) {
+            RTMPConnection conn = new RTMPMinaConnection();
+            conn.getState().setState(RTMP.STATE_CONNECTED);
+            conn.setHandler(handler);
+            conn.setExecutor(executor);
+            conn.setReceivedPacketDispatcher(dispatcher);
+            conns.add(conn);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        for (RTMPConnection conn : conns) {
+            conn.getState().setState(RTMP.STATE_DISCONNECTED);
+            conn.receivedPacketExecutor.shutdownNow();
+        }
+        dispatcher.destroy();
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public void round(Counters counters) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(connections);
+        round = latch;
+        for (RTMPConnection conn : conns) {
+            conn.handleMessageReceived(new Packet(new Header()));
+        }
+        if (!latch.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Round not handled, " + latch.getCount() + " packets left");
+        }
+        counters.liveThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+    }
+
+}
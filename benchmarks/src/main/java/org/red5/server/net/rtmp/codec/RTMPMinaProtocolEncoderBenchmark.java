@@ -0,0 +1,150 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp.codec;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.future.WriteFuture;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.ProtocolCodecException;
+import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.red5.benchmarks.Fixtures;
+import org.red5.io.ITag;
+import org.red5.server.BaseConnection;
+import org.red5.server.api.Red5;
+import org.red5.server.net.rtmp.RTMPConnManager;
+import org.red5.server.net.rtmp.RTMPConnection;
+
+/**
+ * Writes the audio and video of a recorded stream through the MINA encoder of a subscriber's session, from the thread of another
+ * connection as a publisher's thread does. The connection is either looked up by session id for every message or bound to the session,
+ * which also spares swapping the connection local. The large chunk size keeps chunking cheap, so the cost per message besides it shows.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@OperationsPerInvocation(RTMPMinaProtocolEncoderBenchmark.MESSAGES)
+public class RTMPMinaProtocolEncoderBenchmark {
+
+    static final int MESSAGES = 1024;
+
+    @Param({ "false", "true" })
+    public boolean bound;
+
+    /** Connections known to the manager, which grow the map the lookup goes to */
+    @Param({ "1000" })
+    public int connections;
+
+    /** Audio and video tags of the stream */
+    private List<ITag> frames;
+
+    private IoSession session;
+
+    private RTMPConnection publisher;
+
+    private RTMPMinaProtocolEncoder encoder;
+
+    private Output out;
+
+    /** Connection manager the connections are added to directly */
+    static final class Manager extends RTMPConnManager {
+
+        void add(BaseConnection conn) {
+            connMap.put(conn.getSessionId(), conn);
+        }
+
+    }
+
+    /** Output handing the written buffers to the blackhole */
+    static final class Output implements ProtocolEncoderOutput {
+
+        Blackhole bh;
+
+        @Override
+        public void write(Object encodedMessage) {
+            bh.consume(encodedMessage);
+        }
+
+        @Override
+        public void mergeAll() {
+        }
+
+        @Override
+        public WriteFuture flush() {
+            return null;
+        }
+
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        frames = new ArrayList<>();
+        for (ITag tag : Fixtures.tags(Fixtures.FLV)) {
+            if (tag.getDataType() == ITag.TYPE_AUDIO || tag.getDataType() == ITag.TYPE_VIDEO) {
+                frames.add(tag);
+            }
+        }
+        Manager manager = new Manager();
+        for (int i = 1; i < connections; i++) {
+            manager.add(RTMPProtocolEncoderBenchmark.connection());
+        }
+        RTMPConnection conn = RTMPProtocolEncoderBenchmark.connection();
+        // small media frames cross the chunk size only rarely
+        conn.getState().setWriteChunkSize(4096);
+        manager.add(conn);
+        session = new DummySession();
+        session.setAttribute(RTMPConnection.RTMP_SESSION_ID, conn.getSessionId());
+        session.setAttribute(RTMPConnection.RTMP_CONN_MANAGER, new WeakReference<>(manager));
+        if (bound) {
+            session.setAttribute(RTMPConnection.RTMP_CONNECTION, conn);
+        }
+        publisher = RTMPProtocolEncoderBenchmark.connection();
+        encoder = new RTMPMinaProtocolEncoder();
+        out = new Output();
+    }
+
+    @TearDown
+    public void tearDown() {
+        Red5.setConnectionLocal(null);
+    }
+
+    @Benchmark
+    public void encode(Blackhole bh) throws ProtocolCodecException {
+        out.bh = bh;
+        // the publisher's thread writes to the subscriber
+        Red5.setConnectionLocal(publisher);
+        for (int i = 0; i < MESSAGES; i++) {
+            encoder.encode(session, RTMPProtocolEncoderBenchmark.packet(frames.get(i % frames.size())), out);
+        }
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp.codec;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.red5.benchmarks.Fixtures;
+import org.red5.io.ITag;
+import org.red5.server.api.Red5;
+import org.red5.server.net.rtmp.RTMPConnection;
+
+/**
+ * Decodes a recorded stream, chunked the way a publisher sends it, in socket sized reads. The reads
+ * are handed to the decoder the same way the MINA decoder does, for the copying and the pooled mode.
+ * Run with <i>-prof gc</i> to compare the allocation rate of both modes.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RTMPProtocolDecoderBenchmark {
+
+    @Param({ "false", "true" })
+    public boolean pooled;
+
+    @Param({ "128", "4096" })
+    public int chunkSize;
+
+    /** Size of the reads from the socket */
+    @Param({ "8192" })
+    public int readSize;
+
+    private byte[] stream;
+
+    private RTMPConnection conn;
+
+    private RTMPProtocolDecoder decoder;
+
+    private IoBuffer buffer;
+
+    /** Decoded bytes, reported as a rate next to the stream rate */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        // chunk the recorded stream like a publisher would
+        RTMPConnection publisher = RTMPProtocolEncoderBenchmark.connection();
+        publisher.getState().setWriteChunkSize(chunkSize);
+        Red5.setConnectionLocal(publisher);
+        RTMPProtocolEncoder encoder = new RTMPProtocolEncoder();
+        IoBuffer out = IoBuffer.allocate(1024 * 1024);
+        out.setAutoExpand(true);
+        for (ITag tag : Fixtures.tags(Fixtures.FLV)) {
+            out.put(encoder.encodePacket(RTMPProtocolEncoderBenchmark.packet(tag)));
+        }
+        out.flip();
+        stream = new byte[out.remaining()];
+        out.get(stream);
+        conn = RTMPProtocolEncoderBenchmark.connection();
+        conn.getState().setReadChunkSize(chunkSize);
+        Red5.setConnectionLocal(conn);
+        RTMPProtocolDecoder.setPooledDecoding(pooled);
+        decoder = new RTMPProtocolDecoder();
+        buffer = IoBuffer.allocate(readSize);
+        buffer.setAutoExpand(true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        RTMPProtocolDecoder.setPooledDecoding(false);
+        Red5.setConnectionLocal(null);
+    }
+
+    @Benchmark
+    public void decodeStream(Bytes counter, Blackhole bh) {
+        buffer.clear();
+        for (int offset = 0; offset < stream.length; offset += readSize) {
+            IoBuffer in = IoBuffer.wrap(stream, offset, Math.min(readSize, stream.length - offset));
+            if (pooled) {
+                decodePooled(in, bh);
+            } else {
+                decode(in, bh);
+            }
+        }
+        counter.bytes += stream.length;
+    }
+
+    /** Copying mode, see RTMPMinaProtocolDecoder. */
+    private void decode(IoBuffer in, Blackhole bh) {
+        byte[] arr = new byte[in.remaining()];
+        in.get(arr);
+        buffer.put(arr);
+        buffer.flip();
+        List<Object> objects = decoder.decodeBuffer(conn, buffer);
+        for (int i = 0; i < objects.size(); i++) {
+            bh.consume(objects.get(i));
+        }
+    }
+
+    /** Pooled mode, see RTMPMinaProtocolDecoder. */
+    private void decodePooled(IoBuffer in, Blackhole bh) {
+        List<Object> objects = conn.getDecoderState().getDecodedObjects();
+        if (buffer.position() == 0) {
+            decoder.decodeBuffer(conn, in, objects);
+            if (in.hasRemaining()) {
+                buffer.put(in);
+            }
+        } else {
+            buffer.put(in);
+            buffer.flip();
+            decoder.decodeBuffer(conn, buffer, objects);
+            if (buffer.hasRemaining()) {
+                buffer.compact();
+            } else {
+                buffer.clear();
+            }
+        }
+        for (int i = 0; i < objects.size(); i++) {
+            bh.consume(objects.get(i));
+        }
+        objects.clear();
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp.codec;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.red5.benchmarks.Fixtures;
+import org.red5.io.ITag;
+import org.red5.server.api.Red5;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+
+/**
+ * Encodes every tag of a recorded stream into RTMP chunks, as done for each subscriber of a stream.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RTMPProtocolEncoderBenchmark {
+
+    @Param({ "128", "4096" })
+    public int chunkSize;
+
+    private List<ITag> tags;
+
+    private RTMPConnection conn;
+
+    private RTMPProtocolEncoder encoder;
+
+    /** Encoded bytes, reported as a rate next to the stream rate */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Bytes {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        tags = Fixtures.tags(Fixtures.FLV);
+        encoder = new RTMPProtocolEncoder();
+        conn = connection();
+        conn.getState().setWriteChunkSize(chunkSize);
+        Red5.setConnectionLocal(conn);
+    }
+
+    @TearDown
+    public void tearDown() {
+        Red5.setConnectionLocal(null);
+    }
+
+    @Benchmark
+    public void encodeStream(Bytes counter, Blackhole bh) {
+        for (ITag tag : tags) {
+            IoBuffer out = encoder.encodePacket(packet(tag));
+            counter.bytes += out.remaining();
+            bh.consume(out);
+        }
+    }
+
+    /**
+     * Returns a connected connection which isn't attached to a session.
+     *
+     * @return connection
+     */
+    static RTMPConnection connection() {
+        RTMPConnection conn = new RTMPMinaConnection();
+        conn.getState().setState(RTMP.STATE_CONNECTED);
+        return conn;
+    }
+
+    /**
+     * Creates the packet for a tag on the channels of stream id 1. The event gets a view of the tag
+     * body, the body itself is left untouched.
+     *
+     * @param tag tag
+     * @return packet
+     */
+    static Packet packet(ITag tag) {
+        IoBuffer body = tag.getBody().duplicate();
+        IRTMPEvent event;
+        int channelId;
+        switch (tag.getDataType()) {
+            case ITag.TYPE_AUDIO:
+                event = new AudioData(body);
+                channelId = 6;
+                break;
+            case ITag.TYPE_VIDEO:
+                event = new VideoData(body);
+                channelId = 5;
+                break;
+            default:
+                event = new Notify(body);
+                channelId = 4;
+                break;
+        }
+        event.setTimestamp(tag.getTimestamp());
+        Header header = new Header();
+        header.setChannelId(channelId);
+        header.setDataType(tag.getDataType());
+        header.setStreamId(1);
+        header.setTimer(tag.getTimestamp());
+        header.setSize(tag.getBodySize());
+        event.setHeader(header);
+        return new Packet(header, event);
+    }
+
+}
@@ -0,0 +1,203 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmpt;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.server.BaseConnection;
+import org.red5.server.net.rtmp.RTMPConnManager;
+
+/**
+ * Many simulated RTMPT clients polling an embedded Tomcat, which serves them with the blocking and
+ * with the async servlet. Every client polls again as soon as its previous poll was answered, the
+ * way clients behind proxies do. A round queues a message on every connection and ends when every
+ * client received it, so the time of a round is the delivery latency to the slowest client. The
+ * auxiliary counter reports the polls answered per round; the blocking servlet answers empty polls
+ * over and over on worker threads while the async one holds them.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RTMPTServletBenchmark {
+
+    @Param({ "100", "1000" })
+    public int clients;
+
+    @Param({ "false", "true" })
+    public boolean async;
+
+    /** Bytes queued on every connection per round */
+    @Param({ "512" })
+    public int messageSize;
+
+    private Tomcat tomcat;
+
+    private ExecutorService clientExecutor;
+
+    private HttpClient http;
+
+    private RTMPTConnection[] connections;
+
+    private Client[] pollers;
+
+    private byte[] message;
+
+    private volatile CountDownLatch round;
+
+    private volatile boolean running;
+
+    private final AtomicInteger polls = new AtomicInteger();
+
+    /** Connection manager the connections of the simulated clients are added to directly */
+    static final class Manager extends RTMPConnManager {
+
+        void add(BaseConnection conn) {
+            connMap.put(conn.getSessionId(), conn);
+        }
+
+    }
+
+    /** Client which keeps one idle poll outstanding */
+    final class Client {
+
+        private final URI base;
+
+        private int requestNumber;
+
+        private long received;
+
+        private long delivered;
+
+        Client(URI base) {
+            this.base = base;
+        }
+
+        void poll() {
+            if (!running) {
+                return;
+            }
+            HttpRequest request = HttpRequest.newBuilder(base.resolve(String.valueOf(++requestNumber))).header("Content-Type", RTMPTServlet.CONTENT_TYPE).POST(BodyPublishers.ofByteArray(new byte[] { 0 })).build();
+            http.sendAsync(request, BodyHandlers.ofByteArray()).thenAccept(this::onResponse).exceptionally(t -> {
+                if (running) {
+                    t.printStackTrace();
+                }
+                return null;
+            });
+        }
+
+        private void onResponse(HttpResponse<byte[]> response) {
+            polls.incrementAndGet();
+            // the first byte is the polling delay
+            received += Math.max(response.body().length - 1, 0);
+            while (received >= delivered + messageSize) {
+                delivered += messageSize;
+                round.countDown();
+            }
+            poll();
+        }
+
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Counters {
+
+        public long polls;
+
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Manager manager = new Manager();
+        RTMPTServlet servlet = new RTMPTServlet();
+        servlet.setRtmpConnManager(manager);
+        servlet.setAsync(async);
+        tomcat = new Tomcat();
+        tomcat.setBaseDir(Files.createTempDirectory("rtmpt-benchmark").toString());
+        tomcat.setPort(0);
+        tomcat.getConnector().setProperty("maxConnections", String.valueOf(clients * 2));
+        Context context = tomcat.addContext("", null);
+        Wrapper wrapper = Tomcat.addServlet(context, "RTMPTServlet", servlet);
+        wrapper.setAsyncSupported(true);
+        context.addServletMappingDecoded("/idle/*", "RTMPTServlet");
+        tomcat.start();
+        int port = tomcat.getConnector().getLocalPort();
+        clientExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(clientExecutor).build();
+        message = new byte[messageSize];
+        connections = new RTMPTConnection[clients];
+        pollers = new Client[clients];
+        for (int i = 0; i < clients; i++) {
+            RTMPTConnection conn = new RTMPTConnection();
+            manager.add(conn);
+            connections[i] = conn;
+            pollers[i] = new Client(URI.create(String.format("http://localhost:%d/idle/%s/", port, conn.getSessionId())));
+        }
+        round = new CountDownLatch(0);
+        running = true;
+        for (Client client : pollers) {
+            client.poll();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        running = false;
+        tomcat.stop();
+        tomcat.destroy();
+        clientExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public void deliverRound(Counters counters) throws InterruptedException {
+        int before = polls.get();
+        round = new CountDownLatch(clients);
+        for (RTMPTConnection conn : connections) {
+            conn.writeRaw(IoBuffer.wrap(message));
+        }
+        if (!round.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Round not delivered, clients waiting: " + round.getCount());
+        }
+        counters.polls += polls.get() - before;
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Saves to the persistence log and recovers it. Saves are measured up to their commit, in bursts
+ * spread over many shared objects like a busy application produces.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PersistenceLogBenchmark {
+
+    private static final int SAVES = 100;
+
+    /** Number of persistent objects */
+    private static final int OBJECTS = 1000;
+
+    @Param({ "false", "true" })
+    public boolean sync;
+
+    /** Serialized size of an object */
+    @Param({ "1024" })
+    public int payloadSize;
+
+    private File saveDir;
+
+    private File recoveryDir;
+
+    private PersistenceLog plog;
+
+    private Supplier<byte[]> payload;
+
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] bytes = new byte[payloadSize];
+        new Random(42).nextBytes(bytes);
+        payload = () -> bytes;
+        saveDir = Files.createTempDirectory("plog").toFile();
+        plog = PersistenceLog.acquire(saveDir, 16 * 1024 * 1024, 1, sync, 0.5d, 60000);
+        // a log holding every object a few times over for the recovery
+        recoveryDir = Files.createTempDirectory("plog").toFile();
+        PersistenceLog recovery = PersistenceLog.acquire(recoveryDir, 16 * 1024 * 1024, 1, false, 0.5d, 60000);
+        for (int i = 0; i < OBJECTS * 10; i++) {
+            recovery.put(key(i), payload);
+        }
+        recovery.flush();
+        recovery.release();
+    }
+
+    @TearDown
+    public void tearDown() {
+        plog.release();
+        delete(saveDir);
+        delete(recoveryDir);
+    }
+
+    private static String key(int i) {
+        return "SharedObject/app/so" + (i % OBJECTS);
+    }
+
+    private static void delete(File dir) {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SAVES)
+    public void save() {
+        for (int i = 0; i < SAVES; i++) {
+            plog.put(key(next++), payload);
+        }
+        plog.flush();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int recover() throws IOException {
+        PersistenceLog recovered = PersistenceLog.acquire(recoveryDir, 16 * 1024 * 1024, 1, false, 0.5d, 60000);
+        try {
+            return recovered.keys().size();
+        } finally {
+            recovered.release();
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.so;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.server.api.IConnection.Encoding;
+import org.red5.server.api.Red5;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.codec.RTMP;
+import org.red5.server.net.rtmp.codec.RTMPProtocolEncoder;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.so.ISharedObjectEvent.Type;
+
+/**
+ * Sends one tick of shared object updates to all listeners, once encoding the update for every
+ * listener and once encoding it a single time for all of them as the coalesced broadcast does. The
+ * listeners encode what they are sent into RTMP chunks instead of writing it to a socket.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedObjectBroadcastBenchmark {
+
+    private static final String NAME = "lobby";
+
+    private static final RTMPProtocolEncoder encoder = new RTMPProtocolEncoder();
+
+    @Param({ "1", "100", "10000" })
+    public int listeners;
+
+    @Param({ "AMF0", "AMF3" })
+    public String encoding;
+
+    /** Number of attributes changed in the tick */
+    @Param({ "10" })
+    public int updates;
+
+    private Listener[] connections;
+
+    private TreeSet<ISharedObjectEvent> events;
+
+    private int version;
+
+    /** Connection which encodes the packets written to it */
+    static final class Listener extends RTMPMinaConnection {
+
+        long bytes;
+
+        @Override
+        public void write(Packet out) {
+            IoBuffer buf = encoder.encodePacket(out);
+            if (buf != null) {
+                bytes += buf.remaining();
+                buf.free();
+            }
+        }
+
+    }
+
+    @Setup
+    public void setup() {
+        Encoding enc = Encoding.valueOf(encoding);
+        connections = new Listener[listeners];
+        for (int i = 0; i < listeners; i++) {
+            Listener listener = new Listener();
+            listener.getState().setState(RTMP.STATE_CONNECTED);
+            listener.getState().setEncoding(enc);
+            connections[i] = listener;
+        }
+        events = new TreeSet<>();
+        for (int i = 0; i < updates; i++) {
+            Map<String, Object> player = new HashMap<>();
+            player.put("name", "player" + i);
+            player.put("x", i * 10.5d);
+            player.put("y", i * 3.25d);
+            player.put("score", i * 100);
+            events.add(new SharedObjectEvent(Type.CLIENT_UPDATE_DATA, "player" + i, player));
+        }
+    }
+
+    @Benchmark
+    public void encodePerListener() {
+        version++;
+        try {
+            for (Listener listener : connections) {
+                Red5.setConnectionLocal(listener);
+                listener.sendSharedObjectMessage(NAME, version, false, events);
+            }
+        } finally {
+            Red5.setConnectionLocal(null);
+        }
+    }
+
+    @Benchmark
+    public void encodeOnce() {
+        version++;
+        Encoding enc = Encoding.valueOf(encoding);
+        SharedObjectMessage message = new SharedObjectMessage(null, NAME, version, false);
+        message.addEvents(events);
+        IoBuffer body = encoder.encodeSharedObject(message, enc, enc);
+        try {
+            for (Listener listener : connections) {
+                Red5.setConnectionLocal(listener);
+                listener.sendEncodedSharedObjectMessage(NAME, version, false, body);
+            }
+        } finally {
+            Red5.setConnectionLocal(null);
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.filter;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.red5.server.messaging.IMessage;
+import org.red5.server.messaging.IMessageComponent;
+import org.red5.server.messaging.IPipe;
+import org.red5.server.messaging.IPullableProvider;
+import org.red5.server.messaging.IPushableConsumer;
+import org.red5.server.messaging.InMemoryPullPullPipe;
+import org.red5.server.messaging.InMemoryPushPushPipe;
+import org.red5.server.messaging.OOBControlMessage;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.stream.message.RTMPMessage;
+
+/**
+ * Many controlled streams pumped on the shared scheduler. A round makes a number of messages available on every provider and wakes the controllers; it ends when every
+ * consumer received them, so the time of a round is the delivery latency of the slowest stream. With the default idle delay the controllers which ran dry keep
+ * polling their providers every 10 ms and compete with the rounds for the scheduler, with a long one only the wake-ups of the rounds run.
+ *
+ * @author The Red5 Project
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StreamBandwidthControllerBenchmark {
+
+    @Param({ "1000", "10000" })
+    public int streams;
+
+    /** Messages per stream and round */
+    @Param({ "32" })
+    public int messages;
+
+    @Param({ "1", "16" })
+    public int batchSize;
+
+    /** Milliseconds before an idle controller polls its provider again; 10 is the default, 1000 keeps the polls out of the rounds */
+    @Param({ "10", "1000" })
+    public long idleDelay;
+
+    private StreamBandwidthController[] controllers;
+
+    private Provider[] providers;
+
+    private volatile CountDownLatch round;
+
+    /** Provider handing out a shared message while it has some available */
+    static final class Provider implements IPullableProvider {
+
+        final AtomicInteger available = new AtomicInteger();
+
+        final RTMPMessage message = RTMPMessage.build(new AudioData(IoBuffer.wrap(new byte[256])));
+
+        @Override
+        public IMessage pullMessage(IPipe pipe) throws IOException {
+            return available.getAndUpdate(n -> n > 0 ? n - 1 : 0) > 0 ? message : null;
+        }
+
+        @Override
+        public IMessage pullMessage(IPipe pipe, long wait) throws IOException {
+            return pullMessage(pipe);
+        }
+
+        @Override
+        public void onOOBControlMessage(IMessageComponent source, IPipe pipe, OOBControlMessage oobCtrlMsg) {
+        }
+
+    }
+
+    /** Consumer counting down the round */
+    final class Consumer implements IPushableConsumer {
+
+        @Override
+        public void pushMessage(IPipe pipe, IMessage message) throws IOException {
+            round.countDown();
+        }
+
+        @Override
+        public void onOOBControlMessage(IMessageComponent source, IPipe pipe, OOBControlMessage oobCtrlMsg) {
+        }
+
+    }
+
+    @Setup(Level.Trial)
+    public void setup() {
+        controllers = new StreamBandwidthController[streams];
+        providers = new Provider[streams];
+        round = new CountDownLatch(0);
+        for (int i = 0; i < streams; i++) {
+            StreamBandwidthController controller = new StreamBandwidthController();
+            controller.setBatchSize(batchSize);
+            controller.setIdleDelay(idleDelay);
+            InMemoryPullPullPipe in = new InMemoryPullPullPipe();
+            in.addPipeConnectionListener(controller);
+            Provider provider = new Provider();
+            in.subscribe(provider, null);
+            InMemoryPushPushPipe out = new InMemoryPushPushPipe();
+            out.addPipeConnectionListener(controller);
+            out.subscribe(new Consumer(), null);
+            controller.start();
+            controllers[i] = controller;
+            providers[i] = provider;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (StreamBandwidthController controller : controllers) {
+            controller.close();
+        }
+    }
+
+    @Benchmark
+    public void deliverRound() throws InterruptedException {
+        round = new CountDownLatch(streams * messages);
+        for (int i = 0; i < streams; i++) {
+            providers[i].available.set(messages);
+            controllers[i].wake();
+        }
+        if (!round.await(30, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Round not delivered, messages missing: " + round.getCount());
+        }
+    }
+
+}
@@ -35,4 +35,11 @@ public interface IPlaylistSubscriberStreamStatistics extends IStreamStatistics {
    * @return fill ratio in percent
    */
   public double getEstimatedBufferFill();
+
+  /**
+   * Return the time from the play request to the first video frame sent to the client.
+   *
+   * @return time in milliseconds or -1 if no frame was sent yet
+   */
+  public long getTimeToFirstFrame();
 }
@@ -84,4 +84,32 @@ public interface ISharedObjectStatistics extends IStatisticsBase {
    * @return number of sends
    */
   public int getTotalSends();
+
+  /**
+   * Return number of coalesced update broadcasts sent to the listeners.
+   *
+   * @return number of broadcasts
+   */
+  public long getTotalBroadcasts();
+
+  /**
+   * Return average number of events per coalesced update broadcast.
+   *
+   * @return events per broadcast
+   */
+  public double getAverageBroadcastBatchSize();
+
+  /**
+   * Return average time in milliseconds an update waited before its broadcast.
+   *
+   * @return latency in milliseconds
+   */
+  public double getAverageBroadcastLatency();
+
+  /**
+   * Return longest time in milliseconds an update waited before its broadcast.
+   *
+   * @return latency in milliseconds
+   */
+  public long getMaxBroadcastLatency();
 }
@@ -0,0 +1,65 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.jmx.mxbeans;
+
+import javax.management.MXBean;
+
+/**
+ * Pool of precomputed Diffie-Hellman key pairs for encrypted RTMP handshakes.
+ *
+ * @author The Red5 Project
+ */
+@MXBean
+public interface HandshakeKeyPoolMXBean {
+
+  public int getPoolSize();
+
+  public int getRefillThreads();
+
+  /**
+   * Returns the number of key pairs ready to be used.
+   *
+   * @return available key pairs
+   */
+  public int getAvailable();
+
+  /**
+   * Returns the number of key pairs taken from the pool.
+   *
+   * @return pooled key pairs used
+   */
+  public long getTaken();
+
+  /**
+   * Returns the number of key pairs generated on the handshake thread because the pool was empty.
+   *
+   * @return key pairs generated while exhausted
+   */
+  public long getExhausted();
+
+  /**
+   * Returns the number of server handshakes answered.
+   *
+   * @return handshakes
+   */
+  public long getHandshakes();
+
+  /**
+   * Returns the average time taken to answer a client handshake, in microseconds.
+   *
+   * @return average handshake time
+   */
+  public double getAverageHandshakeTime();
+
+  /**
+   * Returns the longest time taken to answer a client handshake, in microseconds.
+   *
+   * @return maximum handshake time
+   */
+  public long getMaxHandshakeTime();
+}
@@ -13,4 +13,12 @@ import javax.management.MXBean;
 public interface RTMPMinaConnectionMXBean extends RTMPConnectionMXBean {
 
   public void invokeMethod(String method);
+
+  public int getOutboundQueueDepth();
+
+  public long getOutboundFlushes();
+
+  public long[] getOutboundQueueDepthHistogram();
+
+  public long[] getOutboundBatchSizeHistogram();
 }
@@ -0,0 +1,72 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.jmx.mxbeans;
+
+import java.util.Map;
+import javax.management.MXBean;
+
+/**
+ * Pool of workers writing recordings to disk.
+ *
+ * @author The Red5 Project
+ */
+@MXBean
+public interface RecordingWriterPoolMXBean {
+
+  public int getThreadCount();
+
+  public int getMaxQueueSize();
+
+  public int getMaxBatchSize();
+
+  public String getOverflowPolicy();
+
+  /**
+   * Returns the number of recordings using the pool.
+   *
+   * @return recordings
+   */
+  public int getRecordingCount();
+
+  /**
+   * Returns the number of tags waiting to be written, over all recordings.
+   *
+   * @return queued tags
+   */
+  public int getQueuedTags();
+
+  public long getWrittenTags();
+
+  /**
+   * Returns the number of tags dropped because of full queues or backwards timestamps.
+   *
+   * @return dropped tags
+   */
+  public long getDroppedTags();
+
+  /**
+   * Returns the average number of tags written per write call.
+   *
+   * @return tags per write
+   */
+  public double getAverageBatchSize();
+
+  /**
+   * Returns the number of queued tags of each recording.
+   *
+   * @return queue depth by recording name
+   */
+  public Map<String, Integer> getQueueDepths();
+
+  /**
+   * Returns the milliseconds taken by the last write of each recording.
+   *
+   * @return write latency by recording name
+   */
+  public Map<String, Long> getWriteLatencies();
+}
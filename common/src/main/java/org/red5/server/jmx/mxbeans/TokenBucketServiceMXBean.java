@@ -0,0 +1,83 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.jmx.mxbeans;
+
+import java.util.Map;
+import javax.management.MXBean;
+
+/**
+ * Hierarchical token buckets shaping the egress of streams: global, per scope and per connection.
+ *
+ * @author The Red5 Project
+ */
+@MXBean
+public interface TokenBucketServiceMXBean {
+
+  public long getGlobalRate();
+
+  public void setGlobalRate(long globalRate);
+
+  public long getScopeRate();
+
+  public void setScopeRate(long scopeRate);
+
+  public long getConnectionRate();
+
+  public void setConnectionRate(long connectionRate);
+
+  public long getRefillInterval();
+
+  /**
+   * Returns the number of scopes with a bucket.
+   *
+   * @return scope buckets
+   */
+  public int getScopeBucketCount();
+
+  /**
+   * Returns the number of connections with a bucket.
+   *
+   * @return connection buckets
+   */
+  public int getConnectionBucketCount();
+
+  /**
+   * Returns the number of buckets with acquisitions waiting for tokens.
+   *
+   * @return waiting buckets
+   */
+  public int getWaitingBucketCount();
+
+  /**
+   * Returns the number of acquisitions turned down by the global bucket.
+   *
+   * @return throttled acquisitions
+   */
+  public long getGlobalThrottled();
+
+  /**
+   * Returns the number of acquisitions turned down by scope buckets.
+   *
+   * @return throttled acquisitions
+   */
+  public long getScopeThrottled();
+
+  /**
+   * Returns the number of acquisitions turned down by connection buckets.
+   *
+   * @return throttled acquisitions
+   */
+  public long getConnectionThrottled();
+
+  /**
+   * Returns the acquisitions turned down by the bucket of each scope.
+   *
+   * @return throttled acquisitions by scope path
+   */
+  public Map<String, Long> getThrottledByScope();
+}
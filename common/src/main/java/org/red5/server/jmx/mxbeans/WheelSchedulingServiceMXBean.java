@@ -0,0 +1,80 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.jmx.mxbeans;
+
+import java.util.List;
+import javax.management.MXBean;
+
+/**
+ * Scheduling service that uses a hashed timer wheel as backend.
+ *
+ * @author The Red5 Project
+ */
+@MXBean
+public interface WheelSchedulingServiceMXBean {
+
+  /**
+   * Getter for job name.
+   *
+   * @return Job name
+   */
+  public String getJobName();
+
+  public void removeScheduledJob(String name);
+
+  public List<String> getScheduledJobNames();
+
+  /**
+   * Returns the number of scheduled jobs.
+   *
+   * @return job count
+   */
+  public int getScheduledJobCount();
+
+  /**
+   * Returns the duration of a tick in milliseconds.
+   *
+   * @return tick duration
+   */
+  public long getTickDuration();
+
+  /**
+   * Returns how late in milliseconds the last tick was processed.
+   *
+   * @return tick lag
+   */
+  public long getLastTickLag();
+
+  /**
+   * Returns the highest tick lag in milliseconds.
+   *
+   * @return tick lag
+   */
+  public long getMaxTickLag();
+
+  /**
+   * Returns the number of jobs which ran in the last tick that had any.
+   *
+   * @return jobs
+   */
+  public int getLastJobsPerTick();
+
+  /**
+   * Returns the average number of jobs per tick, over the ticks that had any.
+   *
+   * @return jobs per tick
+   */
+  public double getAverageJobsPerTick();
+
+  /**
+   * Returns the number of job executions.
+   *
+   * @return executions
+   */
+  public long getExecutedJobs();
+}
@@ -7,6 +7,9 @@
 
 package org.red5.server.net.protocol;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /** Represents current decode state of the protocol. */
 public class RTMPDecodeState {
 
@@ -27,6 +30,9 @@ public class RTMPDecodeState {
   /** Current decoder state, decoder is stopped by default. */
   private volatile State decoderState = State.OK;
 
+  /** Holder for decoded objects, reused by every pooled decode pass of the connection. */
+  private final List<Object> decodedObjects = new ArrayList<>();
+
   public RTMPDecodeState(String sessionId) {
     this.sessionId = sessionId;
   }
@@ -94,6 +100,16 @@ public class RTMPDecodeState {
     return (decoderState != State.BUFFER && decoderState != State.DESTROYED);
   }
 
+  /**
+   * Returns the reusable holder for objects decoded from a read. The holder belongs to the
+   * connection, so its contents must be consumed before the next read is decoded.
+   *
+   * @return decoded objects holder
+   */
+  public List<Object> getDecodedObjects() {
+    return decodedObjects;
+  }
+
   /**
    * @return the sessionId
    */
@@ -7,6 +7,8 @@
 
 package org.red5.server.net.rtmp;
 
+import java.util.ArrayList;
+import java.util.List;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.api.stream.IClientStream;
@@ -105,6 +107,33 @@ public class Channel {
    */
   private void write(IRTMPEvent event, Number streamId) {
     log.trace("write to stream id: {} channel: {}", streamId, id);
+    // should use RTMPConnection specific method..
+    // log.trace("Connection type for write: {}", connection.getClass().getName());
+    connection.write(packet(event, streamId));
+  }
+
+  /**
+   * Writes packets from event data to RTMP connection, all at once if the connection supports it.
+   *
+   * @param events Event data, in order
+   */
+  public void write(List<IRTMPEvent> events) {
+    if (!connection.isClosed()) {
+      final IClientStream stream = connection.getStreamByChannelId(id);
+      // if the stream is non-existant, the events will go out with stream id == 0
+      final Number streamId = (stream == null) ? 0 : stream.getStreamId();
+      List<Packet> packets = new ArrayList<>(events.size());
+      for (IRTMPEvent event : events) {
+        packets.add(packet(event, streamId));
+      }
+      connection.write(packets);
+    } else {
+      log.debug(
+          "Connection {} is closed, cannot write to channel: {}", connection.getSessionId(), id);
+    }
+  }
+
+  private Packet packet(IRTMPEvent event, Number streamId) {
     final Header header = new Header();
     final Packet packet = new Packet(header, event);
     // set the channel id
@@ -115,9 +144,7 @@ public class Channel {
     }
     header.setStreamId(streamId);
     header.setDataType(event.getDataType());
-    // should use RTMPConnection specific method..
-    // log.trace("Connection type for write: {}", connection.getClass().getName());
-    connection.write(packet);
+    return packet;
   }
 
   /**
@@ -0,0 +1,234 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.spec.DHParameterSpec;
+import org.red5.server.jmx.mxbeans.HandshakeKeyPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Pool of Diffie-Hellman key pairs for encrypted handshakes, generated ahead of time by background
+ * threads. Generating a key pair is the most expensive step of an RTMPE handshake; with the pool a
+ * burst of reconnecting clients takes ready key pairs and the refill threads catch up afterwards.
+ * Every key pair is handed out once. When the pool is empty the key pair is generated on the
+ * handshake thread, as without a pool, and counted as exhausted.
+ *
+ * <p>Only inbound handshakes take from the pool, which is the handshakeKeyPool bean of the server
+ * context; a client, or a server without the bean, generates its key pairs as it needs them. A pool
+ * size of 0 disables pooling.
+ *
+ * @author The Red5 Project
+ */
+@ManagedResource(objectName = "org.red5.server:name=handshakeKeyPool,type=HandshakeKeyPool")
+public class HandshakeKeyPool implements HandshakeKeyPoolMXBean, InitializingBean, DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(HandshakeKeyPool.class);
+
+  private static final ThreadLocal<KeyPairGenerator> generators =
+      ThreadLocal.withInitial(
+          () -> {
+            try {
+              KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DH");
+              keyGen.initialize(new DHParameterSpec(RTMPHandshake.DH_MODULUS, RTMPHandshake.DH_BASE));
+              return keyGen;
+            } catch (GeneralSecurityException e) {
+              throw new IllegalStateException("DH key pair generator unavailable", e);
+            }
+          });
+
+  private static volatile HandshakeKeyPool instance;
+
+  /** Number of key pairs kept ready */
+  protected int poolSize = 64;
+
+  /** Number of threads generating key pairs */
+  protected int refillThreads = 1;
+
+  private BlockingQueue<KeyPair> keyPairs;
+
+  private ExecutorService refill;
+
+  private volatile boolean running;
+
+  private final AtomicLong taken = new AtomicLong();
+
+  private final AtomicLong exhausted = new AtomicLong();
+
+  private final AtomicLong handshakes = new AtomicLong();
+
+  private final AtomicLong handshakeNanos = new AtomicLong();
+
+  private final AtomicLong maxHandshakeNanos = new AtomicLong();
+
+  /**
+   * Returns the pool of the server context.
+   *
+   * @return pool or null if none is running
+   */
+  public static HandshakeKeyPool getInstance() {
+    return instance;
+  }
+
+  public void afterPropertiesSet() {
+    if (poolSize > 0) {
+      log.debug("Starting {} handshake key generators for {} key pairs", refillThreads, poolSize);
+      keyPairs = new ArrayBlockingQueue<>(poolSize);
+      running = true;
+      AtomicInteger threadCount = new AtomicInteger();
+      refill =
+          Executors.newFixedThreadPool(
+              refillThreads,
+              r -> {
+                Thread t =
+                    new Thread(
+                        r, String.format("HandshakeKeyGenerator-%d", threadCount.incrementAndGet()));
+                t.setDaemon(true);
+                t.setPriority(Thread.MIN_PRIORITY);
+                return t;
+              });
+      for (int i = 0; i < refillThreads; i++) {
+        refill.execute(this::fill);
+      }
+    }
+    instance = this;
+  }
+
+  public void destroy() throws Exception {
+    running = false;
+    if (refill != null) {
+      refill.shutdownNow();
+      refill.awaitTermination(1000L, TimeUnit.MILLISECONDS);
+    }
+    if (keyPairs != null) {
+      keyPairs.clear();
+    }
+    synchronized (HandshakeKeyPool.class) {
+      if (instance == this) {
+        instance = null;
+      }
+    }
+  }
+
+  /** Generates key pairs for as long as the pool runs, blocking while the pool is full. */
+  private void fill() {
+    try {
+      while (running) {
+        KeyPair keyPair = generate();
+        if (keyPair == null) {
+          // don't spin on a broken provider
+          TimeUnit.SECONDS.sleep(1L);
+        } else {
+          keyPairs.put(keyPair);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Returns an unused key pair, generating one if the pool is empty.
+   *
+   * @return key pair or null if generation failed
+   */
+  public KeyPair take() {
+    KeyPair keyPair = (keyPairs != null) ? keyPairs.poll() : null;
+    if (keyPair != null) {
+      taken.incrementAndGet();
+      return keyPair;
+    }
+    if (keyPairs != null) {
+      exhausted.incrementAndGet();
+    }
+    return generate();
+  }
+
+  /**
+   * Generates a key pair on the calling thread.
+   *
+   * @return key pair or null if generation failed
+   */
+  public static KeyPair generate() {
+    try {
+      return generators.get().generateKeyPair();
+    } catch (Exception e) {
+      log.error("Error generating keypair", e);
+    }
+    return null;
+  }
+
+  /**
+   * Records the time taken to answer a client handshake.
+   *
+   * @param nanos handshake time in nanoseconds
+   */
+  public void recordHandshake(long nanos) {
+    handshakes.incrementAndGet();
+    handshakeNanos.addAndGet(nanos);
+    maxHandshakeNanos.accumulateAndGet(nanos, Math::max);
+  }
+
+  public int getPoolSize() {
+    return poolSize;
+  }
+
+  /**
+   * @param poolSize number of key pairs kept ready, 0 to generate every key pair on the handshake
+   *     thread
+   */
+  public void setPoolSize(int poolSize) {
+    this.poolSize = poolSize;
+  }
+
+  public int getRefillThreads() {
+    return refillThreads;
+  }
+
+  public void setRefillThreads(int refillThreads) {
+    this.refillThreads = Math.max(1, refillThreads);
+  }
+
+  public int getAvailable() {
+    return (keyPairs != null) ? keyPairs.size() : 0;
+  }
+
+  public long getTaken() {
+    return taken.get();
+  }
+
+  public long getExhausted() {
+    return exhausted.get();
+  }
+
+  public long getHandshakes() {
+    return handshakes.get();
+  }
+
+  public double getAverageHandshakeTime() {
+    long count = handshakes.get();
+    return count > 0 ? handshakeNanos.get() / (count * 1000d) : 0d;
+  }
+
+  public long getMaxHandshakeTime() {
+    return TimeUnit.NANOSECONDS.toMicros(maxHandshakeNanos.get());
+  }
+}
@@ -0,0 +1,240 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.message.Packet;
+import org.red5.server.stream.IStreamData;
+
+/**
+ * Outbound messages of a connection. Any number of threads may offer packets and raw buffers
+ * without locking; one thread at a time flushes them, handing everything pending up to the flush
+ * size to the session as a single {@link Batch}. Queue depth at offer time and the size of every
+ * batch are recorded in power of two histograms.
+ *
+ * @author The Red5 Project
+ */
+public final class OutboundQueue {
+
+  /** Number of histogram buckets: 1, 2, 4 ... 512 and 1024 or more */
+  public static final int HISTOGRAM_BUCKETS = 11;
+
+  /** Estimated RTMP header and chunking overhead added to the body size of a packet */
+  private static final int PACKET_OVERHEAD = 18;
+
+  /** Estimated size of a packet whose body is only known after encoding */
+  private static final int DEFAULT_PACKET_SIZE = 128;
+
+  private final ConcurrentLinkedQueue<Object> queue = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger depth = new AtomicInteger();
+
+  private final AtomicInteger pendingBytes = new AtomicInteger();
+
+  private final AtomicBoolean flushing = new AtomicBoolean();
+
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+  private final AtomicLong flushes = new AtomicLong();
+
+  private final AtomicLongArray depthHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+  private final AtomicLongArray batchHistogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+  /**
+   * Adds a packet or raw buffer to the queue.
+   *
+   * @param message packet or buffer
+   * @return estimated number of bytes pending, including this message
+   */
+  public int offer(Object message) {
+    int size = estimateSize(message);
+    queue.offer(message);
+    depthHistogram.incrementAndGet(bucket(depth.incrementAndGet()));
+    return pendingBytes.addAndGet(size);
+  }
+
+  /**
+   * Removes pending messages up to the given estimated size; at least one message is returned when
+   * the queue isn't empty.
+   *
+   * @param maxBytes maximum estimated size of the batch
+   * @return batch or null if nothing is pending
+   */
+  public Batch poll(int maxBytes) {
+    Object message = queue.poll();
+    if (message == null) {
+      return null;
+    }
+    Batch batch = new Batch();
+    int bytes = 0;
+    do {
+      int size = estimateSize(message);
+      batch.add(message);
+      bytes += size;
+      if (bytes >= maxBytes) {
+        break;
+      }
+    } while ((message = queue.poll()) != null);
+    depth.addAndGet(-batch.size());
+    pendingBytes.addAndGet(-bytes);
+    batch.bytes = bytes;
+    flushes.incrementAndGet();
+    batchHistogram.incrementAndGet(bucket(batch.size()));
+    return batch;
+  }
+
+  /**
+   * Claims the right to flush; only one thread at a time holds it.
+   *
+   * @return true if the caller must flush and then call {@link #endFlush()}
+   */
+  public boolean beginFlush() {
+    return flushing.compareAndSet(false, true);
+  }
+
+  /**
+   * Releases the right to flush. Callers check {@link #isEmpty()} afterwards and try to flush again
+   * if messages were offered while they held it.
+   */
+  public void endFlush() {
+    flushing.set(false);
+  }
+
+  /**
+   * Marks a delayed flush as scheduled.
+   *
+   * @return true if the caller must schedule the flush, false if one is already pending
+   */
+  public boolean scheduleFlush() {
+    return flushScheduled.compareAndSet(false, true);
+  }
+
+  /** Clears the scheduled mark, called by the delayed flush before flushing. */
+  public void flushStarted() {
+    flushScheduled.set(false);
+  }
+
+  /** Discards everything pending, used once the connection is closed. */
+  public void clear() {
+    while (queue.poll() != null) {
+      depth.decrementAndGet();
+    }
+    pendingBytes.set(0);
+  }
+
+  public boolean isEmpty() {
+    return queue.isEmpty();
+  }
+
+  public int getDepth() {
+    return depth.get();
+  }
+
+  public int getPendingBytes() {
+    return pendingBytes.get();
+  }
+
+  public long getFlushes() {
+    return flushes.get();
+  }
+
+  /**
+   * Returns the queue depth histogram; bucket n counts offers that found between 2^n and 2^(n+1)-1
+   * messages queued, including their own.
+   *
+   * @return depth histogram
+   */
+  public long[] getDepthHistogram() {
+    return toArray(depthHistogram);
+  }
+
+  /**
+   * Returns the batch size histogram; bucket n counts flushes of between 2^n and 2^(n+1)-1
+   * messages.
+   *
+   * @return batch size histogram
+   */
+  public long[] getBatchHistogram() {
+    return toArray(batchHistogram);
+  }
+
+  private static long[] toArray(AtomicLongArray histogram) {
+    long[] counts = new long[HISTOGRAM_BUCKETS];
+    for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+      counts[i] = histogram.get(i);
+    }
+    return counts;
+  }
+
+  static int bucket(int value) {
+    if (value <= 1) {
+      return 0;
+    }
+    return Math.min(31 - Integer.numberOfLeadingZeros(value), HISTOGRAM_BUCKETS - 1);
+  }
+
+  static int estimateSize(Object message) {
+    if (message instanceof IoBuffer) {
+      return ((IoBuffer) message).remaining();
+    }
+    if (message instanceof Packet) {
+      IRTMPEvent event = ((Packet) message).getMessage();
+      if (event instanceof IStreamData) {
+        IoBuffer data = ((IStreamData<?>) event).getData();
+        if (data != null) {
+          return data.remaining() + PACKET_OVERHEAD;
+        }
+      }
+    }
+    return DEFAULT_PACKET_SIZE;
+  }
+
+  /**
+   * Messages flushed together, written to the session as one message and encoded into one buffer
+   * by the protocol encoder. Holds {@link Packet} and raw {@link IoBuffer} entries in queue order.
+   */
+  public static final class Batch extends ArrayList<Object> {
+
+    private static final long serialVersionUID = -2803456981268437214L;
+
+    private int bytes;
+
+    /**
+     * Creates a batch of messages written together without going through a queue.
+     *
+     * @param messages packets and raw buffers, in order
+     * @return batch
+     */
+    public static Batch of(List<?> messages) {
+      Batch batch = new Batch();
+      for (Object message : messages) {
+        batch.add(message);
+        batch.bytes += estimateSize(message);
+      }
+      return batch;
+    }
+
+    /**
+     * Returns the estimated encoded size of the batch.
+     *
+     * @return estimated size in bytes
+     */
+    public int getEstimatedSize() {
+      return bytes;
+    }
+  }
+}
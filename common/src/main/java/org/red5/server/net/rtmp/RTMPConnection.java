@@ -14,6 +14,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
@@ -102,6 +103,12 @@ public abstract class RTMPConnection extends BaseConnection
 
   public static final String RTMP_CONN_MANAGER = "rtmp.connection.manager";
 
+  /**
+   * Session attribute holding the connection itself, when bound to its session so the codec needn't
+   * look it up for every message.
+   */
+  public static final String RTMP_CONNECTION = "rtmp.connection";
+
   public static final Object RTMP_HANDLER = "rtmp.handler";
 
   /** Marker byte for standard or non-encrypted RTMP data. */
@@ -297,6 +304,15 @@ public abstract class RTMPConnection extends BaseConnection
    */
   protected volatile LinkedTransferQueue<Packet> receivedPacketQueue = new LinkedTransferQueue<>();
 
+  /**
+   * Shared dispatcher for received packets; when enabled it replaces the per-connection receive
+   * executor and the message executor hop.
+   */
+  protected transient ReceivedPacketDispatcher receivedPacketDispatcher;
+
+  /** Whether or not a drain of the received packet queue is scheduled on the dispatcher. */
+  final AtomicBoolean receiveDrainScheduled = new AtomicBoolean(false);
+
   /**
    * Creates anonymous RTMP connection without scope.
    *
@@ -1081,6 +1097,17 @@ public abstract class RTMPConnection extends BaseConnection
    */
   public abstract void write(Packet out);
 
+  /**
+   * Write packets, in order. Connections able to do so write them to the socket at once.
+   *
+   * @param packets packets
+   */
+  public void write(List<Packet> packets) {
+    for (Packet packet : packets) {
+      write(packet);
+    }
+  }
+
   /**
    * Write raw byte buffer.
    *
@@ -1365,6 +1392,11 @@ public abstract class RTMPConnection extends BaseConnection
       // increment the queue size
       receivedQueueSizeUpdater.incrementAndGet(this);
     }
+    // hand off to the shared dispatcher if one is configured
+    if (receivedPacketDispatcher != null && receivedPacketDispatcher.isEnabled()) {
+      receivedPacketDispatcher.dispatch(this);
+      return;
+    }
     // create the future for processing the queue as needed
     if (receivedPacketFuture == null) {
       final RTMPConnection conn = this;
@@ -1460,6 +1492,36 @@ public abstract class RTMPConnection extends BaseConnection
     }
   }
 
+  /**
+   * Removes and returns the next received packet, if any.
+   *
+   * @return packet or null if the queue is empty
+   */
+  Packet pollReceivedPacket() {
+    Packet packet = receivedPacketQueue.poll();
+    if (packet != null) {
+      receivedQueueSizeUpdater.decrementAndGet(this);
+    }
+    return packet;
+  }
+
+  /**
+   * Returns whether or not there are received packets waiting to be handled.
+   *
+   * @return true if packets are queued
+   */
+  boolean hasReceivedPackets() {
+    return !receivedPacketQueue.isEmpty();
+  }
+
+  /** Drops all received packets which are waiting to be handled. */
+  void clearReceivedPackets() {
+    // count down each dropped packet, packets may be queued meanwhile
+    while (receivedPacketQueue.poll() != null) {
+      receivedQueueSizeUpdater.decrementAndGet(this);
+    }
+  }
+
   /**
    * Mark message as sent.
    *
@@ -1545,6 +1607,30 @@ public abstract class RTMPConnection extends BaseConnection
     }
   }
 
+  /**
+   * Send a shared object update whose body was already encoded for this connections encoding; the
+   * body is shared with the other listeners of the update and is not modified.
+   *
+   * @param name shared object name
+   * @param currentVersion shared object version
+   * @param persistent whether or not the shared object is persistent
+   * @param encodedBody encoded body, flipped
+   */
+  public void sendEncodedSharedObjectMessage(
+      String name, int currentVersion, boolean persistent, IoBuffer encodedBody) {
+    SharedObjectMessage syncMessage =
+        state.getEncoding() == Encoding.AMF3
+            ? new FlexSharedObjectMessage(null, name, currentVersion, persistent)
+            : new SharedObjectMessage(null, name, currentVersion, persistent);
+    syncMessage.setEncodedBody(encodedBody);
+    try {
+      // get the channel for so updates
+      Optional.ofNullable(getChannel(3)).ifPresent(c -> c.write(syncMessage));
+    } catch (Exception e) {
+      log.warn("Exception sending shared object", e);
+    }
+  }
+
   /** {@inheritDoc} */
   public void ping() {
     long newPingTime = System.currentTimeMillis();
@@ -1661,6 +1747,19 @@ public abstract class RTMPConnection extends BaseConnection
     this.executor = executor;
   }
 
+  public ReceivedPacketDispatcher getReceivedPacketDispatcher() {
+    return receivedPacketDispatcher;
+  }
+
+  /**
+   * Sets the shared dispatcher for received packets.
+   *
+   * @param receivedPacketDispatcher dispatcher
+   */
+  public void setReceivedPacketDispatcher(ReceivedPacketDispatcher receivedPacketDispatcher) {
+    this.receivedPacketDispatcher = receivedPacketDispatcher;
+  }
+
   /**
    * Thread pool for guarding deadlocks
    *
@@ -9,10 +9,10 @@ package org.red5.server.net.rtmp;
 
 import java.math.BigInteger;
 import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
 import java.security.PublicKey;
 import java.security.Security;
 import java.security.spec.KeySpec;
@@ -22,7 +22,6 @@ import javax.crypto.Cipher;
 import javax.crypto.KeyAgreement;
 import javax.crypto.Mac;
 import javax.crypto.interfaces.DHPublicKey;
-import javax.crypto.spec.DHParameterSpec;
 import javax.crypto.spec.DHPublicKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 import org.apache.commons.codec.binary.Hex;
@@ -1055,6 +1054,27 @@ public abstract class RTMPHandshake implements IHandshake {
 
   protected static final Random random = new Random();
 
+  /** HMAC-SHA256 per thread, initialized with the key of each digest */
+  private static final ThreadLocal<Mac> hmacSha256 =
+      ThreadLocal.withInitial(
+          () -> {
+            try {
+              return Mac.getInstance("Hmac-SHA256", BouncyCastleProvider.PROVIDER_NAME);
+            } catch (GeneralSecurityException e) {
+              throw new IllegalStateException("HMAC-SHA256 unavailable", e);
+            }
+          });
+
+  private static final ThreadLocal<KeyFactory> dhKeyFactory =
+      ThreadLocal.withInitial(
+          () -> {
+            try {
+              return KeyFactory.getInstance("DH");
+            } catch (GeneralSecurityException e) {
+              throw new IllegalStateException("DH key factory unavailable", e);
+            }
+          });
+
   protected KeyAgreement keyAgreement;
 
   protected Cipher cipherOut;
@@ -1160,17 +1180,13 @@ public abstract class RTMPHandshake implements IHandshake {
   }
 
   /**
-   * Creates a Diffie-Hellman key pair.
+   * Returns a Diffie-Hellman key pair and initializes the key agreement with it.
    *
    * @return dh keypair
    */
   protected KeyPair generateKeyPair() {
-    KeyPair keyPair = null;
-    DHParameterSpec keySpec = new DHParameterSpec(DH_MODULUS, DH_BASE);
+    KeyPair keyPair = createKeyPair();
     try {
-      KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DH");
-      keyGen.initialize(keySpec);
-      keyPair = keyGen.generateKeyPair();
       keyAgreement = KeyAgreement.getInstance("DH");
       // key agreement is initialized with "this" ends private key
       keyAgreement.init(keyPair.getPrivate());
@@ -1180,6 +1196,15 @@ public abstract class RTMPHandshake implements IHandshake {
     return keyPair;
   }
 
+  /**
+   * Creates the key pair for this end of the handshake, on the calling thread.
+   *
+   * @return dh keypair or null if generation failed
+   */
+  protected KeyPair createKeyPair() {
+    return HandshakeKeyPool.generate();
+  }
+
   /**
    * Returns the public key for a given key pair.
    *
@@ -1205,7 +1230,7 @@ public abstract class RTMPHandshake implements IHandshake {
   protected byte[] getSharedSecret(byte[] publicKeyBytes, KeyAgreement agreement) {
     BigInteger otherPublicKeyInt = new BigInteger(1, publicKeyBytes);
     try {
-      KeyFactory keyFactory = KeyFactory.getInstance("DH");
+      KeyFactory keyFactory = dhKeyFactory.get();
       KeySpec otherPublicKeySpec =
           new DHPublicKeySpec(otherPublicKeyInt, RTMPHandshake.DH_MODULUS, RTMPHandshake.DH_BASE);
       PublicKey otherPublicKey = keyFactory.generatePublic(otherPublicKeySpec);
@@ -1333,16 +1358,11 @@ public abstract class RTMPHandshake implements IHandshake {
       // Hex.encodeHexString(Arrays.copyOfRange(digest, digestOffset, digestOffset +
       // DIGEST_LENGTH)));
     }
-    byte[] calcDigest;
     try {
-      Mac hmac = Mac.getInstance("Hmac-SHA256", BouncyCastleProvider.PROVIDER_NAME);
-      hmac.init(new SecretKeySpec(Arrays.copyOf(key, keyLen), "HmacSHA256"));
-      byte[] actualMessage = Arrays.copyOfRange(message, messageOffset, messageOffset + messageLen);
-      calcDigest = hmac.doFinal(actualMessage);
-      // if (log.isTraceEnabled()) {
-      //    log.trace("Calculated digest: {}", Hex.encodeHexString(calcDigest));
-      // }
-      System.arraycopy(calcDigest, 0, digest, digestOffset, DIGEST_LENGTH);
+      Mac hmac = hmacSha256.get();
+      hmac.init(new SecretKeySpec(key, 0, keyLen, "HmacSHA256"));
+      hmac.update(message, messageOffset, messageLen);
+      hmac.doFinal(digest, digestOffset);
     } catch (InvalidKeyException e) {
       log.error("Invalid key", e);
     } catch (Exception e) {
@@ -11,8 +11,10 @@ import java.beans.ConstructorProperties;
 import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -33,6 +35,7 @@ import org.red5.server.net.rtmp.event.ServerBW;
 import org.red5.server.net.rtmp.message.Packet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.jmx.export.annotation.ManagedResource;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
@@ -62,6 +65,18 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
 
   protected boolean bandwidthDetection = true;
 
+  /** Whether outbound messages are queued and flushed in batches instead of written one by one */
+  protected boolean writeCoalescing;
+
+  /** Estimated number of bytes after which a flush is started without waiting for the delay */
+  protected int maxFlushSize = 65536;
+
+  /** Milliseconds a flush waits for further messages; 0 flushes on the writing thread at once */
+  protected long maxFlushDelay;
+
+  /** Outbound messages waiting to be flushed when coalescing */
+  private final transient OutboundQueue outbound = new OutboundQueue();
+
   /** Constructs a new RTMPMinaConnection. */
   @ConstructorProperties(value = {"persistent"})
   public RTMPMinaConnection() {
@@ -104,6 +119,10 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
     if (closing.compareAndSet(false, true)) {
       super.close();
       log.debug("IO Session closing: {}", (ioSession != null ? ioSession.isClosing() : null));
+      if (ioSession != null) {
+        // unbind, writes racing the close look the connection up and find it gone
+        ioSession.removeAttribute(RTMPConnection.RTMP_CONNECTION);
+      }
       if (ioSession != null && !ioSession.isClosing()) {
         // set a ref to ourself so that the handler can be notified when close future is done
         final RTMPMinaConnection self = this;
@@ -130,6 +149,7 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
             };
         future.addListener(listener);
       }
+      outbound.clear();
       log.debug("Connection state: {}", getState());
       if (getStateCode() != RTMP.STATE_DISCONNECTED) {
         handler.connectionClosed(this);
@@ -212,6 +232,72 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
     this.bandwidthDetection = bandwidthDetection;
   }
 
+  /**
+   * @return true if outbound messages are coalesced
+   */
+  public boolean isWriteCoalescing() {
+    return writeCoalescing;
+  }
+
+  /**
+   * @param writeCoalescing whether outbound messages are queued and flushed in batches
+   */
+  public void setWriteCoalescing(boolean writeCoalescing) {
+    this.writeCoalescing = writeCoalescing;
+  }
+
+  /**
+   * @return the maxFlushSize
+   */
+  public int getMaxFlushSize() {
+    return maxFlushSize;
+  }
+
+  /**
+   * @param maxFlushSize estimated number of bytes written to the session by one flush at most
+   */
+  public void setMaxFlushSize(int maxFlushSize) {
+    this.maxFlushSize = maxFlushSize;
+  }
+
+  /**
+   * @return the maxFlushDelay
+   */
+  public long getMaxFlushDelay() {
+    return maxFlushDelay;
+  }
+
+  /**
+   * @param maxFlushDelay milliseconds a flush waits for further messages, 0 to flush at once
+   */
+  public void setMaxFlushDelay(long maxFlushDelay) {
+    this.maxFlushDelay = maxFlushDelay;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public int getOutboundQueueDepth() {
+    return outbound.getDepth();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long getOutboundFlushes() {
+    return outbound.getFlushes();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long[] getOutboundQueueDepthHistogram() {
+    return outbound.getDepthHistogram();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public long[] getOutboundBatchSizeHistogram() {
+    return outbound.getBatchHistogram();
+  }
+
   /** {@inheritDoc} */
   @Override
   public boolean isReaderIdle() {
@@ -350,6 +436,11 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
   @Override
   public void write(Packet out) {
     if (ioSession != null) {
+      if (writeCoalescing) {
+        writingMessage(out);
+        enqueue(out);
+        return;
+      }
       final Semaphore lock = getLock();
       // if (log.isTraceEnabled()) {
       //    log.trace("Write lock wait count: {} closed: {}", lock.getQueueLength(), isClosed());
@@ -402,10 +493,63 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
     }
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The packets go to the session as one batch, encoded into a single buffer.
+   */
+  @Override
+  public void write(List<Packet> packets) {
+    if (ioSession != null && !packets.isEmpty()) {
+      if (writeCoalescing) {
+        if (state.getState() >= RTMP.STATE_ERROR) {
+          log.debug("Packets not queued, connection state: {}", RTMP.states[state.getState()]);
+          return;
+        }
+        for (Packet packet : packets) {
+          writingMessage(packet);
+          outbound.offer(packet);
+        }
+        flushOutbound();
+        return;
+      }
+      final Semaphore lock = getLock();
+      while (state.getState() < RTMP.STATE_ERROR) {
+        boolean acquired = false;
+        try {
+          acquired = lock.tryAcquire(10, TimeUnit.MILLISECONDS);
+          if (acquired) {
+            if (!ioSession.isClosing()) {
+              for (Packet packet : packets) {
+                writingMessage(packet);
+              }
+              ioSession.write(OutboundQueue.Batch.of(packets));
+            }
+            break;
+          }
+        } catch (InterruptedException e) {
+          log.warn(
+              "Interrupted while waiting for write lock (batch). State: {}",
+              RTMP.states[state.getState()],
+              e);
+          break;
+        } finally {
+          if (acquired) {
+            lock.release();
+          }
+        }
+      }
+    }
+  }
+
   /** {@inheritDoc} */
   @Override
   public void writeRaw(IoBuffer out) {
     if (ioSession != null) {
+      if (writeCoalescing) {
+        enqueue(out);
+        return;
+      }
       final Semaphore lock = getLock();
       while (state.getState() < RTMP.STATE_ERROR) {
         boolean acquired = false;
@@ -438,6 +582,66 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
     }
   }
 
+  /**
+   * Queues an outbound message and flushes the queue, either on the calling thread or after the
+   * flush delay on the connection scheduler.
+   *
+   * @param message packet or raw buffer
+   */
+  private void enqueue(Object message) {
+    if (state.getState() >= RTMP.STATE_ERROR) {
+      log.debug("Message not queued, connection state: {}", RTMP.states[state.getState()]);
+      return;
+    }
+    int pending = outbound.offer(message);
+    if (maxFlushDelay > 0 && pending < maxFlushSize && scheduler != null) {
+      if (outbound.scheduleFlush()) {
+        try {
+          scheduler.schedule(
+              () -> {
+                outbound.flushStarted();
+                flushOutbound();
+              },
+              Instant.now().plusMillis(maxFlushDelay));
+        } catch (TaskRejectedException e) {
+          outbound.flushStarted();
+          flushOutbound();
+        }
+      }
+    } else {
+      flushOutbound();
+    }
+  }
+
+  /**
+   * Writes the queued messages to the session in batches. If another thread is already flushing
+   * this returns at once; that thread picks up whatever was queued before it finishes, so messages
+   * are always written in the order they were queued.
+   */
+  protected void flushOutbound() {
+    while (outbound.beginFlush()) {
+      try {
+        OutboundQueue.Batch batch;
+        while ((batch = outbound.poll(maxFlushSize)) != null) {
+          if (ioSession != null && !ioSession.isClosing()) {
+            if (log.isTraceEnabled()) {
+              log.trace(
+                  "Flushing {} messages, estimated size: {}",
+                  batch.size(),
+                  batch.getEstimatedSize());
+            }
+            ioSession.write(batch.size() == 1 ? batch.get(0) : batch);
+          }
+        }
+      } finally {
+        outbound.endFlush();
+      }
+      if (outbound.isEmpty()) {
+        break;
+      }
+    }
+  }
+
   protected void registerJMX() {
     // register with jmx
     MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
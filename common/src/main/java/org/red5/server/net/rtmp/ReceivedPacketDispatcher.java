@@ -0,0 +1,242 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.red5.server.net.rtmp.codec.RTMP;
+import org.red5.server.net.rtmp.message.Packet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Shared dispatcher for received RTMP packets. Instead of parking a dedicated thread per connection
+ * on its received packet queue and then handing every packet to a second executor, a connection
+ * schedules a single "drain" of its queue which handles the packets inline, in order. At most one
+ * drain per connection is ever scheduled, so the per-connection ordering guarantee is kept.
+ *
+ * <p>Drains run on either a fixed pool of worker threads or on virtual threads when the runtime
+ * provides them. Workers share one queue of drains, so a connection isn't pinned to a thread and a
+ * slow handler only holds up its own connection, not the others which would have hashed to the same
+ * thread. When virtual threads are requested on a runtime without them, the worker pool is used.
+ *
+ * <p>As in the executor model, a packet which waited longer than the connections max handling
+ * timeout before its drain got to it is dropped, and a handler which runs past it is logged.
+ *
+ * @author The Red5 Project
+ */
+public class ReceivedPacketDispatcher implements InitializingBean, DisposableBean {
+
+  private static Logger log = LoggerFactory.getLogger(ReceivedPacketDispatcher.class);
+
+  /** Receive modes. */
+  public enum ReceiveMode {
+    /** Per-connection polling thread and message executor hop; the legacy model. */
+    EXECUTOR,
+    /** Fixed pool of shared worker threads. */
+    STRIPED,
+    /** One virtual thread per drain (requires JDK 21+). */
+    VIRTUAL;
+  }
+
+  private ReceiveMode mode = ReceiveMode.EXECUTOR;
+
+  /** Number of worker threads for striped mode */
+  private int stripes = Runtime.getRuntime().availableProcessors() * 2;
+
+  /** Maximum packets handled per drain before yielding the worker to other connections */
+  private int maxDrainBatch = 64;
+
+  private ExecutorService workers;
+
+  private ExecutorService virtualExecutor;
+
+  private final AtomicLong handledPackets = new AtomicLong();
+
+  private final AtomicLong drains = new AtomicLong();
+
+  private final AtomicLong failedPackets = new AtomicLong();
+
+  private final AtomicLong expiredPackets = new AtomicLong();
+
+  @Override
+  public void afterPropertiesSet() throws Exception {
+    if (mode == ReceiveMode.VIRTUAL) {
+      virtualExecutor = newVirtualThreadExecutor();
+      if (virtualExecutor == null) {
+        log.warn("Virtual threads are not available on this runtime, falling back to worker threads");
+        mode = ReceiveMode.STRIPED;
+      }
+    }
+    if (mode == ReceiveMode.STRIPED) {
+      int threads = Math.max(1, stripes);
+      workers =
+          new ThreadPoolExecutor(
+              threads,
+              threads,
+              0L,
+              TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<Runnable>(),
+              new WorkerThreadFactory());
+    }
+    log.debug("Receive mode: {} workers: {}", mode, (workers != null ? Math.max(1, stripes) : 0));
+  }
+
+  @Override
+  public void destroy() throws Exception {
+    if (workers != null) {
+      workers.shutdownNow();
+    }
+    if (virtualExecutor != null) {
+      virtualExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Returns whether or not this dispatcher replaces the per-connection receive thread.
+   *
+   * @return true for striped or virtual modes
+   */
+  public boolean isEnabled() {
+    return workers != null || virtualExecutor != null;
+  }
+
+  /**
+   * Schedules a drain of the connections received packet queue, unless one is already pending.
+   *
+   * @param conn connection
+   */
+  public void dispatch(RTMPConnection conn) {
+    if (conn.receiveDrainScheduled.compareAndSet(false, true)) {
+      try {
+        (virtualExecutor != null ? virtualExecutor : workers).execute(() -> drain(conn));
+      } catch (RejectedExecutionException e) {
+        conn.receiveDrainScheduled.set(false);
+        log.warn("Drain rejected for {}", conn.getSessionId(), e);
+      }
+    }
+  }
+
+  private void drain(RTMPConnection conn) {
+    drains.incrementAndGet();
+    try {
+      int handled = 0;
+      Packet packet;
+      while (handled < maxDrainBatch && (packet = conn.pollReceivedPacket()) != null) {
+        handled++;
+        if (conn.getStateCode() >= RTMP.STATE_ERROR) {
+          // connection is going away, drop anything left
+          conn.clearReceivedPackets();
+          break;
+        }
+        if (packet.isExpired()) {
+          // waited past the max handling timeout behind earlier packets of the connection
+          expiredPackets.incrementAndGet();
+          log.warn(
+              "Dropping packet on {} which expired {} ms ago",
+              conn.getSessionId(),
+              System.currentTimeMillis() - packet.getExpirationTime());
+          continue;
+        }
+        long start = System.currentTimeMillis();
+        try {
+          new ReceivedMessageTask(conn, packet).call();
+          handledPackets.incrementAndGet();
+          long maxHandlingTimeout = conn.getMaxHandlingTimeout();
+          long handlingTime = System.currentTimeMillis() - start;
+          if (maxHandlingTimeout > 0 && handlingTime > maxHandlingTimeout) {
+            log.warn(
+                "Packet on {} took {} ms to handle, max handling timeout is {} ms",
+                conn.getSessionId(),
+                handlingTime,
+                maxHandlingTimeout);
+          }
+        } catch (Throwable t) {
+          failedPackets.incrementAndGet();
+          log.warn("Incoming message failed on {}", conn.getSessionId(), t);
+        }
+      }
+    } finally {
+      conn.receiveDrainScheduled.set(false);
+    }
+    // packets may have arrived after the last poll, or the batch limit was hit
+    if (conn.hasReceivedPackets()) {
+      dispatch(conn);
+    }
+  }
+
+  private static ExecutorService newVirtualThreadExecutor() {
+    try {
+      return (ExecutorService)
+          Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  public ReceiveMode getMode() {
+    return mode;
+  }
+
+  public void setMode(ReceiveMode mode) {
+    this.mode = mode;
+  }
+
+  public int getStripes() {
+    return stripes;
+  }
+
+  public void setStripes(int stripes) {
+    this.stripes = stripes;
+  }
+
+  public int getMaxDrainBatch() {
+    return maxDrainBatch;
+  }
+
+  public void setMaxDrainBatch(int maxDrainBatch) {
+    this.maxDrainBatch = maxDrainBatch;
+  }
+
+  public long getHandledPackets() {
+    return handledPackets.get();
+  }
+
+  public long getFailedPackets() {
+    return failedPackets.get();
+  }
+
+  public long getDrains() {
+    return drains.get();
+  }
+
+  public long getExpiredPackets() {
+    return expiredPackets.get();
+  }
+
+  private static final class WorkerThreadFactory implements ThreadFactory {
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, String.format("RTMPRecvWorker-%d", count.incrementAndGet()));
+      t.setDaemon(true);
+      return t;
+    }
+  }
+}
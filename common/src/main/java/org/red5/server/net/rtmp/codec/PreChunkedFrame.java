@@ -0,0 +1,115 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp.codec;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.net.rtmp.RTMPUtils;
+import org.red5.server.net.rtmp.message.Constants;
+
+/**
+ * Media frame body chunked once and shared by every subscriber of a live stream. Only the first
+ * chunk header of a message depends on the state of a given connection (previous header, timer
+ * delta), everything after it - the first chunk of data followed by continuation headers and the
+ * remaining chunks - depends solely on the chunk size and channel id. That tail is built on first
+ * use for each (chunk size, channel id) pair and handed out as read-only views of the same bytes.
+ *
+ * @author The Red5 Project
+ */
+public class PreChunkedFrame {
+
+  private static final AtomicLong builds = new AtomicLong();
+
+  private static final AtomicLong hits = new AtomicLong();
+
+  /** Message body, positioned at zero */
+  private final IoBuffer body;
+
+  /** Chunked tails keyed by chunk size and channel id */
+  private final ConcurrentMap<Long, IoBuffer> tails = new ConcurrentHashMap<>(2);
+
+  /**
+   * Creates a frame for the given message body; the buffer is not modified.
+   *
+   * @param data message body
+   */
+  public PreChunkedFrame(IoBuffer data) {
+    body = data.asReadOnlyBuffer();
+    body.rewind();
+  }
+
+  /**
+   * Returns the length of the message body.
+   *
+   * @return body length in bytes
+   */
+  public int getLength() {
+    return body.limit();
+  }
+
+  /**
+   * Returns the chunked body for the given chunk size and channel, excluding the first chunk header
+   * which must be encoded per connection.
+   *
+   * @param chunkSize write chunk size
+   * @param channelId channel id
+   * @return read-only view of the chunked body, positioned at zero
+   */
+  public IoBuffer getChunkedTail(int chunkSize, int channelId) {
+    Long key = ((long) chunkSize << 32) | (channelId & 0xffffffffL);
+    IoBuffer tail = tails.get(key);
+    if (tail == null) {
+      tail = tails.computeIfAbsent(key, k -> chunk(chunkSize, channelId));
+    } else {
+      hits.incrementAndGet();
+    }
+    return tail.asReadOnlyBuffer();
+  }
+
+  private IoBuffer chunk(int chunkSize, int channelId) {
+    builds.incrementAndGet();
+    IoBuffer data = body.duplicate();
+    int dataLen = data.limit();
+    int numChunks = (int) Math.ceil(dataLen / (float) chunkSize);
+    int basicHeaderLen = channelId > 319 ? 3 : (channelId > 63 ? 2 : 1);
+    IoBuffer tail = IoBuffer.allocate(dataLen + ((numChunks - 1) * basicHeaderLen), false);
+    int pos = 0;
+    while (pos < dataLen) {
+      if (pos > 0) {
+        RTMPUtils.encodeHeaderByte(tail, Constants.HEADER_CONTINUE, channelId);
+      }
+      int len = Math.min(chunkSize, dataLen - pos);
+      data.limit(pos + len);
+      data.position(pos);
+      tail.put(data);
+      pos += len;
+    }
+    tail.flip();
+    return tail;
+  }
+
+  /**
+   * Returns the number of chunked tails built across all frames.
+   *
+   * @return builds
+   */
+  public static long getBuilds() {
+    return builds.get();
+  }
+
+  /**
+   * Returns the number of times an already chunked tail was reused across all frames.
+   *
+   * @return hits
+   */
+  public static long getHits() {
+    return hits.get();
+  }
+}
@@ -78,9 +78,13 @@ public class RTMP {
    * @return channel info
    */
   private ChannelInfo getChannelInfo(int channelId) {
-    ChannelInfo info = channels.putIfAbsent(channelId, new ChannelInfo());
+    ChannelInfo info = channels.get(channelId);
     if (info == null) {
-      info = channels.get(channelId);
+      // only instance a new channel info on the first access, this is called for every chunk
+      info = channels.putIfAbsent(channelId, new ChannelInfo());
+      if (info == null) {
+        info = channels.get(channelId);
+      }
     }
     return info;
   }
@@ -160,6 +164,41 @@ public class RTMP {
     return getChannelInfo(channelId).getReadHeader();
   }
 
+  /**
+   * Setter for last read header which keeps the replaced header for reuse by the next chunk read
+   * on the channel. The replaced header must not be referenced anywhere else.
+   *
+   * @param channelId Channel id
+   * @param header Header
+   */
+  public void swapLastReadHeader(int channelId, Header header) {
+    ChannelInfo info = getChannelInfo(channelId);
+    Header previous = info.getReadHeader();
+    info.setReadHeader(header);
+    if (previous != header) {
+      info.setSpareReadHeader(previous);
+    }
+  }
+
+  /**
+   * Returns a header to read the next chunk on a channel into; the header replaced by the last call
+   * to {@link #swapLastReadHeader(int, Header)} is reused when available.
+   *
+   * @param channelId Channel id
+   * @return Header
+   */
+  public Header acquireReadHeader(int channelId) {
+    ChannelInfo info = getChannelInfo(channelId);
+    Header header = info.getSpareReadHeader();
+    if (header == null) {
+      return new Header();
+    }
+    info.setSpareReadHeader(null);
+    // every other field is set when the chunk header is decoded
+    header.setExtended(false);
+    return header;
+  }
+
   /**
    * Setter for last written header.
    *
@@ -399,6 +438,9 @@ public class RTMP {
     // packet header
     private Header readPacketHeader;
 
+    // replaced read header kept for reuse
+    private Header spareReadHeader;
+
     // read packet
     private Packet readPacket;
 
@@ -453,6 +495,20 @@ public class RTMP {
       this.readPacketHeader = readPacketHeader;
     }
 
+    /**
+     * @return the spareReadHeader
+     */
+    public Header getSpareReadHeader() {
+      return spareReadHeader;
+    }
+
+    /**
+     * @param spareReadHeader the spareReadHeader to set
+     */
+    public void setSpareReadHeader(Header spareReadHeader) {
+      this.spareReadHeader = spareReadHeader;
+    }
+
     /**
      * @return the readPacket
      */
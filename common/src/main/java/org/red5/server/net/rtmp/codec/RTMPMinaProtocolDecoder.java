@@ -35,15 +35,19 @@ public class RTMPMinaProtocolDecoder extends ProtocolDecoderAdapter {
     log.trace("Session id: {}", sessionId);
     // no decode if there is a handshake present
     if (!session.containsAttribute(RTMPConnection.RTMP_HANDSHAKE)) {
-      // connection verification routine
-      @SuppressWarnings("unchecked")
-      IConnectionManager<RTMPConnection> connManager =
-          (IConnectionManager<RTMPConnection>)
-              ((WeakReference<?>) session.getAttribute(RTMPConnection.RTMP_CONN_MANAGER)).get();
-      RTMPConnection conn = (RTMPConnection) connManager.getConnectionBySessionId(sessionId);
-      RTMPConnection connLocal = (RTMPConnection) Red5.getConnectionLocal();
-      if (connLocal == null || !conn.getSessionId().equals(connLocal.getSessionId())) {
-        if (log.isDebugEnabled() && connLocal != null) {
+      // a connection bound to the session spares the lookup
+      RTMPConnection conn = (RTMPConnection) session.getAttribute(RTMPConnection.RTMP_CONNECTION);
+      if (conn == null) {
+        // connection verification routine
+        @SuppressWarnings("unchecked")
+        IConnectionManager<RTMPConnection> connManager =
+            (IConnectionManager<RTMPConnection>)
+                ((WeakReference<?>) session.getAttribute(RTMPConnection.RTMP_CONN_MANAGER)).get();
+        conn = (RTMPConnection) connManager.getConnectionBySessionId(sessionId);
+        RTMPConnection connLocal = (RTMPConnection) Red5.getConnectionLocal();
+        if (conn != null
+            && connLocal != null
+            && !conn.getSessionId().equals(connLocal.getSessionId())) {
           log.debug("Connection local didn't match session");
         }
       }
@@ -56,6 +60,10 @@ public class RTMPMinaProtocolDecoder extends ProtocolDecoderAdapter {
               "Incomming: position {}, limit {}, remaining {}",
               new Object[] {in.position(), in.limit(), in.remaining()});
         }
+        if (RTMPProtocolDecoder.isPooledDecoding()) {
+          decodePooled(session, conn, in, out);
+          return;
+        }
         byte[] arr = new byte[in.remaining()];
         in.get(arr);
         // create a buffer and store it on the session
@@ -114,6 +122,59 @@ public class RTMPMinaProtocolDecoder extends ProtocolDecoderAdapter {
     }
   }
 
+  /**
+   * Decodes without allocating per read: whole chunks are decoded straight from the incoming
+   * buffer, only an incomplete chunk at its end is kept on the session, and the decoded objects are
+   * collected in the holder of the connection's decode state.
+   *
+   * @param session session
+   * @param conn connection
+   * @param in incoming data
+   * @param out decoder output
+   */
+  private void decodePooled(
+      IoSession session, RTMPConnection conn, IoBuffer in, ProtocolDecoderOutput out) {
+    IoBuffer buf = (IoBuffer) session.getAttribute("buffer");
+    List<Object> objects = conn.getDecoderState().getDecodedObjects();
+    try {
+      if (buf == null || buf.position() == 0) {
+        // nothing left over from the last read, so there's no need to copy the incoming data
+        decoder.decodeBuffer(conn, in, objects);
+        if (in.hasRemaining()) {
+          if (buf == null) {
+            buf = IoBuffer.allocate(Math.max(in.remaining(), 1024));
+            buf.setAutoExpand(true);
+            session.setAttribute("buffer", buf);
+          }
+          // keep the incomplete chunk for the next read
+          buf.put(in);
+        }
+      } else {
+        // complete the left over data with the incoming data
+        buf.put(in);
+        buf.flip();
+        decoder.decodeBuffer(conn, buf, objects);
+        if (buf.hasRemaining()) {
+          // only the incomplete chunk is moved
+          buf.compact();
+        } else {
+          buf.clear();
+        }
+      }
+      log.trace("Decoded: {}", objects);
+      for (int i = 0; i < objects.size(); i++) {
+        out.write(objects.get(i));
+      }
+      log.trace("Wrote {} objects", objects.size());
+    } catch (Exception e) {
+      log.error("Error during decode", e);
+    } finally {
+      objects.clear();
+      // clear local
+      Red5.setConnectionLocal(null);
+    }
+  }
+
   /**
    * Sets the RTMP protocol decoder.
    *
@@ -14,9 +14,21 @@ import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecException;
 import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
 import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+import org.red5.server.api.IConnection;
 import org.red5.server.api.Red5;
 import org.red5.server.net.IConnectionManager;
+import org.red5.server.net.rtmp.OutboundQueue;
 import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.net.rtmp.event.Aggregate;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.BytesRead;
+import org.red5.server.net.rtmp.event.ChunkSize;
+import org.red5.server.net.rtmp.event.ClientBW;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Ping;
+import org.red5.server.net.rtmp.event.ServerBW;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Packet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,70 +44,213 @@ public class RTMPMinaProtocolEncoder extends ProtocolEncoderAdapter {
   /** {@inheritDoc} */
   public void encode(IoSession session, Object message, ProtocolEncoderOutput out)
       throws ProtocolCodecException {
+    // no encode if there is a handshake present
+    if (session.containsAttribute(RTMPConnection.RTMP_HANDSHAKE)) {
+      log.debug("No-op due to handshake presence");
+      return;
+    }
+    // a connection bound to the session spares the lookup and, for media, the connection local
+    RTMPConnection conn = (RTMPConnection) session.getAttribute(RTMPConnection.RTMP_CONNECTION);
+    if (conn != null) {
+      if (needsConnectionLocal(message)) {
+        IConnection localConn = Red5.getConnectionLocal();
+        Red5.setConnectionLocal(conn);
+        try {
+          write(conn, message, out);
+        } finally {
+          Red5.setConnectionLocal(localConn);
+        }
+      } else {
+        write(conn, message, out);
+      }
+      return;
+    }
     // get the connection from the session
     String sessionId = (String) session.getAttribute(RTMPConnection.RTMP_SESSION_ID);
     log.trace("Session id: {}", sessionId);
-    // no encode if there is a handshake present
-    if (!session.containsAttribute(RTMPConnection.RTMP_HANDSHAKE)) {
-      @SuppressWarnings("unchecked")
-      IConnectionManager<RTMPConnection> connManager =
-          (IConnectionManager<RTMPConnection>)
-              ((WeakReference<?>) session.getAttribute(RTMPConnection.RTMP_CONN_MANAGER)).get();
-      RTMPConnection conn = (RTMPConnection) connManager.getConnectionBySessionId(sessionId);
-      if (conn != null) {
-        // look for and compare the connection local; set it from the session
-        RTMPConnection localConn = (RTMPConnection) Red5.getConnectionLocal();
-        if (!conn.equals(localConn)) {
-          if (localConn != null) {
-            log.debug(
-                "Connection local ({}) didn't match io session ({})",
-                localConn.getSessionId(),
-                sessionId);
-          }
-          // replace conn with the one from the session id lookup
-          Red5.setConnectionLocal(conn);
+    @SuppressWarnings("unchecked")
+    IConnectionManager<RTMPConnection> connManager =
+        (IConnectionManager<RTMPConnection>)
+            ((WeakReference<?>) session.getAttribute(RTMPConnection.RTMP_CONN_MANAGER)).get();
+    conn = (RTMPConnection) connManager.getConnectionBySessionId(sessionId);
+    if (conn != null) {
+      // look for and compare the connection local; set it from the session
+      RTMPConnection localConn = (RTMPConnection) Red5.getConnectionLocal();
+      if (!conn.equals(localConn)) {
+        if (localConn != null) {
+          log.debug(
+              "Connection local ({}) didn't match io session ({})",
+              localConn.getSessionId(),
+              sessionId);
         }
-        Boolean interrupted = false;
-        try {
-          // get the buffer
-          final IoBuffer buf =
-              message instanceof IoBuffer ? (IoBuffer) message : encoder.encode(message);
-          if (buf != null) {
-            int requestedWriteChunkSize = conn.getState().getWriteChunkSize();
-            log.trace(
-                "Requested chunk size: {} target chunk size: {}",
-                requestedWriteChunkSize,
-                targetChunkSize);
-            if (buf.remaining() <= targetChunkSize * 2) {
-              log.trace("Writing output data");
-              out.write(buf);
-            } else {
-              int sentChunks =
-                  Chunker.chunkAndWrite(out, buf, requestedWriteChunkSize, targetChunkSize);
-              log.trace("Wrote {} chunks", sentChunks);
-            }
+        // replace conn with the one from the session id lookup
+        Red5.setConnectionLocal(conn);
+      }
+      write(conn, message, out);
+      // set connection local back to previous value
+      if (localConn != null) {
+        Red5.setConnectionLocal(localConn);
+      }
+    } else {
+      log.debug("Connection is no longer available for encoding, may have been closed already");
+    }
+  }
+
+  /**
+   * Encodes a message for a connection and writes it to the output, chunked to the target size.
+   *
+   * @param conn connection
+   * @param message packet, batch or raw buffer
+   * @param out encoder output
+   */
+  private void write(RTMPConnection conn, Object message, ProtocolEncoderOutput out) {
+    Boolean interrupted = false;
+    try {
+      if (message instanceof OutboundQueue.Batch) {
+        writeBatch(conn, (OutboundQueue.Batch) message, out);
+        return;
+      }
+      // get the buffer, shared media keeps its chunked tail apart
+      final IoBuffer[] sharedTail = new IoBuffer[1];
+      final IoBuffer buf = encode(conn, message, sharedTail);
+      if (buf != null) {
+        if (sharedTail[0] != null) {
+          // connection specific first chunk header, then the shared bytes as they are
+          out.write(buf);
+          writeShared(sharedTail[0], out);
+        } else {
+          int requestedWriteChunkSize = conn.getState().getWriteChunkSize();
+          log.trace(
+              "Requested chunk size: {} target chunk size: {}",
+              requestedWriteChunkSize,
+              targetChunkSize);
+          if (buf.remaining() <= targetChunkSize * 2) {
+            log.trace("Writing output data");
+            out.write(buf);
           } else {
-            log.trace("Response buffer was null after encoding");
+            int sentChunks =
+                Chunker.chunkAndWrite(out, buf, requestedWriteChunkSize, targetChunkSize);
+            log.trace("Wrote {} chunks", sentChunks);
           }
-        } catch (InterruptedException ex) {
-          log.error("InterruptedException during encode", ex);
-          interrupted = true;
-        } catch (Exception ex) {
-          log.error("Exception during encode", ex);
-        } finally {
-          if (interrupted) {
-            log.info("Released lock after interruption. session {}", conn.getSessionId());
-          }
-        }
-        // set connection local back to previous value
-        if (localConn != null) {
-          Red5.setConnectionLocal(localConn);
         }
       } else {
-        log.debug("Connection is no longer available for encoding, may have been closed already");
+        log.trace("Response buffer was null after encoding");
       }
-    } else {
-      log.debug("No-op due to handshake presence");
+    } catch (InterruptedException ex) {
+      log.error("InterruptedException during encode", ex);
+      interrupted = true;
+    } catch (Exception ex) {
+      log.error("Exception during encode", ex);
+    } finally {
+      if (interrupted) {
+        log.info("Released lock after interruption. session {}", conn.getSessionId());
+      }
+    }
+  }
+
+  /**
+   * Returns whether encoding the message reads the connection local. Media and protocol control
+   * messages are encoded from the chunk stream state alone; command and shared object bodies are
+   * serialized with the encoding of the current connection.
+   *
+   * @param message packet, batch or raw buffer
+   * @return true if the connection local must be set
+   */
+  private static boolean needsConnectionLocal(Object message) {
+    if (message instanceof Packet) {
+      IRTMPEvent event = ((Packet) message).getMessage();
+      return !(event instanceof AudioData
+          || event instanceof VideoData
+          || event instanceof Aggregate
+          || event instanceof Ping
+          || event instanceof BytesRead
+          || event instanceof ChunkSize
+          || event instanceof ServerBW
+          || event instanceof ClientBW);
+    }
+    if (message instanceof OutboundQueue.Batch) {
+      for (Object batched : (OutboundQueue.Batch) message) {
+        if (needsConnectionLocal(batched)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Encodes a packet, batch entry or raw buffer. For media shared by many subscribers the returned
+   * buffer ends with the first chunk header and the shared tail is handed out separately.
+   *
+   * @param conn connection
+   * @param message packet or raw buffer
+   * @param sharedTail holder receiving the shared tail, if any
+   * @return encoded data or null if nothing was encoded
+   * @throws Exception on encoding failure
+   */
+  private IoBuffer encode(RTMPConnection conn, Object message, IoBuffer[] sharedTail)
+      throws Exception {
+    if (message instanceof Packet) {
+      try {
+        return encoder.encodePacket(conn, (Packet) message, sharedTail);
+      } catch (Exception e) {
+        log.error("Error encoding", e);
+        return null;
+      }
+    }
+    return message instanceof IoBuffer ? (IoBuffer) message : encoder.encode(conn, message);
+  }
+
+  /**
+   * Writes the shared tail of a media message in slices of it, none of which copies the bytes.
+   *
+   * @param tail read only view of the shared tail
+   * @param out encoder output
+   */
+  private void writeShared(IoBuffer tail, ProtocolEncoderOutput out) {
+    int sentSlices = 0;
+    do {
+      out.write(tail.getSlice(Math.min(targetChunkSize * 2, tail.remaining())));
+      sentSlices++;
+    } while (tail.hasRemaining());
+    log.trace("Wrote shared tail in {} slices", sentSlices);
+  }
+
+  /**
+   * Encodes the messages of a batch, in order, into as few buffers as possible; coalesced messages
+   * are not split to the target chunk size, that would undo the batching. Raw buffers are copied as
+   * they are, the shared tail of media is written on its own instead of being copied in.
+   *
+   * @param conn connection
+   * @param batch packets and raw buffers
+   * @param out encoder output
+   * @throws Exception on encoding failure
+   */
+  private void writeBatch(RTMPConnection conn, OutboundQueue.Batch batch, ProtocolEncoderOutput out)
+      throws Exception {
+    IoBuffer result = null;
+    final IoBuffer[] sharedTail = new IoBuffer[1];
+    for (Object message : batch) {
+      sharedTail[0] = null;
+      final IoBuffer buf = encode(conn, message, sharedTail);
+      if (buf != null) {
+        if (result == null) {
+          result = IoBuffer.allocate(Math.max(batch.getEstimatedSize(), buf.remaining()));
+          result.setAutoExpand(true);
+        }
+        result.put(buf);
+        buf.free();
+        if (sharedTail[0] != null) {
+          result.flip();
+          out.write(result);
+          result = null;
+          writeShared(sharedTail[0], out);
+        }
+      }
+    }
+    if (result != null) {
+      result.flip();
+      out.write(result);
     }
   }
 
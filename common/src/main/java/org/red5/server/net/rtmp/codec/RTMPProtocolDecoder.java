@@ -8,7 +8,6 @@
 package org.red5.server.net.rtmp.codec;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -74,6 +73,12 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
   // maximum size for an RTMP packet in Mb
   protected static int MAX_PACKET_SIZE = 3145728; // 3MB
 
+  // maximum number of bytes logged when decoding fails
+  protected static final int MAX_DUMP_LENGTH = 64;
+
+  // whether or not decoding reuses per-connection objects instead of allocating them for each read
+  protected static boolean pooledDecoding;
+
   /** Constructs a new RTMPProtocolDecoder. */
   public RTMPProtocolDecoder() {}
 
@@ -85,62 +90,13 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
    * @return a list of decoded objects, may be empty if nothing could be decoded
    */
   public List<Object> decodeBuffer(RTMPConnection conn, IoBuffer buffer) {
-    final int position = buffer.position();
-    // if (isTrace) {
-    //    log.trace("decodeBuffer: {}", Hex.encodeHexString(Arrays.copyOfRange(buffer.array(),
-    // position, buffer.limit())));
-    // }
     // decoded results
     List<Object> result = null;
     if (conn != null) {
-      // log.trace("Decoding for connection - session id: {}", conn.getSessionId());
+      // instance list to hold results
+      result = new ArrayList<>();
       try {
-        // instance list to hold results
-        result = new LinkedList<>();
-        // get the local decode state
-        RTMPDecodeState state = conn.getDecoderState();
-        if (isTrace) {
-          log.trace("RTMP decode state {}", state);
-        }
-        if (!conn.getSessionId().equals(state.getSessionId())) {
-          log.warn("Session decode overlap: {} != {}", conn.getSessionId(), state.getSessionId());
-        }
-        int remaining;
-        while ((remaining = buffer.remaining()) > 0) {
-          if (state.canStartDecoding(remaining)) {
-            // log.trace("Can start decoding");
-            state.startDecoding();
-          } else {
-            log.trace("Cannot start decoding");
-            break;
-          }
-          final Object decodedObject = decode(conn, state, buffer);
-          if (state.hasDecodedObject()) {
-            // log.trace("Has decoded object");
-            if (decodedObject != null) {
-              result.add(decodedObject);
-            }
-          } else if (state.canContinueDecoding()) {
-            // log.trace("Can continue decoding");
-            continue;
-          } else {
-            log.trace("Cannot continue decoding");
-            break;
-          }
-        }
-      } catch (Exception ex) {
-        log.warn(
-            "Failed to decodeBuffer: pos {}, limit {}, chunk size {}, buffer {}",
-            position,
-            buffer.limit(),
-            conn.getState().getReadChunkSize(),
-            Hex.encodeHexString(Arrays.copyOfRange(buffer.array(), position, buffer.limit())));
-        // catch any non-handshake exception in the decoding; close the connection
-        log.warn("Closing connection because decoding failed: {}", conn, ex);
-        // clear the buffer to eliminate memory leaks when we can't parse protocol
-        buffer.clear();
-        // close connection because we can't parse data from it
-        conn.close();
+        decodeBuffer(conn, buffer, result);
       } finally {
         // if (isTrace) {
         //    log.trace("decodeBuffer - post decode input buffer position: {} remaining: {}",
@@ -154,6 +110,96 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
     return result;
   }
 
+  /**
+   * Decode all available objects in buffer into the given list. Unlike {@link
+   * #decodeBuffer(RTMPConnection, IoBuffer)} the buffer isn't compacted; it is left positioned at
+   * the first byte which could not be decoded yet, so the caller decides whether the remainder has
+   * to be kept. If decoding fails the connection is closed and the buffer is consumed.
+   *
+   * @param conn RTMP connection
+   * @param buffer IoBuffer of data to be decoded
+   * @param result list receiving the decoded objects
+   * @return number of objects decoded
+   */
+  public int decodeBuffer(RTMPConnection conn, IoBuffer buffer, List<Object> result) {
+    final int position = buffer.position();
+    // if (isTrace) {
+    //    log.trace("decodeBuffer: {}", Hex.encodeHexString(Arrays.copyOfRange(buffer.array(),
+    // position, buffer.limit())));
+    // }
+    int decoded = 0;
+    // log.trace("Decoding for connection - session id: {}", conn.getSessionId());
+    try {
+      // get the local decode state
+      RTMPDecodeState state = conn.getDecoderState();
+      if (isTrace) {
+        log.trace("RTMP decode state {}", state);
+      }
+      if (!conn.getSessionId().equals(state.getSessionId())) {
+        log.warn("Session decode overlap: {} != {}", conn.getSessionId(), state.getSessionId());
+      }
+      int remaining;
+      while ((remaining = buffer.remaining()) > 0) {
+        if (state.canStartDecoding(remaining)) {
+          // log.trace("Can start decoding");
+          state.startDecoding();
+        } else {
+          log.trace("Cannot start decoding");
+          break;
+        }
+        final Object decodedObject = decode(conn, state, buffer);
+        if (state.hasDecodedObject()) {
+          // log.trace("Has decoded object");
+          if (decodedObject != null) {
+            result.add(decodedObject);
+            decoded++;
+          }
+        } else if (state.canContinueDecoding()) {
+          // log.trace("Can continue decoding");
+          continue;
+        } else {
+          log.trace("Cannot continue decoding");
+          break;
+        }
+      }
+    } catch (Exception ex) {
+      log.warn(
+          "Failed to decodeBuffer: pos {}, limit {}, chunk size {}, buffer {}",
+          position,
+          buffer.limit(),
+          conn.getState().getReadChunkSize(),
+          dump(buffer, position));
+      // catch any non-handshake exception in the decoding; close the connection
+      log.warn("Closing connection because decoding failed: {}", conn, ex);
+      // skip the remaining data to eliminate memory leaks when we can't parse protocol
+      buffer.position(buffer.limit());
+      // close connection because we can't parse data from it
+      conn.close();
+    }
+    return decoded;
+  }
+
+  /**
+   * Returns a hex dump of at most {@link #MAX_DUMP_LENGTH} bytes of the buffer from the given
+   * position; a corrupt stream may be megabytes long and only its start is of use.
+   *
+   * @param buffer buffer
+   * @param position start position
+   * @return hex dump
+   */
+  private static String dump(IoBuffer buffer, int position) {
+    int end = Math.min(buffer.limit(), position + MAX_DUMP_LENGTH);
+    if (position >= end) {
+      return "";
+    }
+    byte[] bytes = new byte[end - position];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = buffer.get(position + i);
+    }
+    String hex = Hex.encodeHexString(bytes);
+    return end < buffer.limit() ? hex + "..." : hex;
+  }
+
   /**
    * Decodes the buffer data.
    *
@@ -252,7 +298,12 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
       return null;
     }
     // store the header based on its channel id
-    rtmp.setLastReadHeader(channelId, header);
+    if (pooledDecoding) {
+      // the replaced header is reused for the next chunk on this channel
+      rtmp.swapLastReadHeader(channelId, header);
+    } else {
+      rtmp.setLastReadHeader(channelId, header);
+    }
     // ensure that we dont exceed maximum packet size
     int size = header.getSize();
     log.debug("Packet size: {}", size);
@@ -287,19 +338,18 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
       in.position(position);
       return null;
     }
-    // get the chunk from our input
-    byte[] chunk = Arrays.copyOfRange(in.array(), in.position(), in.position() + length);
     if (isTrace) {
       log.trace(
           "Read chunkSize: {}, length: {}, chunk: {}",
           readChunkSize,
           length,
-          Hex.encodeHexString(chunk));
+          dump(in, in.position()));
     }
-    // move the position
-    in.skip(length);
-    // put the chunk into the packet
-    buf.put(chunk);
+    // put the chunk into the packet straight from our input, moving its position
+    final int limit = in.limit();
+    in.limit(in.position() + length);
+    buf.put(in);
+    in.limit(limit);
     if (buf.hasRemaining()) {
       if (isTrace) {
         log.trace("Packet is incomplete ({},{})", buf.remaining(), buf.limit());
@@ -407,7 +457,7 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
     //        }
 
     int timeBase = 0, timeDelta = 0;
-    Header header = new Header();
+    Header header = pooledDecoding ? rtmp.acquireReadHeader(channelId) : new Header();
     header.setChannelId(channelId);
     switch (headerSize) {
       case HEADER_NEW: // type 0
@@ -1157,6 +1207,28 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
     return params;
   }
 
+  /**
+   * Sets whether or not decoding reuses per-connection objects, such as the decoded objects holder
+   * and chunk headers, instead of allocating new ones for each read. Default is false.
+   *
+   * @param pooledDecoding true to reuse decoding objects
+   */
+  public static void setPooledDecoding(boolean pooledDecoding) {
+    RTMPProtocolDecoder.pooledDecoding = pooledDecoding;
+    if (isDebug) {
+      log.debug("Pooled decoding: {}", pooledDecoding);
+    }
+  }
+
+  /**
+   * Returns whether or not decoding reuses per-connection objects.
+   *
+   * @return true if decoding objects are reused
+   */
+  public static boolean isPooledDecoding() {
+    return pooledDecoding;
+  }
+
   /**
    * Set the maximum allowed packet size. Default is 3 Mb.
    *
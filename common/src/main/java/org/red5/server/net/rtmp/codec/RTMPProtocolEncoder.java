@@ -14,6 +14,7 @@ import java.util.Map;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.io.object.Output;
 import org.red5.io.object.Serializer;
+import org.red5.server.api.IConnection;
 import org.red5.server.api.IConnection.Encoding;
 import org.red5.server.api.Red5;
 import org.red5.server.api.service.IPendingServiceCall;
@@ -32,6 +33,7 @@ import org.red5.server.net.rtmp.event.FlexMessage;
 import org.red5.server.net.rtmp.event.FlexStreamSend;
 import org.red5.server.net.rtmp.event.IRTMPEvent;
 import org.red5.server.net.rtmp.event.Invoke;
+import org.red5.server.net.rtmp.event.MediaDataStreamEvent;
 import org.red5.server.net.rtmp.event.Notify;
 import org.red5.server.net.rtmp.event.Ping;
 import org.red5.server.net.rtmp.event.SWFResponse;
@@ -50,6 +52,7 @@ import org.red5.server.net.rtmp.status.StatusObject;
 import org.red5.server.service.Call;
 import org.red5.server.so.ISharedObjectEvent;
 import org.red5.server.so.ISharedObjectMessage;
+import org.red5.server.so.SharedObjectMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -82,6 +85,9 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
   /** Whether or not to allow dropper determination code. */
   private boolean dropEncoded;
 
+  /** Whether a subclass overrides {@link #dropMessage(int, IRTMPEvent)} */
+  private final boolean dropOverridden = overridesDropMessage(getClass());
+
   /**
    * Encodes object with given protocol state to byte buffer
    *
@@ -90,9 +96,22 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
    * @throws Exception Any decoding exception
    */
   public IoBuffer encode(Object message) throws Exception {
+    return encode((RTMPConnection) Red5.getConnectionLocal(), message);
+  }
+
+  /**
+   * Encodes object for the given connection. The chunk stream state of the connection is used
+   * directly; only the bodies of commands and shared object messages need the connection local.
+   *
+   * @param conn connection the message is written to
+   * @param message Object to encode
+   * @return IoBuffer with encoded data
+   * @throws Exception Any decoding exception
+   */
+  public IoBuffer encode(RTMPConnection conn, Object message) throws Exception {
     if (message != null) {
       try {
-        return encodePacket((Packet) message);
+        return encodePacket(conn, (Packet) message);
       } catch (Exception e) {
         log.error("Error encoding", e);
       }
@@ -114,6 +133,32 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
    * @return Encoded data
    */
   public IoBuffer encodePacket(Packet packet) {
+    return encodePacket((RTMPConnection) Red5.getConnectionLocal(), packet);
+  }
+
+  /**
+   * Encode packet for the given connection.
+   *
+   * @param conn connection the packet is written to
+   * @param packet RTMP packet
+   * @return Encoded data
+   */
+  public IoBuffer encodePacket(RTMPConnection conn, Packet packet) {
+    return encodePacket(conn, packet, null);
+  }
+
+  /**
+   * Encode packet for the given connection, leaving the chunked tail of media shared by many
+   * subscribers out of the returned buffer. The tail is handed out as a read only view of the shared
+   * bytes, to be written after the returned buffer without copying it for every subscriber.
+   *
+   * @param conn connection the packet is written to
+   * @param packet RTMP packet
+   * @param sharedTail holder receiving the shared tail in its first element, left null when the
+   *     returned buffer holds the whole message; null to always get the whole message
+   * @return Encoded data, up to the shared tail if there is one
+   */
+  public IoBuffer encodePacket(RTMPConnection conn, Packet packet, IoBuffer[] sharedTail) {
     IoBuffer out = null;
     Header header = packet.getHeader();
     int channelId = header.getChannelId();
@@ -121,17 +166,15 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
     IRTMPEvent message = packet.getMessage();
     if (message instanceof ChunkSize) {
       ChunkSize chunkSizeMsg = (ChunkSize) message;
-      ((RTMPConnection) Red5.getConnectionLocal())
-          .getState()
-          .setWriteChunkSize(chunkSizeMsg.getSize());
+      conn.getState().setWriteChunkSize(chunkSizeMsg.getSize());
     }
     // normally the message is expected not to be dropped
-    if (!dropMessage(channelId, message)) {
+    if (!drop(conn, channelId, message)) {
       // log.trace("Header time: {} message timestamp: {}", header.getTimer(),
       // message.getTimestamp());
       IoBuffer data = encodeMessage(header, message);
       if (data != null) {
-        RTMP rtmp = ((RTMPConnection) Red5.getConnectionLocal()).getState();
+        RTMP rtmp = conn.getState();
         // set last write packet
         rtmp.setLastWritePacket(channelId, packet);
         // ensure we're at the beginning
@@ -155,22 +198,50 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
         if (log.isTraceEnabled()) {
           log.trace("Channel id: {} chunkSize: {}", channelId, chunkSize);
         }
+        // media shared by many subscribers may already be chunked for this chunk size and channel
+        PreChunkedFrame frame = null;
+        if (numChunks > 1 && message instanceof MediaDataStreamEvent) {
+          frame = ((MediaDataStreamEvent<?>) message).getPreChunkedFrame();
+          if (frame != null && frame.getLength() != dataLen) {
+            frame = null;
+          }
+        }
         // attempt to properly guess the size of the buffer we'll need
         int bufSize = dataLen + 18 + (numChunks * 2);
         // log.trace("Allocated buffer size: {}", bufSize);
         out = IoBuffer.allocate(bufSize, false);
         out.setAutoExpand(true);
-        do {
-          // encode the header
-          encodeHeader(header, lastHeader, out);
-          // write a chunk
-          byte[] buf = new byte[Math.min(chunkSize, data.remaining())];
-          data.get(buf);
-          // log.trace("Buffer: {}", Hex.encodeHexString(buf));
-          out.put(buf);
-          // move header over to last header
+        if (frame != null) {
+          // only the first chunk header is specific to this connection
+          encodeHeader(conn, header, lastHeader, out);
+          if (!header.isExtended()) {
+            if (sharedTail != null) {
+              sharedTail[0] = frame.getChunkedTail(chunkSize, channelId);
+            } else {
+              out.put(frame.getChunkedTail(chunkSize, channelId));
+            }
+            data.position(dataLen);
+          } else {
+            // continuation headers carry the extended timestamp, chunk the rest for this connection
+            byte[] buf = new byte[Math.min(chunkSize, data.remaining())];
+            data.get(buf);
+            out.put(buf);
+          }
           lastHeader = header.clone();
-        } while (data.hasRemaining());
+        }
+        if (frame == null || data.hasRemaining()) {
+          do {
+            // encode the header
+            encodeHeader(conn, header, lastHeader, out);
+            // write a chunk
+            byte[] buf = new byte[Math.min(chunkSize, data.remaining())];
+            data.get(buf);
+            // log.trace("Buffer: {}", Hex.encodeHexString(buf));
+            out.put(buf);
+            // move header over to last header
+            lastHeader = header.clone();
+          } while (data.hasRemaining());
+        }
         // collapse the time stamps on the last header after decode is complete
         lastHeader.setTimerBase(lastHeader.getTimer());
         // clear the delta
@@ -201,6 +272,48 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
    * @return true to drop; false to send
    */
   protected boolean dropMessage(int channelId, IRTMPEvent message) {
+    return dropMessage((RTMPConnection) Red5.getConnectionLocal(), channelId, message);
+  }
+
+  /**
+   * Asks {@link #dropMessage(int, IRTMPEvent)} whether to drop a message, with the connection local
+   * set to the connection the message is encoded for. Media are encoded without the connection
+   * local, so it is only set when a message may be dropped.
+   *
+   * @param conn connection the message is encoded for
+   * @param channelId the channel ID
+   * @param message the message
+   * @return true to drop; false to send
+   */
+  private boolean drop(RTMPConnection conn, int channelId, IRTMPEvent message) {
+    if (!dropEncoded && !dropOverridden) {
+      return false;
+    }
+    IConnection localConn = Red5.getConnectionLocal();
+    if (localConn == conn) {
+      return dropMessage(channelId, message);
+    }
+    Red5.setConnectionLocal(conn);
+    try {
+      return dropMessage(channelId, message);
+    } finally {
+      Red5.setConnectionLocal(localConn);
+    }
+  }
+
+  private static boolean overridesDropMessage(Class<?> type) {
+    for (Class<?> c = type; c != RTMPProtocolEncoder.class; c = c.getSuperclass()) {
+      try {
+        c.getDeclaredMethod("dropMessage", int.class, IRTMPEvent.class);
+        return true;
+      } catch (NoSuchMethodException e) {
+        // not declared here
+      }
+    }
+    return false;
+  }
+
+  private boolean dropMessage(RTMPConnection conn, int channelId, IRTMPEvent message) {
     // whether or not to allow dropping functionality
     if (!dropEncoded) {
       log.trace(
@@ -213,7 +326,6 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
       log.trace("Not dropping due to vod");
       return false;
     }
-    RTMPConnection conn = (RTMPConnection) Red5.getConnectionLocal();
     if (message instanceof Ping) {
       final Ping pingMessage = (Ping) message;
       if (pingMessage.getEventType() == Ping.STREAM_PLAYBUFFER_CLEAR) {
@@ -421,6 +533,18 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
    * @param buf Buffer for writing encoded header into
    */
   public void encodeHeader(Header header, Header lastHeader, IoBuffer buf) {
+    encodeHeader((RTMPConnection) Red5.getConnectionLocal(), header, lastHeader, buf);
+  }
+
+  /**
+   * Encode RTMP header into given IoBuffer, recording full timestamps on the given connection.
+   *
+   * @param conn connection the header is written to, may be null
+   * @param header RTMP message header
+   * @param lastHeader Previous header
+   * @param buf Buffer for writing encoded header into
+   */
+  public void encodeHeader(RTMPConnection conn, Header header, Header lastHeader, IoBuffer buf) {
     byte headerType = getHeaderType(header, lastHeader);
     RTMPUtils.encodeHeaderByte(buf, headerType, header.getChannelId());
     if (log.isTraceEnabled()) {
@@ -456,7 +580,6 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
           buf.putInt(timeBase);
           header.setExtended(true);
         }
-        RTMPConnection conn = (RTMPConnection) Red5.getConnectionLocal();
         if (conn != null) {
           conn.getState().setLastFullTimestampWritten(header.getChannelId(), timeBase);
         }
@@ -634,29 +757,67 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
 
   /** {@inheritDoc} */
   public IoBuffer encodeFlexSharedObject(ISharedObjectMessage so) {
-    final IoBuffer out = IoBuffer.allocate(128);
-    out.setAutoExpand(true);
-    out.put((byte) 0x00); // unknown (not AMF version)
-    doEncodeSharedObject(so, out);
-    return out;
+    IoBuffer encoded = getEncodedBody(so);
+    if (encoded != null) {
+      return encoded;
+    }
+    return encodeSharedObject(so, Encoding.AMF3, Red5.getConnectionLocal().getEncoding());
   }
 
   /** {@inheritDoc} */
   public IoBuffer encodeSharedObject(ISharedObjectMessage so) {
+    IoBuffer encoded = getEncodedBody(so);
+    if (encoded != null) {
+      return encoded;
+    }
+    return encodeSharedObject(so, Encoding.AMF0, Red5.getConnectionLocal().getEncoding());
+  }
+
+  /**
+   * Encodes a shared object message body without regard to the current connection, so that a
+   * broadcast may be encoded once and the result shared by every listener.
+   *
+   * @param so shared object message
+   * @param messageType AMF3 for a flex shared object message, AMF0 otherwise
+   * @param encoding encoding for the event values
+   * @return encoded body, flipped
+   */
+  public IoBuffer encodeSharedObject(
+      ISharedObjectMessage so, Encoding messageType, Encoding encoding) {
     final IoBuffer out = IoBuffer.allocate(128);
     out.setAutoExpand(true);
-    doEncodeSharedObject(so, out);
+    if (messageType == Encoding.AMF3) {
+      out.put((byte) 0x00); // unknown (not AMF version)
+    }
+    doEncodeSharedObject(so, encoding, out);
+    out.flip();
     return out;
   }
 
+  /**
+   * Returns a view of the already encoded body of a shared object message, if there is one.
+   *
+   * @param so shared object message
+   * @return read-only view positioned at zero or null
+   */
+  private IoBuffer getEncodedBody(ISharedObjectMessage so) {
+    if (so instanceof SharedObjectMessage) {
+      IoBuffer encoded = ((SharedObjectMessage) so).getEncodedBody();
+      if (encoded != null) {
+        return encoded.asReadOnlyBuffer();
+      }
+    }
+    return null;
+  }
+
   /**
    * Perform the actual encoding of the shared object contents.
    *
    * @param so shared object
+   * @param encoding encoding for the event values
    * @param out output buffer
    */
-  private void doEncodeSharedObject(ISharedObjectMessage so, IoBuffer out) {
-    final Encoding encoding = Red5.getConnectionLocal().getEncoding();
+  private void doEncodeSharedObject(ISharedObjectMessage so, Encoding encoding, IoBuffer out) {
     final Output output = new org.red5.io.amf.Output(out);
     final Output amf3output = new org.red5.io.amf3.Output(out);
     output.putString(so.getName());
@@ -10,6 +10,7 @@ import java.io.ObjectOutputStream;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.server.api.stream.IStreamPacket;
+import org.red5.server.net.rtmp.codec.PreChunkedFrame;
 import org.red5.server.stream.IStreamData;
 
 public abstract class MediaDataStreamEvent<T extends MediaDataStreamEvent<T>> extends BaseEvent
@@ -18,6 +19,9 @@ public abstract class MediaDataStreamEvent<T extends MediaDataStreamEvent<T>> ex
   protected IoBuffer data;
   protected byte dataType;
 
+  /** Body chunked once for all live subscribers, if any */
+  protected transient PreChunkedFrame preChunkedFrame;
+
   protected MediaDataStreamEvent(byte dataType) {
     this(IoBuffer.allocate(0).flip(), dataType);
   }
@@ -66,6 +70,14 @@ public abstract class MediaDataStreamEvent<T extends MediaDataStreamEvent<T>> ex
     this.data = IoBuffer.wrap(data);
   }
 
+  public PreChunkedFrame getPreChunkedFrame() {
+    return preChunkedFrame;
+  }
+
+  public void setPreChunkedFrame(PreChunkedFrame preChunkedFrame) {
+    this.preChunkedFrame = preChunkedFrame;
+  }
+
   @Override
   protected void releaseInternal() {
     if (data != null) {
@@ -0,0 +1,441 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.scheduling;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.red5.logging.Red5LoggerFactory;
+import org.red5.server.api.scheduling.IScheduledJob;
+import org.red5.server.api.scheduling.ISchedulingService;
+import org.red5.server.jmx.mxbeans.WheelSchedulingServiceMXBean;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Scheduling service based on a hashed timer wheel. A single timer thread advances the wheel every
+ * tick and hands all jobs due in that tick to the worker pool as a few batches, instead of each job
+ * being an entry in the delay queue of a scheduled executor. Meant for large numbers of short,
+ * frequent jobs such as the pull and push job of every VOD subscriber.
+ *
+ * <p>Job times are rounded up to whole ticks. Repeating jobs run at a fixed rate and never overlap
+ * themselves: the next run is armed once the current one is finished, at the next tick if the job
+ * fell behind. Unlike {@link JDKSchedulingService} jobs may be paused and resumed; removing a
+ * running job doesn't interrupt it.
+ *
+ * @author The Red5 Project
+ */
+@ManagedResource(
+    objectName = "org.red5.server:name=schedulingService,type=WheelSchedulingService")
+public class WheelSchedulingService
+    implements ISchedulingService, WheelSchedulingServiceMXBean, InitializingBean, DisposableBean {
+
+  private static Logger log = Red5LoggerFactory.getLogger(WheelSchedulingService.class);
+
+  /** Number of workers running the jobs */
+  protected int threadCount = Runtime.getRuntime().availableProcessors() * 2;
+
+  /** Duration of a tick in milliseconds */
+  protected long tickDuration = 10;
+
+  /** Number of buckets of the wheel, rounded to a power of two */
+  protected int wheelSize = 512;
+
+  /** Smallest number of jobs handed to a worker in one batch */
+  protected int minBatchSize = 16;
+
+  /** Storage for jobs keyed by name */
+  protected ConcurrentMap<String, WheelJob> keyMap = new ConcurrentHashMap<>();
+
+  protected AtomicInteger jobDetailCounter = new AtomicInteger();
+
+  /** Jobs to be placed on the wheel by the timer thread */
+  private final ConcurrentLinkedQueue<WheelJob> incoming = new ConcurrentLinkedQueue<>();
+
+  /** Buckets, only accessed by the timer thread */
+  private List<WheelJob>[] wheel;
+
+  private int mask;
+
+  private Executor workers;
+
+  private Thread timer;
+
+  private volatile boolean running;
+
+  private long startTime;
+
+  private long tickNanos;
+
+  /** Last tick processed */
+  private volatile long tick;
+
+  private volatile long lastTickLag;
+
+  private volatile long maxTickLag;
+
+  private volatile int lastJobsPerTick;
+
+  private volatile long ticksWithJobs;
+
+  private volatile long dueJobs;
+
+  private final AtomicLong executedJobs = new AtomicLong();
+
+  public void afterPropertiesSet() throws Exception {
+    log.debug("Initializing...");
+    AtomicInteger workerCount = new AtomicInteger();
+    init(
+        Executors.newFixedThreadPool(
+            threadCount,
+            r -> {
+              Thread t =
+                  new Thread(
+                      r, String.format("SchedulingWheelWorker-%d", workerCount.incrementAndGet()));
+              t.setDaemon(true);
+              return t;
+            }));
+    timer = new Thread(this::advance, "SchedulingWheel");
+    timer.setDaemon(true);
+    timer.start();
+  }
+
+  /**
+   * Sets up the wheel with the given workers, without a timer thread; the wheel only moves with
+   * {@link #advanceTick()} until one is started. Tests drive the ticks this way.
+   *
+   * @param workers executor running the batches of due jobs
+   */
+  @SuppressWarnings("unchecked")
+  void init(Executor workers) {
+    int size = Integer.highestOneBit(Math.max(16, wheelSize - 1) << 1);
+    wheel = new List[size];
+    mask = size - 1;
+    tickNanos = TimeUnit.MILLISECONDS.toNanos(tickDuration);
+    this.workers = workers;
+    startTime = System.nanoTime();
+    running = true;
+  }
+
+  public void destroy() throws Exception {
+    log.debug("Destroying...");
+    running = false;
+    if (timer != null) {
+      LockSupport.unpark(timer);
+      timer.join(1000L);
+    }
+    if (workers instanceof ExecutorService) {
+      ((ExecutorService) workers).shutdownNow();
+    }
+    keyMap.clear();
+    incoming.clear();
+  }
+
+  /** Timer loop */
+  private void advance() {
+    while (running) {
+      long late = System.nanoTime() - (startTime + ((tick + 1) * tickNanos));
+      if (late < 0) {
+        LockSupport.parkNanos(this, -late);
+        continue;
+      }
+      long lag = TimeUnit.NANOSECONDS.toMillis(late);
+      lastTickLag = lag;
+      if (lag > maxTickLag) {
+        maxTickLag = lag;
+      }
+      advanceTick();
+    }
+  }
+
+  /** Moves the wheel one tick on and dispatches the jobs due at it, from the timer thread if any. */
+  void advanceTick() {
+    long current = tick + 1;
+    try {
+      // place new and re-armed jobs before looking at the bucket, so jobs due now aren't missed
+      WheelJob job;
+      while ((job = incoming.poll()) != null) {
+        if (!job.cancelled) {
+          bucket(Math.max(job.deadline, current)).add(job);
+        }
+      }
+      List<WheelJob> due = expire(current);
+      if (!due.isEmpty()) {
+        dispatch(due);
+      }
+    } catch (Throwable t) {
+      log.warn("Tick {} failed", current, t);
+    }
+    tick = current;
+  }
+
+  private List<WheelJob> bucket(long deadline) {
+    int index = (int) (deadline & mask);
+    List<WheelJob> bucket = wheel[index];
+    if (bucket == null) {
+      bucket = new ArrayList<>();
+      wheel[index] = bucket;
+    }
+    return bucket;
+  }
+
+  /**
+   * Removes the jobs due at the given tick from its bucket, dropping cancelled jobs on the way.
+   *
+   * @param current tick
+   * @return due jobs
+   */
+  private List<WheelJob> expire(long current) {
+    List<WheelJob> bucket = wheel[(int) (current & mask)];
+    if (bucket == null || bucket.isEmpty()) {
+      return Collections.emptyList();
+    }
+    List<WheelJob> due = new ArrayList<>();
+    for (int i = bucket.size() - 1; i >= 0; i--) {
+      WheelJob job = bucket.get(i);
+      if (job.cancelled || job.deadline <= current) {
+        // swap with the last one, the order within a bucket doesn't matter
+        WheelJob last = bucket.remove(bucket.size() - 1);
+        if (i < bucket.size()) {
+          bucket.set(i, last);
+        }
+        if (!job.cancelled) {
+          due.add(job);
+        }
+      }
+    }
+    return due;
+  }
+
+  /**
+   * Splits the due jobs in batches of at least minBatchSize jobs, at most one per worker.
+   *
+   * @param due jobs due this tick
+   */
+  private void dispatch(List<WheelJob> due) {
+    int count = due.size();
+    lastJobsPerTick = count;
+    ticksWithJobs++;
+    dueJobs += count;
+    int batches = Math.max(1, Math.min(threadCount, count / Math.max(1, minBatchSize)));
+    int batchSize = (count + batches - 1) / batches;
+    for (int from = 0; from < count; from += batchSize) {
+      List<WheelJob> batch = due.subList(from, Math.min(count, from + batchSize));
+      try {
+        workers.execute(
+            () -> {
+              for (WheelJob job : batch) {
+                run(job);
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        log.warn("Batch of {} jobs rejected", batch.size());
+      }
+    }
+  }
+
+  private void run(WheelJob job) {
+    if (job.cancelled) {
+      return;
+    }
+    if (!job.paused) {
+      try {
+        job.job.execute(this);
+      } catch (Throwable e) {
+        log.warn("Job {} execution failed", job.job, e);
+      }
+      executedJobs.incrementAndGet();
+    }
+    if (job.interval > 0) {
+      if (!job.cancelled) {
+        job.deadline = Math.max(job.deadline + job.interval, tick + 1);
+        incoming.add(job);
+      }
+    } else {
+      keyMap.remove(job.name, job);
+    }
+  }
+
+  /**
+   * Converts milliseconds to ticks, rounding up.
+   *
+   * @param millis milliseconds
+   * @return ticks, at least one
+   */
+  private long ticks(long millis) {
+    return Math.max(1, (millis + tickDuration - 1) / tickDuration);
+  }
+
+  private String schedule(IScheduledJob job, long delay, long interval) {
+    String name = getJobName();
+    WheelJob wheelJob = new WheelJob(name, job, interval > 0 ? ticks(interval) : 0);
+    wheelJob.deadline = tick + ticks(delay);
+    keyMap.put(name, wheelJob);
+    incoming.add(wheelJob);
+    return name;
+  }
+
+  /** {@inheritDoc} */
+  public String addScheduledJob(int interval, IScheduledJob job) {
+    return schedule(job, interval, interval);
+  }
+
+  /** {@inheritDoc} */
+  public String addScheduledOnceJob(Date date, IScheduledJob job) {
+    return schedule(job, date.getTime() - System.currentTimeMillis(), 0);
+  }
+
+  /** {@inheritDoc} */
+  public String addScheduledOnceJob(long timeDelta, IScheduledJob job) {
+    return schedule(job, timeDelta, 0);
+  }
+
+  /** {@inheritDoc} */
+  public String addScheduledJobAfterDelay(int interval, IScheduledJob job, int delay) {
+    return schedule(job, delay, interval);
+  }
+
+  /**
+   * Getter for job name.
+   *
+   * @return Job name
+   */
+  public String getJobName() {
+    return String.format("ScheduledJob_%d", jobDetailCounter.getAndIncrement());
+  }
+
+  /** {@inheritDoc} */
+  public List<String> getScheduledJobNames() {
+    return new ArrayList<>(keyMap.keySet());
+  }
+
+  /** {@inheritDoc} */
+  public void pauseScheduledJob(String name) {
+    WheelJob job = keyMap.get(name);
+    if (job != null) {
+      job.paused = true;
+    }
+  }
+
+  /** {@inheritDoc} */
+  public void resumeScheduledJob(String name) {
+    WheelJob job = keyMap.get(name);
+    if (job != null) {
+      job.paused = false;
+    }
+  }
+
+  /** {@inheritDoc} */
+  public void removeScheduledJob(String name) {
+    WheelJob job = keyMap.remove(name);
+    if (job != null) {
+      // the timer drops it from its bucket when it gets there
+      job.cancelled = true;
+    } else {
+      log.debug("No key found for job: {} or the job was done", name);
+    }
+  }
+
+  public int getScheduledJobCount() {
+    return keyMap.size();
+  }
+
+  public long getTickDuration() {
+    return tickDuration;
+  }
+
+  /**
+   * @param tickDuration duration of a tick in milliseconds
+   */
+  public void setTickDuration(long tickDuration) {
+    this.tickDuration = Math.max(1, tickDuration);
+  }
+
+  public int getThreadCount() {
+    return threadCount;
+  }
+
+  public void setThreadCount(int threadCount) {
+    this.threadCount = threadCount;
+  }
+
+  public int getWheelSize() {
+    return wheelSize;
+  }
+
+  public void setWheelSize(int wheelSize) {
+    this.wheelSize = wheelSize;
+  }
+
+  public int getMinBatchSize() {
+    return minBatchSize;
+  }
+
+  public void setMinBatchSize(int minBatchSize) {
+    this.minBatchSize = minBatchSize;
+  }
+
+  public long getLastTickLag() {
+    return lastTickLag;
+  }
+
+  public long getMaxTickLag() {
+    return maxTickLag;
+  }
+
+  public int getLastJobsPerTick() {
+    return lastJobsPerTick;
+  }
+
+  public double getAverageJobsPerTick() {
+    long ticks = ticksWithJobs;
+    return ticks > 0 ? dueJobs / (double) ticks : 0d;
+  }
+
+  public long getExecutedJobs() {
+    return executedJobs.get();
+  }
+
+  /** Job on the wheel */
+  protected static final class WheelJob {
+
+    final String name;
+
+    final IScheduledJob job;
+
+    /** Interval in ticks, 0 for jobs running once */
+    final long interval;
+
+    /** Tick at which the job is due next */
+    volatile long deadline;
+
+    volatile boolean paused;
+
+    volatile boolean cancelled;
+
+    WheelJob(String name, IScheduledJob job, long interval) {
+      this.name = name;
+      this.job = job;
+      this.interval = interval;
+    }
+  }
+}
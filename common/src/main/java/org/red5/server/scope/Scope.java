@@ -13,15 +13,14 @@ import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.stream.Collectors;
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
 import javax.management.StandardMBean;
@@ -48,6 +47,7 @@ import org.red5.server.api.stream.IBroadcastStream;
 import org.red5.server.api.stream.IClientBroadcastStream;
 import org.red5.server.exception.ScopeException;
 import org.red5.server.jmx.mxbeans.ScopeMXBean;
+import org.red5.server.service.ServiceMethodCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.Resource;
@@ -83,6 +83,8 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
   /** Unset flag constant */
   private static final int UNSET = -1;
 
+  private static final ScopeType[] SCOPE_TYPES = ScopeType.values();
+
   /** Timestamp the scope was created. */
   private long creationTime;
 
@@ -461,6 +463,16 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
     return children.getBasicScope(type, name);
   }
 
+  /**
+   * Return the number of child scopes of given type.
+   *
+   * @param type Scope type
+   * @return child scope count
+   */
+  public int getBasicScopeCount(ScopeType type) {
+    return children.getCount(type);
+  }
+
   /**
    * Return basic scope names matching given type.
    *
@@ -472,10 +484,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
       // if its broadcast type then also check aliases
       if (type == ScopeType.BROADCAST) {
         final Set<String> broadcastNames = new HashSet<>();
-        Set<IBasicScope> broadcastScopes =
-            children.stream()
-                .filter(child -> child.getType().equals(type))
-                .collect(Collectors.toSet());
+        Set<IBasicScope> broadcastScopes = children.getBasicScopes(type);
         broadcastScopes.forEach(
             bs -> {
               // add the streams name
@@ -496,10 +505,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
             });
         return broadcastNames;
       } else {
-        return children.stream()
-            .filter(child -> child.getType().equals(type))
-            .map(IBasicScope::getName)
-            .collect(Collectors.toSet());
+        return children.getNames(type);
       }
     }
     return getScopeNames();
@@ -958,7 +964,12 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
    */
   public void registerServiceHandler(String name, Object handler) {
     Map<String, Object> serviceHandlers = getServiceHandlers();
-    serviceHandlers.put(name, handler);
+    Object previous = serviceHandlers.put(name, handler);
+    // methods resolved for a handler of the same class may be stale after a reload
+    ServiceMethodCache.getInstance().invalidate(handler.getClass());
+    if (previous != null && previous.getClass() != handler.getClass()) {
+      ServiceMethodCache.getInstance().invalidate(previous.getClass());
+    }
   }
 
   /**
@@ -1174,7 +1185,10 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
   public void unregisterServiceHandler(String name) {
     Map<String, Object> serviceHandlers = getServiceHandlers(false);
     if (serviceHandlers != null) {
-      serviceHandlers.remove(name);
+      Object handler = serviceHandlers.remove(name);
+      if (handler != null) {
+        ServiceMethodCache.getInstance().invalidate(handler.getClass());
+      }
     }
   }
 
@@ -1300,11 +1314,29 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
     return true;
   }
 
+  /**
+   * Child scope set with an index by type and name next to the sorted set, so lookups by name don't
+   * scan the children. The sorted set stays the source for iteration; the index follows it on add
+   * and remove.
+   */
   private final class ConcurrentScopeSet
       extends ConcurrentSkipListSet<org.red5.server.api.scope.IBasicScope> {
 
     private static final long serialVersionUID = 283917025588555L;
 
+    /** Children by name, per type; the outer map is filled once and never modified */
+    private final transient Map<ScopeType, ConcurrentMap<String, IBasicScope>> index =
+        new EnumMap<>(ScopeType.class);
+
+    /** Child names with the number of children using each, a name may be used by several types */
+    private final transient ConcurrentMap<String, Integer> names = new ConcurrentHashMap<>();
+
+    ConcurrentScopeSet() {
+      for (ScopeType type : ScopeType.values()) {
+        index.put(type, new ConcurrentHashMap<>());
+      }
+    }
+
     @Override
     public boolean add(IBasicScope scope) {
       boolean added = false;
@@ -1328,6 +1360,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
             // add the entry
             added = super.add(scope);
             if (added) {
+              indexAdd(scope);
               subscopeStats.increment();
             } else {
               log.debug("Subscope was not added");
@@ -1370,6 +1403,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
       }
       // remove the entry, ensure removed value is equal to the given object
       if (super.remove(scope)) {
+        indexRemove((IBasicScope) scope);
         subscopeStats.decrement();
         return true;
       } else {
@@ -1378,15 +1412,36 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
       return false;
     }
 
+    @Override
+    public void clear() {
+      super.clear();
+      index.values().forEach(Map::clear);
+      names.clear();
+    }
+
+    private void indexAdd(IBasicScope scope) {
+      String name = scope.getName();
+      if (name != null) {
+        if (index.get(scope.getType()).putIfAbsent(name, scope) == null) {
+          names.merge(name, 1, Integer::sum);
+        }
+      }
+    }
+
+    private void indexRemove(IBasicScope scope) {
+      String name = scope.getName();
+      if (name != null && index.get(scope.getType()).remove(name, scope)) {
+        names.computeIfPresent(name, (key, count) -> count > 1 ? count - 1 : null);
+      }
+    }
+
     /**
      * Returns the scope names.
      *
      * @return names
      */
     public Set<String> getNames() {
-      Set<String> names = new HashSet<String>();
-      stream().forEach(child -> names.add(child.getName()));
-      return names;
+      return new HashSet<>(names.keySet());
     }
 
     /**
@@ -1399,13 +1454,33 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
         log.debug("hasName: {}", name);
       }
       if (name != null) {
-        return stream().filter(child -> child.getName().equals(name)).findFirst().isPresent();
+        return names.containsKey(name);
       } else {
         log.info("Invalid scope name, null is not allowed");
       }
       return false;
     }
 
+    /**
+     * Returns the number of child scopes of a given type.
+     *
+     * @param type Scope type
+     * @return count
+     */
+    public int getCount(ScopeType type) {
+      return index.get(type).size();
+    }
+
+    /**
+     * Returns the names of the child scopes of a given type.
+     *
+     * @param type Scope type
+     * @return names
+     */
+    public Set<String> getNames(ScopeType type) {
+      return new HashSet<>(index.get(type).keySet());
+    }
+
     /**
      * Returns child scopes for a given type.
      *
@@ -1413,9 +1488,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
      * @return set of scopes matching type
      */
     public Set<IBasicScope> getBasicScopes(ScopeType type) {
-      return stream()
-          .filter(child -> child.getType().equals(type))
-          .collect(Collectors.toUnmodifiableSet());
+      return Set.copyOf(index.get(type).values());
     }
 
     /**
@@ -1426,49 +1499,35 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
      * @return scope
      */
     public IBasicScope getBasicScope(ScopeType type, String name) {
-      Optional<IBasicScope> scope = null;
+      if (name == null) {
+        return null;
+      }
       // skip type check?
       if (ScopeType.UNDEFINED.equals(type)) {
-        scope = stream().filter(child -> child.getName().equals(name)).findFirst();
-      } else {
-        // if its broadcast type then allow an alias match in addition to the name match
-        if (ScopeType.BROADCAST.equals(type)) {
-          // checks publish and subscribe aliases
-          for (IBasicScope child : this) {
-            // ensure type is broadcast type, since we'll pull out a cbs
-            if (child.getType().equals(type)) {
-              String childName = child.getName();
-              IClientBroadcastStream cbs = ((IBroadcastScope) child).getClientBroadcastStream();
-              if (cbs != null) {
-                String pubName = cbs.getPublishedName();
-                if (childName.equals(name)) {
-                  log.debug("Scope found by name: {} on {}", name, pubName);
-                  return child;
-                } else if (cbs.containsAlias(name)) {
-                  log.debug("Scope found with alias: {} on {}", name, pubName);
-                  return child;
-                } else {
-                  log.debug(
-                      "No match for name or alias of {} on published stream: {}", name, pubName);
-                }
-              } else {
-                // log.debug("Broadcast scope: {} has no stream attached", name);
-                if (childName.equals(name)) {
-                  log.debug("Scope found by name: {} but has no stream", name);
-                  return child;
-                }
-              }
-            }
+        // types in the order the sorted set had them for equal names
+        for (ScopeType t : SCOPE_TYPES) {
+          IBasicScope child = index.get(t).get(name);
+          if (child != null) {
+            return child;
           }
-        } else {
-          scope =
-              stream()
-                  .filter(child -> child.getType().equals(type) && child.getName().equals(name))
-                  .findFirst();
         }
+        return null;
       }
-      if (scope != null && scope.isPresent()) {
-        return scope.get();
+      IBasicScope child = index.get(type).get(name);
+      if (child != null) {
+        log.debug("Scope found by name: {}", name);
+        return child;
+      }
+      // if its broadcast type then allow an alias match in addition to the name match
+      if (ScopeType.BROADCAST.equals(type)) {
+        // aliases change with the published stream, so they're checked on the broadcast scopes
+        for (IBasicScope bs : index.get(type).values()) {
+          IClientBroadcastStream cbs = ((IBroadcastScope) bs).getClientBroadcastStream();
+          if (cbs != null && cbs.containsAlias(name)) {
+            log.debug("Scope found with alias: {} on {}", name, cbs.getPublishedName());
+            return bs;
+          }
+        }
       }
       return null;
     }
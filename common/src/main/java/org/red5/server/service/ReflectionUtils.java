@@ -15,6 +15,7 @@ import java.util.stream.Collectors;
 import org.red5.io.utils.ConversionUtils;
 import org.red5.server.api.IConnection;
 import org.red5.server.api.service.IServiceCall;
+import org.red5.server.service.ServiceMethod.Binding;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -130,6 +131,27 @@ public class ReflectionUtils {
    */
   public static Object[] findMethod(
       IConnection conn, IServiceCall call, Object service, String methodName) {
+    Object[] methodResult = findServiceMethod(conn, call, service, methodName);
+    if (methodResult[0] == null) {
+      return NULL_RETURN;
+    }
+    return new Object[] {((ServiceMethod) methodResult[0]).getMethod(), methodResult[1]};
+  }
+
+  /**
+   * Returns (service method, params) for the given service or method name if found on a service or
+   * scope handler. A method resolved before for the same service class, method name and argument
+   * classes comes from the {@link ServiceMethodCache}; otherwise the methods of the service are
+   * searched and the result is cached.
+   *
+   * @param conn current connection
+   * @param call service call interested in the method
+   * @param service service to search for the method, if given
+   * @param methodName method name to find
+   * @return ServiceMethod/params pairs or null if not found
+   */
+  public static Object[] findServiceMethod(
+      IConnection conn, IServiceCall call, Object service, String methodName) {
     if (isDebug) {
       log.debug(
           "Find method: {} in service: {} for call: {} and connection: {}",
@@ -150,6 +172,18 @@ public class ReflectionUtils {
     final Object[] args = call.getArguments();
     // convert the args to their class types
     Class<?>[] callParams = ConversionUtils.convertParams(args);
+    // look for a method resolved earlier with the same signature
+    final ServiceMethodCache cache = ServiceMethodCache.getInstance();
+    final Class<?> serviceClass = service.getClass();
+    ServiceMethod cached = cache.get(serviceClass, methodName, callParams, conn != null);
+    if (cached != null) {
+      try {
+        return new Object[] {cached, cached.parameters(conn, args)};
+      } catch (Exception e) {
+        // the values didn't convert this time, another overload may take them
+        log.debug("Cached method {} did not accept the arguments", cached, e);
+      }
+    }
     // XXX(paul) someday this will be deprecated as its an extremely legacy feature to have a method
     // with a
     // connection as the first parameter
@@ -173,7 +207,7 @@ public class ReflectionUtils {
     }
     // get all the name matched methods once, then filter out the ones that contain a $
     final Set<Method> methods =
-        Arrays.stream(service.getClass().getMethods())
+        Arrays.stream(serviceClass.getMethods())
             .filter(m -> (m.getName().equals(methodName) && !m.getName().contains("$")))
             .filter(
                 m ->
@@ -206,7 +240,8 @@ public class ReflectionUtils {
             log.trace("Method {} matched - zero-length", methodName);
           }
           // fastest way to handle zero parameter methods
-          methodResult = new Object[] {method, args};
+          methodResult =
+              new Object[] {new ServiceMethod(method, Binding.DIRECT, callParams), args};
           break;
         }
         // get the methods parameter types
@@ -216,7 +251,8 @@ public class ReflectionUtils {
           if (isTrace) {
             log.trace("Method {} matched - parameter 0 is an array", methodName);
           }
-          methodResult = new Object[] {method, args};
+          methodResult =
+              new Object[] {new ServiceMethod(method, Binding.DIRECT, callParams), args};
           break;
         }
         // search for method matching parameters without a forced connection parameter
@@ -227,7 +263,10 @@ public class ReflectionUtils {
             if (isTrace) {
               log.trace("Found method {} {} - parameters: {}", methodName, method, paramTypes);
             }
-            methodResult = new Object[] {method, convertedArgs};
+            methodResult =
+                new Object[] {
+                  new ServiceMethod(method, Binding.CONVERT, callParams), convertedArgs
+                };
             break;
           } catch (Exception e) {
             log.warn(
@@ -248,7 +287,10 @@ public class ReflectionUtils {
             if (isTrace) {
               log.trace("Found method {} {} - parameters: {}", methodName, method, paramTypes);
             }
-            methodResult = new Object[] {method, convertedArgs};
+            methodResult =
+                new Object[] {
+                  new ServiceMethod(method, Binding.CONNECTION, callParams), convertedArgs
+                };
             break;
           } catch (Exception e) {
             log.warn(
@@ -271,6 +313,9 @@ public class ReflectionUtils {
             Arrays.asList(callParams));
         call.setStatus(Call.STATUS_METHOD_NOT_FOUND);
         call.setException(new MethodNotFoundException(methodName, args));
+      } else {
+        cache.put(
+            serviceClass, methodName, callParams, conn != null, (ServiceMethod) methodResult[0]);
       }
     }
     return methodResult;
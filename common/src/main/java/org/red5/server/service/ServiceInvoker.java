@@ -106,15 +106,16 @@ public class ServiceInvoker implements IServiceInvoker {
       log.trace("Method: {} call exception: ", methodName, call.getException());
     }
     // look up the method with provided matching arguments
-    Object[] methodResult = ReflectionUtils.findMethod(conn, call, service, methodName);
+    Object[] methodResult = ReflectionUtils.findServiceMethod(conn, call, service, methodName);
     // get the method from the result, methodResult itself cannot be null!
-    Method method = (Method) methodResult[0];
+    ServiceMethod serviceMethod = (ServiceMethod) methodResult[0];
     // checking  "|| call.getException() != null" here causes a reused call to fail if a previous
     // attempt failed
-    if (method == null) {
+    if (serviceMethod == null) {
       log.warn("Method not found: {}", methodName);
     } else {
       log.debug("Method found: {}", methodName);
+      Method method = serviceMethod.getMethod();
       // get the parameters; the value at index 1 can be null, but the methodResult array will never
       // be null
       @SuppressWarnings("null")
@@ -136,11 +137,11 @@ public class ServiceInvoker implements IServiceInvoker {
         Object result = null;
         log.debug("Invoking method: {}", method.toString());
         if (method.getReturnType().equals(Void.TYPE)) {
-          method.invoke(service, params);
+          serviceMethod.invoke(service, params);
           call.setStatus(Call.STATUS_SUCCESS_VOID);
           log.debug("result: void");
         } else {
-          result = method.invoke(service, params);
+          result = serviceMethod.invoke(service, params);
           call.setStatus(result == null ? Call.STATUS_SUCCESS_NULL : Call.STATUS_SUCCESS_RESULT);
           log.debug("result: {}", result);
         }
@@ -0,0 +1,204 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.service;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import org.red5.io.utils.ConversionUtils;
+import org.red5.server.api.IConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A service method resolved for one argument signature: the method, a method handle to invoke it
+ * and the plan for turning call arguments into method parameters. Built by {@link ReflectionUtils}
+ * on the first call with a signature and kept in the {@link ServiceMethodCache}.
+ *
+ * @author The Red5 Project
+ */
+public final class ServiceMethod {
+
+  private static final Logger log = LoggerFactory.getLogger(ServiceMethod.class);
+
+  /** How call arguments become method parameters */
+  public enum Binding {
+    /** Arguments are passed as they are: no parameters, a single array or list parameter */
+    DIRECT,
+    /** Arguments are converted to the parameter types */
+    CONVERT,
+    /** The connection is passed first, followed by the converted arguments */
+    CONNECTION
+  }
+
+  private static final MethodType INVOKER_TYPE =
+      MethodType.methodType(Object.class, Object.class, Object[].class);
+
+  private static final Object[] EMPTY = new Object[0];
+
+  /** Wraps what the method throws, see {@link #targetFailed(Throwable)} */
+  private static final MethodHandle TARGET_FAILED;
+
+  static {
+    try {
+      TARGET_FAILED =
+          MethodHandles.lookup()
+              .findStatic(
+                  ServiceMethod.class,
+                  "targetFailed",
+                  MethodType.methodType(Object.class, Throwable.class));
+    } catch (ReflectiveOperationException e) {
+      throw new ExceptionInInitializerError(e);
+    }
+  }
+
+  private final Method method;
+
+  private final Binding binding;
+
+  private final Class<?>[] paramTypes;
+
+  /** Parameters whose argument isn't an instance of the parameter type and must be converted */
+  private final boolean[] convert;
+
+  /** Spreading invoker of the method, null if the method is only reachable by reflection */
+  private final MethodHandle invoker;
+
+  /**
+   * Creates the dispatch for a method and the argument types it was resolved for.
+   *
+   * @param method method
+   * @param binding argument binding
+   * @param argTypes classes of the call arguments, null for null arguments
+   */
+  public ServiceMethod(Method method, Binding binding, Class<?>[] argTypes) {
+    this.method = method;
+    this.binding = binding;
+    paramTypes = method.getParameterTypes();
+    convert = new boolean[paramTypes.length];
+    if (binding != Binding.DIRECT) {
+      int offset = binding == Binding.CONNECTION ? 1 : 0;
+      for (int i = offset; i < paramTypes.length; i++) {
+        Class<?> argType = argTypes[i - offset];
+        Class<?> paramType = MethodType.methodType(paramTypes[i]).wrap().returnType();
+        convert[i] = argType == null ? paramTypes[i].isPrimitive() : !paramType.isAssignableFrom(argType);
+      }
+    }
+    MethodHandle handle = null;
+    try {
+      MethodHandle target = MethodHandles.publicLookup().unreflect(method);
+      // only the method itself is guarded, failures adapting the arguments to it are not wrapped
+      target =
+          MethodHandles.catchException(
+              target,
+              Throwable.class,
+              TARGET_FAILED.asType(
+                  MethodType.methodType(target.type().returnType(), Throwable.class)));
+      handle = target.asSpreader(Object[].class, paramTypes.length).asType(INVOKER_TYPE);
+    } catch (IllegalAccessException | RuntimeException e) {
+      log.debug("No method handle for {}, it is invoked by reflection", method, e);
+    }
+    invoker = handle;
+  }
+
+  public Method getMethod() {
+    return method;
+  }
+
+  public Binding getBinding() {
+    return binding;
+  }
+
+  /**
+   * Builds the method parameters from the call arguments, converting only the ones the plan says
+   * need it.
+   *
+   * @param conn current connection, used by the connection binding
+   * @param args call arguments
+   * @return parameters
+   * @throws Exception if an argument can't be converted to its parameter type
+   */
+  public Object[] parameters(IConnection conn, Object[] args) throws Exception {
+    switch (binding) {
+      case DIRECT:
+        return args;
+      case CONNECTION:
+        {
+          Object[] params = new Object[paramTypes.length];
+          params[0] = conn;
+          for (int i = 1; i < params.length; i++) {
+            Object arg = args[i - 1];
+            params[i] = convert[i] ? ConversionUtils.convert(arg, paramTypes[i]) : arg;
+          }
+          return params;
+        }
+      default:
+        {
+          Object[] params = new Object[paramTypes.length];
+          for (int i = 0; i < params.length; i++) {
+            params[i] = convert[i] ? ConversionUtils.convert(args[i], paramTypes[i]) : args[i];
+          }
+          return params;
+        }
+    }
+  }
+
+  /**
+   * Invokes the method. As with reflection, exceptions thrown by the method are wrapped in an
+   * {@link InvocationTargetException} and parameters which don't fit the method are reported with
+   * an {@link IllegalArgumentException}.
+   *
+   * @param service service object
+   * @param params parameters
+   * @return result, null for void methods
+   * @throws IllegalAccessException if the method isn't accessible
+   * @throws InvocationTargetException if the method threw an exception
+   */
+  public Object invoke(Object service, Object[] params)
+      throws IllegalAccessException, InvocationTargetException {
+    if (invoker == null) {
+      return method.invoke(service, params);
+    }
+    int count = params != null ? params.length : 0;
+    if (count != paramTypes.length) {
+      throw new IllegalArgumentException(
+          String.format("Wrong number of arguments: %d expected: %d", count, paramTypes.length));
+    }
+    // a typed local, the exact invocation is checked against the static types of its arguments
+    Object[] args = count == 0 ? EMPTY : params;
+    try {
+      return invoker.invokeExact(service, args);
+    } catch (InvocationTargetException e) {
+      throw e;
+    } catch (Error e) {
+      throw e;
+    } catch (Throwable t) {
+      // class cast or null of the argument adaptation, the method wasn't entered
+      throw new IllegalArgumentException(t.toString(), t);
+    }
+  }
+
+  /**
+   * Handler of everything the method throws.
+   *
+   * @param t throwable of the method
+   * @return never
+   * @throws InvocationTargetException wrapping the throwable
+   */
+  @SuppressWarnings("unused")
+  private static Object targetFailed(Throwable t) throws InvocationTargetException {
+    throw new InvocationTargetException(t);
+  }
+
+  @Override
+  public String toString() {
+    return "ServiceMethod [method=" + method + ", binding=" + binding + "]";
+  }
+}
@@ -0,0 +1,222 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.service;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.red5.server.jmx.mxbeans.ServiceMethodCacheMXBean;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Dispatch table of service methods, keyed by service class, method name and the classes of the
+ * call arguments. Tables hang off their service class, so they go away with the class loader of an
+ * unloaded application; re-registering a service handler drops the table of its class.
+ *
+ * <p>{@link ReflectionUtils} resolves through the cache created last, normally the
+ * serviceMethodCache bean which exposes the counters over JMX. Code calling services without a
+ * server context, such as tests, gets a cache of its own on the first lookup.
+ *
+ * @author The Red5 Project
+ */
+@ManagedResource(
+    objectName = "org.red5.server:name=serviceMethodCache,type=ServiceMethodCache")
+public class ServiceMethodCache implements ServiceMethodCacheMXBean {
+
+  private static volatile ServiceMethodCache instance;
+
+  private final ClassValue<Table> tables =
+      new ClassValue<Table>() {
+        @Override
+        protected Table computeValue(Class<?> type) {
+          return new Table(generation.get());
+        }
+      };
+
+  /** Bumped by {@link #clear()}, tables of an older generation are dropped when next used */
+  private final AtomicInteger generation = new AtomicInteger();
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong invalidations = new AtomicLong();
+
+  private volatile boolean enabled = true;
+
+  public ServiceMethodCache() {
+    instance = this;
+  }
+
+  /**
+   * Returns the cache created last, creating one for lookups made without a server context.
+   *
+   * @return cache
+   */
+  public static ServiceMethodCache getInstance() {
+    ServiceMethodCache cache = instance;
+    if (cache == null) {
+      synchronized (ServiceMethodCache.class) {
+        cache = instance;
+        if (cache == null) {
+          cache = new ServiceMethodCache();
+        }
+      }
+    }
+    return cache;
+  }
+
+  /**
+   * Returns the method resolved earlier for the given signature.
+   *
+   * @param serviceClass class of the service
+   * @param methodName method name
+   * @param argTypes classes of the arguments, null for null arguments
+   * @param withConnection whether a connection was available for the call
+   * @return method or null if the signature wasn't resolved yet
+   */
+  public ServiceMethod get(
+      Class<?> serviceClass, String methodName, Class<?>[] argTypes, boolean withConnection) {
+    if (!enabled) {
+      return null;
+    }
+    ServiceMethod method = table(serviceClass).get(new Key(methodName, argTypes, withConnection));
+    if (method != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+    return method;
+  }
+
+  /**
+   * Stores the method resolved for a signature.
+   *
+   * @param serviceClass class of the service
+   * @param methodName method name
+   * @param argTypes classes of the arguments, null for null arguments
+   * @param withConnection whether a connection was available for the call
+   * @param method resolved method
+   */
+  public void put(
+      Class<?> serviceClass,
+      String methodName,
+      Class<?>[] argTypes,
+      boolean withConnection,
+      ServiceMethod method) {
+    if (enabled) {
+      table(serviceClass).put(new Key(methodName, argTypes, withConnection), method);
+    }
+  }
+
+  /**
+   * Drops the methods resolved for a service class.
+   *
+   * @param serviceClass class of the service
+   */
+  public void invalidate(Class<?> serviceClass) {
+    tables.remove(serviceClass);
+    invalidations.incrementAndGet();
+  }
+
+  private ConcurrentMap<Key, ServiceMethod> table(Class<?> serviceClass) {
+    Table table = tables.get(serviceClass);
+    if (table.generation != generation.get()) {
+      tables.remove(serviceClass);
+      table = tables.get(serviceClass);
+    }
+    return table.methods;
+  }
+
+  /** {@inheritDoc} */
+  public void clear() {
+    generation.incrementAndGet();
+    invalidations.incrementAndGet();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * @param enabled whether resolved methods are cached; when disabled every call is resolved by
+   *     reflection
+   */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getInvalidations() {
+    return invalidations.get();
+  }
+
+  /** {@inheritDoc} */
+  public double getHitRatio() {
+    long h = hits.get();
+    long total = h + misses.get();
+    return total > 0 ? (double) h / total : 0d;
+  }
+
+  private static final class Table {
+
+    final int generation;
+
+    final ConcurrentMap<Key, ServiceMethod> methods = new ConcurrentHashMap<>();
+
+    Table(int generation) {
+      this.generation = generation;
+    }
+  }
+
+  private static final class Key {
+
+    final String methodName;
+
+    final Class<?>[] argTypes;
+
+    final boolean withConnection;
+
+    final int hash;
+
+    Key(String methodName, Class<?>[] argTypes, boolean withConnection) {
+      this.methodName = methodName;
+      this.argTypes = argTypes;
+      this.withConnection = withConnection;
+      hash = (methodName.hashCode() * 31 + Arrays.hashCode(argTypes)) * 31 + (withConnection ? 1 : 0);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return withConnection == other.withConnection
+          && methodName.equals(other.methodName)
+          && Arrays.equals(argTypes, other.argTypes);
+    }
+  }
+}
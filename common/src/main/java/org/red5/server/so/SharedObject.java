@@ -20,14 +20,17 @@ import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.io.object.Deserializer;
 import org.red5.io.object.Input;
 import org.red5.io.object.Output;
 import org.red5.io.object.Serializer;
 import org.red5.server.AttributeStore;
 import org.red5.server.api.IAttributeStore;
+import org.red5.server.api.IConnection.Encoding;
 import org.red5.server.api.Red5;
 import org.red5.server.api.event.IEventListener;
 import org.red5.server.api.persistence.IPersistable;
@@ -37,6 +40,7 @@ import org.red5.server.api.statistics.ISharedObjectStatistics;
 import org.red5.server.api.statistics.support.StatisticsCounter;
 import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.codec.RTMP;
+import org.red5.server.net.rtmp.codec.RTMPProtocolEncoder;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.so.ISharedObjectEvent.Type;
 import org.slf4j.Logger;
@@ -56,6 +60,9 @@ public class SharedObject extends AttributeStore
 
   protected static Logger log = LoggerFactory.getLogger(SharedObject.class);
 
+  /** Encoder for the bodies of coalesced broadcasts */
+  private static final RTMPProtocolEncoder broadcastEncoder = new RTMPProtocolEncoder();
+
   /** Reentrant lock with fairness enabled; used for writes. */
   private transient ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
 
@@ -117,6 +124,30 @@ public class SharedObject extends AttributeStore
   /** Counts number of "send message" events. */
   protected AtomicInteger sendStats = new AtomicInteger();
 
+  /** Sync events waiting for the next coalesced broadcast, guarded by this */
+  private transient TreeSet<ISharedObjectEvent> pendingEvents = new TreeSet<>();
+
+  /** Pending sync events per source listener, guarded by this */
+  private transient Map<IEventListener, Set<ISharedObjectEvent>> pendingSourceEvents =
+      new HashMap<>();
+
+  /** Time the oldest pending sync event was added */
+  private transient long pendingSince;
+
+  /** Whether or not a coalesced broadcast is scheduled */
+  private final transient AtomicBoolean broadcastScheduled = new AtomicBoolean();
+
+  /** Number of coalesced broadcasts */
+  protected AtomicLong broadcasts = new AtomicLong();
+
+  /** Number of events sent in coalesced broadcasts */
+  protected AtomicLong broadcastEvents = new AtomicLong();
+
+  /** Total and maximum time in nanoseconds events waited for their broadcast */
+  protected AtomicLong broadcastLatency = new AtomicLong();
+
+  protected AtomicLong broadcastMaxLatency = new AtomicLong();
+
   /** Whether or not this shared object is closed */
   protected volatile AtomicBoolean closed = new AtomicBoolean(false);
 
@@ -290,6 +321,11 @@ public class SharedObject extends AttributeStore
         // get all current sync events
         final TreeSet<ISharedObjectEvent> events = new TreeSet<>(syncEvents);
         syncEvents.removeAll(events);
+        if (SharedObjectService.getUpdateTick() > 0) {
+          // coalesce with the other updates of this tick
+          coalesce(events);
+          return;
+        }
         // updates all registered clients of this shared object
         listeners.stream()
             .filter(listener -> listener != source)
@@ -321,6 +357,92 @@ public class SharedObject extends AttributeStore
     }
   }
 
+  /**
+   * Adds sync events to the pending broadcast, scheduling the broadcast on the first events of a
+   * tick. The events sent by the current source are tracked so it isn't sent its own changes.
+   *
+   * @param events sync events
+   */
+  private void coalesce(Set<ISharedObjectEvent> events) {
+    if (pendingEvents.isEmpty()) {
+      pendingSince = System.nanoTime();
+    }
+    pendingEvents.addAll(events);
+    if (source != null) {
+      pendingSourceEvents.computeIfAbsent(source, s -> new HashSet<>()).addAll(events);
+    }
+    if (broadcastScheduled.compareAndSet(false, true)) {
+      SharedObjectService.scheduleTask(this::broadcast, SharedObjectService.getUpdateTick());
+    }
+  }
+
+  /**
+   * Sends the coalesced events of the past tick to all listeners. The message body is encoded once
+   * per encoding in use and shared, only listeners which were the source of some of the events get
+   * a message of their own.
+   */
+  protected void broadcast() {
+    final TreeSet<ISharedObjectEvent> events;
+    final Map<IEventListener, Set<ISharedObjectEvent>> sourceEvents;
+    final long since;
+    synchronized (this) {
+      broadcastScheduled.set(false);
+      if (pendingEvents.isEmpty()) {
+        return;
+      }
+      events = pendingEvents;
+      sourceEvents = pendingSourceEvents;
+      since = pendingSince;
+      pendingEvents = new TreeSet<>();
+      pendingSourceEvents = new HashMap<>();
+    }
+    final String name = getName();
+    final int currentVersion = version.get();
+    // encoded bodies, indexed by encoding ordinal and created on first use
+    final IoBuffer[] bodies = new IoBuffer[Encoding.values().length];
+    for (IEventListener listener : getListeners()) {
+      final RTMPConnection con = (RTMPConnection) listener;
+      if (!con.isConnected()) {
+        log.trace("Skipping {} connection: {}", RTMP.states[con.getStateCode()], con.getId());
+        // if the connection is 'disconnected' remove it
+        if (con.isDisconnected()) {
+          unregister(con);
+        }
+        continue;
+      }
+      Red5.setConnectionLocal(con);
+      try {
+        Set<ISharedObjectEvent> own = sourceEvents.get(listener);
+        if (own != null) {
+          // everything but its own changes, encoded for this connection only
+          TreeSet<ISharedObjectEvent> others = new TreeSet<>(events);
+          others.removeAll(own);
+          if (!others.isEmpty()) {
+            con.sendSharedObjectMessage(name, currentVersion, persistent, others);
+          }
+        } else {
+          Encoding encoding = con.getEncoding();
+          IoBuffer body = bodies[encoding.ordinal()];
+          if (body == null) {
+            SharedObjectMessage message =
+                new SharedObjectMessage(null, name, currentVersion, persistent);
+            message.addEvents(events);
+            body = broadcastEncoder.encodeSharedObject(message, encoding, encoding);
+            bodies[encoding.ordinal()] = body;
+          }
+          con.sendEncodedSharedObjectMessage(name, currentVersion, persistent, body);
+        }
+      } finally {
+        Red5.setConnectionLocal(null);
+      }
+    }
+    long latency = System.nanoTime() - since;
+    broadcasts.incrementAndGet();
+    broadcastEvents.addAndGet(events.size());
+    broadcastLatency.addAndGet(latency);
+    broadcastMaxLatency.accumulateAndGet(latency, Math::max);
+  }
+
   /** Send notification about modification of SO */
   protected void notifyModified() {
     log.debug("notifyModified - updaters: {}", updateCounter.get());
@@ -699,6 +821,10 @@ public class SharedObject extends AttributeStore
     removeAttributes();
     listeners.clear();
     syncEvents.clear();
+    synchronized (this) {
+      pendingEvents.clear();
+      pendingSourceEvents.clear();
+    }
     ownerMessage.getEvents().clear();
   }
 
@@ -774,6 +900,28 @@ public class SharedObject extends AttributeStore
     return sendStats.intValue();
   }
 
+  /** {@inheritDoc} */
+  public long getTotalBroadcasts() {
+    return broadcasts.get();
+  }
+
+  /** {@inheritDoc} */
+  public double getAverageBroadcastBatchSize() {
+    long count = broadcasts.get();
+    return count > 0 ? broadcastEvents.get() / (double) count : 0d;
+  }
+
+  /** {@inheritDoc} */
+  public double getAverageBroadcastLatency() {
+    long count = broadcasts.get();
+    return count > 0 ? broadcastLatency.get() / (double) count / 1000000d : 0d;
+  }
+
+  /** {@inheritDoc} */
+  public long getMaxBroadcastLatency() {
+    return TimeUnit.NANOSECONDS.toMillis(broadcastMaxLatency.get());
+  }
+
   /** {@inheritDoc} */
   public void setDirty(boolean dirty) {
     log.trace("setDirty: {}", dirty);
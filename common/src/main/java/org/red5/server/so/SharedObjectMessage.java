@@ -14,6 +14,7 @@ import java.util.List;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentSkipListSet;
+import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.server.api.event.IEventListener;
 import org.red5.server.net.rtmp.event.BaseEvent;
 import org.slf4j.Logger;
@@ -38,6 +39,9 @@ public class SharedObjectMessage extends BaseEvent implements ISharedObjectMessa
   /** Whether SO persistent */
   private boolean persistent;
 
+  /** Body encoded once for a broadcast and shared by every listener, flipped */
+  private transient IoBuffer encodedBody;
+
   public SharedObjectMessage() {}
 
   /**
@@ -120,6 +124,25 @@ public class SharedObjectMessage extends BaseEvent implements ISharedObjectMessa
     this.persistent = persistent;
   }
 
+  /**
+   * Returns the already encoded body of this message, if any.
+   *
+   * @return encoded body or null
+   */
+  public IoBuffer getEncodedBody() {
+    return encodedBody;
+  }
+
+  /**
+   * Sets a body encoded ahead of time; the encoder hands out views of it instead of encoding the
+   * events again.
+   *
+   * @param encodedBody encoded body, flipped
+   */
+  public void setEncodedBody(IoBuffer encodedBody) {
+    this.encodedBody = encodedBody;
+  }
+
   /** {@inheritDoc} */
   public boolean addEvent(ISharedObjectEvent.Type type, String key, Object value) {
     return events.add(new SharedObjectEvent(type, key, value));
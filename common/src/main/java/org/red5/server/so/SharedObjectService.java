@@ -7,6 +7,7 @@
 
 package org.red5.server.so;
 
+import java.time.Instant;
 import java.util.Set;
 import org.red5.server.api.persistence.IPersistable;
 import org.red5.server.api.persistence.IPersistenceStore;
@@ -36,6 +37,12 @@ public class SharedObjectService implements ISharedObjectService {
   /** Service used to provide updates / notifications. */
   private static ThreadPoolTaskScheduler scheduler;
 
+  /**
+   * Interval in milliseconds over which updates to the listeners are coalesced and encoded once; 0
+   * sends every update to each listener as it happens.
+   */
+  private static long updateTick;
+
   /** Persistence class name */
   private String persistenceClassName = "org.red5.server.persistence.RamPersistence";
 
@@ -48,6 +55,34 @@ public class SharedObjectService implements ISharedObjectService {
     scheduler.execute(task);
   }
 
+  /**
+   * Pushes a task to the scheduler for single execution after the given delay.
+   *
+   * @param task runnable
+   * @param delay delay in milliseconds
+   */
+  public static void scheduleTask(Runnable task, long delay) {
+    scheduler.schedule(task, Instant.now().plusMillis(delay));
+  }
+
+  /**
+   * Returns the update coalescing interval.
+   *
+   * @return interval in milliseconds, 0 when disabled
+   */
+  public static long getUpdateTick() {
+    return updateTick;
+  }
+
+  /**
+   * Sets the interval over which shared object updates are coalesced into a single broadcast.
+   *
+   * @param updateTick interval in milliseconds, 0 to disable
+   */
+  public void setUpdateTick(long updateTick) {
+    SharedObjectService.updateTick = Math.max(0, updateTick);
+  }
+
   /**
    * @param maximumEventsPerUpdate the maximumEventsPerUpdate to set
    */
@@ -66,8 +66,10 @@ import org.red5.server.messaging.IProvider;
 import org.red5.server.messaging.IPushableConsumer;
 import org.red5.server.messaging.OOBControlMessage;
 import org.red5.server.messaging.PipeConnectionEvent;
+import org.red5.server.net.rtmp.codec.PreChunkedFrame;
 import org.red5.server.net.rtmp.event.AudioData;
 import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.MediaDataStreamEvent;
 import org.red5.server.net.rtmp.event.Notify;
 import org.red5.server.net.rtmp.event.VideoData;
 import org.red5.server.net.rtmp.message.Constants;
@@ -160,6 +162,12 @@ public class ClientBroadcastStream extends AbstractClientStream
   /** Whether or not to register with JMX. */
   protected boolean registerJMX;
 
+  /**
+   * Minimum number of live consumers for audio and video bodies to be chunked once and shared by
+   * all of them; 0 disables sharing.
+   */
+  protected int sharedChunkingThreshold;
+
   /** Stream name aliases for the entire server instance. */
   protected static CopyOnWriteArraySet<String> localAliases = new CopyOnWriteArraySet<>();
 
@@ -339,6 +347,13 @@ public class ClientBroadcastStream extends AbstractClientStream
           try {
             // route to live
             if (livePipe != null) {
+              // with enough subscribers, chunk the media body once for all of them
+              if (buf != null
+                  && sharedChunkingThreshold > 0
+                  && rtmpEvent instanceof MediaDataStreamEvent
+                  && livePipe.getConsumers().size() >= sharedChunkingThreshold) {
+                ((MediaDataStreamEvent<?>) rtmpEvent).setPreChunkedFrame(new PreChunkedFrame(buf));
+              }
               // create new RTMP message, initialize it and push through pipe
               RTMPMessage msg = RTMPMessage.build(rtmpEvent, eventTime);
               livePipe.pushMessage(msg);
@@ -477,6 +492,20 @@ public class ClientBroadcastStream extends AbstractClientStream
     this.registerJMX = registerJMX;
   }
 
+  /**
+   * @return the sharedChunkingThreshold
+   */
+  public int getSharedChunkingThreshold() {
+    return sharedChunkingThreshold;
+  }
+
+  /**
+   * @param sharedChunkingThreshold the minimum live consumers for shared chunking, 0 to disable
+   */
+  public void setSharedChunkingThreshold(int sharedChunkingThreshold) {
+    this.sharedChunkingThreshold = sharedChunkingThreshold;
+  }
+
   /** Notifies handler on stream broadcast close */
   protected void notifyBroadcastClose() {
     final IStreamAwareScopeHandler handler = getStreamAwareHandler();
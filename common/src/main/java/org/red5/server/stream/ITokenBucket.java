@@ -40,6 +40,17 @@ public interface ITokenBucket {
    */
   boolean acquireTokenNonblocking(long tokenCount, ITokenBucketCallback callback);
 
+  /**
+   * Nonblockingly acquire tokens for an acquisition which was turned down before; turning it down
+   * again isn't counted as another throttle. Otherwise the same as {@link
+   * #acquireTokenNonblocking(long, ITokenBucketCallback)}.
+   *
+   * @param tokenCount Number of tokens
+   * @param callback Callback or null
+   * @return true if successfully acquired or false if not acquired.
+   */
+  boolean retryToken(long tokenCount, ITokenBucketCallback callback);
+
   /**
    * Nonblockingly acquire token. The upper limit is specified. If not enough tokens are left in
    * bucket, all remaining will be returned.
@@ -7,6 +7,8 @@
 
 package org.red5.server.stream;
 
+import org.red5.server.api.IConnection;
+
 /**
  * A service used to create and manage token buckets.
  *
@@ -25,6 +27,24 @@ public interface ITokenBucketService {
    */
   ITokenBucket createTokenBucket(long capacity, long speed);
 
+  /**
+   * Get the bucket of a connection, shared by all its streams and placed below the bucket of the
+   * connection's scope. Every call is to be paired with a call to {@link
+   * #removeTokenBucket(ITokenBucket)}.
+   *
+   * @param conn Connection
+   * @return Bucket of the connection
+   */
+  ITokenBucket getTokenBucket(IConnection conn);
+
+  /**
+   * Returns whether any bucket the service hands out limits the rate. Streams started while none
+   * does are sent unshaped.
+   *
+   * @return true if a rate is set
+   */
+  boolean isShaping();
+
   /**
    * Remove this bucket.
    *
@@ -8,6 +8,7 @@
 package org.red5.server.stream;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -64,6 +65,7 @@ import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
 import org.red5.server.net.rtmp.status.Status;
 import org.red5.server.net.rtmp.status.StatusCodes;
+import org.red5.server.stream.ITokenBucket.ITokenBucketCallback;
 import org.red5.server.stream.message.RTMPMessage;
 import org.red5.server.stream.message.ResetMessage;
 import org.red5.server.stream.message.StatusMessage;
@@ -184,8 +186,11 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
   /** Decision: 0 for Live, 1 for File, 2 for Wait, 3 for N/A */
   private int playDecision = 3;
 
-  /** Index of the buffered interframe to send instead of current frame */
-  private int bufferedInterframeIdx = -1;
+  /** Time of the last play request, in nanoseconds */
+  private long playRequestTime;
+
+  /** Milliseconds from the play request to the first video frame sent, -1 until one is sent */
+  private volatile long timeToFirstFrame = -1;
 
   /** List of pending operations */
   private ConcurrentLinkedQueue<Runnable> pendingOperations = new ConcurrentLinkedQueue<>();
@@ -200,6 +205,54 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 
   private boolean configsDone;
 
+  /** Token bucket service shaping the egress of the stream, null if not shaped */
+  private ITokenBucketService tokenBucketService;
+
+  /** Bucket of the connection, taken from the service when the engine starts */
+  private volatile ITokenBucket tokenBucket;
+
+  /** Body of the last message the bucket turned down, retried without counting another throttle */
+  private volatile IRTMPEvent throttledMessage;
+
+  /** Live messages waiting for tokens, in order */
+  private final ConcurrentLinkedQueue<RTMPMessage> pacedMessages = new ConcurrentLinkedQueue<>();
+
+  private final AtomicInteger pacedCount = new AtomicInteger();
+
+  /** Whether a token callback is registered to send the paced messages */
+  private final AtomicBoolean pacing = new AtomicBoolean();
+
+  /** Sends the paced messages whose tokens are available, holding the pacing flag */
+  private final IScheduledJob pacedSend =
+      new IScheduledJob() {
+        public void execute(ISchedulingService service) {
+          sendPacedMessages(null);
+          pacing.set(false);
+          schedulePacing();
+        }
+      };
+
+  /**
+   * Sends paced messages when their tokens are available. Token callbacks run on the refill thread
+   * of the service and must not block, so the messages are written from a scheduled job.
+   */
+  private final ITokenBucketCallback pacer =
+      new ITokenBucketCallback() {
+
+        public void available(ITokenBucket bucket, long tokenCount) {
+          try {
+            schedulingService.addScheduledOnceJob(0, pacedSend);
+          } catch (Exception e) {
+            log.debug("Paced send not scheduled, the stream is stopping", e);
+            pacing.set(false);
+          }
+        }
+
+        public void reset(ITokenBucket bucket, long tokenCount) {
+          pacing.set(false);
+        }
+      };
+
   /** Constructs a new PlayEngine. */
   private PlayEngine(Builder builder) {
     subscriberStream = builder.subscriberStream;
@@ -248,6 +301,16 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
     this.underrunTrigger = underrunTrigger;
   }
 
+  /**
+   * Sets the service whose token buckets pace the messages sent, VOD messages waiting in the
+   * pull and push job and live ones in a queue of their own. Must be set before the engine starts.
+   *
+   * @param tokenBucketService token bucket service or null to send unshaped
+   */
+  public void setTokenBucketService(ITokenBucketService tokenBucketService) {
+    this.tokenBucketService = tokenBucketService;
+  }
+
   void setMessageOut(IMessageOutput msgOut) {
     this.msgOutReference.set(msgOut);
   }
@@ -269,6 +332,9 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         } else if (isDebug) {
           log.debug("Message output was already set for stream: {}", subscriberStream);
         }
+        if (tokenBucketService != null && tokenBucket == null && tokenBucketService.isShaping()) {
+          tokenBucket = tokenBucketService.getTokenBucket(subscriberStream.getConnection());
+        }
         break;
       default:
         throw new IllegalStateException(
@@ -302,6 +368,8 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
    */
   public void play(IPlayItem item, boolean withReset)
       throws StreamNotFoundException, IllegalStateException, IOException {
+    playRequestTime = System.nanoTime();
+    timeToFirstFrame = -1;
     IMessageInput in = null;
     // cannot play if state is not stopped
     switch (subscriberStream.getState()) {
@@ -389,7 +457,6 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                 }
                 sendNotifications = false;
                 if (videoCodec.getNumInterframes() > 0 || videoCodec.getKeyframe() != null) {
-                  bufferedInterframeIdx = 0;
                   videoFrameDropper.reset(IFrameDropper.SEND_ALL);
                 }
               }
@@ -499,7 +566,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
    * <ul>
    *   <li>Metadata
    *   <li>Decoder configurations (ie. AVC codec)
-   *   <li>Most recent keyframe
+   *   <li>Current group of pictures
    * </ul>
    *
    * @throws IOException
@@ -514,25 +581,34 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
       IBroadcastStream stream =
           (IBroadcastStream) ((IBroadcastScope) in).getClientBroadcastStream();
       // prevent an NPE when a play list is created and then immediately flushed
-      int ts = 0;
       if (stream != null) {
-        Notify metaData = stream.getMetaData();
-        // check for metadata to send
-        if (metaData != null) {
-          ts = metaData.getTimestamp();
-          log.debug("Metadata is available");
-          RTMPMessage metaMsg = RTMPMessage.build(metaData, metaData.getTimestamp());
-          sendMessage(metaMsg);
-        } else {
-          log.debug("No metadata available");
-        }
+        IVideoStreamCodec videoCodec = null;
+        IAudioStreamCodec audioCodec = null;
         IStreamCodecInfo codecInfo = stream.getCodecInfo();
         log.debug("Codec info: {}", codecInfo);
         if (codecInfo instanceof StreamCodecInfo) {
           StreamCodecInfo info = (StreamCodecInfo) codecInfo;
-          // handle video codec with configuration
-          IVideoStreamCodec videoCodec = info.getVideoCodec();
-          log.debug("Video codec: {}", videoCodec);
+          videoCodec = info.getVideoCodec();
+          audioCodec = info.getAudioCodec();
+        }
+        log.debug("Video codec: {} audio codec: {}", videoCodec, audioCodec);
+        // the group of pictures keeps its timestamps, the metadata and configurations go out at the
+        // start of it, so the stream start is taken from the group and live frames follow on
+        FrameData[] gop = videoCodec != null ? videoCodec.getGroupOfPictures() : new FrameData[0];
+        try {
+          int ts = gop.length > 0 ? gop[0].getTimestamp() : 0;
+          Notify metaData = stream.getMetaData();
+          // check for metadata to send
+          if (metaData != null) {
+            if (gop.length == 0) {
+              ts = metaData.getTimestamp();
+            }
+            log.debug("Metadata is available");
+            // a copy, the metadata of the stream is shared by its subscribers
+            sendMessage(RTMPMessage.build(new Notify(metaData.getData()), ts));
+          } else {
+            log.debug("No metadata available");
+          }
           if (videoCodec != null) {
             // check for decoder configuration to send
             IoBuffer config = videoCodec.getDecoderConfiguration();
@@ -542,20 +618,9 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
               log.debug("Pushing video decoder configuration");
               sendMessage(RTMPMessage.build(conf, ts));
             }
-            // check for keyframes to send
-            FrameData[] keyFrames = videoCodec.getKeyframes();
-            for (FrameData keyframe : keyFrames) {
-              log.debug("Keyframe is available");
-              VideoData video = new VideoData(keyframe.getFrame(), true);
-              log.debug("Pushing keyframe");
-              sendMessage(RTMPMessage.build(video, ts));
-            }
           } else {
             log.debug("No video decoder configuration available");
           }
-          // handle audio codec with configuration
-          IAudioStreamCodec audioCodec = info.getAudioCodec();
-          log.debug("Audio codec: {}", audioCodec);
           if (audioCodec != null) {
             // check for decoder configuration to send
             IoBuffer config = audioCodec.getDecoderConfiguration();
@@ -568,6 +633,22 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
           } else {
             log.debug("No audio decoder configuration available");
           }
+          // send the current group of pictures in one write
+          List<RTMPMessage> frames = new ArrayList<>(gop.length);
+          for (FrameData frame : gop) {
+            IoBuffer data = frame.getFrame();
+            if (data != null) {
+              frames.add(RTMPMessage.build(new VideoData(data), frame.getTimestamp()));
+            }
+          }
+          if (!frames.isEmpty()) {
+            log.debug("Pushing group of pictures, frames: {}", frames.size());
+            sendMessages(frames);
+          }
+        } finally {
+          for (FrameData frame : gop) {
+            frame.release();
+          }
         }
       }
     } else {
@@ -800,6 +881,10 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
       subscriberStream.setState(StreamState.CLOSED);
       clearWaitJobs();
       releasePendingMessage();
+      if (tokenBucket != null) {
+        tokenBucketService.removeTokenBucket(tokenBucket);
+        tokenBucket = null;
+      }
       lastMessageTs = 0;
       // XXX is clear ping required?
       // sendClearPing();
@@ -850,6 +935,11 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         // too many messages already queued on the connection
         return false;
       }
+      // tokens are taken last, a message is sent once its tokens are taken
+      ITokenBucket bucket = tokenBucket;
+      if (bucket != null && !acquireTokens(bucket, message, null)) {
+        return false;
+      }
       return true;
     } else {
       String itemName = "Undefined";
@@ -956,14 +1046,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
       try {
         out.pushMessage(message);
         if (message instanceof RTMPMessage) {
-          IRTMPEvent body = ((RTMPMessage) message).getBody();
-          // update the last message sent's timestamp
-          lastMessageTs = body.getTimestamp();
-          IoBuffer streamData = null;
-          if (body instanceof IStreamData
-              && (streamData = ((IStreamData<?>) body).getData()) != null) {
-            bytesSent.addAndGet(streamData.limit());
-          }
+          messageSent(((RTMPMessage) message).getBody());
         }
       } catch (IOException err) {
         log.warn("Error while pushing message", err);
@@ -973,12 +1056,79 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
     }
   }
 
+  /**
+   * Updates the last timestamp and byte count for a message that was sent.
+   *
+   * @param body event of the message
+   */
+  private void messageSent(IRTMPEvent body) {
+    // update the last message sent's timestamp
+    lastMessageTs = body.getTimestamp();
+    IoBuffer streamData = null;
+    if (body instanceof IStreamData && (streamData = ((IStreamData<?>) body).getData()) != null) {
+      bytesSent.addAndGet(streamData.limit());
+    }
+    if (timeToFirstFrame == -1 && body instanceof VideoData && !((VideoData) body).isConfig()) {
+      timeToFirstFrame = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - playRequestTime);
+      log.debug("Time to first frame: {} ms", timeToFirstFrame);
+    }
+  }
+
+  /**
+   * Sends RTMP messages in one write if the connection consumer supports it, one by one otherwise.
+   *
+   * @param messagesIn incoming RTMP messages, in order
+   */
+  private void sendMessages(List<RTMPMessage> messagesIn) {
+    List<RTMPMessage> messages = new ArrayList<>(messagesIn.size());
+    for (RTMPMessage messageIn : messagesIn) {
+      RTMPMessage messageOut = prepareMessage(messageIn);
+      if (messageOut == null) {
+        return;
+      }
+      messages.add(messageOut);
+    }
+    IMessageOutput out = msgOutReference.get();
+    if (out != null) {
+      Map<String, Object> paramMap = new HashMap<>(1);
+      paramMap.put("messages", messages);
+      OOBControlMessage oobCtrlMsg = new OOBControlMessage();
+      oobCtrlMsg.setTarget("ConnectionConsumer");
+      oobCtrlMsg.setServiceName("writeBatch");
+      oobCtrlMsg.setServiceParamMap(paramMap);
+      out.sendOOBControlMessage(this, oobCtrlMsg);
+      if (Boolean.TRUE.equals(oobCtrlMsg.getResult())) {
+        for (RTMPMessage message : messages) {
+          messageSent(message.getBody());
+        }
+        return;
+      }
+    }
+    for (RTMPMessage message : messages) {
+      doPushMessage(message);
+    }
+  }
+
   /**
    * Send an RTMP message
    *
    * @param messageIn incoming RTMP message
    */
   private void sendMessage(RTMPMessage messageIn) {
+    RTMPMessage messageOut = prepareMessage(messageIn);
+    if (messageOut != null) {
+      doPushMessage(messageOut);
+    }
+  }
+
+  /**
+   * Creates the outgoing copy of an RTMP message with its timestamp adjusted for the client. Stops
+   * a vod item once its length was sent.
+   *
+   * @param messageIn incoming RTMP message
+   * @return outgoing message or null if playback was stopped
+   */
+  private RTMPMessage prepareMessage(RTMPMessage messageIn) {
     IRTMPEvent eventIn = messageIn.getBody();
     IRTMPEvent event;
     switch (eventIn.getDataType()) {
@@ -1033,7 +1183,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         if (duration - streamOffset >= length) {
           // sent enough data to client
           stop();
-          return;
+          return null;
         }
       }
     } else {
@@ -1054,7 +1204,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         }
       }
     }
-    doPushMessage(messageOut);
+    return messageOut;
   }
 
   /** Send clear ping. Lets client know that stream has no more data to send. */
@@ -1473,7 +1623,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                 // pending video messages and drop video packets until the queue is below the
                 // threshold.
                 // only check for frame dropping if the codec supports it
-                long pendingVideos = pendingVideoMessages();
+                long pendingVideos = pendingVideoMessages() + pacedCount.get();
                 if (isTrace) {
                   log.trace(
                       "Pending messages sessionId={} stream={} pending={} threshold={} sequential={} dropped={}",
@@ -1530,20 +1680,6 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                   videoFrameDropper.dropPacket(rtmpMessage);
                   return;
                 }
-                // we are ok to send, check if we should send buffered frame
-                if (bufferedInterframeIdx > -1) {
-                  IVideoStreamCodec.FrameData fd =
-                      videoCodec.getInterframe(bufferedInterframeIdx++);
-                  if (fd != null) {
-                    VideoData interframe = new VideoData(fd.getFrame());
-                    interframe.setTimestamp(body.getTimestamp());
-                    rtmpMessage = RTMPMessage.build(interframe);
-                  } else {
-                    // it means that new keyframe was received and we should send current frames
-                    // instead of buffered
-                    bufferedInterframeIdx = -1;
-                  }
-                }
               }
             }
           }
@@ -1562,7 +1698,11 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
             return;
           }
         }
-        sendMessage(rtmpMessage);
+        if (tokenBucket != null && !pullMode) {
+          paceMessage(rtmpMessage);
+        } else {
+          sendMessage(rtmpMessage);
+        }
       } else {
         throw new RuntimeException(
             String.format(
@@ -1624,6 +1764,15 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
     return playbackStart;
   }
 
+  /**
+   * Returns the time from the last play request to the first video frame sent to the client.
+   *
+   * @return time in milliseconds or -1 if no frame was sent yet
+   */
+  public long getTimeToFirstFrame() {
+    return timeToFirstFrame;
+  }
+
   public void sendBlankAudio(boolean sendBlankAudio) {
     this.sendBlankAudio = sendBlankAudio;
   }
@@ -1685,6 +1834,123 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
       }
       pendingMessage = null;
     }
+    while (pacedMessages.poll() != null) {
+      pacedCount.decrementAndGet();
+    }
+  }
+
+  /**
+   * Returns the tokens needed to send a message, the size of its data.
+   *
+   * @param message message body
+   * @return tokens
+   */
+  private static long size(IRTMPEvent message) {
+    if (message instanceof IStreamData) {
+      IoBuffer data = ((IStreamData<?>) message).getData();
+      if (data != null) {
+        return data.limit();
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Sends a live message if its tokens are available and no earlier message waits for tokens,
+   * queues it otherwise. Messages over the underrun trigger are dropped rather than queued.
+   *
+   * @param message live message
+   */
+  private void paceMessage(RTMPMessage message) {
+    ITokenBucket bucket = tokenBucket;
+    if (bucket == null
+        || (pacedMessages.isEmpty() && acquireTokens(bucket, message.getBody(), null))) {
+      sendMessage(message);
+      return;
+    }
+    if (pacedCount.get() >= underrunTrigger) {
+      droppedPacketsCount++;
+      if (log.isInfoEnabled() && shouldLogPacketDrop()) {
+        log.info(
+            "Drop packet. Paced messages above threshold. sessionId={} paced={} dropped={}",
+            subscriberStream.getConnection().getSessionId(),
+            pacedCount.get(),
+            droppedPacketsCount);
+      }
+      if (message.getBody() instanceof VideoData) {
+        videoFrameDropper.dropPacket(message);
+      }
+      return;
+    }
+    pacedMessages.add(message);
+    pacedCount.incrementAndGet();
+    schedulePacing();
+  }
+
+  /**
+   * Takes the tokens of a message without waiting. A message is counted as throttled once, however
+   * often it is retried while it waits for its tokens.
+   *
+   * @param bucket token bucket
+   * @param message message body
+   * @param callback callback notified when the tokens are available, or null
+   * @return true if the tokens were taken
+   */
+  private boolean acquireTokens(
+      ITokenBucket bucket, IRTMPEvent message, ITokenBucketCallback callback) {
+    long tokenCount = size(message);
+    boolean acquired =
+        message == throttledMessage
+            ? bucket.retryToken(tokenCount, callback)
+            : bucket.acquireTokenNonblocking(tokenCount, callback);
+    throttledMessage = acquired ? null : message;
+    return acquired;
+  }
+
+  /**
+   * Registers the token callback for the first paced message, unless a callback is registered or
+   * another thread sends paced messages. The pacing flag is held until the messages were sent.
+   */
+  private void schedulePacing() {
+    while (!pacedMessages.isEmpty() && pacing.compareAndSet(false, true)) {
+      ITokenBucket bucket = tokenBucket;
+      RTMPMessage next = pacedMessages.peek();
+      if (bucket == null) {
+        pacing.set(false);
+        return;
+      }
+      if (next != null && !acquireTokens(bucket, next.getBody(), pacer)) {
+        // the callback sends the messages when the tokens are available
+        return;
+      }
+      // tokens became available in the meantime
+      sendPacedMessages(next);
+      pacing.set(false);
+    }
+  }
+
+  /**
+   * Sends paced messages in order while their tokens are available; called by the holder of the
+   * pacing flag.
+   *
+   * @param acquired message at the head of the queue whose tokens are already taken, or null
+   */
+  private void sendPacedMessages(RTMPMessage acquired) {
+    ITokenBucket bucket = tokenBucket;
+    RTMPMessage message;
+    while ((message = pacedMessages.peek()) != null) {
+      if (message != acquired
+          && (bucket == null || !acquireTokens(bucket, message.getBody(), null))) {
+        break;
+      }
+      acquired = null;
+      // remove after sending, an empty queue means every paced message went out
+      if (subscriberStream.getState() == StreamState.PLAYING) {
+        sendMessage(message);
+      }
+      pacedMessages.poll();
+      pacedCount.decrementAndGet();
+    }
   }
 
   /**
@@ -166,6 +166,14 @@ public class PlaylistSubscriberStream extends AbstractClientStream
         engine =
             new PlayEngine.Builder(this, schedulingService, consumerService, providerService)
                 .build();
+        // egress shaping is optional
+        if (ctx.hasBean(ITokenBucketService.KEY)) {
+          engine.setTokenBucketService((ITokenBucketService) ctx.getBean(ITokenBucketService.KEY));
+        } else if (scope.hasParent()
+            && scope.getParent().getContext().hasBean(ITokenBucketService.KEY)) {
+          engine.setTokenBucketService(
+              (ITokenBucketService) scope.getParent().getContext().getBean(ITokenBucketService.KEY));
+        }
       } else {
         throw new IllegalStateException("Scope was null on start playing");
       }
@@ -794,6 +802,11 @@ public class PlaylistSubscriberStream extends AbstractClientStream
     return (buffered * 100.0) / buffer;
   }
 
+  /** {@inheritDoc} */
+  public long getTimeToFirstFrame() {
+    return engine.getTimeToFirstFrame();
+  }
+
   /**
    * @param maxPendingVideoFrames the maxPendingVideoFrames to set
    */
@@ -212,6 +212,14 @@ public class SingleItemSubscriberStream extends AbstractClientStream
         engine =
             new PlayEngine.Builder(this, schedulingService, consumerService, providerService)
                 .build();
+        // egress shaping is optional
+        if (ctx.hasBean(ITokenBucketService.KEY)) {
+          engine.setTokenBucketService((ITokenBucketService) ctx.getBean(ITokenBucketService.KEY));
+        } else if (scope.hasParent()
+            && scope.getParent().getContext().hasBean(ITokenBucketService.KEY)) {
+          engine.setTokenBucketService(
+              (ITokenBucketService) scope.getParent().getContext().getBean(ITokenBucketService.KEY));
+        }
       } else {
         log.info("Scope was null on start");
       }
@@ -0,0 +1,374 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.bandwidth;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.red5.server.stream.ITokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Token bucket of the hierarchy kept by {@link TokenBucketService}. Tokens are taken from a bucket
+ * and all of its ancestors or from none of them, with compare-and-set on the counts; a bucket
+ * without a rate doesn't limit and leaves the decision to its parent. Buckets refill lazily from
+ * the clock of the service when they are used. A request larger than the capacity is granted once
+ * the bucket is full and leaves it in debt, so large frames still get through at the set rate.
+ *
+ * @author The Red5 Project
+ */
+public class TokenBucket implements ITokenBucket {
+
+  private static final Logger log = LoggerFactory.getLogger(TokenBucket.class);
+
+  private final TokenBucketService service;
+
+  private final TokenBucket parent;
+
+  /** Level in the hierarchy, one of the level constants of the service */
+  private final int level;
+
+  private final String name;
+
+  private volatile long capacity;
+
+  /** Tokens added per millisecond, 0 for no limit */
+  private volatile double speed;
+
+  private final AtomicLong tokens = new AtomicLong();
+
+  /** Clock of the service when the bucket was last refilled */
+  private final AtomicLong lastRefill = new AtomicLong();
+
+  private final AtomicLong throttled = new AtomicLong();
+
+  /** Acquisitions waiting for tokens, in order */
+  private final ConcurrentLinkedQueue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+  /** Whether the bucket is queued with the service to wake its waiters */
+  final AtomicBoolean queued = new AtomicBoolean();
+
+  TokenBucket(
+      TokenBucketService service,
+      TokenBucket parent,
+      int level,
+      String name,
+      long capacity,
+      double speed) {
+    this.service = service;
+    this.parent = parent;
+    this.level = level;
+    this.name = name;
+    setRate(capacity, speed);
+  }
+
+  /**
+   * Changes the rate of the bucket; the bucket starts over full.
+   *
+   * @param capacity capacity in bytes
+   * @param speed bytes per millisecond, 0 for no limit
+   */
+  void setRate(long capacity, double speed) {
+    this.capacity = Math.max(capacity, 1);
+    this.speed = Math.max(speed, 0);
+    lastRefill.set(service.now());
+    tokens.set(this.capacity);
+  }
+
+  private boolean isLimited() {
+    return speed > 0;
+  }
+
+  private void refill() {
+    long now = service.now();
+    long last = lastRefill.get();
+    long add = (long) ((now - last) * speed);
+    // fractions of a token are left for the next refill
+    if (add > 0 && lastRefill.compareAndSet(last, now)) {
+      long max = capacity;
+      long current;
+      do {
+        current = tokens.get();
+        if (current >= max) {
+          return;
+        }
+      } while (!tokens.compareAndSet(current, Math.min(max, current + add)));
+    }
+  }
+
+  /** Takes tokens from this bucket alone. */
+  private boolean take(long count) {
+    refill();
+    long need = Math.min(count, capacity);
+    long current;
+    do {
+      current = tokens.get();
+      if (current < need) {
+        return false;
+      }
+    } while (!tokens.compareAndSet(current, current - count));
+    return true;
+  }
+
+  /** Returns tokens taken by an acquisition which failed further up. */
+  private void giveBack(long count) {
+    long max = capacity;
+    long current;
+    do {
+      current = tokens.get();
+    } while (!tokens.compareAndSet(current, Math.min(max, current + count)));
+  }
+
+  /**
+   * Takes tokens from this bucket and its ancestors without waiting.
+   *
+   * @param count tokens
+   * @return true if acquired
+   */
+  public boolean tryAcquire(long count) {
+    return tryAcquire(count, true);
+  }
+
+  /**
+   * Takes tokens from this bucket and its ancestors without waiting.
+   *
+   * @param count tokens
+   * @param counted whether a failure counts as a throttle, false for retries
+   * @return true if acquired
+   */
+  private boolean tryAcquire(long count, boolean counted) {
+    if (count <= 0) {
+      return true;
+    }
+    TokenBucket failed = null;
+    for (TokenBucket bucket = this; bucket != null; bucket = bucket.parent) {
+      if (bucket.isLimited() && !bucket.take(count)) {
+        failed = bucket;
+        break;
+      }
+    }
+    if (failed == null) {
+      return true;
+    }
+    for (TokenBucket bucket = this; bucket != failed; bucket = bucket.parent) {
+      if (bucket.isLimited()) {
+        bucket.giveBack(count);
+      }
+    }
+    if (counted) {
+      failed.throttled.incrementAndGet();
+      service.throttled(failed.level);
+    }
+    return false;
+  }
+
+  /** Whether an acquisition of the given count would succeed now. */
+  private boolean canAcquire(long count) {
+    for (TokenBucket bucket = this; bucket != null; bucket = bucket.parent) {
+      if (bucket.isLimited()) {
+        bucket.refill();
+        if (bucket.tokens.get() < Math.min(count, bucket.capacity)) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the tokens that can be acquired now, the least available along the hierarchy.
+   *
+   * @return tokens, Long.MAX_VALUE if no bucket limits
+   */
+  public long getAvailableTokens() {
+    long available = Long.MAX_VALUE;
+    for (TokenBucket bucket = this; bucket != null; bucket = bucket.parent) {
+      if (bucket.isLimited()) {
+        bucket.refill();
+        available = Math.min(available, Math.max(bucket.tokens.get(), 0));
+      }
+    }
+    return available;
+  }
+
+  /** {@inheritDoc} */
+  public boolean acquireToken(long tokenCount, long wait) {
+    if (tryAcquire(tokenCount)) {
+      return true;
+    }
+    if (wait == 0) {
+      return false;
+    }
+    long deadline = wait > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait) : 0;
+    Waiter waiter = new Waiter(tokenCount, Thread.currentThread(), null);
+    enqueue(waiter);
+    while (true) {
+      if (wait > 0) {
+        long remaining = deadline - System.nanoTime();
+        if (remaining <= 0) {
+          waiters.remove(waiter);
+          return false;
+        }
+        LockSupport.parkNanos(this, remaining);
+      } else {
+        LockSupport.park(this);
+      }
+      if (waiter.cancelled || Thread.currentThread().isInterrupted()) {
+        waiters.remove(waiter);
+        return false;
+      }
+      // the refill thread takes the waiter off the queue when it wakes it
+      if (!waiters.contains(waiter)) {
+        if (tryAcquire(tokenCount, false)) {
+          return true;
+        }
+        // beaten to the tokens, wait again
+        enqueue(waiter);
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  public boolean acquireTokenNonblocking(long tokenCount, ITokenBucketCallback callback) {
+    return acquireNonblocking(tokenCount, callback, true);
+  }
+
+  /** {@inheritDoc} */
+  public boolean retryToken(long tokenCount, ITokenBucketCallback callback) {
+    return acquireNonblocking(tokenCount, callback, false);
+  }
+
+  private boolean acquireNonblocking(
+      long tokenCount, ITokenBucketCallback callback, boolean counted) {
+    if (tryAcquire(tokenCount, counted)) {
+      return true;
+    }
+    if (callback != null) {
+      enqueue(new Waiter(tokenCount, null, callback));
+    }
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  public long acquireTokenBestEffort(long upperLimitCount) {
+    // retry a few times if other acquisitions get in between
+    for (int i = 0; i < 3; i++) {
+      long available = Math.min(upperLimitCount, getAvailableTokens());
+      if (available <= 0) {
+        return 0;
+      }
+      if (tryAcquire(available)) {
+        return available;
+      }
+    }
+    return 0;
+  }
+
+  private void enqueue(Waiter waiter) {
+    waiters.add(waiter);
+    service.waiting(this);
+  }
+
+  /**
+   * Wakes the waiters whose tokens are available, in order. Called by the refill thread of the
+   * service, so callbacks run on it.
+   *
+   * @return true if waiters are left
+   */
+  boolean wake() {
+    Waiter waiter;
+    while ((waiter = waiters.peek()) != null) {
+      if (!canAcquire(waiter.count)) {
+        return true;
+      }
+      if (waiters.remove(waiter)) {
+        if (waiter.thread != null) {
+          LockSupport.unpark(waiter.thread);
+        } else {
+          try {
+            waiter.callback.available(this, waiter.count);
+          } catch (Exception e) {
+            log.warn("Exception in token callback of {}", name, e);
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /** {@inheritDoc} */
+  public long getCapacity() {
+    return capacity;
+  }
+
+  /** {@inheritDoc} */
+  public double getSpeed() {
+    return speed;
+  }
+
+  /** {@inheritDoc} */
+  public void reset() {
+    Waiter waiter;
+    while ((waiter = waiters.poll()) != null) {
+      waiter.cancelled = true;
+      if (waiter.thread != null) {
+        LockSupport.unpark(waiter.thread);
+      } else {
+        waiter.callback.reset(this, waiter.count);
+      }
+    }
+    tokens.set(capacity);
+  }
+
+  TokenBucket getParent() {
+    return parent;
+  }
+
+  int getLevel() {
+    return level;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the number of acquisitions this bucket turned down.
+   *
+   * @return throttled acquisitions
+   */
+  public long getThrottled() {
+    return throttled.get();
+  }
+
+  @Override
+  public String toString() {
+    return "TokenBucket [name=" + name + ", capacity=" + capacity + ", speed=" + speed + "]";
+  }
+
+  /** Acquisition waiting for tokens; either a parked thread or a callback */
+  private static final class Waiter {
+
+    final long count;
+
+    final Thread thread;
+
+    final ITokenBucketCallback callback;
+
+    volatile boolean cancelled;
+
+    Waiter(long count, Thread thread, ITokenBucketCallback callback) {
+      this.count = count;
+      this.thread = thread;
+      this.callback = callback;
+    }
+  }
+}
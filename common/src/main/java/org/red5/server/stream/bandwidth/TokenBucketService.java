@@ -0,0 +1,394 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.bandwidth;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.red5.logging.Red5LoggerFactory;
+import org.red5.server.api.IConnection;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.jmx.mxbeans.TokenBucketServiceMXBean;
+import org.red5.server.stream.ITokenBucket;
+import org.red5.server.stream.ITokenBucketService;
+import org.slf4j.Logger;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Token bucket service shaping egress in three levels: a global bucket, a bucket per scope below
+ * it and a bucket per connection below the one of its scope. Sending a message takes its size in
+ * tokens from all three. Rates are in bytes per second, a rate of 0 leaves the level unlimited.
+ *
+ * <p>A single refill thread advances the clock the buckets refill from, so acquisitions don't read
+ * the system clock, and wakes the acquisitions waiting for tokens. Token callbacks run on that
+ * thread and must not block.
+ *
+ * @author The Red5 Project
+ */
+@ManagedResource(
+    objectName = "org.red5.server:name=tokenBucketService,type=TokenBucketService")
+public class TokenBucketService
+    implements ITokenBucketService, TokenBucketServiceMXBean, InitializingBean, DisposableBean {
+
+  private static Logger log = Red5LoggerFactory.getLogger(TokenBucketService.class);
+
+  /** Level of the global bucket */
+  public static final int GLOBAL = 0;
+
+  /** Level of the scope buckets */
+  public static final int SCOPE = 1;
+
+  /** Level of the connection buckets and of those created with createTokenBucket */
+  public static final int CONNECTION = 2;
+
+  /** Global rate in bytes per second */
+  private long globalRate;
+
+  /** Global burst in bytes, 0 for a second worth of the rate */
+  private long globalBurst;
+
+  private long scopeRate;
+
+  private long scopeBurst;
+
+  private long connectionRate;
+
+  private long connectionBurst;
+
+  /** Refill clock resolution in milliseconds */
+  private long refillInterval = 10;
+
+  private TokenBucket global;
+
+  /** Scope buckets keyed by scope path */
+  private final ConcurrentMap<String, Entry> scopes = new ConcurrentHashMap<>();
+
+  /** Connection buckets keyed by session id */
+  private final ConcurrentMap<String, Entry> connections = new ConcurrentHashMap<>();
+
+  /** Buckets with waiters, to be looked at on the next refill */
+  private final ConcurrentLinkedQueue<TokenBucket> waiting = new ConcurrentLinkedQueue<>();
+
+  private final AtomicLong[] throttled = {new AtomicLong(), new AtomicLong(), new AtomicLong()};
+
+  private Thread refiller;
+
+  private volatile boolean running;
+
+  private final long startTime = System.nanoTime();
+
+  /** Refill clock, milliseconds since the service was created */
+  private volatile long clock;
+
+  public void afterPropertiesSet() throws Exception {
+    log.debug("Initializing...");
+    init();
+    running = true;
+    refiller = new Thread(this::refill, "TokenBucketRefill");
+    refiller.setDaemon(true);
+    refiller.start();
+  }
+
+  public void destroy() throws Exception {
+    log.debug("Destroying...");
+    running = false;
+    if (refiller != null) {
+      LockSupport.unpark(refiller);
+      refiller.join(1000L);
+    }
+    for (Entry entry : connections.values()) {
+      entry.bucket.reset();
+    }
+    connections.clear();
+    scopes.clear();
+    if (global != null) {
+      global.reset();
+    }
+  }
+
+  /** Creates the global bucket; the clock stands still until it is advanced. */
+  void init() {
+    global =
+        new TokenBucket(
+            this, null, GLOBAL, "global", capacity(globalRate, globalBurst), speed(globalRate));
+  }
+
+  /** Refill loop */
+  private void refill() {
+    long intervalNanos = TimeUnit.MILLISECONDS.toNanos(refillInterval);
+    while (running) {
+      LockSupport.parkNanos(this, intervalNanos);
+      advanceClock(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+  }
+
+  /**
+   * Moves the refill clock and wakes the waiters whose tokens are available, in the calling thread.
+   *
+   * @param now milliseconds since the service was created
+   */
+  void advanceClock(long now) {
+    clock = now;
+    try {
+      // only the buckets queued before this pass, those queued again wait for the next one
+      for (int i = waiting.size(); i > 0; i--) {
+        TokenBucket bucket = waiting.poll();
+        if (bucket == null) {
+          break;
+        }
+        bucket.queued.set(false);
+        if (bucket.wake()) {
+          waiting(bucket);
+        }
+      }
+    } catch (Throwable t) {
+      log.warn("Refill failed", t);
+    }
+  }
+
+  long now() {
+    return clock;
+  }
+
+  /** Queues a bucket which has waiters. */
+  void waiting(TokenBucket bucket) {
+    if (bucket.queued.compareAndSet(false, true)) {
+      waiting.add(bucket);
+    }
+  }
+
+  void throttled(int level) {
+    throttled[level].incrementAndGet();
+  }
+
+  private static long capacity(long rate, long burst) {
+    return burst > 0 ? burst : rate;
+  }
+
+  private static double speed(long rate) {
+    return rate / 1000d;
+  }
+
+  /** {@inheritDoc} */
+  public ITokenBucket createTokenBucket(long capacity, long speed) {
+    return new TokenBucket(this, global, CONNECTION, "bucket", capacity, speed);
+  }
+
+  /** {@inheritDoc} */
+  public boolean isShaping() {
+    return globalRate > 0 || scopeRate > 0 || connectionRate > 0;
+  }
+
+  /** {@inheritDoc} */
+  public ITokenBucket getTokenBucket(IConnection conn) {
+    IScope scope = conn.getScope();
+    String path = scope != null ? scope.getContextPath() : "";
+    return connections.compute(
+            conn.getSessionId(),
+            (sessionId, entry) -> {
+              if (entry == null) {
+                TokenBucket parent = scopes.compute(path, this::retainScope).bucket;
+                entry =
+                    new Entry(
+                        new TokenBucket(
+                            this,
+                            parent,
+                            CONNECTION,
+                            sessionId,
+                            capacity(connectionRate, connectionBurst),
+                            speed(connectionRate)));
+              }
+              entry.refs++;
+              return entry;
+            })
+        .bucket;
+  }
+
+  private Entry retainScope(String path, Entry entry) {
+    if (entry == null) {
+      entry =
+          new Entry(
+              new TokenBucket(
+                  this, global, SCOPE, path, capacity(scopeRate, scopeBurst), speed(scopeRate)));
+    }
+    entry.refs++;
+    return entry;
+  }
+
+  /** {@inheritDoc} */
+  public void removeTokenBucket(ITokenBucket bucket) {
+    if (bucket instanceof TokenBucket) {
+      TokenBucket tokenBucket = (TokenBucket) bucket;
+      if (tokenBucket.getLevel() == CONNECTION && tokenBucket.getParent() != global) {
+        // shared by the streams of the connection, dropped with the last of them
+        boolean[] dropped = new boolean[1];
+        connections.computeIfPresent(
+            tokenBucket.getName(),
+            (sessionId, current) -> {
+              if (current.bucket != tokenBucket || --current.refs > 0) {
+                return current;
+              }
+              dropped[0] = true;
+              return null;
+            });
+        if (!dropped[0]) {
+          return;
+        }
+        scopes.computeIfPresent(
+            tokenBucket.getParent().getName(),
+            (path, scopeEntry) -> --scopeEntry.refs > 0 ? scopeEntry : null);
+      }
+      tokenBucket.reset();
+    }
+  }
+
+  /** Applies the configured rates to the existing buckets. */
+  private void updateRates() {
+    if (global != null) {
+      global.setRate(capacity(globalRate, globalBurst), speed(globalRate));
+    }
+    for (Entry entry : scopes.values()) {
+      entry.bucket.setRate(capacity(scopeRate, scopeBurst), speed(scopeRate));
+    }
+    for (Entry entry : connections.values()) {
+      entry.bucket.setRate(capacity(connectionRate, connectionBurst), speed(connectionRate));
+    }
+  }
+
+  public long getGlobalRate() {
+    return globalRate;
+  }
+
+  /**
+   * Sets the rate of all streams together.
+   *
+   * @param globalRate bytes per second, 0 for no limit
+   */
+  public void setGlobalRate(long globalRate) {
+    this.globalRate = globalRate;
+    updateRates();
+  }
+
+  public long getGlobalBurst() {
+    return globalBurst;
+  }
+
+  public void setGlobalBurst(long globalBurst) {
+    this.globalBurst = globalBurst;
+    updateRates();
+  }
+
+  public long getScopeRate() {
+    return scopeRate;
+  }
+
+  /**
+   * Sets the rate of the streams of each scope.
+   *
+   * @param scopeRate bytes per second, 0 for no limit
+   */
+  public void setScopeRate(long scopeRate) {
+    this.scopeRate = scopeRate;
+    updateRates();
+  }
+
+  public long getScopeBurst() {
+    return scopeBurst;
+  }
+
+  public void setScopeBurst(long scopeBurst) {
+    this.scopeBurst = scopeBurst;
+    updateRates();
+  }
+
+  public long getConnectionRate() {
+    return connectionRate;
+  }
+
+  /**
+   * Sets the rate of the streams of each connection.
+   *
+   * @param connectionRate bytes per second, 0 for no limit
+   */
+  public void setConnectionRate(long connectionRate) {
+    this.connectionRate = connectionRate;
+    updateRates();
+  }
+
+  public long getConnectionBurst() {
+    return connectionBurst;
+  }
+
+  public void setConnectionBurst(long connectionBurst) {
+    this.connectionBurst = connectionBurst;
+    updateRates();
+  }
+
+  public long getRefillInterval() {
+    return refillInterval;
+  }
+
+  /**
+   * Sets how often the refill clock advances and waiters are woken.
+   *
+   * @param refillInterval milliseconds
+   */
+  public void setRefillInterval(long refillInterval) {
+    this.refillInterval = Math.max(refillInterval, 1);
+  }
+
+  public int getScopeBucketCount() {
+    return scopes.size();
+  }
+
+  public int getConnectionBucketCount() {
+    return connections.size();
+  }
+
+  public int getWaitingBucketCount() {
+    return waiting.size();
+  }
+
+  public long getGlobalThrottled() {
+    return throttled[GLOBAL].get();
+  }
+
+  public long getScopeThrottled() {
+    return throttled[SCOPE].get();
+  }
+
+  public long getConnectionThrottled() {
+    return throttled[CONNECTION].get();
+  }
+
+  public Map<String, Long> getThrottledByScope() {
+    Map<String, Long> result = new HashMap<>();
+    scopes.forEach((path, entry) -> result.put(path, entry.bucket.getThrottled()));
+    return result;
+  }
+
+  /** Bucket with the number of its users */
+  private static final class Entry {
+
+    final TokenBucket bucket;
+
+    /** Guarded by the map entry */
+    int refs;
+
+    Entry(TokenBucket bucket) {
+      this.bucket = bucket;
+    }
+  }
+}
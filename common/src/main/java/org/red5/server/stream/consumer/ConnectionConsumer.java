@@ -7,6 +7,8 @@
 
 package org.red5.server.stream.consumer;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.mina.core.buffer.IoBuffer;
@@ -155,6 +157,7 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
             audioData.setHeader(header);
             audioData.setTimestamp(header.getTimer());
             audioData.setSourceType(((AudioData) msg).getSourceType());
+            audioData.setPreChunkedFrame(((AudioData) msg).getPreChunkedFrame());
             audio.write(audioData);
           } else {
             log.warn("Audio data was not found");
@@ -164,11 +167,7 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
           // log.trace("Video data");
           buf = ((VideoData) msg).getData();
           if (buf != null) {
-            VideoData videoData = new VideoData(buf.asReadOnlyBuffer());
-            videoData.setHeader(header);
-            videoData.setTimestamp(header.getTimer());
-            videoData.setSourceType(((VideoData) msg).getSourceType());
-            video.write(videoData);
+            video.write(videoData((VideoData) msg, header));
           } else {
             log.warn("Video data was not found");
           }
@@ -284,10 +283,63 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
           chunkSizeSent.set(false);
           sendChunkSize();
         }
+      } else if ("writeBatch".equals(serviceName)) {
+        @SuppressWarnings("unchecked")
+        List<RTMPMessage> messages =
+            (List<RTMPMessage>) oobCtrlMsg.getServiceParamMap().get("messages");
+        oobCtrlMsg.setResult(writeVideoBatch(messages));
       }
     }
   }
 
+  /**
+   * Writes video messages to the video channel at once, used to prime a subscriber with the
+   * current group of pictures. Nothing is written unless all messages carry video data.
+   *
+   * @param messages video messages, in order
+   * @return true if the messages were written
+   */
+  private boolean writeVideoBatch(List<RTMPMessage> messages) {
+    for (RTMPMessage message : messages) {
+      IRTMPEvent msg = message.getBody();
+      if (!(msg instanceof VideoData) || ((VideoData) msg).getData() == null) {
+        return false;
+      }
+    }
+    sendChunkSize();
+    List<IRTMPEvent> events = new ArrayList<>(messages.size());
+    for (RTMPMessage message : messages) {
+      VideoData msg = (VideoData) message.getBody();
+      int eventTime = msg.getTimestamp();
+      if (eventTime < 0) {
+        // handle roll-over the same way single messages do
+        eventTime ^= Integer.MIN_VALUE;
+        msg.setTimestamp(eventTime);
+      }
+      final Header header = Optional.ofNullable(msg.getHeader()).orElse(new Header());
+      header.setTimer(eventTime);
+      events.add(videoData(msg, header));
+    }
+    video.write(events);
+    return true;
+  }
+
+  /**
+   * Creates the outgoing copy of a video message, sharing its data.
+   *
+   * @param msg incoming video message
+   * @param header header of the outgoing message
+   * @return outgoing video message
+   */
+  private static VideoData videoData(VideoData msg, Header header) {
+    VideoData videoData = new VideoData(msg.getData().asReadOnlyBuffer());
+    videoData.setHeader(header);
+    videoData.setTimestamp(header.getTimer());
+    videoData.setSourceType(msg.getSourceType());
+    videoData.setPreChunkedFrame(msg.getPreChunkedFrame());
+    return videoData;
+  }
+
   /** Send the chunk size */
   private void sendChunkSize() {
     if (chunkSizeSent.compareAndSet(false, true)) {
@@ -101,6 +101,9 @@ public class FileConsumer
   /** Whether or not to wait until a video keyframe arrives before writing video. */
   private boolean waitForVideoKeyframe = true;
 
+  /** Whether or not the writer moves its data file into the flv with FileChannel.transferTo on close. */
+  private boolean zeroCopyFinalization = true;
+
   /** Whether or not to use a comparator with a priority queue. */
   private boolean usePriority = true;
 
@@ -367,7 +370,9 @@ public class FileConsumer
               Files.isReadable(path),
               Files.isWritable(path),
               Files.size(path));
-          writer = new FLVWriter(path, true);
+          FLVWriter flvWriter = new FLVWriter(path, true);
+          flvWriter.setZeroCopyFinalization(zeroCopyFinalization);
+          writer = flvWriter;
         } else if (IClientStream.MODE_RECORD.equals(mode)) {
           try {
             // delete existing file
@@ -386,7 +391,9 @@ public class FileConsumer
           }
           log.debug(
               "Path: {}\nRead: {} write: {}", path, Files.isReadable(path), Files.isWritable(path));
-          writer = new FLVWriter(path, false);
+          FLVWriter flvWriter = new FLVWriter(path, false);
+          flvWriter.setZeroCopyFinalization(zeroCopyFinalization);
+          writer = flvWriter;
         } else {
           try {
             // delete existing file since we're not recording nor appending
@@ -547,6 +554,16 @@ public class FileConsumer
   @Deprecated
   public void setDelayWrite(boolean delayWrite) {}
 
+  /**
+   * Whether or not the writer moves its data file into the flv with FileChannel.transferTo on close;
+   * when false the data is copied through a user space buffer.
+   *
+   * @param zeroCopyFinalization true to transfer the data file directly
+   */
+  public void setZeroCopyFinalization(boolean zeroCopyFinalization) {
+    this.zeroCopyFinalization = zeroCopyFinalization;
+  }
+
   /**
    * Whether or not to wait for the first keyframe before processing video frames.
    *
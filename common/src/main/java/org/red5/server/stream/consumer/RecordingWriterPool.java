@@ -0,0 +1,606 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.consumer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.ITag;
+import org.red5.io.ITagWriter;
+import org.red5.server.jmx.mxbeans.RecordingWriterPoolMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Pool writing the recordings of all streams. Every recording gets an ordered queue of tags; a
+ * queue with pending tags is handed to one of a fixed number of workers, which writes up to a batch
+ * of tags with a single call to the tag writer before letting the next recording have the worker.
+ * A few threads thereby serve any number of recordings, the tags of a recording are written in
+ * order, and a disk falling behind shows up as queues growing up to the limit where the overflow
+ * policy applies.
+ *
+ * <p>The pool configured in the server context becomes the shared instance; if there is none, a
+ * pool with default settings is created on first use, and its workers are shut down should a
+ * configured pool start later.
+ *
+ * @author The Red5 Project
+ */
+@ManagedResource(
+    objectName = "org.red5.server:name=recordingWriterPool,type=RecordingWriterPool")
+public class RecordingWriterPool
+    implements RecordingWriterPoolMXBean, InitializingBean, DisposableBean {
+
+  private static final Logger log = LoggerFactory.getLogger(RecordingWriterPool.class);
+
+  /** What happens to a tag offered to a full queue. */
+  public enum OverflowPolicy {
+    /** Wait up to the offer timeout for room, then drop the tag */
+    BLOCK,
+    /** Drop the tag */
+    DROP_NEWEST,
+    /**
+     * Drop video until the next key frame, so the recording stays decodable; other tags are kept
+     * until the queue holds twice its limit
+     */
+    DROP_VIDEO
+  }
+
+  private static volatile RecordingWriterPool instance;
+
+  /** Number of workers writing to disk */
+  protected int threadCount = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+  /** Number of tags a recording may have queued before the overflow policy applies */
+  protected int maxQueueSize = 1024;
+
+  /** Largest number of tags written with one call */
+  protected int maxBatchSize = 64;
+
+  protected OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+  /** Milliseconds an offer waits for room with the blocking policy */
+  protected long offerTimeout = 100L;
+
+  private final ConcurrentMap<String, RecordingQueue> queues = new ConcurrentHashMap<>();
+
+  private final AtomicInteger queueCounter = new AtomicInteger();
+
+  private ExecutorService workers;
+
+  /** Set on the pool created by getInstance when none was configured */
+  private boolean fallback;
+
+  private final AtomicLong writtenTags = new AtomicLong();
+
+  private final AtomicLong droppedTags = new AtomicLong();
+
+  private final AtomicLong writes = new AtomicLong();
+
+  /**
+   * Returns the recordingWriterPool bean of the server context, or the default pool for recordings
+   * started before the bean or without one.
+   *
+   * @return pool
+   */
+  public static RecordingWriterPool getInstance() {
+    RecordingWriterPool pool = instance;
+    if (pool == null) {
+      synchronized (RecordingWriterPool.class) {
+        pool = instance;
+        if (pool == null) {
+          pool = new RecordingWriterPool();
+          pool.fallback = true;
+          pool.afterPropertiesSet();
+        }
+      }
+    }
+    return pool;
+  }
+
+  public void afterPropertiesSet() {
+    log.debug("Starting {} recording writers", threadCount);
+    AtomicInteger workerCount = new AtomicInteger();
+    workers =
+        Executors.newFixedThreadPool(
+            threadCount,
+            r -> {
+              Thread t =
+                  new Thread(r, String.format("RecordingWriter-%d", workerCount.incrementAndGet()));
+              t.setDaemon(true);
+              return t;
+            });
+    RecordingWriterPool previous;
+    synchronized (RecordingWriterPool.class) {
+      previous = instance;
+      instance = this;
+    }
+    if (previous != null && previous.fallback) {
+      // a recording started before this pool was configured; let the default pool finish what it
+      // has queued, its recordings then write on their own threads until they're closed
+      log.debug("Replacing the default recording writer pool");
+      previous.workers.shutdown();
+    }
+  }
+
+  public void destroy() throws Exception {
+    log.debug("Stopping recording writers, open recordings: {}", queues.size());
+    for (RecordingQueue queue : queues.values()) {
+      queue.close(1000L);
+    }
+    if (workers != null) {
+      workers.shutdown();
+      workers.awaitTermination(1000L, TimeUnit.MILLISECONDS);
+    }
+    synchronized (RecordingWriterPool.class) {
+      if (instance == this) {
+        instance = null;
+      }
+    }
+  }
+
+  /**
+   * Adds a recording to the pool.
+   *
+   * @param name name of the recording, used in metrics
+   * @param writer writer for the recording
+   * @return queue of the recording
+   */
+  public RecordingQueue register(String name, ITagWriter writer) {
+    return register(name, writer, maxQueueSize);
+  }
+
+  /**
+   * Adds a recording with its own queue limit to the pool.
+   *
+   * @param name name of the recording, used in metrics
+   * @param writer writer for the recording
+   * @param maxQueueSize number of tags queued before the overflow policy applies
+   * @return queue of the recording
+   */
+  public RecordingQueue register(String name, ITagWriter writer, int maxQueueSize) {
+    RecordingQueue queue = new RecordingQueue(name, writer, maxQueueSize);
+    if (queues.putIfAbsent(queue.name, queue) != null) {
+      // two recordings of the same name, keep both apart in the metrics
+      queue.name = String.format("%s#%d", name, queueCounter.incrementAndGet());
+      queues.put(queue.name, queue);
+    }
+    return queue;
+  }
+
+  /**
+   * Hands a queue with pending tags to a worker.
+   *
+   * @param queue queue
+   */
+  private void schedule(RecordingQueue queue) {
+    if (queue.scheduled.compareAndSet(false, true)) {
+      try {
+        workers.execute(queue);
+      } catch (RejectedExecutionException e) {
+        // pool is shutting down, write on the calling thread
+        try {
+          queue.drain();
+        } finally {
+          queue.scheduled.set(false);
+        }
+      }
+    }
+  }
+
+  /** {@inheritDoc} */
+  public int getThreadCount() {
+    return threadCount;
+  }
+
+  public void setThreadCount(int threadCount) {
+    this.threadCount = threadCount;
+  }
+
+  /** {@inheritDoc} */
+  public int getMaxQueueSize() {
+    return maxQueueSize;
+  }
+
+  public void setMaxQueueSize(int maxQueueSize) {
+    this.maxQueueSize = maxQueueSize;
+  }
+
+  /** {@inheritDoc} */
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  public void setMaxBatchSize(int maxBatchSize) {
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+  }
+
+  /** {@inheritDoc} */
+  public String getOverflowPolicy() {
+    return overflowPolicy.name();
+  }
+
+  public void setOverflowPolicy(String overflowPolicy) {
+    this.overflowPolicy = OverflowPolicy.valueOf(overflowPolicy);
+  }
+
+  public void setOfferTimeout(long offerTimeout) {
+    this.offerTimeout = offerTimeout;
+  }
+
+  /** {@inheritDoc} */
+  public int getRecordingCount() {
+    return queues.size();
+  }
+
+  /** {@inheritDoc} */
+  public int getQueuedTags() {
+    int queued = 0;
+    for (RecordingQueue queue : queues.values()) {
+      queued += queue.getQueueDepth();
+    }
+    return queued;
+  }
+
+  /** {@inheritDoc} */
+  public long getWrittenTags() {
+    return writtenTags.get();
+  }
+
+  /** {@inheritDoc} */
+  public long getDroppedTags() {
+    return droppedTags.get();
+  }
+
+  /** {@inheritDoc} */
+  public double getAverageBatchSize() {
+    long count = writes.get();
+    return count > 0 ? (double) writtenTags.get() / count : 0d;
+  }
+
+  /** {@inheritDoc} */
+  public Map<String, Integer> getQueueDepths() {
+    Map<String, Integer> depths = new HashMap<>();
+    for (RecordingQueue queue : queues.values()) {
+      depths.put(queue.name, queue.getQueueDepth());
+    }
+    return depths;
+  }
+
+  /** {@inheritDoc} */
+  public Map<String, Long> getWriteLatencies() {
+    Map<String, Long> latencies = new HashMap<>();
+    for (RecordingQueue queue : queues.values()) {
+      latencies.put(queue.name, queue.getLastWriteLatency());
+    }
+    return latencies;
+  }
+
+  /** Tag and the time it was queued */
+  private static final class QueuedTag {
+
+    final ITag tag;
+
+    final long queued;
+
+    QueuedTag(ITag tag, long queued) {
+      this.tag = tag;
+      this.queued = queued;
+    }
+  }
+
+  /**
+   * Ordered queue of the tags of one recording. Tags are written in the order offered, apart from
+   * the tags of one batch being sorted by time; tags older than the last one written are dropped
+   * since recordings need non-decreasing timestamps.
+   */
+  public final class RecordingQueue implements Runnable {
+
+    private String name;
+
+    private final ITagWriter writer;
+
+    private final int limit;
+
+    private final ConcurrentLinkedQueue<QueuedTag> tags = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger depth = new AtomicInteger();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    /** Set while a worker writes this queue */
+    private volatile boolean writing;
+
+    /** Number of threads waiting for room or for the queue to empty */
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /** Set when video is dropped until the next key frame */
+    private volatile boolean skipVideo;
+
+    private volatile boolean closed;
+
+    /** Only accessed by the worker holding the queue */
+    private int lastWrittenTs = -1;
+
+    private final List<QueuedTag> batch = new ArrayList<>();
+
+    private final List<ITag> batchTags = new ArrayList<>();
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile long lastWriteLatency;
+
+    private volatile long maxWriteLatency;
+
+    private volatile long lastQueueLatency;
+
+    private RecordingQueue(String name, ITagWriter writer, int limit) {
+      this.name = name;
+      this.writer = writer;
+      this.limit = limit;
+    }
+
+    /**
+     * Queues a tag for writing.
+     *
+     * @param tag tag
+     * @return true if the tag was queued, false if it was dropped
+     */
+    public boolean offer(ITag tag) {
+      if (closed) {
+        return drop();
+      }
+      if (depth.get() >= limit && !makeRoom(tag)) {
+        return drop();
+      }
+      depth.incrementAndGet();
+      tags.add(new QueuedTag(tag, System.nanoTime()));
+      schedule(this);
+      return true;
+    }
+
+    /**
+     * Applies the overflow policy to a tag offered to a full queue.
+     *
+     * @param tag tag
+     * @return true if the tag is to be queued anyway
+     */
+    private boolean makeRoom(ITag tag) {
+      switch (overflowPolicy) {
+        case BLOCK:
+          return await(offerTimeout, false);
+        case DROP_VIDEO:
+          if (tag.getDataType() == ITag.TYPE_VIDEO) {
+            if (!skipVideo) {
+              log.debug("Recording {} fell behind, dropping video until the next key frame", name);
+              skipVideo = true;
+            }
+            return false;
+          }
+          return depth.get() < limit * 2;
+        default:
+          return false;
+      }
+    }
+
+    /**
+     * Checks a video tag against a running video skip; the skip ends with a key frame.
+     *
+     * @param tag tag
+     * @return true if the tag is to be dropped
+     */
+    private boolean skipped(ITag tag) {
+      if (skipVideo && tag.getDataType() == ITag.TYPE_VIDEO) {
+        IoBuffer body = tag.getBody();
+        if (body != null
+            && body.remaining() > 0
+            && (body.get(body.position()) & 0xf0) == 0x10
+            && depth.get() < limit) {
+          skipVideo = false;
+          return false;
+        }
+        return true;
+      }
+      return false;
+    }
+
+    private boolean drop() {
+      dropped.incrementAndGet();
+      droppedTags.incrementAndGet();
+      return false;
+    }
+
+    /**
+     * Waits until the queue has room or, when empty is set, until everything queued is written.
+     *
+     * @param timeout milliseconds to wait
+     * @param empty wait for an empty queue
+     * @return true if the condition was met
+     */
+    private boolean await(long timeout, boolean empty) {
+      long deadline = System.currentTimeMillis() + timeout;
+      waiters.incrementAndGet();
+      try {
+        synchronized (this) {
+          while (empty ? (depth.get() > 0 || writing) : depth.get() >= limit) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+              return false;
+            }
+            wait(remaining);
+          }
+        }
+        return true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      } finally {
+        waiters.decrementAndGet();
+      }
+    }
+
+    /** Writes one batch, then hands the queue back to the pool if more tags are pending. */
+    public void run() {
+      try {
+        drain();
+      } finally {
+        scheduled.set(false);
+      }
+      if (!tags.isEmpty()) {
+        schedule(this);
+      }
+    }
+
+    /** Writes up to a batch of queued tags. */
+    private void drain() {
+      writing = true;
+      try {
+        QueuedTag queued;
+        while (batch.size() < maxBatchSize && (queued = tags.poll()) != null) {
+          depth.decrementAndGet();
+          if (skipped(queued.tag)) {
+            drop();
+          } else {
+            batch.add(queued);
+          }
+        }
+        if (!batch.isEmpty()) {
+          long now = System.nanoTime();
+          lastQueueLatency = TimeUnit.NANOSECONDS.toMillis(now - batch.get(0).queued);
+          // tags of a batch are written sorted by time; the sort is stable for equal times
+          batch.sort((a, b) -> Integer.compare(a.tag.getTimestamp(), b.tag.getTimestamp()));
+          for (QueuedTag qt : batch) {
+            int timestamp = qt.tag.getTimestamp();
+            if (timestamp >= 0 && timestamp >= lastWrittenTs) {
+              batchTags.add(qt.tag);
+              lastWrittenTs = timestamp;
+            } else {
+              log.trace("Skipping tag with timestamp {} in {}", timestamp, name);
+              drop();
+            }
+          }
+          if (!batchTags.isEmpty()) {
+            try {
+              int count = writer.writeTags(batchTags);
+              written.addAndGet(count);
+              writtenTags.addAndGet(count);
+              writes.incrementAndGet();
+            } catch (IOException e) {
+              log.warn("Error writing {} tags of {}", batchTags.size(), name, e);
+            }
+          }
+          long latency = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - now);
+          lastWriteLatency = latency;
+          if (latency > maxWriteLatency) {
+            maxWriteLatency = latency;
+          }
+        }
+      } finally {
+        batch.clear();
+        batchTags.clear();
+        writing = false;
+        if (waiters.get() > 0) {
+          synchronized (this) {
+            notifyAll();
+          }
+        }
+      }
+    }
+
+    /**
+     * Waits until every tag queued so far is written.
+     *
+     * @param timeout milliseconds to wait
+     * @return true if the queue was emptied in time
+     */
+    public boolean flush(long timeout) {
+      if (!tags.isEmpty()) {
+        schedule(this);
+      }
+      return await(timeout, true);
+    }
+
+    /**
+     * Writes what is queued and removes the recording from the pool; later offers are dropped. The
+     * writer isn't closed.
+     *
+     * @param timeout milliseconds to wait for queued tags to be written
+     * @return true if all queued tags were written
+     */
+    public boolean close(long timeout) {
+      // refuse new tags first, so the flush has an end
+      closed = true;
+      boolean flushed = flush(timeout);
+      queues.remove(name, this);
+      if (!flushed) {
+        log.warn("Recording {} closed with {} tags unwritten", name, depth.get());
+      }
+      return flushed;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Returns the number of tags waiting to be written.
+     *
+     * @return queue depth
+     */
+    public int getQueueDepth() {
+      return depth.get();
+    }
+
+    public long getWrittenTags() {
+      return written.get();
+    }
+
+    public long getDroppedTags() {
+      return dropped.get();
+    }
+
+    /**
+     * Returns the milliseconds taken by the last write.
+     *
+     * @return write latency
+     */
+    public long getLastWriteLatency() {
+      return lastWriteLatency;
+    }
+
+    public long getMaxWriteLatency() {
+      return maxWriteLatency;
+    }
+
+    /**
+     * Returns the milliseconds the oldest tag of the last batch waited in the queue.
+     *
+     * @return queue latency
+     */
+    public long getLastQueueLatency() {
+      return lastQueueLatency;
+    }
+  }
+}
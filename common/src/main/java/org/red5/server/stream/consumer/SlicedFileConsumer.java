@@ -9,22 +9,11 @@ package org.red5.server.stream.consumer;
 
 import java.io.File;
 import java.io.IOException;
-import java.nio.channels.ClosedChannelException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.io.ITag;
 import org.red5.io.ITagWriter;
@@ -47,17 +36,20 @@ import org.red5.server.net.rtmp.event.VideoData.FrameType;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.stream.DefaultStreamFilenameGenerator;
 import org.red5.server.stream.IStreamData;
+import org.red5.server.stream.consumer.RecordingWriterPool.RecordingQueue;
 import org.red5.server.stream.message.RTMPMessage;
 import org.red5.server.stream.message.ResetMessage;
 import org.red5.server.util.ScopeUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.DisposableBean;
-import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 /**
  * Consumer that pushes messages to file. Used when recording live streams.
  *
+ * <p>Tags are written by the shared {@link RecordingWriterPool}, which writes them in order and in
+ * batches on a few threads for all recordings, instead of each recording having its own threads.
+ *
  * @author The Red5 Project
  * @author Paul Gregoire (mondain@gmail.com)
  * @author Vladimir Hmelyoff (vlhm@splitmedialabs.com)
@@ -74,23 +66,14 @@ public class SlicedFileConsumer
 
   private AtomicBoolean initialized = new AtomicBoolean(false);
 
-  /** Executor for all instance writer jobs */
-  private ScheduledExecutorService scheduledExecutorService;
-
-  /** Queue writer thread count */
-  private int schedulerThreadSize = 1;
-
-  /** Queue to hold data for delayed writing */
-  private PriorityQueue<QueuedMediaData> queue;
-
-  /** Reentrant lock */
-  private ReentrantReadWriteLock reentrantLock = new ReentrantReadWriteLock();
+  /** Pool writing the queued tags, the shared pool unless one is set */
+  private RecordingWriterPool writerPool;
 
-  /** Write lock */
-  private volatile Lock writeLock = reentrantLock.writeLock();
+  /** Queue of this recording in the writer pool */
+  private volatile RecordingQueue recordingQueue;
 
-  /** Read lock */
-  private volatile Lock readLock = reentrantLock.readLock();
+  /** Milliseconds to wait for queued tags to be written when the recording ends */
+  private long closeTimeout = 10000L;
 
   /** Scope */
   private IScope scope;
@@ -113,21 +96,15 @@ public class SlicedFileConsumer
   /** Audio decoder configuration */
   private ITag audioConfigurationTag;
 
-  /** Number of queued items needed before writes are initiated */
+  /** Number of queued items before the overflow policy of the writer pool applies */
   private int queueThreshold = -1;
 
-  /** Percentage of the queue which is sliced for writing */
-  private int percentage = 25;
-
-  /** Tracks the last timestamp written to prevent backwards time stamped data. */
-  private volatile int lastWrittenTs = -1;
-
-  /** Keeps track of the last spawned write worker. */
-  private volatile Future<?> writerFuture;
-
   /** Whether or not to wait until a video keyframe arrives before writing video. */
   private boolean waitForVideoKeyframe = true;
 
+  /** Whether or not the writer moves its data file into the flv with FileChannel.transferTo on close. */
+  private boolean zeroCopyFinalization = true;
+
   private volatile boolean gotVideoKeyframe;
 
   /** Default ctor */
@@ -175,12 +152,6 @@ public class SlicedFileConsumer
       // get the timestamp
       int timestamp = msg.getTimestamp();
       log.trace("Data type: {} timestamp: {}", dataType, timestamp);
-      // if writes are delayed, queue the data and sort it by time
-      if (queue == null) {
-        // if we plan to use a queue, create one
-        queue = new PriorityQueue<QueuedMediaData>(queueThreshold <= 0 ? 11 : queueThreshold);
-      }
-      QueuedMediaData queued = null;
       if (msg instanceof IStreamData) {
         if (log.isTraceEnabled()) {
           log.trace(
@@ -207,41 +178,17 @@ public class SlicedFileConsumer
             }
           }
         }
-        queued = new QueuedMediaData(timestamp, dataType, (IStreamData) msg);
-      } else {
-        // XXX what type of message are we saving that has no body data??
-        if (log.isTraceEnabled()) {
-          log.trace(
-              "Non-stream data, body not saved. Data type: {} class type: {}",
-              dataType,
-              msg.getClass().getName());
-        }
-        queued = new QueuedMediaData(timestamp, dataType);
-      }
-      if (queued != null) {
-        writeLock.lock();
-        try {
-          // add to the queue
-          queue.add(queued);
-        } finally {
-          writeLock.unlock();
-        }
-      }
-      int queueSize = 0;
-      readLock.lock();
-      try {
-        queueSize = queue.size();
-      } finally {
-        readLock.unlock();
-      }
-      // initialize a writer
-      if (writer == null) {
-        init();
-        if (msg instanceof VideoData) {
-          writeQueuedDataSlice(createTimestampLimitedSlice(msg.getTimestamp()));
-        } else if (queueThreshold >= 0 && queueSize >= queueThreshold) {
-          writeQueuedDataSlice(createFixedLengthSlice(queueThreshold / (100 / percentage)));
+        // initialize a writer
+        if (writer == null) {
+          init();
         }
+        offer(ImmutableTag.build(dataType, timestamp, ((IStreamData) msg).getData()));
+      } else if (log.isTraceEnabled()) {
+        // XXX what type of message are we saving that has no body data??
+        log.trace(
+            "Non-stream data, not saved. Data type: {} class type: {}",
+            dataType,
+            msg.getClass().getName());
       }
     } else if (message instanceof ResetMessage) {
       startTimestamp = -1;
@@ -250,105 +197,34 @@ public class SlicedFileConsumer
     }
   }
 
-  private void writeQueuedDataSlice(final QueuedMediaData[] slice) {
-    if (acquireWriteFuture(slice.length)) {
-      // spawn a writer
-      writerFuture =
-          scheduledExecutorService.submit(
-              new Runnable() {
-                public void run() {
-                  log.trace("Spawning queue writer thread");
-                  doWrites(slice);
-                }
-              });
-    } else {
-      // since we failed to write, put the sliced data back into the queue
-      writeLock.lock();
-      try {
-        List<QueuedMediaData> unwritten = Arrays.asList(slice);
-        for (QueuedMediaData queued : unwritten) {
-          if (queued.hasData()) {
-            queue.add(queued);
-          }
-        }
-      } finally {
-        writeLock.unlock();
-      }
-    }
-  }
-
-  private QueuedMediaData[] createFixedLengthSlice(int sliceLength) {
-    log.debug("Creating data slice to write of length {}.", sliceLength);
-    // get the slice
-    final QueuedMediaData[] slice = new QueuedMediaData[sliceLength];
-    log.trace("Slice length: {}", slice.length);
-    writeLock.lock();
-    try {
-      // sort the queue
-      if (log.isTraceEnabled()) {
-        log.trace("Queue length: {}", queue.size());
-      }
-      for (int q = 0; q < sliceLength; q++) {
-        slice[q] = queue.remove();
-      }
-      if (log.isTraceEnabled()) {
-        log.trace("Queue length (after removal): {}", queue.size());
-      }
-    } finally {
-      writeLock.unlock();
-    }
-    return slice;
-  }
-
-  private QueuedMediaData[] createTimestampLimitedSlice(int timestamp) {
-    log.debug("Creating data slice up until timestamp {}", timestamp);
-    // get the slice
-    final ArrayList<QueuedMediaData> slice = new ArrayList<QueuedMediaData>();
-    writeLock.lock();
-    try {
-      // sort the queue
-      if (log.isTraceEnabled()) {
-        log.trace("Queue length: {}", queue.size());
-      }
-      if (!queue.isEmpty()) {
-        while (!queue.isEmpty() && queue.peek().getTimestamp() <= timestamp) {
-          slice.add(queue.remove());
-        }
-        if (log.isTraceEnabled()) {
-          log.trace("Queue length (after removal): {}", queue.size());
-        }
-      }
-    } finally {
-      writeLock.unlock();
-    }
-    return slice.toArray(new QueuedMediaData[slice.size()]);
-  }
-
   /**
-   * Get the WriteFuture with a timeout based on the length of the slice to write.
+   * Adjusts the timestamp of a tag and queues it for writing.
    *
-   * @param sliceLength
-   * @return true if successful and false otherwise
+   * @param tag tag
    */
-  private boolean acquireWriteFuture(int sliceLength) {
-    if (sliceLength > 0) {
-      Object writeResult = null;
-      // determine a good timeout value based on the slice length to write
-      int timeout = sliceLength * 500;
-      // check for existing future
-      if (writerFuture != null) {
-        try {
-          // wait for a result from the last writer
-          writeResult = writerFuture.get(timeout, TimeUnit.MILLISECONDS);
-        } catch (Exception e) {
-          log.warn("Exception waiting for write result. Timeout: {}ms", timeout, e);
-          return false;
+  private void offer(ITag tag) {
+    RecordingQueue queue = recordingQueue;
+    if (queue != null) {
+      byte dataType = tag.getDataType();
+      // only allow blank tags if they are of audio type
+      if (tag.getBodySize() > 0 || dataType == ITag.TYPE_AUDIO) {
+        int timestamp = tag.getTimestamp();
+        // if the last message was a reset or we just started, use the header timer
+        if (startTimestamp == -1) {
+          startTimestamp = timestamp;
+          timestamp = 0;
+        } else {
+          timestamp -= startTimestamp;
+        }
+        // update the timestamp
+        tag.setTimestamp(timestamp);
+        if (timestamp < 0) {
+          log.warn("Skipping message with negative timestamp.");
+        } else if (!queue.offer(tag)) {
+          log.debug("Tag was not queued - timestamp: {} type: {}", timestamp, dataType);
         }
       }
-      log.debug("Write future result (expect null): {}", writeResult);
-      return true;
     }
-    return false;
   }
 
   /**
@@ -388,10 +264,6 @@ public class SlicedFileConsumer
   private void init() throws IOException {
     if (initialized.compareAndSet(false, true)) {
       log.debug("Init: {}", mode);
-      // instance an executor for queue handling
-      scheduledExecutorService =
-          Executors.newScheduledThreadPool(
-              schedulerThreadSize, new CustomizableThreadFactory("FileConsumerExecutor-"));
       // if the path is null, the consumer has been uninitialized
       if (path != null) {
         if (log.isDebugEnabled()) {
@@ -408,7 +280,9 @@ public class SlicedFileConsumer
               Files.isReadable(path),
               Files.isWritable(path),
               Files.size(path));
-          writer = new FLVWriter(path, true);
+          FLVWriter flvWriter = new FLVWriter(path, true);
+          flvWriter.setZeroCopyFinalization(zeroCopyFinalization);
+          writer = flvWriter;
         } else if (IClientStream.MODE_RECORD.equals(mode)) {
           try {
             // delete existing file
@@ -427,7 +301,9 @@ public class SlicedFileConsumer
           }
           log.debug(
               "Path: {}\nRead: {} write: {}", path, Files.isReadable(path), Files.isWritable(path));
-          writer = new FLVWriter(path, false);
+          FLVWriter flvWriter = new FLVWriter(path, false);
+          flvWriter.setZeroCopyFinalization(zeroCopyFinalization);
+          writer = flvWriter;
           if (audioConfigurationTag != null) {
             writer.writeTag(audioConfigurationTag);
           }
@@ -446,6 +322,17 @@ public class SlicedFileConsumer
             log.error("File creation error: {}", ioe);
           }
         }
+        if (writer != null) {
+          // queue the tags of this recording with the writer pool
+          if (writerPool == null) {
+            writerPool = RecordingWriterPool.getInstance();
+          }
+          String name = path.getFileName().toString();
+          recordingQueue =
+              queueThreshold > 0
+                  ? writerPool.register(name, writer, queueThreshold)
+                  : writerPool.register(name, writer);
+        }
       } else {
         log.warn("Consumer is uninitialized");
       }
@@ -458,22 +345,14 @@ public class SlicedFileConsumer
     if (initialized.get()) {
       log.debug("Uninit");
       if (writer != null) {
-        if (writerFuture != null) {
-          try {
-            writerFuture.get();
-          } catch (Exception e) {
-            log.warn("Exception waiting for write result on uninit", e);
-          }
-          if (writerFuture.cancel(false)) {
-            log.debug("Future completed");
+        RecordingQueue queue = recordingQueue;
+        if (queue != null) {
+          recordingQueue = null;
+          // write all the queued items
+          if (!queue.close(closeTimeout)) {
+            log.warn("Queued writes did not complete within {}ms", closeTimeout);
           }
         }
-        writerFuture = null;
-        // write all the queued items
-        doWrites();
-        // clear the queue
-        queue.clear();
-        queue = null;
         // close the writer
         writer.close();
         writer = null;
@@ -485,148 +364,26 @@ public class SlicedFileConsumer
 
   /** Write all the queued items to the writer. */
   public final void doWrites() {
-    QueuedMediaData[] slice = null;
-    writeLock.lock();
-    try {
-      slice = queue.toArray(new QueuedMediaData[0]);
-      if (queue.removeAll(Arrays.asList(slice))) {
-        log.debug("Queued writes transfered, count: {}", slice.length);
-      }
-    } finally {
-      writeLock.unlock();
+    RecordingQueue queue = recordingQueue;
+    if (queue != null && !queue.flush(closeTimeout)) {
+      log.warn("Queued writes did not complete within {}ms", closeTimeout);
     }
-    // sort
-    Arrays.sort(slice);
-    // write
-    doWrites(slice);
   }
 
   /**
-   * Write a slice of the queued items to the writer.
+   * Queue a slice of items for writing.
    *
    * @param slice set of queued data
    */
   public final void doWrites(QueuedMediaData[] slice) {
-    // empty the queue
     for (QueuedMediaData queued : slice) {
-      int tmpTs = queued.getTimestamp();
-      if (lastWrittenTs <= tmpTs) {
-        if (queued.hasData()) {
-          // write the data
-          write(queued);
-          lastWrittenTs = tmpTs;
-          // clear the data, because we're done with it
-          queued.dispose();
-        } else {
-          if (log.isTraceEnabled()) {
-            log.trace("Queued data was not available");
-          }
-        }
-      } else {
-        // clear the data, since its too old
+      if (queued.hasData()) {
+        offer(queued.getData());
+        // the tag is queued, we're done with it
         queued.dispose();
-      }
-    }
-    // clear and null-out
-    slice = null;
-  }
-
-  /**
-   * Write incoming data to the file.
-   *
-   * @param timestamp adjusted timestamp
-   * @param msg stream data
-   */
-  //    private final void write(int timestamp, IRTMPEvent msg) {
-  //        // get data type
-  //        byte dataType = msg.getDataType();
-  //        log.debug("Write - timestamp: {} type: {}", timestamp, dataType);
-  //        // get data bytes
-  //        IoBuffer data = ((IStreamData<?>) msg).getData();
-  //        if (data != null) {
-  //            // if the last message was a reset or we just started, use the header timer
-  //            if (startTimestamp == -1) {
-  //                startTimestamp = timestamp;
-  //                timestamp = 0;
-  //            } else {
-  //                timestamp -= startTimestamp;
-  //            }
-  //            // create a tag
-  //            ITag tag = ImmutableTag.build(dataType, timestamp, data, 0);
-  //            // only allow blank tags if they are of audio type
-  //            if (tag.getBodySize() > 0 || dataType == ITag.TYPE_AUDIO) {
-  //                try {
-  //                    if (timestamp >= 0) {
-  //                        if (!writer.writeTag(tag)) {
-  //                            log.warn("Tag was not written");
-  //                        }
-  //                    } else {
-  //                        log.warn("Skipping message with negative timestamp.");
-  //                    }
-  //                } catch (IOException e) {
-  //                    log.error("Error writing tag", e);
-  //                } finally {
-  //                    if (data != null) {
-  //                        data.clear();
-  //                        data.free();
-  //                    }
-  //                }
-  //            }
-  //        }
-  //    }
-
-  /**
-   * Adjust timestamp and write to the file.
-   *
-   * @param queued queued data for write
-   */
-  private final void write(QueuedMediaData queued) {
-    // get data type
-    byte dataType = queued.getDataType();
-    // get timestamp
-    int timestamp = queued.getTimestamp();
-    log.debug("Write - timestamp: {} type: {}", timestamp, dataType);
-    // get queued
-    ITag tag = queued.getData();
-    if (tag != null) {
-      // only allow blank tags if they are of audio type
-      if (tag.getBodySize() > 0 || dataType == ITag.TYPE_AUDIO) {
-        // if the last message was a reset or we just started, use the header timer
-        if (startTimestamp == -1) {
-          startTimestamp = timestamp;
-          timestamp = 0;
-        } else {
-          timestamp -= startTimestamp;
-        }
-        // update the timestamp
-        tag.setTimestamp(timestamp);
-        try {
-          if (timestamp >= 0) {
-            if (!writer.writeTag(tag)) {
-              log.warn("Tag was not written");
-            }
-          } else {
-            log.warn("Skipping message with negative timestamp.");
-          }
-        } catch (ClosedChannelException cce) {
-          // the channel we tried to write to is closed, we should not try
-          // again on that writer
-          log.error(
-              "The writer is no longer able to write to the file: {} writable: {}",
-              path.getFileName(),
-              path.toFile().canWrite());
-        } catch (IOException e) {
-          log.warn("Error writing tag", e);
-          if (e.getCause() instanceof ClosedChannelException) {
-            // the channel we tried to write to is closed, we should not
-            // try again on that writer
-            log.error(
-                "The writer is no longer able to write to the file: {} writable: {}",
-                path.getFileName(),
-                path.toFile().canWrite());
-          }
-        } finally {
-          queued.dispose();
+      } else {
+        if (log.isTraceEnabled()) {
+          log.trace("Queued data was not available");
         }
       }
     }
@@ -717,10 +474,10 @@ public class SlicedFileConsumer
   }
 
   /**
-   * Sets the threshold for the queue. When the threshold is met a worker is spawned to empty the
-   * sorted queue to the writer.
+   * Sets the threshold for the queue. When the threshold is met the overflow policy of the writer
+   * pool applies to further items; the pool's queue size is used by default.
    *
-   * @param queueThreshold number of items to queue before spawning worker
+   * @param queueThreshold number of items to queue
    */
   public void setQueueThreshold(int queueThreshold) {
     this.queueThreshold = queueThreshold;
@@ -753,6 +510,16 @@ public class SlicedFileConsumer
   @Deprecated
   public void setDelayWrite(boolean delayWrite) {}
 
+  /**
+   * Whether or not the writer moves its data file into the flv with FileChannel.transferTo on close;
+   * when false the data is copied through a user space buffer.
+   *
+   * @param zeroCopyFinalization true to transfer the data file directly
+   */
+  public void setZeroCopyFinalization(boolean zeroCopyFinalization) {
+    this.zeroCopyFinalization = zeroCopyFinalization;
+  }
+
   /**
    * Whether or not to wait for the first keyframe before processing video frames.
    *
@@ -764,17 +531,49 @@ public class SlicedFileConsumer
   }
 
   /**
-   * @return the schedulerThreadSize
+   * Tags are written by the threads of the writer pool.
+   *
+   * @return 0
    */
+  @Deprecated
   public int getSchedulerThreadSize() {
-    return schedulerThreadSize;
+    return 0;
+  }
+
+  /**
+   * Tags are written by the threads of the writer pool.
+   *
+   * @param schedulerThreadSize ignored
+   */
+  @Deprecated
+  public void setSchedulerThreadSize(int schedulerThreadSize) {}
+
+  /**
+   * Sets the pool writing the tags of this recording; the shared pool is used if none is set.
+   *
+   * @param writerPool writer pool
+   */
+  public void setWriterPool(RecordingWriterPool writerPool) {
+    this.writerPool = writerPool;
   }
 
   /**
-   * @param schedulerThreadSize the schedulerThreadSize to set
+   * Sets how long to wait for queued tags to be written when the recording ends.
+   *
+   * @param closeTimeout timeout in milliseconds
    */
-  public void setSchedulerThreadSize(int schedulerThreadSize) {
-    this.schedulerThreadSize = schedulerThreadSize;
+  public void setCloseTimeout(long closeTimeout) {
+    this.closeTimeout = closeTimeout;
+  }
+
+  /**
+   * Returns the number of tags waiting to be written.
+   *
+   * @return queue depth
+   */
+  public int getQueueDepth() {
+    RecordingQueue queue = recordingQueue;
+    return queue != null ? queue.getQueueDepth() : 0;
   }
 
   /**
@@ -788,8 +587,7 @@ public class SlicedFileConsumer
 
   @Override
   public void destroy() throws Exception {
-    if (scheduledExecutorService != null) {
-      scheduledExecutorService.shutdown();
-    }
+    // make sure what was queued reaches the file
+    doWrites();
   }
 }
@@ -0,0 +1,59 @@
+package org.red5.server.net.rtmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.security.KeyPair;
+import org.junit.Test;
+
+public class HandshakeKeyPoolTest {
+
+  @Test
+  public void testTake() throws Exception {
+    HandshakeKeyPool pool = new HandshakeKeyPool();
+    pool.setPoolSize(2);
+    pool.afterPropertiesSet();
+    try {
+      // wait for the generator to fill the pool
+      for (int i = 0; i < 100 && pool.getAvailable() < 2; i++) {
+        Thread.sleep(50L);
+      }
+      KeyPair first = pool.take();
+      KeyPair second = pool.take();
+      assertNotNull(first);
+      assertNotSame(first, second);
+      assertEquals(2, pool.getTaken() + pool.getExhausted());
+    } finally {
+      pool.destroy();
+    }
+  }
+
+  @Test
+  public void testUnpooled() throws Exception {
+    HandshakeKeyPool pool = new HandshakeKeyPool();
+    pool.setPoolSize(0);
+    pool.afterPropertiesSet();
+    try {
+      assertNotNull(pool.take());
+      assertEquals(0, pool.getTaken());
+      assertEquals(0, pool.getExhausted());
+    } finally {
+      pool.destroy();
+    }
+  }
+
+  @Test
+  public void testNoPoolWithoutContext() throws Exception {
+    // nothing is started on first use, as in a client
+    assertNull(HandshakeKeyPool.getInstance());
+    HandshakeKeyPool pool = new HandshakeKeyPool();
+    pool.setPoolSize(0);
+    pool.afterPropertiesSet();
+    assertSame(pool, HandshakeKeyPool.getInstance());
+    pool.destroy();
+    assertNull(HandshakeKeyPool.getInstance());
+  }
+}
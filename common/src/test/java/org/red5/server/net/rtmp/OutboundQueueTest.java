@@ -0,0 +1,66 @@
+package org.red5.server.net.rtmp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+
+public class OutboundQueueTest {
+
+  @Test
+  public void testPollRespectsFlushSizeAndOrder() {
+    OutboundQueue queue = new OutboundQueue();
+    IoBuffer[] buffers = new IoBuffer[10];
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = IoBuffer.allocate(100);
+      queue.offer(buffers[i]);
+    }
+    assertEquals(10, queue.getDepth());
+    assertEquals(1000, queue.getPendingBytes());
+    OutboundQueue.Batch first = queue.poll(350);
+    assertEquals(4, first.size());
+    assertEquals(400, first.getEstimatedSize());
+    OutboundQueue.Batch second = queue.poll(10000);
+    assertEquals(6, second.size());
+    assertEquals(buffers[0], first.get(0));
+    assertEquals(buffers[4], second.get(0));
+    assertNull(queue.poll(10000));
+    assertTrue(queue.isEmpty());
+    assertEquals(0, queue.getPendingBytes());
+    assertEquals(2, queue.getFlushes());
+    // one batch of 4 messages and one of 6 messages, both in the 4-7 bucket
+    assertEquals(2, queue.getBatchHistogram()[2]);
+    // depths 1, 2-3, 4-7 and 8-15 were seen while offering
+    long[] depths = queue.getDepthHistogram();
+    assertEquals(1, depths[0]);
+    assertEquals(2, depths[1]);
+    assertEquals(4, depths[2]);
+    assertEquals(3, depths[3]);
+  }
+
+  @Test
+  public void testSingleFlusher() {
+    OutboundQueue queue = new OutboundQueue();
+    assertTrue(queue.beginFlush());
+    assertFalse(queue.beginFlush());
+    queue.endFlush();
+    assertTrue(queue.beginFlush());
+    queue.endFlush();
+    assertTrue(queue.scheduleFlush());
+    assertFalse(queue.scheduleFlush());
+    queue.flushStarted();
+    assertTrue(queue.scheduleFlush());
+  }
+
+  @Test
+  public void testBuckets() {
+    assertEquals(0, OutboundQueue.bucket(1));
+    assertEquals(1, OutboundQueue.bucket(3));
+    assertEquals(9, OutboundQueue.bucket(512));
+    assertEquals(10, OutboundQueue.bucket(1024));
+    assertEquals(10, OutboundQueue.bucket(100000));
+  }
+}
@@ -3,9 +3,16 @@ package org.red5.server.net.rtmp;
 import static org.junit.Assert.*;
 import static org.red5.server.net.rtmp.RTMPConnection.MAX_RESERVED_STREAMS;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.red5.server.net.rtmp.ReceivedPacketDispatcher.ReceiveMode;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
 
 public class TestRTMPConnection {
 
@@ -225,4 +232,147 @@ public class TestRTMPConnection {
   //		fail("Not yet implemented");
   //	}
 
+
+  @Test
+  public void testReceivedPacketOrderingStriped() throws Exception {
+    assertReceivedInOrder(ReceiveMode.STRIPED);
+  }
+
+  @Test
+  public void testReceivedPacketOrderingVirtual() throws Exception {
+    // falls back to striped lanes on runtimes without virtual threads
+    assertReceivedInOrder(ReceiveMode.VIRTUAL);
+  }
+
+  @Test
+  public void testSlowConnectionDoesNotHoldUpOthers() throws Exception {
+    ReceivedPacketDispatcher dispatcher = new ReceivedPacketDispatcher();
+    dispatcher.setMode(ReceiveMode.STRIPED);
+    dispatcher.setStripes(2);
+    dispatcher.afterPropertiesSet();
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    try {
+      RTMPConnection slow = new RTMPMinaConnection();
+      slow.setReceivedPacketDispatcher(dispatcher);
+      slow.setHandler(
+          new TestHandler() {
+            public void messageReceived(RTMPConnection conn, Packet packet) throws Exception {
+              blocked.countDown();
+              release.await();
+            }
+          });
+      slow.handleMessageReceived(new Packet(new Header()));
+      assertTrue(blocked.await(10, TimeUnit.SECONDS));
+      // whichever thread the others would have hashed to, the free worker handles them
+      final int count = 20;
+      final CountDownLatch handled = new CountDownLatch(count);
+      for (int i = 0; i < count; i++) {
+        RTMPConnection conn = new RTMPMinaConnection();
+        conn.setReceivedPacketDispatcher(dispatcher);
+        conn.setHandler(
+            new TestHandler() {
+              public void messageReceived(RTMPConnection conn, Packet packet) {
+                handled.countDown();
+              }
+            });
+        conn.handleMessageReceived(new Packet(new Header()));
+      }
+      assertTrue(handled.await(10, TimeUnit.SECONDS));
+    } finally {
+      release.countDown();
+      dispatcher.destroy();
+    }
+  }
+
+  @Test
+  public void testExpiredPacketDropped() throws Exception {
+    ReceivedPacketDispatcher dispatcher = new ReceivedPacketDispatcher();
+    dispatcher.setMode(ReceiveMode.STRIPED);
+    dispatcher.setStripes(1);
+    dispatcher.afterPropertiesSet();
+    try {
+      final List<Integer> received = new CopyOnWriteArrayList<>();
+      final CountDownLatch latch = new CountDownLatch(1);
+      RTMPConnection conn = new RTMPMinaConnection();
+      conn.setReceivedPacketDispatcher(dispatcher);
+      conn.setMaxHandlingTimeout(0);
+      conn.setHandler(
+          new TestHandler() {
+            public void messageReceived(RTMPConnection conn, Packet packet) {
+              received.add(packet.getHeader().getTimer());
+              latch.countDown();
+            }
+          });
+      Header expiredHeader = new Header();
+      expiredHeader.setTimer(1);
+      Packet expired = new Packet(expiredHeader);
+      // expired long before its drain
+      expired.setExpirationTime(1L);
+      conn.handleMessageReceived(expired);
+      Header header = new Header();
+      header.setTimer(2);
+      conn.handleMessageReceived(new Packet(header));
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+      assertEquals(1, received.size());
+      assertEquals(2, received.get(0).intValue());
+      assertEquals(1, dispatcher.getExpiredPackets());
+    } finally {
+      dispatcher.destroy();
+    }
+  }
+
+  private abstract static class TestHandler implements IRTMPHandler {
+
+    public void connectionOpened(RTMPConnection conn) {}
+
+    public void messageSent(RTMPConnection conn, Packet packet) {}
+
+    public void connectionClosed(RTMPConnection conn) {}
+  }
+
+  private void assertReceivedInOrder(ReceiveMode mode) throws Exception {
+    final int count = 1000;
+    ReceivedPacketDispatcher dispatcher = new ReceivedPacketDispatcher();
+    dispatcher.setMode(mode);
+    dispatcher.setStripes(2);
+    dispatcher.setMaxDrainBatch(8);
+    dispatcher.afterPropertiesSet();
+    try {
+      final List<Integer> received = new CopyOnWriteArrayList<>();
+      final CountDownLatch latch = new CountDownLatch(count);
+      RTMPConnection conn = new RTMPMinaConnection();
+      conn.setReceivedPacketDispatcher(dispatcher);
+      conn.setHandler(
+          new IRTMPHandler() {
+
+            public void connectionOpened(RTMPConnection conn) {}
+
+            public void messageReceived(RTMPConnection conn, Packet packet) throws Exception {
+              received.add(packet.getHeader().getTimer());
+              latch.countDown();
+            }
+
+            public void messageSent(RTMPConnection conn, Packet packet) {}
+
+            public void connectionClosed(RTMPConnection conn) {}
+          });
+      for (int i = 0; i < count; i++) {
+        Header header = new Header();
+        header.setTimer(i);
+        conn.handleMessageReceived(new Packet(header));
+      }
+      assertTrue(latch.await(10, TimeUnit.SECONDS));
+      for (int i = 0; i < count; i++) {
+        assertEquals(i, received.get(i).intValue());
+      }
+      // the last packet is counted after its handler returns
+      for (int i = 0; i < 100 && dispatcher.getHandledPackets() < count; i++) {
+        Thread.sleep(10);
+      }
+      assertEquals(count, dispatcher.getHandledPackets());
+    } finally {
+      dispatcher.destroy();
+    }
+  }
 }
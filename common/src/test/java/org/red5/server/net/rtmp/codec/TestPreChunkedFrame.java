@@ -0,0 +1,139 @@
+package org.red5.server.net.rtmp.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Test;
+import org.red5.server.api.IConnection;
+import org.red5.server.api.Red5;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.net.rtmp.message.Packet;
+
+public class TestPreChunkedFrame {
+
+  private final RTMPProtocolEncoder encoder = new RTMPProtocolEncoder();
+
+  @After
+  public void tearDown() {
+    Red5.setConnectionLocal(null);
+  }
+
+  @Test
+  public void testSharedChunkingMatchesPerConnectionChunking() {
+    // avc key frame with 1000 bytes of body
+    IoBuffer body = IoBuffer.allocate(1000);
+    body.put((byte) 0x17);
+    for (int i = 1; i < 1000; i++) {
+      body.put((byte) i);
+    }
+    body.flip();
+    PreChunkedFrame frame = new PreChunkedFrame(body);
+    RTMPMinaConnection perConnection = new RTMPMinaConnection();
+    RTMPMinaConnection shared = new RTMPMinaConnection();
+    // messages in a row exercise both the full and the compressed first header
+    for (int timestamp : new int[] {0, 40, 80}) {
+      IoBuffer expected = encode(perConnection, body, timestamp, null);
+      IoBuffer actual = encode(shared, body, timestamp, frame);
+      assertEquals(expected, actual);
+    }
+    assertTrue(PreChunkedFrame.getHits() > 0);
+  }
+
+  @Test
+  public void testSharedTailWrittenApart() {
+    IoBuffer body = IoBuffer.allocate(1000);
+    body.fill((byte) 3, 1000);
+    body.flip();
+    PreChunkedFrame frame = new PreChunkedFrame(body);
+    RTMPMinaConnection perConnection = new RTMPMinaConnection();
+    RTMPMinaConnection shared = new RTMPMinaConnection();
+    for (int timestamp : new int[] {0, 40}) {
+      IoBuffer expected = encode(perConnection, body, timestamp, null);
+      IoBuffer[] sharedTail = new IoBuffer[1];
+      IoBuffer head = encode(shared, body, timestamp, frame, sharedTail);
+      // the returned buffer only holds the first chunk header
+      assertTrue(sharedTail[0] != null);
+      assertTrue(sharedTail[0].isReadOnly());
+      assertEquals(expected.remaining(), head.remaining() + sharedTail[0].remaining());
+      IoBuffer joined = IoBuffer.allocate(expected.remaining());
+      joined.put(head);
+      joined.put(sharedTail[0]);
+      joined.flip();
+      assertEquals(expected, joined);
+    }
+  }
+
+  @Test
+  public void testChannelIdsAboveSixtyThree() {
+    IoBuffer body = IoBuffer.allocate(300);
+    body.fill((byte) 7, 300);
+    body.flip();
+    PreChunkedFrame frame = new PreChunkedFrame(body);
+    // 128 bytes of data in each of 3 chunks, plus two 2 byte continuation headers
+    assertEquals(304, frame.getChunkedTail(128, 100).remaining());
+    // 3 byte continuation headers
+    assertEquals(306, frame.getChunkedTail(128, 400).remaining());
+  }
+
+  @Test
+  public void testDropHookOverride() {
+    List<IConnection> asked = new ArrayList<>();
+    RTMPProtocolEncoder dropping =
+        new RTMPProtocolEncoder() {
+          @Override
+          protected boolean dropMessage(int channelId, IRTMPEvent message) {
+            asked.add(Red5.getConnectionLocal());
+            return true;
+          }
+        };
+    IoBuffer body = IoBuffer.allocate(100);
+    body.fill((byte) 5, 100);
+    body.flip();
+    RTMPMinaConnection conn = new RTMPMinaConnection();
+    Header header = new Header();
+    header.setChannelId(6);
+    header.setDataType(Constants.TYPE_VIDEO_DATA);
+    header.setStreamId(1);
+    header.setTimer(40);
+    VideoData video = new VideoData(body);
+    video.setTimestamp(40);
+    // media are encoded without the connection local, the hook still sees the connection
+    assertNull(dropping.encodePacket(conn, new Packet(header, video), null));
+    assertEquals(1, asked.size());
+    assertSame(conn, asked.get(0));
+    assertNull(Red5.getConnectionLocal());
+  }
+
+  private IoBuffer encode(
+      RTMPMinaConnection conn, IoBuffer body, int timestamp, PreChunkedFrame frame) {
+    return encode(conn, body, timestamp, frame, null);
+  }
+
+  private IoBuffer encode(
+      RTMPMinaConnection conn,
+      IoBuffer body,
+      int timestamp,
+      PreChunkedFrame frame,
+      IoBuffer[] sharedTail) {
+    Red5.setConnectionLocal(conn);
+    Header header = new Header();
+    header.setChannelId(6);
+    header.setDataType(Constants.TYPE_VIDEO_DATA);
+    header.setStreamId(1);
+    header.setTimer(timestamp);
+    VideoData video = new VideoData(body.asReadOnlyBuffer());
+    video.setTimestamp(timestamp);
+    video.setPreChunkedFrame(frame);
+    return encoder.encodePacket(conn, new Packet(header, video), sharedTail);
+  }
+}
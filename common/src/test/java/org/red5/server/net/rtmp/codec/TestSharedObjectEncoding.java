@@ -0,0 +1,60 @@
+package org.red5.server.net.rtmp.codec;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Test;
+import org.red5.server.api.IConnection.Encoding;
+import org.red5.server.api.Red5;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.so.FlexSharedObjectMessage;
+import org.red5.server.so.ISharedObjectEvent.Type;
+import org.red5.server.so.SharedObjectMessage;
+
+public class TestSharedObjectEncoding {
+
+  private final RTMPProtocolEncoder encoder = new RTMPProtocolEncoder();
+
+  @After
+  public void tearDown() {
+    Red5.setConnectionLocal(null);
+  }
+
+  @Test
+  public void testEncodedOnceMatchesPerConnectionEncoding() {
+    for (Encoding encoding : new Encoding[] {Encoding.AMF0, Encoding.AMF3}) {
+      RTMPMinaConnection conn = new RTMPMinaConnection();
+      conn.getState().setEncoding(encoding);
+      Red5.setConnectionLocal(conn);
+      SharedObjectMessage message =
+          encoding == Encoding.AMF3
+              ? new FlexSharedObjectMessage(null, "lobby", 3, false)
+              : new SharedObjectMessage(null, "lobby", 3, false);
+      message.addEvent(Type.CLIENT_UPDATE_DATA, "user", "jane");
+      message.addEvent(Type.CLIENT_SEND_MESSAGE, "chat", Arrays.asList("hello", 42));
+      IoBuffer expected =
+          encoding == Encoding.AMF3
+              ? encoder.encodeFlexSharedObject(message)
+              : encoder.encodeSharedObject(message);
+      IoBuffer shared = encoder.encodeSharedObject(message, encoding, encoding);
+      assertEquals(expected.rewind(), shared);
+      // listeners get views of the shared body, which is left untouched
+      SharedObjectMessage prepared =
+          encoding == Encoding.AMF3
+              ? new FlexSharedObjectMessage(null, "lobby", 3, false)
+              : new SharedObjectMessage(null, "lobby", 3, false);
+      prepared.setEncodedBody(shared);
+      for (int i = 0; i < 2; i++) {
+        IoBuffer view =
+            encoding == Encoding.AMF3
+                ? encoder.encodeFlexSharedObject(prepared)
+                : encoder.encodeSharedObject(prepared);
+        assertEquals(shared, view);
+        view.position(view.limit());
+      }
+      assertEquals(0, shared.position());
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package org.red5.server.scheduling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/** The wheel is driven tick by tick from the test, with the batches run inline or held back. */
+public class WheelSchedulingServiceTest {
+
+  private WheelSchedulingService service;
+
+  /** Batches handed to the workers */
+  private int batches;
+
+  /** Whether batches are held back instead of run */
+  private boolean deferred;
+
+  private final List<Runnable> held = new ArrayList<>();
+
+  @Before
+  public void setUp() throws Exception {
+    service = new WheelSchedulingService();
+    service.setThreadCount(4);
+    service.init(
+        batch -> {
+          batches++;
+          if (deferred) {
+            held.add(batch);
+          } else {
+            batch.run();
+          }
+        });
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    service.destroy();
+  }
+
+  private void advance(int ticks) {
+    for (int i = 0; i < ticks; i++) {
+      service.advanceTick();
+    }
+  }
+
+  @Test
+  public void testOnceJob() {
+    AtomicInteger runs = new AtomicInteger();
+    // 50 ms is five ticks of 10 ms
+    String name = service.addScheduledOnceJob(50, svc -> runs.incrementAndGet());
+    advance(4);
+    assertEquals(0, runs.get());
+    advance(1);
+    assertEquals(1, runs.get());
+    // once jobs remove themselves after running
+    assertFalse(service.getScheduledJobNames().contains(name));
+    advance(10);
+    assertEquals(1, runs.get());
+  }
+
+  @Test
+  public void testRepeatingJobsAreBatchedAndRemoved() {
+    int jobs = 2000;
+    AtomicInteger runs = new AtomicInteger();
+    String[] names = new String[jobs];
+    for (int i = 0; i < jobs; i++) {
+      names[i] = service.addScheduledJob(10, svc -> runs.incrementAndGet());
+    }
+    assertEquals(jobs, service.getScheduledJobCount());
+    advance(30);
+    // every job on every tick, in one batch per worker
+    assertEquals(jobs * 30, runs.get());
+    assertEquals(4 * 30, batches);
+    assertEquals(jobs, service.getAverageJobsPerTick(), 0d);
+    for (String name : names) {
+      service.removeScheduledJob(name);
+    }
+    assertEquals(0, service.getScheduledJobCount());
+    advance(10);
+    assertEquals(jobs * 30, runs.get());
+  }
+
+  @Test
+  public void testJobDoesNotOverlapItself() {
+    AtomicInteger runs = new AtomicInteger();
+    String name = service.addScheduledJob(10, svc -> runs.incrementAndGet());
+    deferred = true;
+    advance(1);
+    assertEquals(1, held.size());
+    // still running, so it isn't due again however many ticks go by
+    advance(5);
+    assertEquals(1, held.size());
+    held.remove(0).run();
+    assertEquals(1, runs.get());
+    // re-armed for the next tick once finished, as it fell behind
+    advance(1);
+    assertEquals(1, held.size());
+    held.remove(0).run();
+    assertEquals(2, runs.get());
+    service.removeScheduledJob(name);
+  }
+
+  @Test
+  public void testPauseAndResume() {
+    AtomicInteger runs = new AtomicInteger();
+    String name = service.addScheduledJob(10, svc -> runs.incrementAndGet());
+    advance(3);
+    assertEquals(3, runs.get());
+    service.pauseScheduledJob(name);
+    advance(3);
+    assertEquals(3, runs.get());
+    assertTrue(service.getScheduledJobNames().contains(name));
+    service.resumeScheduledJob(name);
+    advance(2);
+    assertEquals(5, runs.get());
+    service.removeScheduledJob(name);
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.red5.codec.AVCVideo;
+import org.red5.codec.StreamCodecInfo;
+import org.red5.server.api.scheduling.ISchedulingService;
+import org.red5.server.api.scope.IBroadcastScope;
+import org.red5.server.api.stream.IClientBroadcastStream;
+import org.red5.server.api.stream.IStreamCapableConnection;
+import org.red5.server.api.stream.ISubscriberStream;
+import org.red5.server.api.stream.StreamState;
+import org.red5.server.api.stream.support.SimplePlayItem;
+import org.red5.server.messaging.IMessageInput;
+import org.red5.server.messaging.IMessageOutput;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.stream.bandwidth.TokenBucketService;
+import org.red5.server.stream.message.RTMPMessage;
+
+/** Tests for the live playback of {@link PlayEngine} */
+public class PlayEngineTest {
+
+  /** Returns a proxy answering with the handler, or with the default value of the return type. */
+  @SuppressWarnings("unchecked")
+  private static <T> T fake(Class<?>[] types, Answer answer) {
+    return (T)
+        Proxy.newProxyInstance(
+            PlayEngineTest.class.getClassLoader(),
+            types,
+            (proxy, method, args) -> {
+              Object result = answer.answer(method.getName(), args);
+              if (result == null && method.getReturnType().isPrimitive()) {
+                Class<?> type = method.getReturnType();
+                if (type == boolean.class) {
+                  return false;
+                } else if (type == void.class) {
+                  return null;
+                } else if (type == long.class) {
+                  return 0L;
+                } else if (type == double.class) {
+                  return 0d;
+                } else if (type == float.class) {
+                  return 0f;
+                }
+                return type == int.class ? (Object) 0 : (Object) (byte) 0;
+              }
+              return result;
+            });
+  }
+
+  private interface Answer {
+    Object answer(String method, Object[] args);
+  }
+
+  private static IoBuffer frame(int... bytes) {
+    IoBuffer data = IoBuffer.allocate(bytes.length + 8);
+    for (int b : bytes) {
+      data.put((byte) b);
+    }
+    data.put(new byte[8]);
+    data.flip();
+    return data;
+  }
+
+  @Test
+  public void testGroupOfPicturesIntoLive() throws Exception {
+    // a stream live for a minute, the group of pictures starts at 60 s
+    AVCVideo video = new AVCVideo();
+    video.setBufferInterframes(true);
+    video.addData(frame(0x17, 0, 0, 0, 0, 1, 0x42, 0, 0x1e), 59990);
+    video.addData(frame(0x17, 1, 0, 0, 0), 60000);
+    video.addData(frame(0x27, 1, 0, 0, 0), 60033);
+    StreamCodecInfo codecInfo = new StreamCodecInfo();
+    codecInfo.setHasVideo(true);
+    codecInfo.setVideoCodec(video);
+    List<Integer> timestamps = new ArrayList<>();
+    PlayEngine engine = playLive(codecInfo, null, timestamps);
+    // the publisher goes on with the next frames
+    for (int ts : new int[] {60066, 60100}) {
+      VideoData live = new VideoData(frame(0x27, 1, 0, 0, 0));
+      live.setSourceType(Constants.SOURCE_TYPE_LIVE);
+      engine.pushMessage(null, RTMPMessage.build(live, ts));
+    }
+    // configuration, keyframe and interframe of the group, then the live frames
+    assertEquals(5, timestamps.size());
+    assertEquals(0, (int) timestamps.get(0));
+    for (int i = 1; i < timestamps.size(); i++) {
+      assertTrue("not monotonic: " + timestamps, timestamps.get(i) >= timestamps.get(i - 1));
+    }
+    // live frames follow on from the group without a gap
+    assertEquals("[0, 0, 33, 66, 100]", timestamps.toString());
+  }
+
+  @Test
+  public void testNoBucketWithoutRate() throws Exception {
+    TokenBucketService tokenBucketService = new TokenBucketService();
+    playLive(new StreamCodecInfo(), tokenBucketService, new ArrayList<>());
+    assertEquals(0, tokenBucketService.getConnectionBucketCount());
+  }
+
+  @Test
+  public void testThrottleCountedOnce() throws Exception {
+    TokenBucketService tokenBucketService = new TokenBucketService();
+    // a second worth of tokens, the clock doesn't advance
+    tokenBucketService.setConnectionRate(1000);
+    List<Integer> timestamps = new ArrayList<>();
+    PlayEngine engine = playLive(new StreamCodecInfo(), tokenBucketService, timestamps);
+    assertEquals(1, tokenBucketService.getConnectionBucketCount());
+    for (int ts : new int[] {0, 33, 66}) {
+      IoBuffer data = IoBuffer.allocate(600);
+      data.put((byte) 0x17);
+      data.put((byte) 1);
+      data.fill(598);
+      data.flip();
+      VideoData live = new VideoData(data);
+      live.setSourceType(Constants.SOURCE_TYPE_LIVE);
+      engine.pushMessage(null, RTMPMessage.build(live, ts));
+    }
+    // the second frame waits for tokens, the third waits behind it
+    assertEquals(1, timestamps.size());
+    assertEquals(1, tokenBucketService.getConnectionThrottled());
+  }
+
+  /**
+   * Plays a live stream with the given codec information.
+   *
+   * @param codecInfo codec information of the broadcast stream
+   * @param tokenBucketService token bucket service or null
+   * @param timestamps list receiving the timestamps of the video sent
+   * @return play engine
+   */
+  private static PlayEngine playLive(
+      StreamCodecInfo codecInfo, ITokenBucketService tokenBucketService, List<Integer> timestamps)
+      throws Exception {
+    IClientBroadcastStream stream =
+        fake(
+            new Class<?>[] {IClientBroadcastStream.class},
+            (method, args) -> "getCodecInfo".equals(method) ? codecInfo : null);
+    IMessageInput in =
+        fake(
+            new Class<?>[] {IMessageInput.class, IBroadcastScope.class},
+            (method, args) -> {
+              switch (method) {
+                case "getClientBroadcastStream":
+                  return stream;
+                case "subscribe":
+                  return true;
+              }
+              return null;
+            });
+    IMessageOutput out =
+        fake(
+            new Class<?>[] {IMessageOutput.class},
+            (method, args) -> {
+              if ("pushMessage".equals(method) && args[0] instanceof RTMPMessage) {
+                RTMPMessage message = (RTMPMessage) args[0];
+                if (message.getBody() instanceof VideoData) {
+                  timestamps.add(message.getBody().getTimestamp());
+                }
+              }
+              return "subscribe".equals(method) ? true : null;
+            });
+    IStreamCapableConnection conn =
+        fake(
+            new Class<?>[] {IStreamCapableConnection.class},
+            (method, args) -> "getSessionId".equals(method) ? "test" : null);
+    StreamState[] state = {StreamState.UNINIT};
+    ISubscriberStream subscriberStream =
+        fake(
+            new Class<?>[] {ISubscriberStream.class},
+            (method, args) -> {
+              switch (method) {
+                case "getState":
+                  return state[0];
+                case "setState":
+                  state[0] = (StreamState) args[0];
+                  return null;
+                case "getConnection":
+                  return conn;
+                case "getStreamId":
+                  return 1;
+              }
+              return null;
+            });
+    IConsumerService consumerService =
+        fake(new Class<?>[] {IConsumerService.class}, (method, args) -> out);
+    IProviderService providerService =
+        fake(
+            new Class<?>[] {IProviderService.class},
+            (method, args) -> {
+              switch (method) {
+                case "lookupProviderInput":
+                  return IProviderService.InputKind.LIVE;
+                case "getLiveProviderInput":
+                  return in;
+              }
+              return null;
+            });
+    ISchedulingService schedulingService =
+        fake(new Class<?>[] {ISchedulingService.class}, (method, args) -> null);
+    PlayEngine engine =
+        new PlayEngine.Builder(
+                subscriberStream, schedulingService, consumerService, providerService)
+            .build();
+    engine.setTokenBucketService(tokenBucketService);
+    engine.start();
+    engine.play(SimplePlayItem.build("live", -1000, -1));
+    return engine;
+  }
+}
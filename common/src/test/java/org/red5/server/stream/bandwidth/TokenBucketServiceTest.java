@@ -0,0 +1,147 @@
+package org.red5.server.stream.bandwidth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.stream.ITokenBucket;
+import org.red5.server.stream.ITokenBucket.ITokenBucketCallback;
+
+public class TokenBucketServiceTest {
+
+  private TokenBucketService service;
+
+  @Before
+  public void setUp() throws Exception {
+    // no refill thread, the tests advance the clock
+    service = new TokenBucketService();
+    service.init();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    service.destroy();
+  }
+
+  @Test
+  public void testUnlimited() {
+    ITokenBucket bucket = service.createTokenBucket(100, 0);
+    for (int i = 0; i < 1000; i++) {
+      assertTrue(bucket.acquireToken(1_000_000, 0));
+    }
+    assertEquals(0, service.getConnectionThrottled());
+  }
+
+  @Test
+  public void testBucketLimits() {
+    ITokenBucket bucket = service.createTokenBucket(100_000, 1);
+    assertTrue(bucket.acquireToken(60_000, 0));
+    assertFalse(bucket.acquireToken(60_000, 0));
+    assertEquals(1, service.getConnectionThrottled());
+    // a token per millisecond
+    service.advanceClock(10_000);
+    assertEquals(50_000, bucket.acquireTokenBestEffort(100_000));
+    assertEquals(0, bucket.acquireTokenBestEffort(100_000));
+    // never more than the capacity
+    service.advanceClock(1_000_000);
+    assertEquals(100_000, bucket.acquireTokenBestEffort(1_000_000));
+  }
+
+  @Test
+  public void testRetryNotCounted() {
+    ITokenBucket bucket = service.createTokenBucket(1000, 1);
+    assertTrue(bucket.acquireToken(1000, 0));
+    assertFalse(bucket.acquireTokenNonblocking(500, null));
+    // the same acquisition retried is a single throttle
+    assertFalse(bucket.retryToken(500, null));
+    assertFalse(bucket.retryToken(500, null));
+    assertEquals(1, service.getConnectionThrottled());
+    service.advanceClock(500);
+    assertTrue(bucket.retryToken(500, null));
+  }
+
+  @Test
+  public void testShaping() {
+    assertFalse(service.isShaping());
+    service.setScopeRate(1000);
+    assertTrue(service.isShaping());
+  }
+
+  @Test
+  public void testOversizedRequestWhenFull() {
+    ITokenBucket bucket = service.createTokenBucket(1000, 1);
+    // larger than the capacity, granted because the bucket is full
+    assertTrue(bucket.acquireToken(5000, 0));
+    assertFalse(bucket.acquireToken(1, 0));
+  }
+
+  @Test
+  public void testGlobalLimitRefundsChild() {
+    service.setGlobalRate(1000);
+    ITokenBucket first = service.createTokenBucket(10_000, 100);
+    ITokenBucket second = service.createTokenBucket(10_000, 100);
+    assertTrue(first.acquireToken(800, 0));
+    assertFalse(second.acquireToken(800, 0));
+    assertEquals(1, service.getGlobalThrottled());
+    assertEquals(0, service.getConnectionThrottled());
+    // the second bucket didn't keep its share, only the global bucket limits
+    assertEquals(200, ((TokenBucket) second).getAvailableTokens());
+  }
+
+  @Test
+  public void testBlockingAcquireWaitsForRefill() throws Exception {
+    ITokenBucket bucket = service.createTokenBucket(500, 10);
+    assertTrue(bucket.acquireToken(500, 0));
+    CompletableFuture<Boolean> acquired =
+        CompletableFuture.supplyAsync(() -> bucket.acquireToken(300, -1));
+    while (service.getWaitingBucketCount() == 0) {
+      Thread.sleep(1);
+    }
+    // 10 tokens per millisecond, not enough yet
+    service.advanceClock(20);
+    assertFalse(acquired.isDone());
+    service.advanceClock(30);
+    assertTrue(acquired.get(5, TimeUnit.SECONDS));
+    assertFalse(bucket.acquireToken(500, 5));
+  }
+
+  @Test
+  public void testCallbackAndReset() {
+    ITokenBucket bucket = service.createTokenBucket(500, 10);
+    assertTrue(bucket.acquireToken(500, 0));
+    AtomicInteger available = new AtomicInteger();
+    AtomicInteger reset = new AtomicInteger();
+    ITokenBucketCallback callback =
+        new ITokenBucketCallback() {
+
+          public void available(ITokenBucket bucket, long tokenCount) {
+            if (bucket.acquireToken(tokenCount, 0)) {
+              available.incrementAndGet();
+            }
+          }
+
+          public void reset(ITokenBucket bucket, long tokenCount) {
+            reset.incrementAndGet();
+          }
+        };
+    assertFalse(bucket.acquireTokenNonblocking(200, callback));
+    service.advanceClock(10);
+    assertEquals(0, available.get());
+    // callbacks run in the thread advancing the clock
+    service.advanceClock(20);
+    assertEquals(1, available.get());
+    assertEquals(0, service.getWaitingBucketCount());
+    // drain and wait again, then reset
+    bucket.acquireTokenBestEffort(500);
+    assertFalse(bucket.acquireTokenNonblocking(500, callback));
+    bucket.reset();
+    assertEquals(1, reset.get());
+    assertEquals(1, available.get());
+  }
+}
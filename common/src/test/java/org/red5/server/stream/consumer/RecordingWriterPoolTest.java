@@ -0,0 +1,190 @@
+package org.red5.server.stream.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Test;
+import org.red5.io.IStreamableFile;
+import org.red5.io.ITag;
+import org.red5.io.ITagWriter;
+import org.red5.io.flv.impl.FLVWriter;
+import org.red5.media.processor.IPostProcessor;
+import org.red5.server.stream.consumer.RecordingWriterPool.RecordingQueue;
+
+public class RecordingWriterPoolTest {
+
+  private RecordingWriterPool pool;
+
+  private RecordingWriterPool createPool(String overflowPolicy) {
+    pool = new RecordingWriterPool();
+    pool.setThreadCount(2);
+    pool.setMaxQueueSize(8);
+    pool.setOverflowPolicy(overflowPolicy);
+    pool.afterPropertiesSet();
+    return pool;
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (pool != null) {
+      pool.destroy();
+    }
+  }
+
+  @Test
+  public void testTagsAreWrittenInOrder() {
+    createPool("BLOCK");
+    CollectingWriter writer = new CollectingWriter(null);
+    RecordingQueue queue = pool.register("ordered", writer);
+    for (int ts = 0; ts < 500; ts++) {
+      assertTrue(queue.offer(ImmutableTag.build(ITag.TYPE_AUDIO, ts, new byte[] {(byte) 0xaf})));
+    }
+    assertTrue(queue.close(5000));
+    assertEquals(500, writer.timestamps.size());
+    for (int ts = 0; ts < 500; ts++) {
+      assertEquals(ts, writer.timestamps.get(ts).intValue());
+    }
+    assertEquals(0, pool.getRecordingCount());
+  }
+
+  @Test
+  public void testConfiguredPoolReplacesDefault() throws Exception {
+    RecordingWriterPool fallback = RecordingWriterPool.getInstance();
+    try {
+      CollectingWriter writer = new CollectingWriter(null);
+      RecordingQueue queue = fallback.register("early", writer);
+      assertTrue(queue.offer(ImmutableTag.build(ITag.TYPE_AUDIO, 0, new byte[] {(byte) 0xaf})));
+      createPool("BLOCK");
+      assertSame(pool, RecordingWriterPool.getInstance());
+      // the default pool is shut down, its recording still gets written
+      assertTrue(queue.offer(ImmutableTag.build(ITag.TYPE_AUDIO, 1, new byte[] {(byte) 0xaf})));
+      assertTrue(queue.close(5000));
+      assertEquals(Arrays.asList(0, 1), writer.timestamps);
+    } finally {
+      fallback.destroy();
+    }
+  }
+
+  @Test
+  public void testVideoIsDroppedWhenBehind() throws InterruptedException {
+    createPool("DROP_VIDEO");
+    CountDownLatch stall = new CountDownLatch(1);
+    CollectingWriter writer = new CollectingWriter(stall);
+    RecordingQueue queue = pool.register("behind", writer, 4);
+    // first tag occupies the worker until the stall is released
+    assertTrue(queue.offer(ImmutableTag.build(ITag.TYPE_AUDIO, 0, new byte[] {(byte) 0xaf})));
+    assertTrue(writer.writing.await(5, TimeUnit.SECONDS));
+    for (int ts = 1; ts <= 4; ts++) {
+      assertTrue(queue.offer(ImmutableTag.build(ITag.TYPE_AUDIO, ts, new byte[] {(byte) 0xaf})));
+    }
+    // the queue is full: inter frames are dropped, audio is still accepted
+    assertFalse(queue.offer(ImmutableTag.build(ITag.TYPE_VIDEO, 5, new byte[] {0x27})));
+    assertTrue(queue.offer(ImmutableTag.build(ITag.TYPE_AUDIO, 6, new byte[] {(byte) 0xaf})));
+    stall.countDown();
+    assertTrue(queue.flush(5000));
+    // video resumes with the next key frame
+    assertTrue(queue.offer(ImmutableTag.build(ITag.TYPE_VIDEO, 7, new byte[] {0x27})));
+    assertTrue(queue.offer(ImmutableTag.build(ITag.TYPE_VIDEO, 8, new byte[] {0x17})));
+    assertTrue(queue.close(5000));
+    assertEquals(2, queue.getDroppedTags());
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4, 6, 8), writer.timestamps);
+  }
+
+  @Test
+  public void testWriteTagsMatchesWriteTag() throws IOException {
+    List<ITag> tags = new ArrayList<>();
+    for (int ts = 0; ts < 10; ts++) {
+      // mp3, which needs no configuration tag
+      tags.add(ImmutableTag.build(ITag.TYPE_AUDIO, ts * 20, new byte[] {0x2f, 1, 2, 3}));
+    }
+    File single = File.createTempFile("single", ".flv");
+    File batch = File.createTempFile("batch", ".flv");
+    single.deleteOnExit();
+    batch.deleteOnExit();
+    FLVWriter writer = new FLVWriter(single.toPath(), false);
+    for (ITag tag : tags) {
+      assertTrue(writer.writeTag(tag));
+    }
+    long singleBytes = writer.getBytesWritten();
+    writer.close();
+    writer = new FLVWriter(batch.toPath(), false);
+    assertEquals(10, writer.writeTags(tags));
+    assertEquals(singleBytes, writer.getBytesWritten());
+    writer.close();
+  }
+
+  /** Writer collecting the timestamps of the tags, optionally stalling on its first write. */
+  private static class CollectingWriter implements ITagWriter {
+
+    final List<Integer> timestamps = new ArrayList<>();
+
+    final CountDownLatch writing = new CountDownLatch(1);
+
+    final CountDownLatch stall;
+
+    CollectingWriter(CountDownLatch stall) {
+      this.stall = stall;
+    }
+
+    @Override
+    public boolean writeTag(ITag tag) throws IOException {
+      writing.countDown();
+      if (stall != null) {
+        try {
+          stall.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+      synchronized (timestamps) {
+        timestamps.add(tag.getTimestamp());
+      }
+      return true;
+    }
+
+    @Override
+    public boolean writeTag(byte type, IoBuffer data) throws IOException {
+      return false;
+    }
+
+    @Override
+    public boolean writeStream(byte[] b) {
+      return false;
+    }
+
+    @Override
+    public void writeHeader() throws IOException {}
+
+    @Override
+    public IStreamableFile getFile() {
+      return null;
+    }
+
+    @Override
+    public int getOffset() {
+      return 0;
+    }
+
+    @Override
+    public long getBytesWritten() {
+      return 0;
+    }
+
+    @Override
+    public void addPostProcessor(IPostProcessor postProcessor) {}
+
+    @Override
+    public void close() {}
+  }
+}
@@ -125,16 +125,8 @@ public class AV1Video extends AbstractVideo {
                     data.rewind();
                     switch (subFrameType) {
                         case 1: // keyframe
-                            // log.trace("Keyframe - keyframeTimestamp: {} {}", keyframeTimestamp, timestamp);
-                            // get the time stamp and compare with the current value
-                            if (timestamp != keyframeTimestamp) {
-                                // log.trace("New keyframe");
-                                // new keyframe
-                                keyframeTimestamp = timestamp;
-                                keyframes.clear();
-                            }
-                            // store keyframe
-                            keyframes.add(new FrameData(data));
+                            // a new timestamp starts a new group of pictures, otherwise it's another slice
+                            addKeyframe(data, timestamp);
                             break;
                         case 0: // no decoder configuration for vp8
                             // log.trace("Decoder configuration");
@@ -48,9 +48,7 @@ public class AVCVideo extends AbstractVideo {
 
     // reset all except decoder configuration
     private void softReset() {
-        keyframes.clear();
-        interframes.clear();
-        numInterframes.set(0);
+        gop.clear();
     }
 
     /** {@inheritDoc} */
@@ -91,17 +89,8 @@ public class AVCVideo extends AbstractVideo {
                     data.rewind();
                     switch (avcType) {
                         case 1: // keyframe
-                            // log.trace("Keyframe - keyframeTimestamp: {} {}", keyframeTimestamp, timestamp);
-                            // get the time stamp and compare with the current value
-                            if (timestamp != keyframeTimestamp) {
-                                // log.trace("New keyframe");
-                                // new keyframe
-                                keyframeTimestamp = timestamp;
-                                // if its a new keyframe, clear keyframe and interframe collections
-                                softReset();
-                            }
-                            // store keyframe
-                            keyframes.add(new FrameData(data));
+                            // a new timestamp starts a new group of pictures, otherwise it's another slice
+                            addKeyframe(data, timestamp);
                             break;
                         case 0: // configuration
                             // log.trace("Decoder configuration");
@@ -118,18 +107,7 @@ public class AVCVideo extends AbstractVideo {
                     }
                     // rewind
                     data.rewind();
-                    try {
-                        int lastInterframe = numInterframes.getAndIncrement();
-                        // log.trace("Buffering interframe #{}", lastInterframe);
-                        if (lastInterframe < interframes.size()) {
-                            interframes.get(lastInterframe).setData(data);
-                        } else {
-                            interframes.add(new FrameData(data));
-                        }
-                    } catch (Throwable e) {
-                        log.warn("Failed to buffer interframe", e);
-                    }
-                    // log.trace("Interframes: {}", interframes.size());
+                    addInterframe(data, timestamp);
                 }
             } else {
                 // not AVC data
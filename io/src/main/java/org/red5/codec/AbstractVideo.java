@@ -1,7 +1,5 @@
 package org.red5.codec;
 
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.io.IoConstants;
 
@@ -12,14 +10,8 @@ public class AbstractVideo implements IVideoStreamCodec, IoConstants {
     /** Current timestamp for the stored keyframe */
     protected int keyframeTimestamp;
 
-    /** Storage for key frames */
-    protected final CopyOnWriteArrayList<FrameData> keyframes = new CopyOnWriteArrayList<>();
-
-    /** Storage for frames buffered since last key frame */
-    protected final CopyOnWriteArrayList<FrameData> interframes = new CopyOnWriteArrayList<>();
-
-    /** Number of frames buffered since last key frame */
-    protected final AtomicInteger numInterframes = new AtomicInteger(0);
+    /** Keyframes and the interframes buffered since */
+    protected final GopCache gop = new GopCache();
 
     /** Whether or not to buffer interframes */
     protected boolean bufferInterframes = false;
@@ -71,31 +63,63 @@ public class AbstractVideo implements IVideoStreamCodec, IoConstants {
     /** {@inheritDoc} */
     @Override
     public IoBuffer getKeyframe() {
-        if (keyframes.isEmpty()) {
+        FrameData keyframe = gop.getKeyframe();
+        if (keyframe == null) {
             return null;
         }
-        return keyframes.get(0).getFrame();
+        try {
+            return keyframe.getFrame();
+        } finally {
+            keyframe.release();
+        }
     }
 
     /** {@inheritDoc} */
     @Override
     public FrameData[] getKeyframes() {
-        return keyframes.toArray(new FrameData[0]);
+        return gop.getKeyframes();
     }
 
     /** {@inheritDoc} */
     @Override
     public int getNumInterframes() {
-        return numInterframes.get();
+        return gop.getInterframeCount();
     }
 
     /** {@inheritDoc} */
     @Override
     public FrameData getInterframe(int index) {
-        if (index < numInterframes.get()) {
-            return interframes.get(index);
+        return gop.getInterframe(index);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public FrameData[] getGroupOfPictures() {
+        return gop.retainGroup();
+    }
+
+    /**
+     * Stores a keyframe, a new timestamp starting a new group of pictures.
+     *
+     * @param data frame data
+     * @param timestamp frame timestamp
+     */
+    protected void addKeyframe(IoBuffer data, int timestamp) {
+        boolean newGroup = timestamp != keyframeTimestamp || gop.getKeyframeCount() == 0;
+        keyframeTimestamp = timestamp;
+        gop.addKeyframe(data, timestamp, newGroup);
+    }
+
+    /**
+     * Buffers an interframe of the current group of pictures, if interframes are buffered.
+     *
+     * @param data frame data
+     * @param timestamp frame timestamp
+     */
+    protected void addInterframe(IoBuffer data, int timestamp) {
+        if (bufferInterframes) {
+            gop.addInterframe(data, timestamp);
         }
-        return null;
     }
 
     public boolean isBufferInterframes() {
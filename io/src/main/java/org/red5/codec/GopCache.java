@@ -0,0 +1,255 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.codec;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.codec.IVideoStreamCodec.FrameData;
+
+/**
+ * Current group of pictures of a video stream: the keyframes of the last key timestamp followed by the interframes since. Frames share
+ * the buffers they arrived in and are kept in a fixed array of slots which every group refills from the start, so buffering a frame
+ * neither copies it nor grows a list. A group reaching the frame or byte limit stops taking interframes, the frames kept still decode.
+ * Frames are reference counted; a group handed to a subscriber stays readable while the cache moves on to the next one.
+ *
+ * @author The Red5 Project
+ */
+public class GopCache {
+
+    private static int defaultMaxFrames = 600;
+
+    private static int defaultMaxBytes = 8 * 1024 * 1024;
+
+    private static final AtomicLong framesCached = new AtomicLong();
+
+    private static final AtomicLong bytesCached = new AtomicLong();
+
+    private static final AtomicLong overflows = new AtomicLong();
+
+    private final FrameData[] slots;
+
+    private final int maxBytes;
+
+    /** Number of frames in the group, the keyframes first */
+    private int count;
+
+    private int keyframeCount;
+
+    /** Bytes held by the frames of the group */
+    private int size;
+
+    /** Whether interframes are left out of the group because it reached a limit */
+    private boolean full;
+
+    /** Creates a cache with the default limits. */
+    public GopCache() {
+        this(defaultMaxFrames, defaultMaxBytes);
+    }
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxFrames maximum number of frames of a group
+     * @param maxBytes maximum bytes held by a group
+     */
+    public GopCache(int maxFrames, int maxBytes) {
+        slots = new FrameData[Math.max(maxFrames, 1)];
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Adds a keyframe. A keyframe with a new timestamp starts a new group, one with the timestamp of the current keyframes is another
+     * slice of the same picture.
+     *
+     * @param data frame data, must not be modified afterwards
+     * @param timestamp frame timestamp
+     * @param newGroup whether the keyframe starts a new group
+     */
+    public synchronized void addKeyframe(IoBuffer data, int timestamp, boolean newGroup) {
+        if (newGroup) {
+            clear();
+        } else if (count > keyframeCount) {
+            // slices of a picture never follow its interframes, start over from this slice
+            clear();
+        }
+        if (count < slots.length) {
+            put(data, timestamp);
+            keyframeCount++;
+        }
+    }
+
+    /**
+     * Adds an interframe to the current group; ignored before the first keyframe and once the group is full.
+     *
+     * @param data frame data, must not be modified afterwards
+     * @param timestamp frame timestamp
+     * @return true if the frame was added
+     */
+    public synchronized boolean addInterframe(IoBuffer data, int timestamp) {
+        if (keyframeCount == 0 || full) {
+            return false;
+        }
+        if (count == slots.length || size + data.remaining() > maxBytes) {
+            full = true;
+            overflows.incrementAndGet();
+            return false;
+        }
+        put(data, timestamp);
+        return true;
+    }
+
+    private void put(IoBuffer data, int timestamp) {
+        FrameData frame = FrameData.share(data, timestamp);
+        slots[count++] = frame;
+        int frameSize = frame.getSize();
+        size += frameSize;
+        framesCached.incrementAndGet();
+        bytesCached.addAndGet(frameSize);
+    }
+
+    /** Drops the current group; frames retained by readers stay valid until released. */
+    public synchronized void clear() {
+        for (int i = 0; i < count; i++) {
+            slots[i].release();
+            slots[i] = null;
+        }
+        count = 0;
+        keyframeCount = 0;
+        size = 0;
+        full = false;
+    }
+
+    /**
+     * Returns the frames of the current group, each retained for the caller, who releases them once written.
+     *
+     * @return frames, empty if there is no keyframe yet
+     */
+    public synchronized FrameData[] retainGroup() {
+        FrameData[] group = new FrameData[count];
+        for (int i = 0; i < count; i++) {
+            group[i] = slots[i];
+            group[i].retain();
+        }
+        return group;
+    }
+
+    /**
+     * Returns the keyframes of the current group, each retained for the caller, who releases them once done.
+     *
+     * @return keyframes
+     */
+    public synchronized FrameData[] getKeyframes() {
+        FrameData[] keyframes = new FrameData[keyframeCount];
+        for (int i = 0; i < keyframeCount; i++) {
+            keyframes[i] = slots[i];
+            keyframes[i].retain();
+        }
+        return keyframes;
+    }
+
+    /**
+     * Returns the first keyframe of the current group, retained for the caller, who releases it once done.
+     *
+     * @return keyframe or null
+     */
+    public synchronized FrameData getKeyframe() {
+        return keyframeCount > 0 ? retained(slots[0]) : null;
+    }
+
+    public synchronized int getKeyframeCount() {
+        return keyframeCount;
+    }
+
+    public synchronized int getInterframeCount() {
+        return count - keyframeCount;
+    }
+
+    /**
+     * Returns an interframe of the current group, retained for the caller, who releases it once done.
+     *
+     * @param index index among the interframes
+     * @return frame or null if the index is out of range
+     */
+    public synchronized FrameData getInterframe(int index) {
+        return index >= 0 && index < count - keyframeCount ? retained(slots[keyframeCount + index]) : null;
+    }
+
+    private static FrameData retained(FrameData frame) {
+        // frames in the slots hold the reference of the cache, so they can't be released yet
+        frame.retain();
+        return frame;
+    }
+
+    /**
+     * Returns the bytes held by the current group.
+     *
+     * @return size in bytes
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    public synchronized boolean isFull() {
+        return full;
+    }
+
+    /**
+     * Sets the frame limit of caches created afterwards.
+     *
+     * @param maxFrames maximum number of frames of a group
+     */
+    public static void setDefaultMaxFrames(int maxFrames) {
+        GopCache.defaultMaxFrames = maxFrames;
+    }
+
+    public static int getDefaultMaxFrames() {
+        return defaultMaxFrames;
+    }
+
+    /**
+     * Sets the byte limit of caches created afterwards.
+     *
+     * @param maxBytes maximum bytes held by a group
+     */
+    public static void setDefaultMaxBytes(int maxBytes) {
+        GopCache.defaultMaxBytes = maxBytes;
+    }
+
+    public static int getDefaultMaxBytes() {
+        return defaultMaxBytes;
+    }
+
+    /**
+     * Returns the number of frames cached by all streams since startup.
+     *
+     * @return frame count
+     */
+    public static long getFramesCached() {
+        return framesCached.get();
+    }
+
+    /**
+     * Returns the bytes of the frames cached by all streams since startup; they are shared, not copied.
+     *
+     * @return bytes
+     */
+    public static long getBytesCached() {
+        return bytesCached.get();
+    }
+
+    /**
+     * Returns the number of groups which reached a limit, across all streams.
+     *
+     * @return overflow count
+     */
+    public static long getOverflows() {
+        return overflows.get();
+    }
+
+}
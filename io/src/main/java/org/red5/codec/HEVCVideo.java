@@ -47,9 +47,7 @@ public class HEVCVideo extends AbstractVideo {
 
     // reset all except decoder configuration
     private void softReset() {
-        keyframes.clear();
-        interframes.clear();
-        numInterframes.set(0);
+        gop.clear();
     }
 
     /** {@inheritDoc} */
@@ -90,17 +88,8 @@ public class HEVCVideo extends AbstractVideo {
                     data.rewind();
                     switch (avcType) {
                         case 1: // keyframe
-                            // log.trace("Keyframe - keyframeTimestamp: {} {}", keyframeTimestamp, timestamp);
-                            // get the time stamp and compare with the current value
-                            if (timestamp != keyframeTimestamp) {
-                                // log.trace("New keyframe");
-                                // new keyframe
-                                keyframeTimestamp = timestamp;
-                                // if its a new keyframe, clear keyframe and interframe collections
-                                softReset();
-                            }
-                            // store keyframe
-                            keyframes.add(new FrameData(data));
+                            // a new timestamp starts a new group of pictures, otherwise it's another slice
+                            addKeyframe(data, timestamp);
                             break;
                         case 0: // configuration
                             if (isDebug) {
@@ -119,18 +108,7 @@ public class HEVCVideo extends AbstractVideo {
                     }
                     // rewind
                     data.rewind();
-                    try {
-                        int lastInterframe = numInterframes.getAndIncrement();
-                        // log.trace("Buffering interframe #{}", lastInterframe);
-                        if (lastInterframe < interframes.size()) {
-                            interframes.get(lastInterframe).setData(data);
-                        } else {
-                            interframes.add(new FrameData(data));
-                        }
-                    } catch (Throwable e) {
-                        log.warn("Failed to buffer interframe", e);
-                    }
-                    // log.trace("Interframes: {}", interframes.size());
+                    addInterframe(data, timestamp);
                 }
             } else {
                 // not HEVC data
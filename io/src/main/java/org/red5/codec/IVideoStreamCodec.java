@@ -7,6 +7,7 @@
 
 package org.red5.codec;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.mina.core.buffer.IoBuffer;
 
 /** Represents a Video codec and its associated decoder configuration. */
@@ -79,7 +80,8 @@ public interface IVideoStreamCodec {
     IoBuffer getKeyframe();
 
     /**
-     * Returns all the keyframe data.
+     * Returns all the keyframe data. Every frame returned is retained for the caller, who should {@link FrameData#release() release}
+     * each once done.
      *
      * @return array of keyframe data
      */
@@ -102,17 +104,35 @@ public interface IVideoStreamCodec {
     int getNumInterframes();
 
     /**
-     * Gets data of interframe with the specified index.
+     * Gets data of interframe with the specified index. The frame returned is retained for the caller, who should
+     * {@link FrameData#release() release} it once done.
      *
      * @param index of interframe
      * @return data of the interframe or null if index is not valid
      */
     FrameData getInterframe(int index);
 
-    /** Holder for video frame data. */
+    /**
+     * Returns the current group of pictures: the keyframes and the buffered interframes since, in decoding order. Every frame returned is
+     * retained for the caller, who must {@link FrameData#release() release} each once it was written.
+     *
+     * @return frames of the group, empty if there is no keyframe yet
+     */
+    default FrameData[] getGroupOfPictures() {
+        return getKeyframes();
+    }
+
+    /**
+     * Holder for video frame data. A frame either owns a copy of its data or shares the buffer it arrived in; shared frames are reference
+     * counted, so a frame dropped by its codec stays readable for whoever retained it.
+     */
     public static final class FrameData {
 
-        private byte[] frame;
+        private volatile IoBuffer frame;
+
+        private int timestamp;
+
+        private final AtomicInteger refs = new AtomicInteger(1);
 
         public FrameData() {
         }
@@ -121,6 +141,21 @@ public interface IVideoStreamCodec {
             setData(data);
         }
 
+        /**
+         * Creates a frame sharing the remaining data of the buffer, which must not be modified afterwards. The position of the buffer is
+         * not changed.
+         *
+         * @param data data
+         * @param timestamp frame timestamp
+         * @return frame holding one reference
+         */
+        public static FrameData share(IoBuffer data, int timestamp) {
+            FrameData fd = new FrameData();
+            fd.frame = data.slice().asReadOnlyBuffer();
+            fd.timestamp = timestamp;
+            return fd;
+        }
+
         /**
          * Makes a copy of the incoming bytes and places them in an IoBuffer. No flip or rewind is
          * performed on the source data.
@@ -128,15 +163,51 @@ public interface IVideoStreamCodec {
          * @param data data
          */
         public void setData(IoBuffer data) {
-            if (frame != null) {
-                frame = null;
-            }
-            frame = new byte[data.limit()];
-            data.get(frame);
+            byte[] copy = new byte[data.limit()];
+            data.get(copy);
+            frame = IoBuffer.wrap(copy);
         }
 
         public IoBuffer getFrame() {
-            return frame == null ? null : IoBuffer.wrap(frame).asReadOnlyBuffer();
+            IoBuffer data = frame;
+            return data == null ? null : data.asReadOnlyBuffer();
+        }
+
+        /**
+         * Returns the size of the frame.
+         *
+         * @return size in bytes, 0 once released
+         */
+        public int getSize() {
+            IoBuffer data = frame;
+            return data == null ? 0 : data.remaining();
+        }
+
+        public int getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Adds a reference to the frame.
+         *
+         * @return false if the frame was released already
+         */
+        public boolean retain() {
+            int count;
+            do {
+                count = refs.get();
+                if (count <= 0) {
+                    return false;
+                }
+            } while (!refs.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        /** Drops a reference to the frame; the data is let go with the last one. */
+        public void release() {
+            if (refs.decrementAndGet() == 0) {
+                frame = null;
+            }
         }
     }
 }
@@ -7,8 +7,6 @@
 
 package org.red5.codec;
 
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.atomic.AtomicInteger;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,21 +25,6 @@ public class SorensonVideo extends AbstractVideo {
     /** Sorenson video codec constant */
     static final String CODEC_NAME = "SorensonVideo";
 
-    /** Block of data */
-    private byte[] blockData;
-
-    /** Number of data blocks */
-    private int dataCount;
-
-    /** Data block size */
-    private int blockSize;
-
-    /** Storage for frames buffered since last key frame */
-    private final CopyOnWriteArrayList<FrameData> interframes = new CopyOnWriteArrayList<>();
-
-    /** Number of frames buffered since last key frame */
-    private final AtomicInteger numInterframes = new AtomicInteger(0);
-
     /** Constructs a new SorensonVideo. */
     public SorensonVideo() {
         this.reset();
@@ -62,9 +45,7 @@ public class SorensonVideo extends AbstractVideo {
     /** {@inheritDoc} */
     @Override
     public void reset() {
-        this.blockData = null;
-        this.blockSize = 0;
-        this.dataCount = 0;
+        gop.clear();
     }
 
     /** {@inheritDoc} */
@@ -81,6 +62,12 @@ public class SorensonVideo extends AbstractVideo {
     /** {@inheritDoc} */
     @Override
     public boolean addData(IoBuffer data) {
+        return addData(data, keyframeTimestamp);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean addData(IoBuffer data, int timestamp) {
         if (data.limit() == 0) {
             return true;
         }
@@ -93,67 +80,16 @@ public class SorensonVideo extends AbstractVideo {
         // get frame type
         int frameType = (first & MASK_VIDEO_FRAMETYPE) >> 4;
         if (frameType != FLAG_FRAMETYPE_KEYFRAME) {
-            // Not a keyframe
-            try {
-                int lastInterframe = numInterframes.getAndIncrement();
-                if (frameType != FLAG_FRAMETYPE_DISPOSABLE) {
-                    log.trace("Buffering interframe #{}", lastInterframe);
-                    if (lastInterframe < interframes.size()) {
-                        interframes.get(lastInterframe).setData(data);
-                    } else {
-                        interframes.add(new FrameData(data));
-                    }
-                } else {
-                    numInterframes.set(lastInterframe);
-                }
-            } catch (Throwable e) {
-                log.error("Failed to buffer interframe", e);
+            // Not a keyframe, disposable frames aren't referenced by others
+            if (frameType != FLAG_FRAMETYPE_DISPOSABLE) {
+                log.trace("Buffering interframe #{}", gop.getInterframeCount());
+                gop.addInterframe(data, timestamp);
             }
-            data.rewind();
             return true;
         }
-        numInterframes.set(0);
-        interframes.clear();
-        // Store last keyframe
-        dataCount = data.limit();
-        if (blockSize < dataCount) {
-            blockSize = dataCount;
-            blockData = new byte[blockSize];
-        }
-        data.get(blockData, 0, dataCount);
-        data.rewind();
+        // Store last keyframe, every keyframe starts a new group
+        keyframeTimestamp = timestamp;
+        gop.addKeyframe(data, timestamp, true);
         return true;
     }
-
-    /** {@inheritDoc} */
-    @Override
-    public IoBuffer getKeyframe() {
-        if (dataCount > 0) {
-            IoBuffer result = IoBuffer.allocate(dataCount);
-            result.put(blockData, 0, dataCount);
-            result.rewind();
-            return result;
-        }
-        return null;
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public int getNumInterframes() {
-        return numInterframes.get();
-    }
-
-    /** {@inheritDoc} */
-    @Override
-    public FrameData getInterframe(int index) {
-        if (index < numInterframes.get()) {
-            return interframes.get(index);
-        }
-        return null;
-    }
-
-    @Override
-    public FrameData[] getKeyframes() {
-        return dataCount > 0 ? new FrameData[] { new FrameData(getKeyframe()) } : new FrameData[0];
-    }
 }
@@ -0,0 +1,421 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keyframe metadata cache storing a compact binary index next to the media file (<i>file</i>.kfi),
+ * fronted by a concurrent, size-bounded in-memory tier.
+ *
+ * <p>The index layout, big-endian:
+ *
+ * <pre>
+ * int    magic 'R5KF'
+ * short  version
+ * byte   flags (bit 0: audio only)
+ * byte   reserved
+ * long   media file last modified
+ * long   duration in milliseconds
+ * int    video codec id
+ * int    audio codec id
+ * int    keyframe count (n)
+ * long[n] positions
+ * int[n]  timestamps
+ * </pre>
+ *
+ * The file is read with a single channel read and the columns are bulk copied into the primitive
+ * arrays of {@link KeyFrameMeta}. Legacy XML <i>file</i>.meta entries are read once and migrated to the binary
+ * format; {@link #main(String[])} migrates a whole library up front.
+ *
+ * <p>The in-memory tier is bounded by the number of keyframes held (12 bytes each) and evicts the
+ * least recently used of a small random sample, so lookups and inserts never take a global lock.
+ *
+ * @author The Red5 Project
+ */
+public class BinaryKeyFrameMetaCache implements IKeyFrameMetaCache {
+
+    private static Logger log = LoggerFactory.getLogger(BinaryKeyFrameMetaCache.class);
+
+    /** Index file extension */
+    public static final String EXTENSION = ".kfi";
+
+    /** 'R5KF' */
+    private static final int MAGIC = 0x52354b46;
+
+    private static final short VERSION = 1;
+
+    private static final int HEADER_LENGTH = 4 + 2 + 1 + 1 + 8 + 8 + 4 + 4 + 4;
+
+    /** Number of entries inspected when choosing an entry to evict */
+    private static final int EVICTION_SAMPLE = 8;
+
+    /** Reads the legacy xml metadata */
+    private final FileKeyFrameMetaCache xmlCache = new FileKeyFrameMetaCache();
+
+    private final ConcurrentHashMap<String, CacheEntry> inMemoryMetaCache = new ConcurrentHashMap<>();
+
+    /** Keyframes held in memory */
+    private final AtomicLong cachedKeyFrames = new AtomicLong();
+
+    /** Access clock for recency */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private int maxCacheEntry = 500;
+
+    private long maxCacheKeyFrames = 4 * 1024 * 1024;
+
+    /** Whether or not to migrate legacy .meta files when they're found */
+    private boolean migrateXml = true;
+
+    /** {@inheritDoc} */
+    @Override
+    public KeyFrameMeta loadKeyFrameMeta(File file) {
+        String key = file.getAbsolutePath();
+        long modified = file.lastModified();
+        CacheEntry entry = inMemoryMetaCache.get(key);
+        if (entry != null && entry.modified == modified) {
+            hits.incrementAndGet();
+            entry.lastAccess = clock.incrementAndGet();
+            return entry.meta;
+        }
+        misses.incrementAndGet();
+        KeyFrameMeta meta = readIndex(file, modified);
+        if (meta == null && migrateXml) {
+            meta = xmlCache.loadKeyFrameMeta(file);
+            if (meta != null) {
+                log.debug("Migrating xml keyframe metadata for {}", key);
+                writeIndex(file, meta);
+            }
+        }
+        if (meta != null) {
+            cache(key, modified, meta);
+        }
+        return meta;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void removeKeyFrameMeta(File file) {
+        uncache(file.getAbsolutePath());
+        try {
+            if (Files.deleteIfExists(indexPath(file))) {
+                log.debug("Index file deleted - {}", file);
+            }
+        } catch (IOException e) {
+            log.warn("Index file was not deleted - {}", file, e);
+        }
+        xmlCache.removeKeyFrameMeta(file);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void saveKeyFrameMeta(File file, KeyFrameMeta meta) {
+        uncache(file.getAbsolutePath());
+        if (meta.positions.length == 0) {
+            // Don't store empty meta informations
+            return;
+        }
+        writeIndex(file, meta);
+    }
+
+    private static Path indexPath(File file) {
+        return new File(file.getAbsolutePath() + EXTENSION).toPath();
+    }
+
+    /**
+     * Reads the binary index for the given media file.
+     *
+     * @param file media file
+     * @param modified last modified time of the media file
+     * @return keyframe metadata or null if there's no valid, current index
+     */
+    private KeyFrameMeta readIndex(File file, long modified) {
+        Path path = indexPath(file);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            // read into the heap rather than mapping, a mapping would hold the file until collected
+            // and on windows the index couldn't be replaced by the move in writeIndex meanwhile
+            ByteBuffer buf = ByteBuffer.allocate((int) size);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf) < 0) {
+                    log.warn("Truncated keyframe index: {}", path);
+                    return null;
+                }
+            }
+            buf.flip();
+            if (buf.getInt() != MAGIC) {
+                log.warn("Not a keyframe index: {}", path);
+                return null;
+            }
+            short version = buf.getShort();
+            if (version != VERSION) {
+                log.debug("Unsupported keyframe index version {}: {}", version, path);
+                return null;
+            }
+            byte flags = buf.get();
+            buf.get();
+            if (buf.getLong() != modified) {
+                // media has changed in the meantime
+                return null;
+            }
+            KeyFrameMeta meta = new KeyFrameMeta();
+            meta.duration = buf.getLong();
+            meta.videoCodecId = buf.getInt();
+            meta.audioCodecId = buf.getInt();
+            meta.audioOnly = (flags & 1) != 0;
+            int count = buf.getInt();
+            if (count <= 0 || size != HEADER_LENGTH + (count * 12L)) {
+                log.warn("Truncated keyframe index: {}", path);
+                return null;
+            }
+            meta.positions = new long[count];
+            meta.timestamps = new int[count];
+            buf.asLongBuffer().get(meta.positions);
+            buf.position(buf.position() + (count * 8));
+            buf.asIntBuffer().get(meta.timestamps);
+            return meta;
+        } catch (IOException e) {
+            log.warn("Could not read keyframe index: {}", path, e);
+        }
+        return null;
+    }
+
+    /**
+     * Writes the binary index for the given media file; the index is written to a temporary file and
+     * moved in place so readers never see a partial index.
+     *
+     * @param file media file
+     * @param meta keyframe metadata
+     */
+    private void writeIndex(File file, KeyFrameMeta meta) {
+        int count = meta.positions.length;
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_LENGTH + (count * 12));
+        buf.putInt(MAGIC);
+        buf.putShort(VERSION);
+        buf.put((byte) (meta.audioOnly ? 1 : 0));
+        buf.put((byte) 0);
+        buf.putLong(file.lastModified());
+        buf.putLong(meta.duration);
+        buf.putInt(meta.videoCodecId);
+        buf.putInt(meta.audioCodecId);
+        buf.putInt(count);
+        buf.asLongBuffer().put(meta.positions);
+        buf.position(buf.position() + (count * 8));
+        buf.asIntBuffer().put(meta.timestamps);
+        buf.rewind();
+        Path path = indexPath(file);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buf.hasRemaining()) {
+                    channel.write(buf);
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Could not save keyframe index: {}", path, e);
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ioe) {
+                // nothing else to do
+            }
+        }
+    }
+
+    private void cache(String key, long modified, KeyFrameMeta meta) {
+        CacheEntry entry = new CacheEntry(modified, meta);
+        entry.lastAccess = clock.incrementAndGet();
+        CacheEntry previous = inMemoryMetaCache.put(key, entry);
+        cachedKeyFrames.addAndGet(entry.weight - (previous != null ? previous.weight : 0));
+        while (inMemoryMetaCache.size() > maxCacheEntry || cachedKeyFrames.get() > maxCacheKeyFrames) {
+            if (!evict(key)) {
+                break;
+            }
+        }
+    }
+
+    private void uncache(String key) {
+        CacheEntry entry = inMemoryMetaCache.remove(key);
+        if (entry != null) {
+            cachedKeyFrames.addAndGet(-entry.weight);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entry among a random sample, never the given key.
+     *
+     * @param keep key which was just added
+     * @return true if an entry was evicted
+     */
+    private boolean evict(String keep) {
+        int size = inMemoryMetaCache.size();
+        if (size <= 1) {
+            return false;
+        }
+        // start the sample at a random point so the same entries aren't always inspected
+        int skip = ThreadLocalRandom.current().nextInt(Math.max(1, size - EVICTION_SAMPLE));
+        Map.Entry<String, CacheEntry> victim = null;
+        int sampled = 0;
+        Iterator<Map.Entry<String, CacheEntry>> it = inMemoryMetaCache.entrySet().iterator();
+        while (it.hasNext() && sampled < EVICTION_SAMPLE) {
+            Map.Entry<String, CacheEntry> candidate = it.next();
+            if (skip > 0) {
+                skip--;
+                continue;
+            }
+            if (candidate.getKey().equals(keep)) {
+                continue;
+            }
+            sampled++;
+            if (victim == null || candidate.getValue().lastAccess < victim.getValue().lastAccess) {
+                victim = candidate;
+            }
+        }
+        if (victim != null && inMemoryMetaCache.remove(victim.getKey(), victim.getValue())) {
+            cachedKeyFrames.addAndGet(-victim.getValue().weight);
+            return true;
+        }
+        return victim != null;
+    }
+
+    public void setMaxCacheEntry(int maxCacheEntry) {
+        this.maxCacheEntry = maxCacheEntry;
+    }
+
+    /**
+     * Sets the maximum number of keyframes held in memory across all files; each takes 12 bytes.
+     *
+     * @param maxCacheKeyFrames keyframe limit
+     */
+    public void setMaxCacheKeyFrames(long maxCacheKeyFrames) {
+        this.maxCacheKeyFrames = maxCacheKeyFrames;
+    }
+
+    public void setMigrateXml(boolean migrateXml) {
+        this.migrateXml = migrateXml;
+    }
+
+    public int getCacheSize() {
+        return inMemoryMetaCache.size();
+    }
+
+    public long getCachedKeyFrames() {
+        return cachedKeyFrames.get();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Converts the legacy xml .meta file of a media file into a binary index.
+     *
+     * @param file media file
+     * @return true if an index was written
+     */
+    public boolean migrate(File file) {
+        KeyFrameMeta meta = xmlCache.loadKeyFrameMeta(file);
+        if (meta != null && meta.positions.length > 0) {
+            writeIndex(file, meta);
+            return true;
+        }
+        return false;
+    }
+
+    private static final class CacheEntry {
+
+        final long modified;
+
+        final KeyFrameMeta meta;
+
+        final long weight;
+
+        volatile long lastAccess;
+
+        CacheEntry(long modified, KeyFrameMeta meta) {
+            this.modified = modified;
+            this.meta = meta;
+            this.weight = meta.positions.length;
+        }
+    }
+
+    /**
+     * Migrates every legacy .meta file found under the given directories to the binary index format.
+     *
+     * @param args directories to scan; add -delete to remove .meta files which were migrated
+     * @throws IOException on directory walk failure
+     */
+    public static void main(String[] args) throws IOException {
+        if (args == null || args.length == 0) {
+            System.err.println("Provide one or more directories to migrate, and optionally -delete");
+            System.exit(1);
+        }
+        boolean delete = false;
+        for (String arg : args) {
+            if ("-delete".equals(arg)) {
+                delete = true;
+            }
+        }
+        BinaryKeyFrameMetaCache cache = new BinaryKeyFrameMetaCache();
+        int migrated = 0, failed = 0;
+        for (String arg : args) {
+            if (arg.startsWith("-")) {
+                continue;
+            }
+            try (Stream<Path> paths = Files.walk(new File(arg).toPath())) {
+                for (Iterator<Path> it = paths.filter(p -> p.toString().endsWith(".meta")).iterator(); it.hasNext();) {
+                    Path metaPath = it.next();
+                    String name = metaPath.toString();
+                    File media = new File(name.substring(0, name.length() - 5));
+                    if (media.exists() && cache.migrate(media)) {
+                        migrated++;
+                        if (delete) {
+                            Files.deleteIfExists(metaPath);
+                        }
+                    } else {
+                        System.err.println("Skipped (stale or missing media): " + metaPath);
+                        failed++;
+                    }
+                }
+            }
+        }
+        System.out.println("Migrated: " + migrated + " skipped: " + failed);
+    }
+
+}
@@ -8,6 +8,7 @@
 package org.red5.io;
 
 import java.io.IOException;
+import java.util.List;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.media.processor.IPostProcessor;
 
@@ -72,6 +73,23 @@ public interface ITagWriter {
      */
     public boolean writeTag(ITag tag) throws IOException;
 
+    /**
+     * Writes Tag objects in order. Writers may store them with fewer I/O operations than one per tag.
+     *
+     * @param tags Tags to write
+     * @return number of tags written
+     * @throws IOException I/O exception
+     */
+    default int writeTags(List<ITag> tags) throws IOException {
+        int written = 0;
+        for (ITag tag : tags) {
+            if (writeTag(tag)) {
+                written++;
+            }
+        }
+        return written;
+    }
+
     /**
      * Adds a post-process for execution once the instance completes.
      *
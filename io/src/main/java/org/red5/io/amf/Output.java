@@ -15,9 +15,7 @@ import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
 import java.util.TimeZone;
 import java.util.Vector;
 import net.sf.ehcache.Cache;
@@ -26,9 +24,9 @@ import net.sf.ehcache.CacheManager;
 import net.sf.ehcache.Element;
 import org.apache.commons.beanutils.BeanMap;
 import org.apache.mina.core.buffer.IoBuffer;
-import org.red5.annotations.Anonymous;
 import org.red5.io.amf3.ByteArray;
 import org.red5.io.object.BaseOutput;
+import org.red5.io.object.ClassCodec;
 import org.red5.io.object.RecordSet;
 import org.red5.io.object.Serializer;
 import org.red5.io.utils.XMLUtils;
@@ -48,12 +46,6 @@ public class Output extends BaseOutput implements org.red5.io.object.Output {
 
     private static Cache stringCache;
 
-    private static Cache serializeCache;
-
-    private static Cache fieldCache;
-
-    private static Cache getterCache;
-
     private static CacheManager cacheManager;
 
     private static CacheManager getCacheManager() {
@@ -75,9 +67,6 @@ public class Output extends BaseOutput implements org.red5.io.object.Output {
     private static CacheManager constructDefault() {
         CacheManager manager = CacheManager.getInstance();
         manager.addCacheIfAbsent("org.red5.io.amf.Output.stringCache");
-        manager.addCacheIfAbsent("org.red5.io.amf.Output.getterCache");
-        manager.addCacheIfAbsent("org.red5.io.amf.Output.fieldCache");
-        manager.addCacheIfAbsent("org.red5.io.amf.Output.serializeCache");
         return manager;
     }
 
@@ -281,117 +270,93 @@ public class Output extends BaseOutput implements org.red5.io.object.Output {
     }
 
     /** {@inheritDoc} */
-    @SuppressWarnings({ "rawtypes" })
     @Override
     public void writeObject(Object object) {
         if (!checkWriteReference(object)) {
             storeReference(object);
-            // create new map out of bean properties
-            BeanMap beanMap = new BeanMap(object);
-            // set of bean attributes
-            Set attrs = beanMap.keySet();
-            log.trace("Bean map keys: {}", attrs);
-            if (attrs.size() == 0 || (attrs.size() == 1 && beanMap.containsKey("class"))) {
-                // beanMap is empty or can only access "class" attribute, skip it
-                writeArbitraryObject(object);
-                return;
-            }
-            // write out either start of object marker for class name or "empty" start of object marker
-            Class<?> objectClass = object.getClass();
-            if (!objectClass.isAnnotationPresent(Anonymous.class)) {
-                buf.put(AMF.TYPE_CLASS_OBJECT);
-                putString(buf, Serializer.getClassName(objectClass));
-            } else {
-                buf.put(AMF.TYPE_OBJECT);
-            }
-            // if (object instanceof ICustomSerializable) {
-            //     ((ICustomSerializable) object).serialize(this);
-            //     buf.put(AMF.END_OF_OBJECT_SEQUENCE);
-            //     return;
-            // }
-            // Iterate thru entries and write out property names with separators
-            for (Object key : attrs) {
-                String fieldName = key.toString();
-                log.debug("Field name: {} class: {}", fieldName, objectClass);
-                Field field = getField(objectClass, fieldName);
-                Method getter = getGetter(objectClass, beanMap, fieldName);
-                // Check if the Field corresponding to the getter/setter pair is transient
-                if (!serializeField(objectClass, fieldName, field, getter)) {
-                    continue;
-                }
-                putString(buf, fieldName);
-                Serializer.serialize(this, field, getter, object, beanMap.get(key));
-            }
-            // write out end of object mark
-            buf.put(AMF.END_OF_OBJECT_SEQUENCE);
+            writeProperties(object);
         }
     }
 
-    @SuppressWarnings("unchecked")
-    protected boolean serializeField(Class<?> objectClass, String keyName, Field field, Method getter) {
-        // to prevent, NullPointerExceptions, get the element first and check if it's null
-        Element element = getSerializeCache().get(objectClass);
-        Map<String, Boolean> serializeMap = (element == null ? null : (Map<String, Boolean>) element.getObjectValue());
-        if (serializeMap == null) {
-            serializeMap = new HashMap<>();
-            getSerializeCache().put(new Element(objectClass, serializeMap));
-        }
-        boolean serialize;
-        if (getSerializeCache().isKeyInCache(keyName)) {
-            serialize = serializeMap.get(keyName);
+    /**
+     * Writes the class marker, the properties and the end of object mark of an object.
+     *
+     * @param object Object to write
+     */
+    private void writeProperties(Object object) {
+        ClassCodec codec = ClassCodec.forClass(object.getClass());
+        // write out either start of object marker for class name or "empty" start of object marker
+        if (!codec.isAnonymous()) {
+            buf.put(AMF.TYPE_CLASS_OBJECT);
+            putString(buf, codec.getEncodedClassName());
         } else {
-            serialize = Serializer.serializeField(keyName, field, getter);
-            serializeMap.put(keyName, serialize);
+            buf.put(AMF.TYPE_OBJECT);
+        }
+        // write out property names and values
+        for (ClassCodec.Property property : codec.getProperties()) {
+            putString(buf, property.getEncodedName());
+            Serializer.serialize(this, property.getField(), property.getReadMethod(), object, property.get(object));
         }
-        return serialize;
+        // write out end of object mark
+        buf.put(AMF.END_OF_OBJECT_SEQUENCE);
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Returns whether a property is serialized.
+     *
+     * @param objectClass class of the object
+     * @param keyName property name
+     * @param field field of the property or null
+     * @param getter getter of the property or null
+     * @return true if the property is serialized
+     * @deprecated the properties written are those of {@link ClassCodec#forClass(Class)}, which applies this check once per class
+     */
+    @Deprecated
+    protected boolean serializeField(Class<?> objectClass, String keyName, Field field, Method getter) {
+        return Serializer.serializeField(keyName, field, getter);
+    }
+
+    /**
+     * Returns the field of a property.
+     *
+     * @param objectClass class of the object
+     * @param keyName property name
+     * @return field or null
+     * @deprecated use {@link ClassCodec.Property#getField()}
+     */
+    @Deprecated
     protected Field getField(Class<?> objectClass, String keyName) {
-        // again, to prevent null pointers, check if the element exists first.
-        Element element = getFieldCache().get(objectClass);
-        Map<String, Field> fieldMap = (element == null ? null : (Map<String, Field>) element.getObjectValue());
-        if (fieldMap == null) {
-            fieldMap = new HashMap<String, Field>();
-            getFieldCache().put(new Element(objectClass, fieldMap));
-        }
-        Field field = null;
-        if (fieldMap.containsKey(keyName)) {
-            field = fieldMap.get(keyName);
-        } else {
-            for (Class<?> clazz = objectClass; !clazz.equals(Object.class); clazz = clazz.getSuperclass()) {
-                Field[] fields = clazz.getDeclaredFields();
-                if (fields.length > 0) {
-                    for (Field fld : fields) {
-                        if (fld.getName().equals(keyName)) {
-                            field = fld;
-                            break;
-                        }
-                    }
-                }
-            }
-            fieldMap.put(keyName, field);
-        }
-        return field;
+        return ClassCodec.findField(objectClass, keyName);
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Returns the getter of a property.
+     *
+     * @param objectClass class of the object
+     * @param beanMap bean map of the object
+     * @param keyName property name
+     * @return getter or null
+     * @deprecated use {@link ClassCodec.Property#getReadMethod()}
+     */
+    @Deprecated
     protected Method getGetter(Class<?> objectClass, BeanMap beanMap, String keyName) {
-        // check element to prevent null pointer
-        Element element = getGetterCache().get(objectClass);
-        Map<String, Method> getterMap = (element == null ? null : (Map<String, Method>) element.getObjectValue());
-        if (getterMap == null) {
-            getterMap = new HashMap<String, Method>();
-            getGetterCache().put(new Element(objectClass, getterMap));
-        }
-        Method getter;
-        if (getterMap.containsKey(keyName)) {
-            getter = getterMap.get(keyName);
-        } else {
-            getter = beanMap.getReadMethod(keyName);
-            getterMap.put(keyName, getter);
+        for (ClassCodec.Property property : ClassCodec.forClass(objectClass).getProperties()) {
+            if (property.getName().equals(keyName)) {
+                return property.getReadMethod();
+            }
         }
-        return getter;
+        return beanMap.getReadMethod(keyName);
+    }
+
+    /**
+     * Writes an arbitrary object to the output.
+     *
+     * @param object Object to write
+     * @deprecated objects are written by {@link #writeObject(Object)}, whatever their properties
+     */
+    @Deprecated
+    protected void writeArbitraryObject(Object object) {
+        writeProperties(object);
     }
 
     /** {@inheritDoc} */
@@ -413,48 +378,6 @@ public class Output extends BaseOutput implements org.red5.io.object.Output {
         }
     }
 
-    /**
-     * Writes an arbitrary object to the output.
-     *
-     * @param object Object to write
-     */
-    protected void writeArbitraryObject(Object object) {
-        log.debug("writeObject");
-        // If we need to serialize class information...
-        Class<?> objectClass = object.getClass();
-        if (!objectClass.isAnnotationPresent(Anonymous.class)) {
-            // Write out start object marker for class name
-            buf.put(AMF.TYPE_CLASS_OBJECT);
-            putString(buf, Serializer.getClassName(objectClass));
-        } else {
-            // Write out start object marker without class name
-            buf.put(AMF.TYPE_OBJECT);
-        }
-        // Iterate thru fields of an object to build "name-value" map from it
-        for (Field field : objectClass.getFields()) {
-            String fieldName = field.getName();
-            log.debug("Field: {} class: {}", field, objectClass);
-            // Check if the Field corresponding to the getter/setter pair is transient
-            if (!serializeField(objectClass, fieldName, field, null)) {
-                continue;
-            }
-            Object value;
-            try {
-                // Get field value
-                value = field.get(object);
-            } catch (IllegalAccessException err) {
-                // Swallow on private and protected properties access exception
-                continue;
-            }
-            // Write out prop name
-            putString(buf, fieldName);
-            // Write out
-            Serializer.serialize(this, field, null, object, value);
-        }
-        // write out end of object marker
-        buf.put(AMF.END_OF_OBJECT_SEQUENCE);
-    }
-
     /** {@inheritDoc} */
     @Override
     public void writeString(String string) {
@@ -527,7 +450,16 @@ public class Output extends BaseOutput implements org.red5.io.object.Output {
      * @param string String to write
      */
     public static void putString(IoBuffer buf, String string) {
-        final byte[] encoded = encodeString(string);
+        putString(buf, encodeString(string));
+    }
+
+    /**
+     * Write out an already encoded string
+     *
+     * @param buf Byte buffer to write to
+     * @param encoded UTF-8 encoded string
+     */
+    public static void putString(IoBuffer buf, byte[] encoded) {
         if (encoded.length < AMF.LONG_STRING_LENGTH) {
             // write unsigned short
             buf.put((byte) ((encoded.length >> 8) & 0xff));
@@ -581,33 +513,9 @@ public class Output extends BaseOutput implements org.red5.io.object.Output {
         return stringCache;
     }
 
-    protected static Cache getSerializeCache() {
-        if (serializeCache == null) {
-            serializeCache = getCacheManager().getCache("org.red5.io.amf.Output.serializeCache");
-        }
-        return serializeCache;
-    }
-
-    protected static Cache getFieldCache() {
-        if (fieldCache == null) {
-            fieldCache = getCacheManager().getCache("org.red5.io.amf.Output.fieldCache");
-        }
-        return fieldCache;
-    }
-
-    protected static Cache getGetterCache() {
-        if (getterCache == null) {
-            getterCache = getCacheManager().getCache("org.red5.io.amf.Output.getterCache");
-        }
-        return getterCache;
-    }
-
     public static void destroyCache() {
         if (cacheManager != null) {
             cacheManager.shutdown();
-            fieldCache = null;
-            getterCache = null;
-            serializeCache = null;
             stringCache = null;
         }
     }
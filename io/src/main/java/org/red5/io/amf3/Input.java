@@ -9,7 +9,6 @@ package org.red5.io.amf3;
 
 import java.io.IOException;
 import java.lang.reflect.Array;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
@@ -33,10 +32,10 @@ import java.util.concurrent.ConcurrentMap;
 import org.apache.commons.beanutils.BeanUtils;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.io.amf.AMF;
+import org.red5.io.object.ClassCodec;
 import org.red5.io.object.DataTypes;
 import org.red5.io.object.Deserializer;
 import org.red5.io.utils.ArrayUtils;
-import org.red5.io.utils.ConversionUtils;
 import org.red5.io.utils.ObjectMap;
 import org.red5.io.utils.XMLUtils;
 import org.slf4j.Logger;
@@ -137,9 +136,7 @@ public class Input extends org.red5.io.amf.Input {
     public void resolveProperties(Object result) {
       if (properties != null) {
         for (PendingProperty prop : properties) {
-          try {
-            prop.klass.getField(prop.name).set(prop.obj, result);
-          } catch (Exception e) {
+          if (!ClassCodec.forClass(prop.klass).setProperty(prop.obj, prop.name, result)) {
             try {
               BeanUtils.setProperty(prop.obj, prop.name, result);
             } catch (Exception ex) {
@@ -808,6 +805,7 @@ public class Input extends org.red5.io.amf.Input {
         if (result != null) {
           storeReference(tempRefId, result);
           Class resultClass = result.getClass();
+          ClassCodec codec = ClassCodec.forClass(resultClass);
           pending.resolveProperties(result);
           for (Map.Entry<String, Object> entry : properties.entrySet()) {
             // Resolve circular references
@@ -822,16 +820,8 @@ public class Input extends org.red5.io.amf.Input {
               continue;
             }
             if (value != null) {
-              try {
-                final Field field = resultClass.getField(key);
-                final Class fieldType = field.getType();
-                if (!fieldType.isAssignableFrom(value.getClass())) {
-                  value = ConversionUtils.convert(value, fieldType);
-                } else if (value instanceof Enum) {
-                  value = Enum.valueOf(fieldType, value.toString());
-                }
-                field.set(result, value);
-              } catch (Exception e) {
+              if (!codec.setProperty(result, key, value)) {
+                // fall back to the bean utils conversions
                 try {
                   BeanUtils.setProperty(result, key, value);
                 } catch (IllegalAccessException ex) {
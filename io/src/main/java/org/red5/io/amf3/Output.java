@@ -8,22 +8,18 @@
 package org.red5.io.amf3;
 
 import java.lang.reflect.Array;
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Map;
-import java.util.Set;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import net.sf.ehcache.Element;
-import org.apache.commons.beanutils.BeanMap;
 import org.apache.mina.core.buffer.IoBuffer;
-import org.red5.annotations.Anonymous;
 import org.red5.compatibility.flex.messaging.io.ObjectProxy;
 import org.red5.io.amf.AMF;
+import org.red5.io.object.ClassCodec;
 import org.red5.io.object.RecordSet;
 import org.red5.io.object.Serializer;
 import org.red5.io.object.UnsignedInt;
@@ -373,46 +369,6 @@ public class Output extends org.red5.io.amf.Output {
 
     /** {@inheritDoc} */
     @Override
-    protected void writeArbitraryObject(Object object) {
-        log.debug("writeArbitraryObject: {}", object);
-        Class<?> objectClass = object.getClass();
-        // If we need to serialize class information...
-        if (!objectClass.isAnnotationPresent(Anonymous.class)) {
-            putString(Serializer.getClassName(objectClass));
-        } else {
-            putString("");
-        }
-        // Store key/value pairs
-        amf3_mode += 1;
-        // Iterate thru fields of an object to build "name-value" map from it
-        for (Field field : objectClass.getFields()) {
-            String fieldName = field.getName();
-            log.debug("Field: {} class: {}", field, objectClass);
-            // Check if the Field corresponding to the getter/setter pair is transient
-            if (!serializeField(objectClass, fieldName, field, null)) {
-                continue;
-            }
-            Object value;
-            try {
-                // Get field value
-                value = field.get(object);
-            } catch (IllegalAccessException err) {
-                // Swallow on private and protected properties access exception
-                continue;
-            }
-            // Write out prop name
-            putString(fieldName);
-            // Write out
-            Serializer.serialize(this, field, null, object, value);
-        }
-        amf3_mode -= 1;
-        // Write out end of object marker
-        putString("");
-    }
-
-    /** {@inheritDoc} */
-    @SuppressWarnings({ "rawtypes" })
-    @Override
     public void writeObject(Object object) {
         log.debug("writeObject: {} {}", object.getClass().getName(), object);
         writeAMF3();
@@ -446,41 +402,44 @@ public class Output extends org.red5.io.amf.Output {
         // we have an inline class that is not a reference, store the properties using key/value pairs
         int type = AMF3.TYPE_OBJECT_VALUE << 2 | 1 << 1 | 1;
         putInteger(type);
-        // create new map out of bean properties
-        BeanMap beanMap = new BeanMap(object);
-        // set of bean attributes
-        Set set = beanMap.keySet();
-        if ((set.size() == 0) || (set.size() == 1 && beanMap.containsKey("class"))) {
-            // beanMap is empty or can only access "class" attribute, skip it
-            writeArbitraryObject(object);
-            return;
-        }
-        // write out either start of object marker for class name or "empty" start of object marker
-        if (!objectClass.isAnnotationPresent(Anonymous.class)) {
-            log.debug("Object is annotated as Anonymous");
-            putString(Serializer.getClassName(objectClass));
+        writeProperties(object);
+    }
+
+    /**
+     * Writes the class name, the properties and the end of object marker of an object.
+     *
+     * @param object Object to write
+     */
+    private void writeProperties(Object object) {
+        ClassCodec codec = ClassCodec.forClass(object.getClass());
+        // write out either the class name or an empty one for anonymous objects
+        if (!codec.isAnonymous()) {
+            putString(codec.getClassName(), codec.getEncodedClassName());
         } else {
             putString("");
         }
         // store key/value pairs
         amf3_mode += 1;
-        for (Object key : set) {
-            String fieldName = key.toString();
-            log.debug("Field name: {} class: {}", fieldName, objectClass);
-            Field field = getField(objectClass, fieldName);
-            Method getter = getGetter(objectClass, beanMap, fieldName);
-            // check if the Field corresponding to the getter/setter pair is transient
-            if (!serializeField(objectClass, fieldName, field, getter)) {
-                continue;
-            }
-            putString(fieldName);
-            Serializer.serialize(this, field, getter, object, beanMap.get(key));
+        for (ClassCodec.Property property : codec.getProperties()) {
+            putString(property.getName(), property.getEncodedName());
+            Serializer.serialize(this, property.getField(), property.getReadMethod(), object, property.get(object));
         }
         amf3_mode -= 1;
         // end of object marker
         putString("");
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @deprecated objects are written by {@link #writeObject(Object)}, whatever their properties
+     */
+    @Deprecated
+    @Override
+    protected void writeArbitraryObject(Object object) {
+        writeProperties(object);
+    }
+
     /** {@inheritDoc} */
     @Override
     public void writeObject(Map<Object, Object> map) {
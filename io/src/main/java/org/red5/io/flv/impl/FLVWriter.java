@@ -12,6 +12,8 @@ import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -19,14 +21,13 @@ import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -68,12 +69,12 @@ public class FLVWriter implements ITagWriter {
     /** For now all recorded streams carry a stream id of 0. */
     private static final byte[] DEFAULT_STREAM_ID = new byte[] { (byte) (0 & 0xff), (byte) (0 & 0xff), (byte) (0 & 0xff) };
 
-    /** Executor for tasks within this instance */
-    private ExecutorService executor = Executors.newSingleThreadExecutor();
-
     /** FLV object */
     private static IFLV flv;
 
+    /** Whether or not the data file is moved into the final flv with FileChannel.transferTo at finalization */
+    private boolean zeroCopyFinalization = true;
+
     /** Number of bytes written */
     private volatile long bytesWritten;
 
@@ -95,6 +96,12 @@ public class FLVWriter implements ITagWriter {
     /** If video configuration data has been written */
     private AtomicBoolean videoConfigWritten = new AtomicBoolean(false);
 
+    /** If audio configuration data has been prepared but not yet written */
+    private boolean audioConfigPending;
+
+    /** If video configuration data has been prepared but not yet written */
+    private boolean videoConfigPending;
+
     /** Sampling rate */
     private volatile int soundRate;
 
@@ -313,214 +320,58 @@ public class FLVWriter implements ITagWriter {
     /** {@inheritDoc} */
     @Override
     public boolean writeTag(ITag tag) throws IOException {
-        // a/v config written flags
-        boolean onWrittenSetVideoFlag = false, onWrittenSetAudioFlag = false;
         try {
             lock.acquire();
-            /*
-             * Tag header = 11 bytes |-|---|----|---| 0 = type 1-3 = data size 4-7 = timestamp 8-10 = stream id (always 0) Tag data = variable bytes Previous tag = 4 bytes (tag header size +
-             * tag data size)
-             */
             log.trace("writeTag: {}", tag);
-            long prevBytesWritten = bytesWritten;
-            log.trace("Previous bytes written: {}", prevBytesWritten);
-            // skip tags with no data
-            int bodySize = tag.getBodySize();
-            log.trace("Tag body size: {}", bodySize);
-            // verify previous tag size stored in incoming tag
-            int previousTagSize = tag.getPreviousTagSize();
-            if (previousTagSize != lastTagSize) {
-                // use the last tag size
-                log.trace("Incoming previous tag size: {} does not match current value for last tag size: {}", previousTagSize, lastTagSize);
-            }
             // ensure that the channel is still open
             if (dataChannel != null) {
-                if (log.isTraceEnabled()) {
-                    log.trace("Current file position: {}", dataChannel.position());
+                List<ByteBuffer> buffers = new ArrayList<>(3);
+                if (prepareTag(tag, buffers)) {
+                    write(buffers);
+                    configWritten();
+                    return true;
                 }
-                // get the data type
-                byte dataType = tag.getDataType();
-                // when tag is ImmutableTag which is in red5-server-common.jar, tag.getBody().reset() will
-                // throw InvalidMarkException because
-                // ImmutableTag.getBody() returns a new IoBuffer instance everytime.
-                IoBuffer tagBody = tag.getBody();
-                // set a var holding the entire tag size including the previous tag length
-                int totalTagSize = TAG_HEADER_LENGTH + bodySize + 4;
-                // create a buffer for this tag
-                ByteBuffer tagBuffer = ByteBuffer.allocate(totalTagSize);
-                // get the timestamp
-                int timestamp = tag.getTimestamp() + timeOffset;
-                // allow for empty tag bodies
-                byte[] bodyBuf = null;
-                if (bodySize > 0) {
-                    // create an array big enough
-                    bodyBuf = new byte[bodySize];
-                    // put the bytes into the array
-                    tagBody.get(bodyBuf);
-                    // get the audio or video codec identifier
-                    if (dataType == ITag.TYPE_AUDIO) {
-                        audioDataSize += bodySize;
-                        if (audioCodecId == -1) {
-                            int id = bodyBuf[0] & 0xff; // must be unsigned
-                            audioCodecId = (id & ITag.MASK_SOUND_FORMAT) >> 4;
-                            log.debug("Audio codec id: {}", audioCodecId);
-                            // if aac use defaults
-                            if (audioCodecId == AudioCodec.AAC.getId()) {
-                                log.trace("AAC audio type");
-                                // Flash Player ignores	these values and extracts the channel and sample rate data
-                                // encoded in the AAC bit stream
-                                soundRate = 44100;
-                                soundSize = 16;
-                                soundType = true;
-                                // this is aac data, so a config chunk should be written before any media data
-                                if (bodyBuf[1] == 0) {
-                                    // when this config is written set the flag
-                                    onWrittenSetAudioFlag = true;
-                                } else {
-                                    // reject packet since config hasnt been written yet
-                                    log.debug("Rejecting AAC data since config has not yet been written");
-                                    return false;
-                                }
-                            } else if (audioCodecId == AudioCodec.OPUS.getId()) {
-                                log.trace("OPUS audio type");
-                                soundRate = 48000;
-                                soundSize = 16;
-                                soundType = true;
-                            } else if (audioCodecId == AudioCodec.SPEEX.getId()) {
-                                log.trace("Speex audio type");
-                                soundRate = 5500; // actually 16kHz
-                                soundSize = 16;
-                                soundType = false; // mono
-                            } else {
-                                switch ((id & ITag.MASK_SOUND_RATE) >> 2) {
-                                    case ITag.FLAG_RATE_5_5_KHZ:
-                                        soundRate = 5500;
-                                        break;
-                                    case ITag.FLAG_RATE_11_KHZ:
-                                        soundRate = 11000;
-                                        break;
-                                    case ITag.FLAG_RATE_22_KHZ:
-                                        soundRate = 22000;
-                                        break;
-                                    case ITag.FLAG_RATE_44_KHZ:
-                                        soundRate = 44100;
-                                        break;
-                                    case ITag.FLAG_RATE_48_KHZ:
-                                        soundRate = 48000;
-                                        break;
-                                }
-                                log.debug("Sound rate: {}", soundRate);
-                                switch ((id & ITag.MASK_SOUND_SIZE) >> 1) {
-                                    case ITag.FLAG_SIZE_8_BIT:
-                                        soundSize = 8;
-                                        break;
-                                    case ITag.FLAG_SIZE_16_BIT:
-                                        soundSize = 16;
-                                        break;
-                                }
-                                log.debug("Sound size: {}", soundSize);
-                                // mono == 0 // stereo == 1
-                                soundType = (id & ITag.MASK_SOUND_TYPE) > 0;
-                                log.debug("Sound type: {}", soundType);
-                            }
-                        } else if (!audioConfigWritten.get()) {
-                            if (audioCodecId == AudioCodec.AAC.getId()) {
-                                // this is aac data, so a config chunk should be written before any media data
-                                if (bodyBuf[1] == 0) {
-                                    // when this config is written set the flag
-                                    onWrittenSetAudioFlag = true;
-                                } else {
-                                    // reject packet since config hasnt been written yet
-                                    return false;
-                                }
-                            }
-                        }
-                    } else if (dataType == ITag.TYPE_VIDEO) {
-                        videoDataSize += bodySize;
-                        if (videoCodecId == -1) {
-                            int id = bodyBuf[0] & 0xff; // must be unsigned
-                            videoCodecId = id & ITag.MASK_VIDEO_CODEC;
-                            log.debug("Video codec id: {}", videoCodecId);
-                            if (videoCodecId == VideoCodec.AVC.getId()) {
-                                // this is avc/h264 data, so a config chunk should be written before any media data
-                                if (bodyBuf[1] == 0) {
-                                    // when this config is written set the flag
-                                    onWrittenSetVideoFlag = true;
-                                } else {
-                                    // reject packet since config hasnt been written yet
-                                    log.debug("Rejecting AVC data since config has not yet been written");
-                                    return false;
-                                }
-                            } else if (videoCodecId == VideoCodec.HEVC.getId()) {
-                                // this is HEVC data, so a config chunk should be written before any media data
-                                if (bodyBuf[1] == 0) {
-                                    // when this config is written set the flag
-                                    onWrittenSetVideoFlag = true;
-                                } else {
-                                    // reject packet since config hasnt been written yet
-                                    log.debug("Rejecting HEVC data since config has not yet been written");
-                                    return false;
-                                }
-                            }
-                        } else if (!videoConfigWritten.get()) {
-                            if (videoCodecId == VideoCodec.AVC.getId()) {
-                                // this is avc/h264 data, so a config chunk should be written before any media data
-                                if (bodyBuf[1] == 0) {
-                                    // when this config is written set the flag
-                                    onWrittenSetVideoFlag = true;
-                                } else {
-                                    // reject packet since config hasnt been written yet
-                                    log.debug("Rejecting AVC data since config has not yet been written");
-                                    return false;
-                                }
-                            } else if (videoCodecId == VideoCodec.HEVC.getId()) {
-                                // this is hevc data, so a config chunk should be written before any media data
-                                if (bodyBuf[1] == 0) {
-                                    // when this config is written set the flag
-                                    onWrittenSetVideoFlag = true;
-                                } else {
-                                    // reject packet since config hasnt been written yet
-                                    log.debug("Rejecting HEVC data since config has not yet been written");
-                                    return false;
-                                }
-                            }
-                        }
+            } else {
+                // throw an exception and let them know the cause
+                throw new IOException("FLV write channel has been closed", new ClosedChannelException());
+            }
+        } catch (InterruptedException e) {
+            log.warn("Exception acquiring lock", e);
+        } finally {
+            // configuration which failed to write is expected again
+            audioConfigPending = false;
+            videoConfigPending = false;
+            // update the file information
+            updateInfoFile();
+            // release lock
+            lock.release();
+        }
+        return false;
+    }
+
+    /**
+     * Writes the tags in order with a single gathering write; the tag bodies aren't copied.
+     *
+     * @param tags tags to write
+     * @return number of tags written, rejected tags are skipped
+     * @throws IOException I/O exception
+     */
+    @Override
+    public int writeTags(List<ITag> tags) throws IOException {
+        int written = 0;
+        try {
+            lock.acquire();
+            // ensure that the channel is still open
+            if (dataChannel != null) {
+                List<ByteBuffer> buffers = new ArrayList<>(tags.size() * 3);
+                for (ITag tag : tags) {
+                    log.trace("writeTags: {}", tag);
+                    if (prepareTag(tag, buffers)) {
+                        written++;
                     }
                 }
-                // Data Type
-                IOUtils.writeUnsignedByte(tagBuffer, dataType); // 1
-                // Body Size - Length of the message. Number of bytes after StreamID to end of tag
-                // (Equal to length of the tag - 11)
-                IOUtils.writeMediumInt(tagBuffer, bodySize); // 3
-                // Timestamp
-                IOUtils.writeExtendedMediumInt(tagBuffer, timestamp); // 4
-                // Stream id
-                tagBuffer.put(DEFAULT_STREAM_ID); // 3
-                // get the body if we have one
-                if (bodyBuf != null) {
-                    tagBuffer.put(bodyBuf);
-                }
-                // store new previous tag size
-                lastTagSize = TAG_HEADER_LENGTH + bodySize;
-                // we add the tag size
-                tagBuffer.putInt(lastTagSize);
-                // flip so we can process from the beginning
-                tagBuffer.flip();
-                // write the tag
-                dataChannel.write(tagBuffer);
-                bytesWritten = dataChannel.position();
-                if (log.isTraceEnabled()) {
-                    log.trace("Tag written, check value: {} (should be 0)", (bytesWritten - prevBytesWritten) - totalTagSize);
-                }
-                tagBuffer.clear();
-                // update the duration
-                log.debug("Current duration: {} timestamp: {}", duration, timestamp);
-                duration = Math.max(duration, timestamp);
-                // validate written amount
-                if ((bytesWritten - prevBytesWritten) != totalTagSize) {
-                    log.debug("Not all of the bytes appear to have been written, prev-current: {}", (bytesWritten - prevBytesWritten));
-                }
-                return true;
+                write(buffers);
+                configWritten();
             } else {
                 // throw an exception and let them know the cause
                 throw new IOException("FLV write channel has been closed", new ClosedChannelException());
@@ -528,18 +379,274 @@ public class FLVWriter implements ITagWriter {
         } catch (InterruptedException e) {
             log.warn("Exception acquiring lock", e);
         } finally {
+            // configuration which failed to write is expected again
+            audioConfigPending = false;
+            videoConfigPending = false;
             // update the file information
             updateInfoFile();
-            // mark config written flags
-            if (onWrittenSetAudioFlag && audioConfigWritten.compareAndSet(false, true)) {
-                log.trace("Audio configuration written");
-            } else if (onWrittenSetVideoFlag && videoConfigWritten.compareAndSet(false, true)) {
-                log.trace("Video configuration written");
-            }
             // release lock
             lock.release();
         }
-        return false;
+        return written;
+    }
+
+    /**
+     * Checks a tag and adds the buffers holding it as stored in the data file to the given list: the tag header, the body and the previous tag size. Codec details are taken from
+     * the first audio and video tags.
+     *
+     * @param tag tag
+     * @param buffers list receiving the buffers
+     * @return true if the tag is to be written, false if it was rejected
+     */
+    private boolean prepareTag(ITag tag, List<ByteBuffer> buffers) {
+        /*
+         * Tag header = 11 bytes |-|---|----|---| 0 = type 1-3 = data size 4-7 = timestamp 8-10 = stream id (always 0) Tag data = variable bytes Previous tag = 4 bytes (tag header size +
+         * tag data size)
+         */
+        // skip tags with no data
+        int bodySize = tag.getBodySize();
+        log.trace("Tag body size: {}", bodySize);
+        // verify previous tag size stored in incoming tag
+        int previousTagSize = tag.getPreviousTagSize();
+        if (previousTagSize != lastTagSize) {
+            // use the last tag size
+            log.trace("Incoming previous tag size: {} does not match current value for last tag size: {}", previousTagSize, lastTagSize);
+        }
+        // a/v config written flags
+        boolean onWrittenSetVideoFlag = false, onWrittenSetAudioFlag = false;
+        // get the data type
+        byte dataType = tag.getDataType();
+        // get the timestamp
+        int timestamp = tag.getTimestamp() + timeOffset;
+        // allow for empty tag bodies
+        ByteBuffer body = null;
+        if (bodySize > 0) {
+            // when tag is ImmutableTag which is in red5-server-common.jar, tag.getBody().reset() will
+            // throw InvalidMarkException because
+            // ImmutableTag.getBody() returns a new IoBuffer instance everytime.
+            IoBuffer tagBody = tag.getBody();
+            int position = tagBody.position();
+            // the byte following the codec byte flags configuration data with a 0
+            byte packetType = bodySize > 1 ? tagBody.get(position + 1) : -1;
+            // a view of the body, which is written without copying it
+            body = tagBody.buf().duplicate();
+            body.limit(position + bodySize);
+            body.position(position);
+            // get the audio or video codec identifier
+            if (dataType == ITag.TYPE_AUDIO) {
+                audioDataSize += bodySize;
+                if (audioCodecId == -1) {
+                    int id = tagBody.get(position) & 0xff; // must be unsigned
+                    audioCodecId = (id & ITag.MASK_SOUND_FORMAT) >> 4;
+                    log.debug("Audio codec id: {}", audioCodecId);
+                    // if aac use defaults
+                    if (audioCodecId == AudioCodec.AAC.getId()) {
+                        log.trace("AAC audio type");
+                        // Flash Player ignores	these values and extracts the channel and sample rate data
+                        // encoded in the AAC bit stream
+                        soundRate = 44100;
+                        soundSize = 16;
+                        soundType = true;
+                        // this is aac data, so a config chunk should be written before any media data
+                        if (packetType == 0) {
+                            // when this config is written set the flag
+                            onWrittenSetAudioFlag = true;
+                        } else {
+                            // reject packet since config hasnt been written yet
+                            log.debug("Rejecting AAC data since config has not yet been written");
+                            return false;
+                        }
+                    } else if (audioCodecId == AudioCodec.OPUS.getId()) {
+                        log.trace("OPUS audio type");
+                        soundRate = 48000;
+                        soundSize = 16;
+                        soundType = true;
+                    } else if (audioCodecId == AudioCodec.SPEEX.getId()) {
+                        log.trace("Speex audio type");
+                        soundRate = 5500; // actually 16kHz
+                        soundSize = 16;
+                        soundType = false; // mono
+                    } else {
+                        switch ((id & ITag.MASK_SOUND_RATE) >> 2) {
+                            case ITag.FLAG_RATE_5_5_KHZ:
+                                soundRate = 5500;
+                                break;
+                            case ITag.FLAG_RATE_11_KHZ:
+                                soundRate = 11000;
+                                break;
+                            case ITag.FLAG_RATE_22_KHZ:
+                                soundRate = 22000;
+                                break;
+                            case ITag.FLAG_RATE_44_KHZ:
+                                soundRate = 44100;
+                                break;
+                            case ITag.FLAG_RATE_48_KHZ:
+                                soundRate = 48000;
+                                break;
+                        }
+                        log.debug("Sound rate: {}", soundRate);
+                        switch ((id & ITag.MASK_SOUND_SIZE) >> 1) {
+                            case ITag.FLAG_SIZE_8_BIT:
+                                soundSize = 8;
+                                break;
+                            case ITag.FLAG_SIZE_16_BIT:
+                                soundSize = 16;
+                                break;
+                        }
+                        log.debug("Sound size: {}", soundSize);
+                        // mono == 0 // stereo == 1
+                        soundType = (id & ITag.MASK_SOUND_TYPE) > 0;
+                        log.debug("Sound type: {}", soundType);
+                    }
+                } else if (!audioConfigWritten.get() && !audioConfigPending) {
+                    if (audioCodecId == AudioCodec.AAC.getId()) {
+                        // this is aac data, so a config chunk should be written before any media data
+                        if (packetType == 0) {
+                            // when this config is written set the flag
+                            onWrittenSetAudioFlag = true;
+                        } else {
+                            // reject packet since config hasnt been written yet
+                            return false;
+                        }
+                    }
+                }
+            } else if (dataType == ITag.TYPE_VIDEO) {
+                videoDataSize += bodySize;
+                if (videoCodecId == -1) {
+                    int id = tagBody.get(position) & 0xff; // must be unsigned
+                    videoCodecId = id & ITag.MASK_VIDEO_CODEC;
+                    log.debug("Video codec id: {}", videoCodecId);
+                    if (videoCodecId == VideoCodec.AVC.getId()) {
+                        // this is avc/h264 data, so a config chunk should be written before any media data
+                        if (packetType == 0) {
+                            // when this config is written set the flag
+                            onWrittenSetVideoFlag = true;
+                        } else {
+                            // reject packet since config hasnt been written yet
+                            log.debug("Rejecting AVC data since config has not yet been written");
+                            return false;
+                        }
+                    } else if (videoCodecId == VideoCodec.HEVC.getId()) {
+                        // this is HEVC data, so a config chunk should be written before any media data
+                        if (packetType == 0) {
+                            // when this config is written set the flag
+                            onWrittenSetVideoFlag = true;
+                        } else {
+                            // reject packet since config hasnt been written yet
+                            log.debug("Rejecting HEVC data since config has not yet been written");
+                            return false;
+                        }
+                    }
+                } else if (!videoConfigWritten.get() && !videoConfigPending) {
+                    if (videoCodecId == VideoCodec.AVC.getId()) {
+                        // this is avc/h264 data, so a config chunk should be written before any media data
+                        if (packetType == 0) {
+                            // when this config is written set the flag
+                            onWrittenSetVideoFlag = true;
+                        } else {
+                            // reject packet since config hasnt been written yet
+                            log.debug("Rejecting AVC data since config has not yet been written");
+                            return false;
+                        }
+                    } else if (videoCodecId == VideoCodec.HEVC.getId()) {
+                        // this is hevc data, so a config chunk should be written before any media data
+                        if (packetType == 0) {
+                            // when this config is written set the flag
+                            onWrittenSetVideoFlag = true;
+                        } else {
+                            // reject packet since config hasnt been written yet
+                            log.debug("Rejecting HEVC data since config has not yet been written");
+                            return false;
+                        }
+                    }
+                }
+            }
+        }
+        // the config flags are set once the buffers are written
+        if (onWrittenSetAudioFlag) {
+            audioConfigPending = true;
+        } else if (onWrittenSetVideoFlag) {
+            videoConfigPending = true;
+        }
+        ByteBuffer header = ByteBuffer.allocate(TAG_HEADER_LENGTH);
+        // Data Type
+        IOUtils.writeUnsignedByte(header, dataType); // 1
+        // Body Size - Length of the message. Number of bytes after StreamID to end of tag
+        // (Equal to length of the tag - 11)
+        IOUtils.writeMediumInt(header, bodySize); // 3
+        // Timestamp
+        IOUtils.writeExtendedMediumInt(header, timestamp); // 4
+        // Stream id
+        header.put(DEFAULT_STREAM_ID); // 3
+        header.flip();
+        buffers.add(header);
+        if (body != null) {
+            buffers.add(body);
+        }
+        // store new previous tag size
+        lastTagSize = TAG_HEADER_LENGTH + bodySize;
+        // we add the tag size
+        ByteBuffer tagSize = ByteBuffer.allocate(4);
+        tagSize.putInt(lastTagSize);
+        tagSize.flip();
+        buffers.add(tagSize);
+        // update the duration
+        log.debug("Current duration: {} timestamp: {}", duration, timestamp);
+        duration = Math.max(duration, timestamp);
+        return true;
+    }
+
+    /**
+     * Sets the config written flags for the configuration held by buffers which were written.
+     */
+    private void configWritten() {
+        if (audioConfigPending && audioConfigWritten.compareAndSet(false, true)) {
+            log.trace("Audio configuration written");
+        }
+        if (videoConfigPending && videoConfigWritten.compareAndSet(false, true)) {
+            log.trace("Video configuration written");
+        }
+        audioConfigPending = false;
+        videoConfigPending = false;
+    }
+
+    /**
+     * Writes the buffers to the data file, with a gathering write when the channel supports it.
+     *
+     * @param buffers buffers to write
+     * @throws IOException I/O exception
+     */
+    private void write(List<ByteBuffer> buffers) throws IOException {
+        if (buffers.isEmpty()) {
+            return;
+        }
+        long prevBytesWritten = bytesWritten;
+        long expected = 0;
+        ByteBuffer[] srcs = buffers.toArray(new ByteBuffer[buffers.size()]);
+        for (ByteBuffer src : srcs) {
+            expected += src.remaining();
+        }
+        if (dataChannel instanceof GatheringByteChannel) {
+            GatheringByteChannel channel = (GatheringByteChannel) dataChannel;
+            int offset = 0;
+            while (offset < srcs.length) {
+                channel.write(srcs, offset, srcs.length - offset);
+                while (offset < srcs.length && !srcs[offset].hasRemaining()) {
+                    offset++;
+                }
+            }
+        } else {
+            for (ByteBuffer src : srcs) {
+                while (src.hasRemaining()) {
+                    dataChannel.write(src);
+                }
+            }
+        }
+        bytesWritten = dataChannel.position();
+        // validate written amount
+        if ((bytesWritten - prevBytesWritten) != expected) {
+            log.debug("Not all of the bytes appear to have been written, prev-current: {}", (bytesWritten - prevBytesWritten));
+        }
     }
 
     /** {@inheritDoc} */
@@ -831,8 +938,8 @@ public class FLVWriter implements ITagWriter {
                 // write the metadata with the final duration
                 writeMetadataTag(duration * 0.001d, videoCodecId, audioCodecId);
                 log.debug("Pos post meta: {}", fileChannel.position());
-                // create a transfer buffer
-                ByteBuffer dst = ByteBuffer.allocate(1024);
+                // create a transfer buffer, only used when the channels cannot transfer directly
+                ByteBuffer dst = ByteBuffer.allocate(zeroCopyFinalization ? 1024 : 65536);
                 // when appending, read original stream data first and put it at the front
                 if (append) {
                     Path prevFlv = Paths.get(filePath.replace(".flv", ".old"));
@@ -841,27 +948,15 @@ public class FLVWriter implements ITagWriter {
                         SeekableByteChannel prevChannel = Files.newByteChannel(prevFlv, StandardOpenOption.READ);
                         // skip the flv header, prev tag size, and possibly metadata
                         prevChannel.position(appendOffset);
-                        int read = -1, wrote;
-                        boolean showfirsttag = true;
-                        do {
-                            read = prevChannel.read(dst);
-                            log.trace("Read: {} bytes", read);
-                            if (read > 0) {
-                                dst.flip();
-                                // inspect the byte to make sure its a valid type
-                                if (showfirsttag) {
-                                    showfirsttag = false;
-                                    dst.mark();
-                                    log.debug("Tag type: {}", (dst.get() & 31));
-                                    dst.reset();
-                                }
-                                wrote = fileChannel.write(dst);
-                                log.trace("Wrote: {} bytes", wrote);
-                                bytesTransferred += wrote;
+                        // inspect the byte to make sure its a valid type
+                        if (log.isDebugEnabled()) {
+                            ByteBuffer tagType = ByteBuffer.allocate(1);
+                            if (prevChannel.read(tagType) > 0) {
+                                log.debug("Tag type: {}", (tagType.get(0) & 31));
                             }
-                            dst.compact();
-                        } while (read > 0);
-                        dst.clear();
+                            prevChannel.position(appendOffset);
+                        }
+                        bytesTransferred += transfer(prevChannel, dst);
                         prevChannel.close();
                         // remove the previous flv
                         Files.deleteIfExists(prevFlv);
@@ -876,19 +971,7 @@ public class FLVWriter implements ITagWriter {
                 // set the data file the beginning
                 dataChannel.position(0L);
                 // transfer / write data file into final flv
-                int read = -1, wrote;
-                do {
-                    read = dataChannel.read(dst);
-                    log.trace("Read: {} bytes", read);
-                    if (read > 0) {
-                        dst.flip();
-                        wrote = fileChannel.write(dst);
-                        log.trace("Wrote: {} bytes", wrote);
-                        bytesTransferred += wrote;
-                    }
-                    dst.compact();
-                } while (read > 0);
-                dst.clear();
+                bytesTransferred += transfer(dataChannel, dst);
                 dataChannel.close();
                 // get final position
                 long length = fileChannel.position();
@@ -929,7 +1012,7 @@ public class FLVWriter implements ITagWriter {
                             // set properties that the post processor requires or may require
                             postProcessor.init(filePath);
                             // execute and block
-                            executor.submit(postProcessor).get();
+                            postProcessor.run();
                         } catch (Throwable t) {
                             log.warn("Exception during post process on: {}", filePath, t);
                         }
@@ -945,6 +1028,50 @@ public class FLVWriter implements ITagWriter {
         return bytesTransferred;
     }
 
+    /**
+     * Copies everything from the current position of the source channel to the end of it into the
+     * flv. When both channels are file channels the bytes are moved with {@link
+     * FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which lets the
+     * kernel copy the data without bringing it into user space; anything left over is copied through
+     * the given buffer.
+     *
+     * @param src source channel
+     * @param dst transfer buffer
+     * @return bytes transferred
+     * @throws IOException on read or write failure
+     */
+    private long transfer(SeekableByteChannel src, ByteBuffer dst) throws IOException {
+        long bytesTransferred = 0L;
+        if (zeroCopyFinalization && src instanceof FileChannel && fileChannel instanceof FileChannel) {
+            FileChannel in = (FileChannel) src;
+            long pos = in.position(), size = in.size();
+            while (pos < size) {
+                long wrote = in.transferTo(pos, size - pos, fileChannel);
+                log.trace("Transferred: {} bytes", wrote);
+                if (wrote <= 0) {
+                    break;
+                }
+                pos += wrote;
+                bytesTransferred += wrote;
+            }
+            in.position(pos);
+        }
+        int read = -1, wrote;
+        do {
+            read = src.read(dst);
+            log.trace("Read: {} bytes", read);
+            if (read > 0) {
+                dst.flip();
+                wrote = fileChannel.write(dst);
+                log.trace("Wrote: {} bytes", wrote);
+                bytesTransferred += wrote;
+            }
+            dst.compact();
+        } while (read > 0);
+        dst.clear();
+        return bytesTransferred;
+    }
+
     /**
      * Read flv file information from pre-finalization file.
      *
@@ -1011,9 +1138,6 @@ public class FLVWriter implements ITagWriter {
             if (locked) {
                 lock.release();
             }
-            if (executor != null && !executor.isTerminated()) {
-                executor.shutdown();
-            }
         }
     }
 
@@ -1041,6 +1165,19 @@ public class FLVWriter implements ITagWriter {
         FLVWriter.flv = flv;
     }
 
+    /**
+     * Setter for the finalization mode; when false the data file is copied into the final flv through a user space buffer.
+     *
+     * @param zeroCopyFinalization true to use FileChannel.transferTo at finalization
+     */
+    public void setZeroCopyFinalization(boolean zeroCopyFinalization) {
+        this.zeroCopyFinalization = zeroCopyFinalization;
+    }
+
+    public boolean isZeroCopyFinalization() {
+        return zeroCopyFinalization;
+    }
+
     /** {@inheritDoc} */
     @Override
     public int getOffset() {
@@ -1162,11 +1299,9 @@ public class FLVWriter implements ITagWriter {
             System.err.println("Serial file was not found or could not be read");
         }
         if (writer != null) {
-            // spawn a flv finalizer
-            Future<?> future = writer.submit(writer.new FLVFinalizer());
+            // run a flv finalizer
             try {
-                // get result / blocking
-                future.get();
+                writer.new FLVFinalizer().run();
                 log.debug("File repair completed");
                 System.out.println("File repair completed");
                 result = true;
@@ -1177,19 +1312,6 @@ public class FLVWriter implements ITagWriter {
         return result;
     }
 
-    /**
-     * Submits a finalizer internally.
-     *
-     * @param flvFinalizer
-     * @return Future representing task
-     */
-    private Future<?> submit(FLVFinalizer flvFinalizer) {
-        if (executor != null && !executor.isTerminated()) {
-            return executor.submit(flvFinalizer);
-        }
-        return null;
-    }
-
     /**
      * Exposed to allow repair of flv files if .info and .ser files still exist.
      *
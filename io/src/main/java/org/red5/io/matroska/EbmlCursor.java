@@ -0,0 +1,472 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.matroska;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cursor over EBML data in a {@link ByteBuffer} or a memory mapped file. Element headers are read
+ * one at a time with {@link #next(long)}; children are walked by reading on from the data of their
+ * parent and skipped by moving the position, so no element is copied to get at its children. Ids,
+ * sizes and integer values are decoded in place without allocating.
+ *
+ * <p>Files are mapped in regions of {@link #REGION_SIZE} which are moved along as the cursor goes,
+ * so files larger than a buffer can hold are read the same way. The region mapped before is kept,
+ * so jumping back and forth between two places doesn't map again. A cursor isn't thread safe.
+ *
+ * @author The Red5 Project
+ */
+public class EbmlCursor {
+
+    /** Size of the mapped regions of a file */
+    public static final long REGION_SIZE = 256L * 1024 * 1024;
+
+    /** Alignment of the start of the mapped regions */
+    static final long REGION_ALIGNMENT = REGION_SIZE / 4;
+
+    /** Size returned for elements of unknown size */
+    public static final long UNKNOWN_SIZE = -1L;
+
+    private final FileChannel channel;
+
+    private final long length;
+
+    /** Data from regionStart on */
+    private ByteBuffer region;
+
+    private long regionStart;
+
+    /** Region mapped before the current one, kept for jumps back into it such as a seek after reading the cues */
+    private ByteBuffer previousRegion;
+
+    private long previousRegionStart;
+
+    private long position;
+
+    /** Header of the current element */
+    private int id;
+
+    private long size;
+
+    private long dataPosition;
+
+    private int headerLength;
+
+    private InputStream stream;
+
+    /** Number of regions mapped */
+    private int mapCount;
+
+    /**
+     * Creates a cursor over the remaining bytes of the buffer, which are not copied; positions are
+     * relative to the buffer position.
+     *
+     * @param buffer data
+     */
+    public EbmlCursor(ByteBuffer buffer) {
+        this.channel = null;
+        this.region = buffer.slice();
+        this.length = region.remaining();
+    }
+
+    private EbmlCursor(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.length = channel.size();
+        this.region = ByteBuffer.allocate(0);
+    }
+
+    /**
+     * Creates a cursor over a file, mapped read only region by region. The channel stays owned by
+     * the caller.
+     *
+     * @param channel file channel
+     * @return cursor at the start of the file
+     * @throws IOException if the file can't be mapped
+     */
+    public static EbmlCursor map(FileChannel channel) throws IOException {
+        return new EbmlCursor(channel);
+    }
+
+    /**
+     * Returns the region holding the given range. Otherwise the previous region is tried before a new one is mapped; new regions start on a
+     * multiple of {@link #REGION_ALIGNMENT}, so short jumps back stay in the current region. Regions which are let go are unmapped by the
+     * garbage collector.
+     */
+    private ByteBuffer region(long pos, int count) throws IOException {
+        if (pos < regionStart || pos + count > regionStart + region.limit()) {
+            if (pos < 0 || pos + count > length) {
+                throw new EOFException("Read of " + count + " at " + pos + " beyond " + length);
+            }
+            if (channel == null) {
+                throw new EOFException();
+            }
+            ByteBuffer current = region;
+            long currentStart = regionStart;
+            if (previousRegion != null && pos >= previousRegionStart && pos + count <= previousRegionStart + previousRegion.limit()) {
+                region = previousRegion;
+                regionStart = previousRegionStart;
+            } else {
+                long start = pos - pos % REGION_ALIGNMENT;
+                if (pos + count > start + REGION_SIZE) {
+                    // longer than what is left of an aligned region
+                    start = pos;
+                }
+                region = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, length - start));
+                regionStart = start;
+                mapCount++;
+            }
+            previousRegion = current;
+            previousRegionStart = currentStart;
+        }
+        return region;
+    }
+
+    /**
+     * Returns the number of regions mapped so far.
+     *
+     * @return map count
+     */
+    int getMapCount() {
+        return mapCount;
+    }
+
+    private int index(long pos) {
+        return (int) (pos - regionStart);
+    }
+
+    /**
+     * Returns the position.
+     *
+     * @return position
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Moves the cursor, for example to the data of an element or past it.
+     *
+     * @param position position
+     */
+    public void position(long position) {
+        this.position = position;
+    }
+
+    /**
+     * Returns the length of the data.
+     *
+     * @return length in bytes
+     */
+    public long length() {
+        return length;
+    }
+
+    public boolean hasRemaining() {
+        return position < length;
+    }
+
+    /**
+     * Reads the header of the element at the position if it lies before the end.
+     *
+     * @param end end of the parent, {@link #length()} for the top level
+     * @return true if an element was read, the cursor is then at its data
+     * @throws IOException on invalid or truncated data
+     */
+    public boolean next(long end) throws IOException {
+        if (position >= end) {
+            return false;
+        }
+        long start = position;
+        id = readId();
+        size = readVint();
+        dataPosition = position;
+        headerLength = (int) (dataPosition - start);
+        return true;
+    }
+
+    /**
+     * Returns the id of the current element, marker bits included as in the specification.
+     *
+     * @return id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the data size of the current element.
+     *
+     * @return size or {@link #UNKNOWN_SIZE}
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the position of the data of the current element.
+     *
+     * @return position
+     */
+    public long getDataPosition() {
+        return dataPosition;
+    }
+
+    /**
+     * Returns the length of the header of the current element.
+     *
+     * @return id and size length
+     */
+    public int getHeaderLength() {
+        return headerLength;
+    }
+
+    /**
+     * Returns the end of the current element; an element of unknown size ends with its parent.
+     *
+     * @param parentEnd end of the parent
+     * @return end position
+     */
+    public long getEnd(long parentEnd) {
+        return size == UNKNOWN_SIZE ? parentEnd : dataPosition + size;
+    }
+
+    /** Moves past the current element; one of unknown size is entered instead. */
+    public void skip() {
+        if (size != UNKNOWN_SIZE) {
+            position = dataPosition + size;
+        }
+    }
+
+    /**
+     * Reads an unsigned byte.
+     *
+     * @return byte value
+     * @throws IOException at the end of the data
+     */
+    public int readByte() throws IOException {
+        int value = region(position, 1).get(index(position)) & 0xff;
+        position++;
+        return value;
+    }
+
+    /**
+     * Reads an element id, marker bits included.
+     *
+     * @return id
+     * @throws IOException on an invalid id
+     */
+    public int readId() throws IOException {
+        int first = readByte();
+        int idLength = VINT.length(first);
+        if (idLength > 4) {
+            throw new IOException("Invalid element id at " + (position - 1));
+        }
+        int value = first;
+        for (int i = 1; i < idLength; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value;
+    }
+
+    /**
+     * Reads a variable size integer.
+     *
+     * @return value, {@link #UNKNOWN_SIZE} if all value bits are set
+     * @throws IOException on an invalid integer
+     */
+    public long readVint() throws IOException {
+        int first = readByte();
+        int vintLength = VINT.length(first);
+        if (vintLength > 8) {
+            throw new IOException("Invalid variable size integer at " + (position - 1));
+        }
+        long value = first & (0xff >> vintLength);
+        for (int i = 1; i < vintLength; i++) {
+            value = (value << 8) | readByte();
+        }
+        return value == (1L << (7 * vintLength)) - 1 ? UNKNOWN_SIZE : value;
+    }
+
+    /**
+     * Reads a signed variable size integer, as used by EBML lacing.
+     *
+     * @return value
+     * @throws IOException on an invalid integer
+     */
+    public long readSignedVint() throws IOException {
+        int vintLength = VINT.length(region(position, 1).get(index(position)) & 0xff);
+        long value = readVint();
+        if (value == UNKNOWN_SIZE) {
+            value = (1L << (7 * vintLength)) - 1;
+        }
+        return value - ((1L << (7 * vintLength - 1)) - 1);
+    }
+
+    /**
+     * Reads a big endian unsigned integer.
+     *
+     * @param count length in bytes, up to 8
+     * @return value
+     * @throws IOException at the end of the data
+     */
+    public long readUnsigned(int count) throws IOException {
+        ByteBuffer buffer = region(position, count);
+        int index = index(position);
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            value = (value << 8) | (buffer.get(index + i) & 0xff);
+        }
+        position += count;
+        return value;
+    }
+
+    /**
+     * Reads a big endian signed integer.
+     *
+     * @param count length in bytes, up to 8
+     * @return value
+     * @throws IOException at the end of the data
+     */
+    public long readSigned(int count) throws IOException {
+        long value = readUnsigned(count);
+        int shift = 64 - 8 * count;
+        return count == 0 ? 0 : (value << shift) >> shift;
+    }
+
+    /**
+     * Reads a float of 4 or 8 bytes.
+     *
+     * @param count length in bytes
+     * @return value, 0 for other lengths
+     * @throws IOException at the end of the data
+     */
+    public double readFloat(int count) throws IOException {
+        if (count == 4) {
+            return Float.intBitsToFloat((int) readUnsigned(4));
+        } else if (count == 8) {
+            return Double.longBitsToDouble(readUnsigned(8));
+        }
+        position += count;
+        return 0;
+    }
+
+    /**
+     * Reads a string, trailing zero bytes removed.
+     *
+     * @param count length in bytes
+     * @return string
+     * @throws IOException at the end of the data
+     */
+    public String readString(int count) throws IOException {
+        ByteBuffer buffer = region(position, count);
+        int index = index(position);
+        int end = count;
+        while (end > 0 && buffer.get(index + end - 1) == 0) {
+            end--;
+        }
+        byte[] value = new byte[end];
+        for (int i = 0; i < end; i++) {
+            value[i] = buffer.get(index + i);
+        }
+        position += count;
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Copies bytes into an array; the only read which copies.
+     *
+     * @param dst array
+     * @param offset offset in the array
+     * @param count length in bytes
+     * @throws IOException at the end of the data
+     */
+    public void read(byte[] dst, int offset, int count) throws IOException {
+        while (count > 0) {
+            int chunk = (int) Math.min(count, Math.min(REGION_SIZE, length - position));
+            ByteBuffer buffer = region(position, Math.max(chunk, 1)).duplicate();
+            buffer.position(index(position));
+            buffer.get(dst, offset, chunk);
+            position += chunk;
+            offset += chunk;
+            count -= chunk;
+        }
+    }
+
+    /**
+     * Returns a read only view of bytes at the position without copying them and moves past them.
+     *
+     * @param count length in bytes, at most {@link #REGION_SIZE}
+     * @return view
+     * @throws IOException at the end of the data
+     */
+    public ByteBuffer slice(int count) throws IOException {
+        ByteBuffer buffer = region(position, count).duplicate();
+        int index = index(position);
+        buffer.limit(index + count).position(index);
+        position += count;
+        return buffer.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns a stream reading on from the position of this cursor, for the code working on streams.
+     * Reads and skips move the cursor.
+     *
+     * @return stream
+     */
+    public InputStream asInputStream() {
+        if (stream == null) {
+            stream = createInputStream();
+        }
+        return stream;
+    }
+
+    private InputStream createInputStream() {
+        return new InputStream() {
+
+            @Override
+            public int read() throws IOException {
+                return position < length ? readByte() : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                if (position >= length) {
+                    return -1;
+                }
+                int count = (int) Math.min(len, length - position);
+                EbmlCursor.this.read(b, off, count);
+                return count;
+            }
+
+            @Override
+            public long skip(long n) {
+                long count = Math.max(0, Math.min(n, length - position));
+                position += count;
+                return count;
+            }
+
+            @Override
+            public int available() {
+                return (int) Math.min(Integer.MAX_VALUE, Math.max(0, length - position));
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "EbmlCursor [position=" + position + ", length=" + length + ", id=" + Integer.toHexString(id) + ", size=" + size + "]";
+    }
+}
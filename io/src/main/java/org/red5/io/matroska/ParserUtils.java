@@ -7,17 +7,9 @@
  */
 package org.red5.io.matroska;
 
-import static org.red5.io.matroska.VINT.MASK_BYTE_1;
-import static org.red5.io.matroska.VINT.MASK_BYTE_2;
-import static org.red5.io.matroska.VINT.MASK_BYTE_3;
-import static org.red5.io.matroska.VINT.MASK_BYTE_4;
-import static org.red5.io.matroska.VINT.MASK_BYTE_8;
-
-import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.util.ArrayList;
 import org.red5.io.matroska.dtd.CompoundTag;
 import org.red5.io.matroska.dtd.Tag;
@@ -40,14 +32,9 @@ public class ParserUtils {
      * @throws IOException - in case of IO error
      */
     public static long parseInteger(InputStream inputStream, final int size) throws IOException {
-        log.debug("parseInteger inputStream: {} size: {}", inputStream, size);
-        byte[] buffer = new byte[size];
-        int numberOfReadsBytes = inputStream.read(buffer, 0, size);
-        log.debug("numberOfReadsBytes: {}", numberOfReadsBytes);
-        // assert numberOfReadsBytes == size;
-        long value = buffer[0] & (long) 0xff;
-        for (int i = 1; i < size; ++i) {
-            value = (value << BIT_IN_BYTE) | ((long) buffer[i] & (long) 0xff);
+        long value = 0;
+        for (int i = 0; i < size; ++i) {
+            value = (value << BIT_IN_BYTE) | readByte(inputStream);
         }
         return value;
     }
@@ -81,16 +68,11 @@ public class ParserUtils {
      * @throws IOException - in case of IO error
      */
     public static double parseFloat(InputStream inputStream, final int size) throws IOException {
-        byte[] buffer = new byte[size];
-        int numberOfReadsBytes = inputStream.read(buffer, 0, size);
-        assert numberOfReadsBytes == size;
-
-        ByteBuffer byteBuffer = ByteBuffer.wrap(buffer).order(ByteOrder.BIG_ENDIAN);
+        long bits = parseInteger(inputStream, size);
         if (8 == size) {
-            return byteBuffer.getDouble();
+            return Double.longBitsToDouble(bits);
         }
-
-        return byteBuffer.getFloat();
+        return Float.intBitsToFloat((int) bits);
     }
 
     /**
@@ -103,16 +85,41 @@ public class ParserUtils {
      * @throws ConverterException - in case of any conversion exception
      */
     public static ArrayList<Tag> parseMasterElement(InputStream inputStream, final int size) throws IOException, ConverterException {
-        byte bufferForSubElements[] = new byte[size];
-        int readOfBytes = inputStream.read(bufferForSubElements, 0, size);
-        assert readOfBytes == size;
-
         ArrayList<Tag> subElements = new ArrayList<Tag>();
-        ByteArrayInputStream inputStreamForSubElements = new ByteArrayInputStream(bufferForSubElements);
+        // the sub elements are read from the stream itself, up to the end of the master element
+        LimitedInputStream inputStreamForSubElements = new LimitedInputStream(inputStream, size);
         while (0 != inputStreamForSubElements.available()) {
             subElements.add(parseTag(inputStreamForSubElements));
         }
+        return subElements;
+    }
 
+    /**
+     * method used to parse subelements of {@link CompoundTag} in place, sub elements which are
+     * {@link CompoundTag} themselves get their own subelements and elements missing from the dtd are
+     * skipped; the cursor is left at the end of the master element
+     *
+     * @param cursor - cursor at the data of the master element
+     * @param size - size of the value in bytes
+     * @return - parsed tag
+     * @throws IOException - in case of IO error
+     * @throws ConverterException - in case of any conversion exception
+     */
+    public static ArrayList<Tag> parseMasterElement(EbmlCursor cursor, final long size) throws IOException, ConverterException {
+        ArrayList<Tag> subElements = new ArrayList<Tag>();
+        long end = cursor.position() + size;
+        while (cursor.position() < end) {
+            Tag tag = parseTag(cursor);
+            // the header of the sub element is still the current one of the cursor
+            long subEnd = Math.min(cursor.getEnd(end), end);
+            if (tag instanceof CompoundTag) {
+                ((CompoundTag) tag).parse(cursor, subEnd - cursor.position());
+            }
+            cursor.position(subEnd);
+            if (tag != null) {
+                subElements.add(tag);
+            }
+        }
         return subElements;
     }
 
@@ -142,46 +149,24 @@ public class ParserUtils {
      * @throws IOException - in case of IO error
      */
     public static VINT readVINT(InputStream inputStream) throws IOException {
-        byte[] vint;
-        int fb = inputStream.read();
-        int read = 0;
-        assert fb > 0;
-
-        int len = (fb >> 4);
-        long mask = MASK_BYTE_4;
-        if (len >= 0b1000) {
-            read = 0;
-            mask = MASK_BYTE_1;
-            vint = new byte[1];
-        } else if (len >= 0b0100) {
-            mask = MASK_BYTE_2;
-            vint = new byte[2];
-            read = inputStream.read(vint, 1, 1);
-            assert read == 1;
-        } else if (len >= 0b0010) {
-            mask = MASK_BYTE_3;
-            vint = new byte[3];
-            read = inputStream.read(vint, 1, 2);
-            assert read == 2;
-        } else if (len >= 0b0001) {
-            vint = new byte[4];
-            read = inputStream.read(vint, 1, 3);
-            assert read == 3;
-        } else {
-            mask = MASK_BYTE_8;
-            vint = new byte[8];
-            read = inputStream.read(vint, 1, 7);
-            assert read == 7;
-        }
-        vint[0] = (byte) fb;
-        long binaryV = 0;
-        for (int i = 0; i < vint.length; ++i) {
-            binaryV += (0x00FF & vint[i]);
-            if (i != vint.length - 1) {
-                binaryV <<= BIT_IN_BYTE;
-            }
+        int fb = readByte(inputStream);
+        int length = VINT.length(fb);
+        if (length > 8) {
+            throw new IOException("Invalid VINT first byte: " + fb);
         }
-        return new VINT(binaryV, (byte) (read + 1), mask & binaryV);
+        long binaryV = fb;
+        for (int i = 1; i < length; ++i) {
+            binaryV = (binaryV << BIT_IN_BYTE) | readByte(inputStream);
+        }
+        return new VINT(binaryV, (byte) length, binaryV & ((1L << (7 * length)) - 1));
+    }
+
+    private static int readByte(InputStream inputStream) throws IOException {
+        int value = inputStream.read();
+        if (value < 0) {
+            throw new EOFException();
+        }
+        return value;
     }
 
     /**
@@ -202,6 +187,29 @@ public class ParserUtils {
         return TagFactory.createTag(id, size, inputStream);
     }
 
+    /**
+     * parsing tag at the position of the cursor, the cursor is left after the tag data or, for a
+     * {@link CompoundTag}, at its first sub element
+     *
+     * @param cursor - cursor to get value
+     * @return tag, without parsing tag data, because it delegate to an tag itself
+     * @throws IOException - in case of IO error
+     * @throws ConverterException - in case of any conversion exception
+     */
+    public static Tag parseTag(EbmlCursor cursor) throws IOException, ConverterException {
+        if (!cursor.next(cursor.length())) {
+            throw new EOFException();
+        }
+        int binaryId = cursor.getId();
+        byte idLength = (byte) ((32 - Integer.numberOfLeadingZeros(binaryId) + 7) / BIT_IN_BYTE);
+        byte sizeLength = (byte) (cursor.getHeaderLength() - idLength);
+        VINT id = new VINT(binaryId, idLength, binaryId & ((1L << (7 * idLength)) - 1));
+        // an unknown size keeps its reserved value, as read from a stream
+        long sizeValue = cursor.getSize() == EbmlCursor.UNKNOWN_SIZE ? (1L << (7 * sizeLength)) - 1 : cursor.getSize();
+        VINT size = new VINT(sizeValue | (1L << (7 * sizeLength)), sizeLength, sizeValue);
+        return TagFactory.createTag(id, size, cursor.asInputStream());
+    }
+
     /**
      * method to encode long as byte array of given size
      *
@@ -231,4 +239,53 @@ public class ParserUtils {
             size -= input.skip(size);
         }
     }
+
+    /** View of the next bytes of a stream, read from the stream itself */
+    private static final class LimitedInputStream extends InputStream {
+
+        private final InputStream in;
+
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long size) {
+            this.in = in;
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int value = in.read();
+            if (value >= 0) {
+                remaining--;
+            }
+            return value;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, remaining);
+        }
+    }
 }
@@ -94,6 +94,16 @@ public class VINT {
         return String.format("%s(%s)", value, length);
     }
 
+    /**
+     * method to get the length of a {@link VINT} from its first byte, without allocating
+     *
+     * @param firstByte - first byte, unsigned
+     * @return - length from 1 to 8, larger for an invalid first byte
+     */
+    public static int length(int firstByte) {
+        return Integer.numberOfLeadingZeros(firstByte & 0xff) - 23;
+    }
+
     /**
      * method to construct {@link VINT} based on its binary representation
      *
@@ -15,6 +15,7 @@ import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import org.red5.io.matroska.ConverterException;
+import org.red5.io.matroska.EbmlCursor;
 import org.red5.io.matroska.ParserUtils;
 import org.red5.io.matroska.VINT;
 
@@ -68,6 +69,20 @@ public class CompoundTag extends Tag {
         }
     }
 
+    /**
+     * method to parse the subelements in place
+     *
+     * @param cursor - cursor at the data of this tag
+     * @param size - size of the data, bounded by the parent for a tag of unknown size
+     * @throws IOException - in case of any IO errors
+     * @throws ConverterException - in case of any conversion errors
+     */
+    public void parse(EbmlCursor cursor, long size) throws IOException, ConverterException {
+        for (Tag tag : ParserUtils.parseMasterElement(cursor, size)) {
+            subElements.put(tag.getName(), tag);
+        }
+    }
+
     @Override
     public int totalSize() {
         return (int) (id.getLength() + size.getLength() + (!subElements.isEmpty() ? size.getValue() : 0));
@@ -11,8 +11,21 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.List;
 import org.red5.io.matroska.ConverterException;
+import org.red5.io.matroska.EbmlCursor;
 import org.red5.io.matroska.dtd.Tag;
 
 public interface MatroskaParser {
     List<Tag> parse(InputStream inputStream) throws IOException, ConverterException;
+
+    /**
+     * Parses from the position of the cursor; parsers which don't read in place get the stream of the cursor.
+     *
+     * @param cursor - cursor to parse from
+     * @return parsed tags
+     * @throws IOException - in case of IO error
+     * @throws ConverterException - in case of any conversion exception
+     */
+    default List<Tag> parse(EbmlCursor cursor) throws IOException, ConverterException {
+        return parse(cursor.asInputStream());
+    }
 }
@@ -12,6 +12,7 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.List;
 import org.red5.io.matroska.ConverterException;
+import org.red5.io.matroska.EbmlCursor;
 import org.red5.io.matroska.ParserUtils;
 import org.red5.io.matroska.dtd.Tag;
 
@@ -30,4 +31,19 @@ public class SimpleMatroskaParser implements MatroskaParser {
 
         return listOfTags;
     }
+
+    @Override
+    public List<Tag> parse(EbmlCursor cursor) throws IOException, ConverterException {
+
+        List<Tag> listOfTags = new ArrayList<>();
+
+        // parse EBML tag, its sub elements are left in place
+        listOfTags.add(ParserUtils.parseTag(cursor));
+        cursor.skip();
+
+        // parse Segment tag
+        listOfTags.add(ParserUtils.parseTag(cursor));
+
+        return listOfTags;
+    }
 }
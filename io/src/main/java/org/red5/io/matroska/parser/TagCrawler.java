@@ -12,6 +12,7 @@ import java.io.InputStream;
 import java.util.HashMap;
 import java.util.Map;
 import org.red5.io.matroska.ConverterException;
+import org.red5.io.matroska.EbmlCursor;
 import org.red5.io.matroska.ParserUtils;
 import org.red5.io.matroska.dtd.Tag;
 import org.slf4j.Logger;
@@ -106,4 +107,31 @@ public class TagCrawler {
             }
         }
     }
+
+    /**
+     * Method to process the data under the cursor given in place, will stop at the end of the data;
+     * handlers are given a stream reading on from the cursor
+     *
+     * @param cursor - cursor to process
+     * @throws IOException - in case of any IO errors
+     * @throws ConverterException - in case of any conversion errorss
+     */
+    public void process(EbmlCursor cursor) throws IOException, ConverterException {
+        InputStream input = cursor.asInputStream();
+        while (cursor.hasRemaining()) {
+            Tag tag = ParserUtils.parseTag(cursor);
+            if (tag == null) {
+                // not in the dtd, its data wasn't read
+                log.debug("Going to skip unknown tag: {}", Integer.toHexString(cursor.getId()));
+                cursor.skip();
+                continue;
+            }
+            TagHandler handler = getHandler(tag);
+            if (null == handler) {
+                skipHandler.handle(tag, input);
+            } else {
+                handler.handle(tag, input);
+            }
+        }
+    }
 }
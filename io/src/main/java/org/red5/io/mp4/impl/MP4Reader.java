@@ -4,7 +4,6 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Semaphore;
 import org.apache.mina.core.buffer.IoBuffer;
@@ -16,7 +15,6 @@ import org.red5.io.ITagReader;
 import org.red5.io.IoConstants;
 import org.red5.io.flv.IKeyFrameDataAnalyzer;
 import org.red5.io.flv.impl.Tag;
-import org.red5.io.mp4.MP4Frame;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,11 +34,15 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
 
     public static final byte[] PREFIX_VIDEO_FRAME = { 0x27, 0x01 };
 
+    /** Sample tables shared by the readers of a file, null to parse the file per reader */
+    private static MP4SampleTableCache sampleTableCache = new MP4SampleTableCache();
+
     private SeekableByteChannel dataSource;
 
     private MP4TrackInfo trackInfo = new MP4TrackInfo();
 
-    private List<MP4Frame> frames;
+    /** Samples of the file, shared with other readers; this reader only keeps its position in currentFrame */
+    private MP4SampleTable frames;
 
     private final LinkedList<ITag> firstTags = new LinkedList<>();
 
@@ -69,11 +71,10 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
 
         dataSource = NIOUtils.readableChannel(file);
 
-        MP4Parser parser = new MP4Parser(trackInfo);
-        parser.parseMovie(dataSource);
-
-        MP4FrameAnalyzer analyzer = new MP4FrameAnalyzer(trackInfo, dataSource);
-        frames = analyzer.analyzeFrames();
+        MP4SampleTableCache cache = sampleTableCache;
+        frames = (cache != null) ? cache.get(file, dataSource) : MP4SampleTable.load(dataSource);
+        // the table may be shared with other readers, the codec ids set on this reader stay with it
+        trackInfo = new MP4TrackInfo(frames.getTrackInfo());
 
         MP4MetadataTagCreator metadataCreator = new MP4MetadataTagCreator(trackInfo, seekPoints);
         ITag metaTag = metadataCreator.createFileMeta();
@@ -111,7 +112,7 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
 
     @Override
     public ITag readTag() {
-        if (frames == null || frames.isEmpty()) {
+        if (frames == null || frames.size() == 0) {
             log.warn("No frames available");
             return null;
         }
@@ -122,8 +123,7 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                 return firstTags.removeFirst();
             }
 
-            MP4Frame frame = frames.get(currentFrame);
-            ITag tag = createTagFromFrame(frame);
+            ITag tag = createTagFromFrame(currentFrame);
             currentFrame++;
             prevFrameSize = tag.getBodySize();
             return tag;
@@ -136,12 +136,12 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         }
     }
 
-    private ITag createTagFromFrame(MP4Frame frame) {
+    private ITag createTagFromFrame(int index) {
         // The FLV tag data
-        int sampleSize = frame.getSize();
-        int time = (int) Math.round(frame.getTime() * 1000.0);
-        long samplePos = frame.getOffset();
-        byte type = frame.getType();
+        int sampleSize = frames.getSize(index);
+        int time = (int) Math.round(frames.getTime(index) * 1000.0);
+        long samplePos = frames.getOffset(index);
+        byte type = frames.getType(index);
 
         int pad = (type == IoConstants.TYPE_AUDIO) ? 2 : 5;
         ByteBuffer data = ByteBuffer.allocate(sampleSize + pad);
@@ -149,7 +149,7 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         try {
             if (type == IoConstants.TYPE_VIDEO) {
 
-                data.put(frame.isKeyFrame() ? PREFIX_VIDEO_KEYFRAME : PREFIX_VIDEO_FRAME);
+                data.put(frames.isKeyFrame(index) ? PREFIX_VIDEO_KEYFRAME : PREFIX_VIDEO_FRAME);
 
                 int timeOffset = (prevVideoTS != -1) ? (time - prevVideoTS) : 0;
                 data.put((byte) ((timeOffset >>> 16) & 0xff));
@@ -224,15 +224,16 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         if (frames == null) {
             return;
         }
+        // every sample of an audio only file is a seek point
+        boolean audioOnly = trackInfo.hasAudio() && !trackInfo.hasVideo();
         int len = frames.size();
         for (int i = 0; i < len; i++) {
-            MP4Frame f = frames.get(i);
-            long offset = f.getOffset();
-            if (offset >= pos && f.isKeyFrame()) {
-                log.info("Found keyframe at index={} for offset={} => frame={}", i, pos, f);
-                createPreStreamingTags((int) (f.getTime() * 1000), true);
+            long offset = frames.getOffset(i);
+            if (offset >= pos && (audioOnly || frames.isKeyFrame(i))) {
+                log.info("Found keyframe at index={} for offset={} => time={}", i, pos, frames.getTime(i));
+                createPreStreamingTags((int) (frames.getTime(i) * 1000), true);
                 currentFrame = i;
-                prevVideoTS = (int) (f.getTime() * 1000);
+                prevVideoTS = (int) (frames.getTime(i) * 1000);
                 break;
             }
         }
@@ -247,10 +248,7 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                 log.error("Error closing channel", e);
             }
         }
-        if (frames != null) {
-            frames.clear();
-            frames = null;
-        }
+        frames = null;
     }
 
     @Override
@@ -264,10 +262,8 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
             result.positions = new long[frames.size()];
             result.timestamps = new int[frames.size()];
             for (int i = 0; i < frames.size(); i++) {
-                MP4Frame f = frames.get(i);
-                f.setKeyFrame(true);
-                result.positions[i] = f.getOffset();
-                result.timestamps[i] = (int) Math.round(f.getTime() * 1000.0);
+                result.positions[i] = frames.getOffset(i);
+                result.timestamps[i] = (int) Math.round(frames.getTime(i) * 1000.0);
             }
         } else {
 
@@ -289,6 +285,19 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         return result;
     }
 
+    /**
+     * Sets the sample table cache used by all readers.
+     *
+     * @param sampleTableCache cache, null to parse the file for each reader
+     */
+    public void setSampleTableCache(MP4SampleTableCache sampleTableCache) {
+        MP4Reader.sampleTableCache = sampleTableCache;
+    }
+
+    public static MP4SampleTableCache getSampleTableCache() {
+        return sampleTableCache;
+    }
+
     public void setVideoCodecId(String videoCodecId) {
         trackInfo.setVideoCodecId(videoCodecId);
     }
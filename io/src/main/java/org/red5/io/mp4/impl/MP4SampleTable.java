@@ -0,0 +1,159 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.mp4.impl;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+
+import org.jcodec.common.io.SeekableByteChannel;
+import org.red5.io.mp4.MP4Frame;
+
+/**
+ * Samples of an mp4 file in time order, held as primitive columns rather than one {@link MP4Frame} per sample, together with the track information parsed from the moov box.
+ * A table is immutable once built, so every reader of the same file can share it and keep only its own position.
+ *
+ * @author The Red5 Project
+ */
+public final class MP4SampleTable {
+
+    /** Bytes held per sample: offset, size, time and type, rounded up for the keyframe bit */
+    private static final int BYTES_PER_SAMPLE = 8 + 4 + 8 + 1;
+
+    private final MP4TrackInfo trackInfo;
+
+    private final long[] offsets;
+
+    private final int[] sizes;
+
+    private final double[] times;
+
+    private final byte[] types;
+
+    private final BitSet keyFrames;
+
+    private MP4SampleTable(MP4TrackInfo trackInfo, int count) {
+        this.trackInfo = trackInfo;
+        offsets = new long[count];
+        sizes = new int[count];
+        times = new double[count];
+        types = new byte[count];
+        keyFrames = new BitSet(count);
+    }
+
+    /**
+     * Parses the movie box of a file and builds its sample table.
+     *
+     * @param dataSource channel of the file
+     * @return sample table
+     * @throws IOException on read error
+     */
+    public static MP4SampleTable load(SeekableByteChannel dataSource) throws IOException {
+        MP4TrackInfo trackInfo = new MP4TrackInfo();
+        MP4Parser parser = new MP4Parser(trackInfo);
+        parser.parseMovie(dataSource);
+        MP4FrameAnalyzer analyzer = new MP4FrameAnalyzer(trackInfo, dataSource);
+        return of(trackInfo, analyzer.analyzeFrames());
+    }
+
+    /**
+     * Builds a sample table from analyzed frames.
+     *
+     * @param trackInfo track information
+     * @param frames frames sorted by time
+     * @return sample table
+     */
+    public static MP4SampleTable of(MP4TrackInfo trackInfo, List<MP4Frame> frames) {
+        MP4SampleTable table = new MP4SampleTable(trackInfo, frames.size());
+        int i = 0;
+        for (MP4Frame frame : frames) {
+            table.offsets[i] = frame.getOffset();
+            table.sizes[i] = frame.getSize();
+            table.times[i] = frame.getTime();
+            table.types[i] = frame.getType();
+            if (frame.isKeyFrame()) {
+                table.keyFrames.set(i);
+            }
+            i++;
+        }
+        return table;
+    }
+
+    public MP4TrackInfo getTrackInfo() {
+        return trackInfo;
+    }
+
+    /**
+     * Returns the number of samples.
+     *
+     * @return sample count
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Returns the offset of a sample in the file.
+     *
+     * @param index sample index
+     * @return offset in bytes
+     */
+    public long getOffset(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * Returns the size of a sample.
+     *
+     * @param index sample index
+     * @return size in bytes
+     */
+    public int getSize(int index) {
+        return sizes[index];
+    }
+
+    /**
+     * Returns the time of a sample.
+     *
+     * @param index sample index
+     * @return time in seconds
+     */
+    public double getTime(int index) {
+        return times[index];
+    }
+
+    /**
+     * Returns the data type of a sample, audio or video.
+     *
+     * @param index sample index
+     * @return data type
+     */
+    public byte getType(int index) {
+        return types[index];
+    }
+
+    /**
+     * Returns whether a sample is a key frame.
+     *
+     * @param index sample index
+     * @return true if a key frame
+     */
+    public boolean isKeyFrame(int index) {
+        return keyFrames.get(index);
+    }
+
+    /**
+     * Returns the approximate heap held by the sample columns and the tables of the track info.
+     *
+     * @return size in bytes
+     */
+    public long getMemorySize() {
+        return (long) offsets.length * BYTES_PER_SAMPLE + trackInfo.getMemorySize();
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.mp4.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jcodec.common.io.SeekableByteChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Process wide cache of {@link MP4SampleTable}s, keyed by file path, last modified time and length, so a file that is modified gets a new table. Concurrent opens of a file
+ * that isn't cached yet wait for a single parse. The cache is bounded by the heap held by the sample columns and evicts the least recently used tables.
+ *
+ * @author The Red5 Project
+ */
+public class MP4SampleTableCache {
+
+    private static Logger log = LoggerFactory.getLogger(MP4SampleTableCache.class);
+
+    /** Tables by file in access order; a table being loaded is held as an incomplete future */
+    private final LinkedHashMap<Key, CompletableFuture<MP4SampleTable>> tables = new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Maximum heap held by cached tables, in bytes */
+    private long maxSize = 64 * 1024 * 1024;
+
+    /** Heap held by the loaded tables, guarded by the tables lock */
+    private long size;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Returns the sample table of a file, parsing the file through the given channel if it isn't cached.
+     *
+     * @param file mp4 file
+     * @param dataSource channel of the file
+     * @return sample table
+     * @throws IOException on read error
+     */
+    public MP4SampleTable get(File file, SeekableByteChannel dataSource) throws IOException {
+        Key key = new Key(file.getCanonicalPath(), file.lastModified(), file.length());
+        CompletableFuture<MP4SampleTable> future;
+        boolean load = false;
+        synchronized (tables) {
+            future = tables.get(key);
+            if (future == null) {
+                future = new CompletableFuture<>();
+                tables.put(key, future);
+                load = true;
+            }
+        }
+        if (load) {
+            misses.incrementAndGet();
+            MP4SampleTable table;
+            try {
+                table = MP4SampleTable.load(dataSource);
+            } catch (Throwable t) {
+                // errors too, or the readers waiting on the future would wait forever
+                synchronized (tables) {
+                    tables.remove(key, future);
+                }
+                future.completeExceptionally(t);
+                throw t;
+            }
+            future.complete(table);
+            added(key, table);
+            return table;
+        }
+        hits.incrementAndGet();
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for the sample table of " + file, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Sample table of " + file + " failed to load", cause);
+        }
+    }
+
+    /** Accounts for a loaded table, dropping tables of older versions of the file and the least recently used ones over the limit. */
+    private void added(Key key, MP4SampleTable table) {
+        long tableSize = table.getMemorySize();
+        synchronized (tables) {
+            if (tables.get(key) == null) {
+                // no longer cached
+                return;
+            }
+            size += tableSize;
+            Iterator<Map.Entry<Key, CompletableFuture<MP4SampleTable>>> it = tables.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, CompletableFuture<MP4SampleTable>> entry = it.next();
+                Key other = entry.getKey();
+                if (other.equals(key)) {
+                    continue;
+                }
+                // eldest first; tables still loading are skipped, they are accounted when done
+                if (other.path.equals(key.path) || size > maxSize) {
+                    MP4SampleTable evicted = entry.getValue().getNow(null);
+                    if (evicted != null) {
+                        log.debug("Evicting sample table of {}", other.path);
+                        size -= evicted.getMemorySize();
+                        it.remove();
+                    }
+                }
+            }
+            if (size > maxSize) {
+                // too large to be cached at all
+                log.debug("Sample table of {} exceeds the cache size: {}", key.path, tableSize);
+                size -= tableSize;
+                tables.remove(key);
+            }
+        }
+    }
+
+    /** Drops all cached tables. */
+    public void clear() {
+        synchronized (tables) {
+            tables.values().removeIf(CompletableFuture::isDone);
+            size = 0;
+        }
+    }
+
+    /**
+     * Returns the number of cached tables.
+     *
+     * @return table count
+     */
+    public int getCount() {
+        synchronized (tables) {
+            return tables.size();
+        }
+    }
+
+    /**
+     * Returns the heap held by the cached tables.
+     *
+     * @return size in bytes
+     */
+    public long getSize() {
+        synchronized (tables) {
+            return size;
+        }
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Sets the maximum heap held by cached tables.
+     *
+     * @param maxSize size in bytes
+     */
+    public void setMaxSize(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static final class Key {
+
+        final String path;
+
+        final long lastModified;
+
+        final long length;
+
+        Key(String path, long lastModified, long length) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+
+        @Override
+        public int hashCode() {
+            return (path.hashCode() * 31 + Long.hashCode(lastModified)) * 31 + Long.hashCode(length);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return lastModified == other.lastModified && length == other.length && path.equals(other.path);
+        }
+    }
+
+}
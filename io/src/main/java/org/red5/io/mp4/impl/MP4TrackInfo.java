@@ -69,9 +69,28 @@ public class MP4TrackInfo {
 
     private Map<Integer, Long> samplePosMap;
 
+    /** Approximate heap of a sample to chunk entry: header and three fields */
+    private static final int SAMPLE_TO_CHUNK_ENTRY_SIZE = 32;
+
+    /** Approximate heap of a composition offset entry: header and two ints */
+    private static final int COMPOSITION_ENTRY_SIZE = 24;
+
+    /** Approximate heap of a map entry holding a boxed Integer key and Long value */
+    private static final int POSITION_ENTRY_SIZE = 72;
+
     public MP4TrackInfo() {
     }
 
+    /**
+     * Creates a copy of the given track info. The sample tables and maps are shared, they aren't changed once parsed; the
+     * codec ids and other single values may then be changed on the copy alone.
+     *
+     * @param other track info to copy
+     */
+    public MP4TrackInfo(MP4TrackInfo other) {
+        this(other.hasAudio, other.hasVideo, other.audioCodecId, other.videoCodecId, other.audioDecoderBytes, other.videoDecoderBytes, other.duration, other.timeScale, other.width, other.height, other.audioTimeScale, other.audioChannels, other.audioCodecType, other.audioSampleSize, other.audioSamples, other.audioChunkOffsets, other.audioSampleDuration, other.videoTimeScale, other.videoSampleCount, other.fps, other.videoSamples, other.videoChunkOffsets, other.videoSampleDuration, other.avcLevel, other.avcProfile, other.compositionTimes, other.audioSamplesToChunks, other.videoSamplesToChunks, other.syncSamples, other.timePosMap, other.samplePosMap);
+    }
+
     public MP4TrackInfo(boolean hasAudio, boolean hasVideo, String audioCodecId, String videoCodecId, byte[] audioDecoderBytes, byte[] videoDecoderBytes, long duration, long timeScale, int width, int height, double audioTimeScale, int audioChannels, int audioCodecType, long audioSampleSize, int[] audioSamples, long[] audioChunkOffsets, long audioSampleDuration, double videoTimeScale, int videoSampleCount, double fps,
             int[] videoSamples, long[] videoChunkOffsets, long videoSampleDuration, int avcLevel, int avcProfile, List<CompositionOffsetsBox.Entry> compositionTimes, SampleToChunkBox.SampleToChunkEntry[] audioSamplesToChunks, SampleToChunkBox.SampleToChunkEntry[] videoSamplesToChunks, int[] syncSamples, Map<Integer, Long> timePosMap, Map<Integer, Long> samplePosMap) {
 
@@ -357,6 +376,28 @@ public class MP4TrackInfo {
         this.samplePosMap = samplePosMap;
     }
 
+    /**
+     * Returns the approximate heap held by the sample tables, maps and decoder configurations.
+     *
+     * @return size in bytes
+     */
+    public long getMemorySize() {
+        long size = 0;
+        size += audioSamples != null ? audioSamples.length * 4L : 0;
+        size += videoSamples != null ? videoSamples.length * 4L : 0;
+        size += syncSamples != null ? syncSamples.length * 4L : 0;
+        size += audioChunkOffsets != null ? audioChunkOffsets.length * 8L : 0;
+        size += videoChunkOffsets != null ? videoChunkOffsets.length * 8L : 0;
+        size += audioSamplesToChunks != null ? (long) audioSamplesToChunks.length * SAMPLE_TO_CHUNK_ENTRY_SIZE : 0;
+        size += videoSamplesToChunks != null ? (long) videoSamplesToChunks.length * SAMPLE_TO_CHUNK_ENTRY_SIZE : 0;
+        size += compositionTimes != null ? (long) compositionTimes.size() * COMPOSITION_ENTRY_SIZE : 0;
+        size += timePosMap != null ? (long) timePosMap.size() * POSITION_ENTRY_SIZE : 0;
+        size += samplePosMap != null ? (long) samplePosMap.size() * POSITION_ENTRY_SIZE : 0;
+        size += audioDecoderBytes != null ? audioDecoderBytes.length : 0;
+        size += videoDecoderBytes != null ? videoDecoderBytes.length : 0;
+        return size;
+    }
+
     /**
      * Detects the type of AAC (or possibly MP3) based on the first byte in the audioDecoderBytes
      * buffer.
@@ -0,0 +1,455 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.object;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import org.red5.annotations.Anonymous;
+import org.red5.io.amf.AMF;
+import org.red5.io.utils.ConversionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Serialization plan of a class, shared by the AMF0 and AMF3 readers and writers. It is built once per class on first use and holds, for every property, a compiled accessor and the
+ * pre-encoded property name; writing an object no longer introspects it, reading one no longer goes through commons-beanutils for every property.
+ * <p>
+ * The serialized properties are the same ones the bean map based writer used: the readable bean properties, or the public fields when a class has no bean properties, minus
+ * <i>class</i>, transient fields and anything annotated with {@link org.red5.annotations.DontSerialize}. Accessors are generated with {@link LambdaMetafactory}; where that isn't
+ * possible, for fields or inaccessible methods, a plain method handle or reflection is used instead.
+ *
+ * @author The Red5 Project
+ */
+public final class ClassCodec {
+
+    private static final Logger log = LoggerFactory.getLogger(ClassCodec.class);
+
+    private static final ClassValue<ClassCodec> codecs = new ClassValue<ClassCodec>() {
+        @Override
+        protected ClassCodec computeValue(Class<?> type) {
+            compiled.incrementAndGet();
+            return new ClassCodec(type);
+        }
+    };
+
+    private static final AtomicLong compiled = new AtomicLong();
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
+    private final Class<?> type;
+
+    private final boolean anonymous;
+
+    private final String className;
+
+    private final byte[] encodedClassName;
+
+    /** Properties written for instances of the class, in order */
+    private final List<Property> properties;
+
+    /** Properties that can be read into instances of the class, by name */
+    private final Map<String, Property> writable;
+
+    private ClassCodec(Class<?> type) {
+        this.type = type;
+        anonymous = type.isAnnotationPresent(Anonymous.class);
+        className = Serializer.getClassName(type);
+        encodedClassName = encode(className);
+        MethodHandles.Lookup lookup = lookup(type);
+        Map<String, PropertyDescriptor> descriptors = new HashMap<>();
+        try {
+            BeanInfo info = Introspector.getBeanInfo(type);
+            for (PropertyDescriptor descriptor : info.getPropertyDescriptors()) {
+                descriptors.put(descriptor.getName(), descriptor);
+            }
+        } catch (IntrospectionException e) {
+            log.warn("Could not introspect {}", type, e);
+        }
+        // serialized properties
+        List<Property> props = new ArrayList<>();
+        boolean bean = false;
+        for (PropertyDescriptor descriptor : descriptors.values()) {
+            if (descriptor.getReadMethod() != null && !"class".equals(descriptor.getName())) {
+                bean = true;
+                break;
+            }
+        }
+        if (bean) {
+            for (String name : new TreeSet<>(descriptors.keySet())) {
+                Method getter = descriptors.get(name).getReadMethod();
+                if (getter == null) {
+                    continue;
+                }
+                Field field = findField(type, name);
+                if (Serializer.serializeField(name, field, getter)) {
+                    props.add(new Property(name, field, getter, getter.getGenericReturnType(), getter.getReturnType(), compileGetter(lookup, getter), null));
+                }
+            }
+        } else {
+            for (Field field : type.getFields()) {
+                if (Serializer.serializeField(field.getName(), field, null)) {
+                    props.add(new Property(field.getName(), field, null, field.getGenericType(), field.getType(), compileGetter(lookup, field), null));
+                }
+            }
+        }
+        properties = Collections.unmodifiableList(props);
+        // readable properties, public fields take precedence over setters
+        Map<String, Property> targets = new HashMap<>();
+        for (PropertyDescriptor descriptor : descriptors.values()) {
+            Method setter = descriptor.getWriteMethod();
+            Method getter = descriptor.getReadMethod();
+            if (setter != null) {
+                Type propertyType = getter != null ? getter.getGenericReturnType() : setter.getGenericParameterTypes()[0];
+                targets.put(descriptor.getName(), new Property(descriptor.getName(), null, getter, propertyType, setter.getParameterTypes()[0], null, compileSetter(lookup, setter)));
+            } else if (getter != null && !"class".equals(descriptor.getName())) {
+                // read-only, only its type is of use
+                targets.put(descriptor.getName(), new Property(descriptor.getName(), null, getter, getter.getGenericReturnType(), getter.getReturnType(), null, null));
+            }
+        }
+        for (Field field : type.getFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) && !Modifier.isFinal(modifiers)) {
+                targets.put(field.getName(), new Property(field.getName(), field, null, field.getGenericType(), field.getType(), null, compileSetter(lookup, field)));
+            }
+        }
+        writable = targets;
+    }
+
+    /**
+     * Returns the codec of the given class, building it on first use.
+     *
+     * @param type class
+     * @return codec
+     */
+    public static ClassCodec forClass(Class<?> type) {
+        return codecs.get(type);
+    }
+
+    /**
+     * Returns the number of codecs built so far.
+     *
+     * @return codec count
+     */
+    public static long getCompiledCount() {
+        return compiled.get();
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Returns whether instances are written without class name.
+     *
+     * @return true if the class is annotated with {@link Anonymous}
+     */
+    public boolean isAnonymous() {
+        return anonymous;
+    }
+
+    /**
+     * Returns the class name or alias written for instances of the class.
+     *
+     * @return class name
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Returns the UTF-8 encoded class name.
+     *
+     * @return encoded class name
+     */
+    public byte[] getEncodedClassName() {
+        return encodedClassName;
+    }
+
+    /**
+     * Returns the properties written for instances of the class.
+     *
+     * @return properties in write order
+     */
+    public List<Property> getProperties() {
+        return properties;
+    }
+
+    /**
+     * Returns the declared type of a property, used to pick the type to deserialize its value to.
+     *
+     * @param name property name
+     * @return generic property type, {@link Object} for unknown properties
+     */
+    public Type getPropertyType(String name) {
+        Property property = writable.get(name);
+        return property != null ? property.getGenericType() : Object.class;
+    }
+
+    /**
+     * Sets a property on an instance of the class, converting the value to the property type when needed.
+     *
+     * @param bean instance
+     * @param name property name
+     * @param value value
+     * @return true if the property was set, false if it is unknown, read-only or the value could not be converted or set
+     */
+    public boolean setProperty(Object bean, String name, Object value) {
+        Property property = writable.get(name);
+        if (property == null || property.setter == null) {
+            return false;
+        }
+        try {
+            Object converted = value;
+            if (value != null && !property.valueType.isInstance(value)) {
+                converted = ConversionUtils.convert(value, property.valueType);
+            }
+            property.setter.accept(bean, converted);
+            return true;
+        } catch (Throwable t) {
+            log.debug("Could not set {} on {}", name, type, t);
+            return false;
+        }
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> type) {
+        try {
+            return MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+        } catch (Throwable t) {
+            log.debug("No private lookup for {}, using public lookup", type);
+            return MethodHandles.publicLookup();
+        }
+    }
+
+    /**
+     * Returns the field of the given name declared by the class or one of its superclasses.
+     *
+     * @param type class
+     * @param name field name
+     * @return field or null
+     */
+    public static Field findField(Class<?> type, String name) {
+        for (Class<?> clazz = type; clazz != null && !clazz.equals(Object.class); clazz = clazz.getSuperclass()) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (field.getName().equals(name)) {
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Function<Object, Object> compileGetter(MethodHandles.Lookup lookup, Method method) {
+        try {
+            MethodHandle handle = lookup.unreflect(method);
+            CallSite site = LambdaMetafactory.metafactory(lookup, "apply", MethodType.methodType(Function.class), GETTER_TYPE, handle, handle.type().wrap());
+            return (Function<Object, Object>) site.getTarget().invokeExact();
+        } catch (Throwable t) {
+            log.debug("Could not compile getter {}, using reflection", method, t);
+        }
+        try {
+            method.setAccessible(true);
+        } catch (RuntimeException e) {
+            // invoked as is
+        }
+        return bean -> {
+            try {
+                return method.invoke(bean);
+            } catch (ReflectiveOperationException e) {
+                log.debug("Could not read {}", method, e);
+                return null;
+            }
+        };
+    }
+
+    private static Function<Object, Object> compileGetter(MethodHandles.Lookup lookup, Field field) {
+        try {
+            MethodHandle getter = lookup.unreflectGetter(field);
+            if (Modifier.isStatic(field.getModifiers())) {
+                getter = MethodHandles.dropArguments(getter, 0, Object.class);
+            }
+            final MethodHandle handle = getter.asType(GETTER_TYPE);
+            return bean -> {
+                try {
+                    return handle.invokeExact(bean);
+                } catch (Throwable t) {
+                    log.debug("Could not read {}", field, t);
+                    return null;
+                }
+            };
+        } catch (IllegalAccessException | RuntimeException e) {
+            log.debug("Could not access {}", field, e);
+            return bean -> null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static BiConsumer<Object, Object> compileSetter(MethodHandles.Lookup lookup, Method method) {
+        try {
+            MethodHandle handle = lookup.unreflect(method);
+            // setters returning a value, for chaining, can't be used as a consumer
+            if (handle.type().returnType() == void.class) {
+                CallSite site = LambdaMetafactory.metafactory(lookup, "accept", MethodType.methodType(BiConsumer.class), SETTER_TYPE, handle, handle.type().wrap().changeReturnType(void.class));
+                return (BiConsumer<Object, Object>) site.getTarget().invokeExact();
+            }
+        } catch (Throwable t) {
+            log.debug("Could not compile setter {}, using reflection", method, t);
+        }
+        try {
+            method.setAccessible(true);
+        } catch (RuntimeException e) {
+            // invoked as is
+        }
+        return (bean, value) -> {
+            try {
+                method.invoke(bean, value);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException(e);
+            }
+        };
+    }
+
+    private static BiConsumer<Object, Object> compileSetter(MethodHandles.Lookup lookup, Field field) {
+        try {
+            final MethodHandle handle = lookup.unreflectSetter(field).asType(SETTER_TYPE);
+            return (bean, value) -> {
+                try {
+                    handle.invokeExact(bean, value);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Throwable t) {
+                    throw new IllegalArgumentException(t);
+                }
+            };
+        } catch (IllegalAccessException | RuntimeException e) {
+            log.debug("Could not access {}", field, e);
+            return null;
+        }
+    }
+
+    private static byte[] encode(String string) {
+        ByteBuffer buf = AMF.CHARSET.encode(string);
+        byte[] encoded = new byte[buf.remaining()];
+        buf.get(encoded);
+        return encoded;
+    }
+
+    /**
+     * A property of a class with its compiled accessors.
+     */
+    public static final class Property {
+
+        private final String name;
+
+        private final byte[] encodedName;
+
+        private final Field field;
+
+        private final Method readMethod;
+
+        private final Type genericType;
+
+        /** Type values are converted to before they are set, primitives boxed */
+        private final Class<?> valueType;
+
+        private final Function<Object, Object> getter;
+
+        private final BiConsumer<Object, Object> setter;
+
+        Property(String name, Field field, Method readMethod, Type genericType, Class<?> rawType, Function<Object, Object> getter, BiConsumer<Object, Object> setter) {
+            this.name = name;
+            this.encodedName = encode(name);
+            this.field = field;
+            this.readMethod = readMethod;
+            this.genericType = genericType;
+            this.valueType = box(rawType);
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Returns the UTF-8 encoded property name.
+         *
+         * @return encoded name
+         */
+        public byte[] getEncodedName() {
+            return encodedName;
+        }
+
+        /**
+         * Returns the field backing the property, if any.
+         *
+         * @return field or null
+         */
+        public Field getField() {
+            return field;
+        }
+
+        /**
+         * Returns the getter of the property, null for public fields.
+         *
+         * @return getter or null
+         */
+        public Method getReadMethod() {
+            return readMethod;
+        }
+
+        public Type getGenericType() {
+            return genericType;
+        }
+
+        /**
+         * Returns the value of the property, or null if it could not be read.
+         *
+         * @param bean instance
+         * @return value
+         */
+        public Object get(Object bean) {
+            if (getter != null) {
+                try {
+                    return getter.apply(bean);
+                } catch (Exception e) {
+                    log.debug("Could not read {} of {}", name, bean.getClass(), e);
+                }
+            }
+            return null;
+        }
+
+        private static Class<?> box(Class<?> type) {
+            return type.isPrimitive() ? MethodType.methodType(type).wrap().returnType() : type;
+        }
+    }
+}
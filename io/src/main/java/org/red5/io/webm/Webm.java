@@ -0,0 +1,60 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.webm;
+
+import java.io.File;
+import java.io.IOException;
+import org.red5.io.IStreamableFile;
+import org.red5.io.ITagReader;
+import org.red5.io.ITagWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A WebM or Matroska file which can be played; recordings are written with {@link WebmWriter}.
+ *
+ * @author The Red5 Project
+ */
+public class Webm implements IStreamableFile {
+
+    protected static Logger log = LoggerFactory.getLogger(Webm.class);
+
+    private final File file;
+
+    /**
+     * Create Webm from given file source.
+     *
+     * @param file File source
+     */
+    public Webm(File file) {
+        this.file = file;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ITagReader getReader() throws IOException {
+        if (!file.exists()) {
+            log.warn("File does not exist: {}", file);
+            return null;
+        }
+        log.debug("File name: {} size: {}", file.getName(), file.length());
+        return new WebmTagReader(file);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ITagWriter getWriter() throws IOException {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ITagWriter getAppendWriter() throws IOException {
+        return null;
+    }
+}
@@ -15,6 +15,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import org.red5.io.matroska.ConverterException;
+import org.red5.io.matroska.EbmlCursor;
 import org.red5.io.matroska.dtd.Tag;
 import org.red5.io.matroska.parser.TagCrawler;
 import org.red5.io.matroska.parser.TagHandler;
@@ -116,7 +117,7 @@ public class WebmReader implements Closeable {
      * @throws ConverterException - in case of any error during conversions
      */
     public void process() throws IOException, ConverterException {
-        crawler.process(fis);
+        crawler.process(EbmlCursor.map(fis.getChannel()));
     }
 
     /** Will close all opened resources */
@@ -0,0 +1,932 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.webm;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.codec.AudioCodec;
+import org.red5.codec.VideoCodec;
+import org.red5.io.IStreamableFile;
+import org.red5.io.ITag;
+import org.red5.io.ITagReader;
+import org.red5.io.IoConstants;
+import org.red5.io.amf.Output;
+import org.red5.io.flv.IKeyFrameDataAnalyzer;
+import org.red5.io.flv.impl.Tag;
+import org.red5.io.matroska.EbmlCursor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the frames of a WebM / Matroska file as FLV style tags for VOD playback. Opening reads the
+ * headers up to the first cluster; blocks are read on demand with an {@link EbmlCursor} over the
+ * mapped file, so memory doesn't grow with the file. Seek points come from the Cues element, which is
+ * only read on the first seek, or from a walk over the cluster headers if the file has no cues.
+ *
+ * <p>The first video and the first audio track of a supported codec are played: VP8, VP9, AV1, AVC
+ * and HEVC video, Opus, AAC and MP3 audio.
+ *
+ * @author The Red5 Project
+ */
+public class WebmTagReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer {
+
+    private static final Logger log = LoggerFactory.getLogger(WebmTagReader.class);
+
+    static final int ID_EBML = 0x1A45DFA3;
+
+    static final int ID_DOCTYPE = 0x4282;
+
+    static final int ID_SEGMENT = 0x18538067;
+
+    static final int ID_SEEKHEAD = 0x114D9B74;
+
+    static final int ID_SEEK = 0x4DBB;
+
+    static final int ID_SEEKID = 0x53AB;
+
+    static final int ID_SEEKPOSITION = 0x53AC;
+
+    static final int ID_INFO = 0x1549A966;
+
+    static final int ID_TIMECODESCALE = 0x2AD7B1;
+
+    static final int ID_DURATION = 0x4489;
+
+    static final int ID_TRACKS = 0x1654AE6B;
+
+    static final int ID_TRACKENTRY = 0xAE;
+
+    static final int ID_TRACKNUMBER = 0xD7;
+
+    static final int ID_TRACKTYPE = 0x83;
+
+    static final int ID_CODECID = 0x86;
+
+    static final int ID_CODECPRIVATE = 0x63A2;
+
+    static final int ID_DEFAULTDURATION = 0x23E383;
+
+    static final int ID_VIDEO = 0xE0;
+
+    static final int ID_PIXELWIDTH = 0xB0;
+
+    static final int ID_PIXELHEIGHT = 0xBA;
+
+    static final int ID_AUDIO = 0xE1;
+
+    static final int ID_SAMPLINGFREQUENCY = 0xB5;
+
+    static final int ID_CHANNELS = 0x9F;
+
+    static final int ID_CLUSTER = 0x1F43B675;
+
+    static final int ID_TIMECODE = 0xE7;
+
+    static final int ID_SIMPLEBLOCK = 0xA3;
+
+    static final int ID_BLOCKGROUP = 0xA0;
+
+    static final int ID_BLOCK = 0xA1;
+
+    static final int ID_REFERENCEBLOCK = 0xFB;
+
+    static final int ID_CUES = 0x1C53BB6B;
+
+    static final int ID_CUEPOINT = 0xBB;
+
+    static final int ID_CUETIME = 0xB3;
+
+    static final int ID_CUETRACKPOSITIONS = 0xB7;
+
+    static final int ID_CUETRACK = 0xF7;
+
+    static final int ID_CUECLUSTERPOSITION = 0xF1;
+
+    static final int ID_CUERELATIVEPOSITION = 0xF0;
+
+    private static final int TRACK_TYPE_VIDEO = 1;
+
+    private static final int TRACK_TYPE_AUDIO = 2;
+
+    private static final int LACING_XIPH = 1;
+
+    private static final int LACING_FIXED = 2;
+
+    private static final int LACING_EBML = 3;
+
+    private final File file;
+
+    private FileChannel channel;
+
+    /** Cursor over the mapped file */
+    private EbmlCursor cursor;
+
+    private long fileSize;
+
+    /** File offset of the segment data, positions in the segment are relative to it */
+    private long segmentStart;
+
+    private long segmentEnd;
+
+    private long firstCluster = -1;
+
+    /** File offset of the Cues element, -1 if unknown */
+    private long cuesPosition = -1;
+
+    /** Nanoseconds per timecode unit */
+    private long timecodeScale = 1000000L;
+
+    /** Duration in milliseconds */
+    private long duration;
+
+    private Track video;
+
+    private Track audio;
+
+    /** Seek points, times in milliseconds; positions as handed out in the keyframe meta */
+    private int[] seekTimes;
+
+    private long[] seekPositions;
+
+    /** Cluster to start reading from for each seek point */
+    private long[] seekClusters;
+
+    private boolean cues;
+
+    /** Timecode of the current cluster */
+    private long clusterTimecode;
+
+    /** After a seek, blocks before this time in milliseconds are skipped */
+    private long skipUntil = -1;
+
+    private final ArrayDeque<ITag> firstTags = new ArrayDeque<>();
+
+    /** Frames of a laced block not handed out yet */
+    private final ArrayDeque<ITag> pending = new ArrayDeque<>();
+
+    private boolean eof;
+
+    private int prevFrameSize;
+
+    /** Unsupported tracks already logged */
+    private final Set<Long> ignoredTracks = new HashSet<>();
+
+    /**
+     * Opens the file and reads its headers.
+     *
+     * @param file webm or mkv file
+     * @throws IOException if the file can't be read or isn't a Matroska file
+     */
+    public WebmTagReader(File file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            cursor = EbmlCursor.map(channel);
+            fileSize = cursor.length();
+            readHeaders();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        firstTags.add(createFileMeta());
+        createPreStreamingTags(0);
+    }
+
+    /** Reads the EBML header and the segment up to its first cluster. */
+    private void readHeaders() throws IOException {
+        if (cursor.readId() != ID_EBML) {
+            throw new IOException("Not a Matroska file: " + file.getName());
+        }
+        long size = cursor.readVint();
+        long end = cursor.position() + size;
+        while (cursor.position() < end) {
+            int id = cursor.readId();
+            long length = cursor.readVint();
+            long start = cursor.position();
+            if (id == ID_DOCTYPE) {
+                log.debug("Doc type: {}", cursor.readString((int) length));
+            }
+            cursor.position(start + length);
+        }
+        cursor.position(end);
+        if (cursor.readId() != ID_SEGMENT) {
+            throw new IOException("No segment in " + file.getName());
+        }
+        size = cursor.readVint();
+        segmentStart = cursor.position();
+        segmentEnd = size < 0 ? fileSize : Math.min(fileSize, segmentStart + size);
+        while (cursor.position() < segmentEnd) {
+            long elementStart = cursor.position();
+            int id = cursor.readId();
+            size = cursor.readVint();
+            long start = cursor.position();
+            if (id == ID_CLUSTER) {
+                firstCluster = elementStart;
+                break;
+            }
+            if (size < 0) {
+                log.warn("Element {} of unknown size before the first cluster", Integer.toHexString(id));
+                break;
+            }
+            long elementEnd = start + size;
+            switch (id) {
+                case ID_SEEKHEAD:
+                    readSeekHead(elementEnd);
+                    break;
+                case ID_INFO:
+                    readInfo(elementEnd);
+                    break;
+                case ID_TRACKS:
+                    readTracks(elementEnd);
+                    break;
+                case ID_CUES:
+                    cuesPosition = elementStart;
+                    break;
+                default:
+                    break;
+            }
+            cursor.position(elementEnd);
+        }
+        if (firstCluster < 0) {
+            firstCluster = segmentEnd;
+        }
+        log.debug("Opened {} video: {} audio: {} duration: {} cues at: {}", file.getName(), video, audio, duration, cuesPosition);
+        cursor.position(firstCluster);
+    }
+
+    private void readSeekHead(long end) throws IOException {
+        while (cursor.position() < end) {
+            int id = cursor.readId();
+            long size = cursor.readVint();
+            long start = cursor.position();
+            if (id == ID_SEEK) {
+                long seekId = 0;
+                long seekPosition = -1;
+                while (cursor.position() < start + size) {
+                    int child = cursor.readId();
+                    long length = cursor.readVint();
+                    long childStart = cursor.position();
+                    if (child == ID_SEEKID) {
+                        seekId = cursor.readUnsigned((int) length);
+                    } else if (child == ID_SEEKPOSITION) {
+                        seekPosition = cursor.readUnsigned((int) length);
+                    }
+                    cursor.position(childStart + length);
+                }
+                if (seekId == ID_CUES && seekPosition >= 0) {
+                    cuesPosition = segmentStart + seekPosition;
+                }
+            }
+            cursor.position(start + size);
+        }
+    }
+
+    private void readInfo(long end) throws IOException {
+        double durationTimecode = 0;
+        while (cursor.position() < end) {
+            int id = cursor.readId();
+            long size = cursor.readVint();
+            long start = cursor.position();
+            if (id == ID_TIMECODESCALE) {
+                timecodeScale = cursor.readUnsigned((int) size);
+            } else if (id == ID_DURATION) {
+                durationTimecode = cursor.readFloat((int) size);
+            }
+            cursor.position(start + size);
+        }
+        duration = (long) (durationTimecode * timecodeScale / 1000000d);
+    }
+
+    private void readTracks(long end) throws IOException {
+        while (cursor.position() < end) {
+            int id = cursor.readId();
+            long size = cursor.readVint();
+            long start = cursor.position();
+            if (id == ID_TRACKENTRY) {
+                Track track = readTrack(start + size);
+                if (track.type == TRACK_TYPE_VIDEO && video == null && track.codec >= 0) {
+                    video = track;
+                } else if (track.type == TRACK_TYPE_AUDIO && audio == null && track.codec >= 0) {
+                    audio = track;
+                } else {
+                    log.info("Track {} with codec {} is not played", track.number, track.codecId);
+                }
+            }
+            cursor.position(start + size);
+        }
+    }
+
+    private Track readTrack(long end) throws IOException {
+        Track track = new Track();
+        while (cursor.position() < end) {
+            int id = cursor.readId();
+            long size = cursor.readVint();
+            long start = cursor.position();
+            switch (id) {
+                case ID_TRACKNUMBER:
+                    track.number = cursor.readUnsigned((int) size);
+                    break;
+                case ID_TRACKTYPE:
+                    track.type = (int) cursor.readUnsigned((int) size);
+                    break;
+                case ID_CODECID:
+                    track.codecId = cursor.readString((int) size);
+                    break;
+                case ID_CODECPRIVATE:
+                    track.codecPrivate = new byte[(int) size];
+                    cursor.read(track.codecPrivate, 0, (int) size);
+                    break;
+                case ID_DEFAULTDURATION:
+                    track.defaultDuration = cursor.readUnsigned((int) size);
+                    break;
+                case ID_VIDEO:
+                case ID_AUDIO:
+                    // settings of the track, read in place
+                    continue;
+                case ID_PIXELWIDTH:
+                    track.width = (int) cursor.readUnsigned((int) size);
+                    break;
+                case ID_PIXELHEIGHT:
+                    track.height = (int) cursor.readUnsigned((int) size);
+                    break;
+                case ID_SAMPLINGFREQUENCY:
+                    track.sampleRate = cursor.readFloat((int) size);
+                    break;
+                case ID_CHANNELS:
+                    track.channels = (int) cursor.readUnsigned((int) size);
+                    break;
+                default:
+                    break;
+            }
+            cursor.position(start + size);
+        }
+        track.codec = codec(track);
+        return track;
+    }
+
+    /** Maps the Matroska codec id to the FLV codec id, -1 if not supported. */
+    private static int codec(Track track) {
+        String codecId = track.codecId != null ? track.codecId : "";
+        if (track.type == TRACK_TYPE_VIDEO) {
+            switch (codecId) {
+                case "V_VP8":
+                    return VideoCodec.VP8.getId();
+                case "V_VP9":
+                    return VideoCodec.VP9.getId();
+                case "V_AV1":
+                    return VideoCodec.AV1.getId();
+                case "V_MPEG4/ISO/AVC":
+                    return VideoCodec.AVC.getId();
+                case "V_MPEGH/ISO/HEVC":
+                    return VideoCodec.HEVC.getId();
+                default:
+                    return -1;
+            }
+        } else if (track.type == TRACK_TYPE_AUDIO) {
+            if ("A_OPUS".equals(codecId)) {
+                return AudioCodec.OPUS.getId();
+            } else if (codecId.startsWith("A_AAC")) {
+                return AudioCodec.AAC.getId();
+            } else if ("A_MPEG/L3".equals(codecId)) {
+                return AudioCodec.MP3.getId();
+            }
+        }
+        return -1;
+    }
+
+    private ITag createFileMeta() {
+        IoBuffer buf = IoBuffer.allocate(256);
+        buf.setAutoExpand(true);
+        Output out = new Output(buf);
+        out.writeString("onMetaData");
+        Map<Object, Object> props = new HashMap<>();
+        props.put("duration", duration / 1000d);
+        if (video != null) {
+            props.put("width", video.width);
+            props.put("height", video.height);
+            props.put("videocodecid", video.codec);
+            if (video.defaultDuration > 0) {
+                props.put("videoframerate", 1000000000d / video.defaultDuration);
+            }
+        }
+        if (audio != null) {
+            props.put("audiocodecid", audio.codec);
+            props.put("audiosamplerate", audio.sampleRate);
+            props.put("audiochannels", audio.channels);
+        }
+        props.put("canSeekToEnd", cuesPosition >= 0);
+        out.writeMap(props);
+        buf.flip();
+        Tag metaTag = new Tag(IoConstants.TYPE_METADATA, 0, buf.limit(), null, 0);
+        metaTag.setBody(buf);
+        return metaTag;
+    }
+
+    /**
+     * Queues the decoder configurations found in the CodecPrivate of the tracks, avcC / hvcC / av1C / vpcC for video and the AudioSpecificConfig or
+     * OpusHead for audio, as packets of type 0 ahead of the first frames.
+     */
+    private void createPreStreamingTags(int timestamp) {
+        if (video != null && video.codecPrivate != null && VideoCodec.getConfigured().contains(VideoCodec.valueOfById(video.codec))) {
+            // avc and hevc carry a composition time offset after the packet type, like their frames
+            int offset = (video.codec == VideoCodec.AVC.getId() || video.codec == VideoCodec.HEVC.getId()) ? 5 : 2;
+            byte[] body = new byte[offset + video.codecPrivate.length];
+            body[0] = (byte) ((FLAG_FRAMETYPE_KEYFRAME << 4) | video.codec);
+            System.arraycopy(video.codecPrivate, 0, body, offset, video.codecPrivate.length);
+            firstTags.add(new Tag(TYPE_VIDEO, timestamp, body.length, IoBuffer.wrap(body), 0));
+        }
+        if (audio != null && audio.codecPrivate != null && AudioCodec.getConfigured().contains(AudioCodec.valueOfById(audio.codec))) {
+            byte[] body = new byte[2 + audio.codecPrivate.length];
+            body[0] = (byte) (audio.codec == AudioCodec.AAC.getId() ? 0xaf : audio.codec << 4);
+            System.arraycopy(audio.codecPrivate, 0, body, 2, audio.codecPrivate.length);
+            firstTags.add(new Tag(TYPE_AUDIO, timestamp, body.length, IoBuffer.wrap(body), 0));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized boolean hasMoreTags() {
+        return !firstTags.isEmpty() || !pending.isEmpty() || (!eof && channel != null && cursor.position() < segmentEnd);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized ITag readTag() {
+        if (!firstTags.isEmpty()) {
+            return firstTags.poll();
+        }
+        if (channel == null) {
+            return null;
+        }
+        try {
+            ITag tag = pending.isEmpty() ? readFrame() : pending.poll();
+            if (tag != null) {
+                prevFrameSize = tag.getBodySize();
+            }
+            return tag;
+        } catch (EOFException e) {
+            log.debug("Truncated file: {}", file.getName());
+        } catch (IOException e) {
+            log.error("Error reading {}", file.getName(), e);
+        }
+        eof = true;
+        return null;
+    }
+
+    /** Walks the clusters up to the next frame of a played track. */
+    private ITag readFrame() throws IOException {
+        while (cursor.position() < segmentEnd) {
+            int id = cursor.readId();
+            long size = cursor.readVint();
+            long start = cursor.position();
+            switch (id) {
+                case ID_CLUSTER:
+                    // children follow, for known and unknown sizes alike
+                    clusterTimecode = 0;
+                    continue;
+                case ID_TIMECODE:
+                    clusterTimecode = cursor.readUnsigned((int) size);
+                    break;
+                case ID_SIMPLEBLOCK:
+                    readBlock(start + size, null);
+                    break;
+                case ID_BLOCKGROUP:
+                    readBlockGroup(start + size);
+                    break;
+                default:
+                    if (size < 0) {
+                        // unknown size, read its children in place
+                        continue;
+                    }
+                    break;
+            }
+            cursor.position(start + size);
+            if (!pending.isEmpty()) {
+                return pending.poll();
+            }
+        }
+        eof = true;
+        return null;
+    }
+
+    private void readBlockGroup(long end) throws IOException {
+        long block = -1;
+        long blockEnd = -1;
+        boolean keyFrame = true;
+        while (cursor.position() < end) {
+            int id = cursor.readId();
+            long size = cursor.readVint();
+            long start = cursor.position();
+            if (id == ID_BLOCK) {
+                block = start;
+                blockEnd = start + size;
+            } else if (id == ID_REFERENCEBLOCK) {
+                keyFrame = false;
+            }
+            cursor.position(start + size);
+        }
+        if (block >= 0) {
+            cursor.position(block);
+            readBlock(blockEnd, keyFrame);
+        }
+    }
+
+    /**
+     * Reads a block into pending tags.
+     *
+     * @param end end of the block
+     * @param keyFrame key frame flag of a block group, null for a simple block which carries it
+     */
+    private void readBlock(long end, Boolean keyFrame) throws IOException {
+        long trackNumber = cursor.readVint();
+        long timecode = clusterTimecode + cursor.readSigned(2);
+        int flags = cursor.readByte();
+        Track track = video != null && video.number == trackNumber ? video : audio != null && audio.number == trackNumber ? audio : null;
+        if (track == null) {
+            if (ignoredTracks.add(trackNumber)) {
+                log.debug("Skipping blocks of track {}", trackNumber);
+            }
+            return;
+        }
+        long time = timecode * timecodeScale / 1000000L;
+        if (skipUntil >= 0) {
+            if (time < skipUntil) {
+                return;
+            }
+            skipUntil = -1;
+        }
+        boolean key = keyFrame != null ? keyFrame : (flags & 0x80) != 0;
+        int lacing = (flags >> 1) & 0x03;
+        if (lacing == 0) {
+            pending.add(createTag(track, (int) time, key, (int) (end - cursor.position())));
+            return;
+        }
+        int count = cursor.readByte() + 1;
+        int[] sizes = new int[count];
+        long total = 0;
+        if (lacing == LACING_XIPH) {
+            for (int i = 0; i < count - 1; i++) {
+                int value;
+                do {
+                    value = cursor.readByte();
+                    sizes[i] += value;
+                } while (value == 255);
+                total += sizes[i];
+            }
+        } else if (lacing == LACING_EBML) {
+            sizes[0] = (int) cursor.readVint();
+            total = sizes[0];
+            for (int i = 1; i < count - 1; i++) {
+                sizes[i] = (int) (sizes[i - 1] + cursor.readSignedVint());
+                total += sizes[i];
+            }
+        } else if (lacing == LACING_FIXED) {
+            Arrays.fill(sizes, (int) ((end - cursor.position()) / count));
+            total = (long) sizes[0] * (count - 1);
+        }
+        sizes[count - 1] = (int) (end - cursor.position() - total);
+        long frameDuration = track.defaultDuration / 1000000L;
+        for (int i = 0; i < count; i++) {
+            pending.add(createTag(track, (int) (time + i * frameDuration), key, sizes[i]));
+        }
+    }
+
+    /** Creates a tag for a frame at the current position, with the FLV style prefix of its codec. */
+    private ITag createTag(Track track, int time, boolean key, int size) throws IOException {
+        byte[] body;
+        int offset;
+        byte type;
+        if (track == video) {
+            type = TYPE_VIDEO;
+            boolean composition = track.codec == VideoCodec.AVC.getId() || track.codec == VideoCodec.HEVC.getId();
+            offset = composition ? 5 : 2;
+            body = new byte[offset + size];
+            body[0] = (byte) (((key ? FLAG_FRAMETYPE_KEYFRAME : FLAG_FRAMETYPE_INTERFRAME) << 4) | track.codec);
+            // frame, a composition time offset of 0 follows for avc and hevc; block times are presentation times
+            body[1] = 0x01;
+        } else {
+            type = TYPE_AUDIO;
+            if (track.codec == AudioCodec.MP3.getId()) {
+                offset = 1;
+                body = new byte[offset + size];
+                body[0] = (byte) 0x2f;
+            } else {
+                offset = 2;
+                body = new byte[offset + size];
+                body[0] = (byte) (track.codec == AudioCodec.AAC.getId() ? 0xaf : track.codec << 4);
+                body[1] = 0x01;
+            }
+        }
+        cursor.read(body, offset, size);
+        return new Tag(type, time, body.length, IoBuffer.wrap(body), prevFrameSize);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized KeyFrameMeta analyzeKeyFrames() {
+        KeyFrameMeta result = new KeyFrameMeta();
+        result.duration = duration;
+        result.audioOnly = video == null && audio != null;
+        result.videoCodecId = video != null ? video.codec : -1;
+        result.audioCodecId = audio != null ? audio.codec : -1;
+        if (channel != null) {
+            try {
+                loadSeekPoints();
+            } catch (IOException e) {
+                log.warn("Seek points of {} could not be read", file.getName(), e);
+                seekTimes = new int[0];
+                seekPositions = new long[0];
+                seekClusters = new long[0];
+            }
+        }
+        result.timestamps = seekTimes != null ? seekTimes.clone() : new int[0];
+        result.positions = seekPositions != null ? seekPositions.clone() : new long[0];
+        return result;
+    }
+
+    /** Reads the seek points from the cues, or from the cluster headers without cues. */
+    private void loadSeekPoints() throws IOException {
+        if (seekTimes != null) {
+            return;
+        }
+        long position = cursor.position();
+        try {
+            if (cuesPosition >= 0) {
+                cursor.position(cuesPosition);
+                if (cursor.readId() == ID_CUES) {
+                    long size = cursor.readVint();
+                    readCues(cursor.position() + size);
+                    cues = true;
+                } else {
+                    log.warn("No cues at {} in {}", cuesPosition, file.getName());
+                }
+            }
+            if (!cues) {
+                scanClusters();
+            }
+        } finally {
+            cursor.position(position);
+        }
+        if (duration == 0 && seekTimes.length > 0) {
+            duration = seekTimes[seekTimes.length - 1];
+        }
+        log.debug("Seek points of {}: {} from cues: {}", file.getName(), seekTimes.length, cues);
+    }
+
+    private void readCues(long end) throws IOException {
+        long seekTrack = video != null ? video.number : audio != null ? audio.number : -1;
+        SeekPoints points = new SeekPoints();
+        while (cursor.position() < end) {
+            int id = cursor.readId();
+            long size = cursor.readVint();
+            long start = cursor.position();
+            if (id == ID_CUEPOINT) {
+                long cueTime = -1;
+                long cluster = -1;
+                long relative = -1;
+                while (cursor.position() < start + size) {
+                    int child = cursor.readId();
+                    long length = cursor.readVint();
+                    long childStart = cursor.position();
+                    if (child == ID_CUETIME) {
+                        cueTime = cursor.readUnsigned((int) length);
+                    } else if (child == ID_CUETRACKPOSITIONS) {
+                        long track = -1;
+                        long trackCluster = -1;
+                        long trackRelative = -1;
+                        while (cursor.position() < childStart + length) {
+                            int grandChild = cursor.readId();
+                            long valueLength = cursor.readVint();
+                            long valueStart = cursor.position();
+                            if (grandChild == ID_CUETRACK) {
+                                track = cursor.readUnsigned((int) valueLength);
+                            } else if (grandChild == ID_CUECLUSTERPOSITION) {
+                                trackCluster = cursor.readUnsigned((int) valueLength);
+                            } else if (grandChild == ID_CUERELATIVEPOSITION) {
+                                trackRelative = cursor.readUnsigned((int) valueLength);
+                            }
+                            cursor.position(valueStart + valueLength);
+                        }
+                        // the played track, else the first one listed
+                        if (cluster < 0 || track == seekTrack) {
+                            cluster = trackCluster;
+                            relative = trackRelative;
+                        }
+                    }
+                    cursor.position(childStart + length);
+                }
+                if (cueTime >= 0 && cluster >= 0) {
+                    long clusterPosition = segmentStart + cluster;
+                    // the block itself where known, it tells apart the cue points of a cluster
+                    long position = relative > 0 ? clusterPosition + relative : clusterPosition;
+                    points.add((int) (cueTime * timecodeScale / 1000000L), position, clusterPosition);
+                }
+            }
+            cursor.position(start + size);
+        }
+        points.apply();
+    }
+
+    private void scanClusters() throws IOException {
+        SeekPoints points = new SeekPoints();
+        cursor.position(firstCluster);
+        long cluster = -1;
+        try {
+            while (cursor.position() < segmentEnd) {
+                long elementStart = cursor.position();
+                int id = cursor.readId();
+                long size = cursor.readVint();
+                long start = cursor.position();
+                if (id == ID_CLUSTER) {
+                    cluster = elementStart;
+                    continue;
+                }
+                if (id == ID_TIMECODE && cluster >= 0) {
+                    points.add((int) (cursor.readUnsigned((int) size) * timecodeScale / 1000000L), cluster, cluster);
+                    cluster = -1;
+                }
+                if (size < 0) {
+                    continue;
+                }
+                cursor.position(start + size);
+            }
+        } catch (EOFException e) {
+            log.debug("Truncated file: {}", file.getName());
+        }
+        points.apply();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void position(long pos) {
+        log.debug("Seeking to file offset: {}", pos);
+        if (channel == null) {
+            return;
+        }
+        pending.clear();
+        prevFrameSize = 0;
+        try {
+            loadSeekPoints();
+        } catch (IOException e) {
+            log.warn("Seek points of {} could not be read", file.getName(), e);
+            return;
+        }
+        int index = Arrays.binarySearch(seekPositions, pos);
+        if (index < 0) {
+            index = -index - 1;
+        }
+        if (index >= seekPositions.length) {
+            firstTags.clear();
+            eof = true;
+            cursor.position(segmentEnd);
+            return;
+        }
+        log.debug("Seek point {} at {} ms, cluster at {}", index, seekTimes[index], seekClusters[index]);
+        firstTags.clear();
+        eof = false;
+        cursor.position(seekClusters[index]);
+        skipUntil = seekTimes[index];
+        createPreStreamingTags(seekTimes[index]);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.error("Error closing channel", e);
+            }
+            channel = null;
+        }
+        firstTags.clear();
+        pending.clear();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTotalBytes() {
+        return fileSize;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized long getBytesRead() {
+        return cursor.position();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean hasVideo() {
+        return video != null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public IStreamableFile getFile() {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getOffset() {
+        return 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * Returns whether the seek points were read from the cues of the file. Only known once they were
+     * loaded by the first seek or keyframe analysis.
+     *
+     * @return true if the file has cues
+     */
+    public boolean hasCues() {
+        return cues;
+    }
+
+    /** Track settings */
+    private static final class Track {
+
+        long number;
+
+        int type;
+
+        String codecId;
+
+        /** FLV codec id, -1 if not supported */
+        int codec = -1;
+
+        byte[] codecPrivate;
+
+        /** Nanoseconds */
+        long defaultDuration;
+
+        int width;
+
+        int height;
+
+        double sampleRate;
+
+        int channels = 1;
+
+        @Override
+        public String toString() {
+            return "Track [number=" + number + ", codecId=" + codecId + "]";
+        }
+    }
+
+    /** Seek points as they are collected */
+    private final class SeekPoints {
+
+        int count;
+
+        int[] times = new int[64];
+
+        long[] positions = new long[64];
+
+        long[] clusters = new long[64];
+
+        void add(int time, long position, long cluster) {
+            // positions must grow for the binary search; without block positions one point per cluster
+            if (count > 0 && position <= positions[count - 1]) {
+                return;
+            }
+            if (count == times.length) {
+                times = Arrays.copyOf(times, count * 2);
+                positions = Arrays.copyOf(positions, count * 2);
+                clusters = Arrays.copyOf(clusters, count * 2);
+            }
+            times[count] = time;
+            positions[count] = position;
+            clusters[count] = cluster;
+            count++;
+        }
+
+        void apply() {
+            seekTimes = Arrays.copyOf(times, count);
+            seekPositions = Arrays.copyOf(positions, count);
+            seekClusters = Arrays.copyOf(clusters, count);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.red5.codec.IVideoStreamCodec.FrameData;
+
+/** Tests for the reference counted frames of {@link GopCache} */
+public class GopCacheTest {
+
+    private static IoBuffer frame(int type, int size) {
+        IoBuffer data = IoBuffer.allocate(size);
+        data.put((byte) type);
+        data.position(size);
+        data.flip();
+        return data;
+    }
+
+    @Test
+    public void testFrameData() {
+        IoBuffer data = frame(0x12, 16);
+        FrameData frame = FrameData.share(data, 40);
+        // shared, not copied, and the position of the source is left alone
+        assertEquals(0, data.position());
+        assertEquals(16, frame.getSize());
+        assertEquals(40, frame.getTimestamp());
+        assertTrue(frame.retain());
+        frame.release();
+        assertNotNull(frame.getFrame());
+        // the last reference lets the data go, the frame can't be retained again
+        frame.release();
+        assertNull(frame.getFrame());
+        assertEquals(0, frame.getSize());
+        assertFalse(frame.retain());
+    }
+
+    @Test
+    public void testRetainedGroupOutlivesClear() {
+        GopCache gop = new GopCache(10, 1024);
+        gop.addKeyframe(frame(0x12, 100), 0, true);
+        assertTrue(gop.addInterframe(frame(0x22, 10), 33));
+        assertTrue(gop.addInterframe(frame(0x22, 10), 66));
+        assertEquals(120, gop.getSize());
+        FrameData[] group = gop.retainGroup();
+        assertEquals(3, group.length);
+        gop.clear();
+        assertEquals(0, gop.getSize());
+        // the cache let go of its references, the reader still holds its own
+        for (FrameData frame : group) {
+            assertNotNull(frame.getFrame());
+            frame.release();
+            assertNull(frame.getFrame());
+        }
+    }
+
+    @Test
+    public void testGettersRetain() {
+        GopCache gop = new GopCache(10, 1024);
+        gop.addKeyframe(frame(0x12, 100), 0, true);
+        gop.addInterframe(frame(0x22, 10), 33);
+        FrameData keyframe = gop.getKeyframe();
+        FrameData[] keyframes = gop.getKeyframes();
+        FrameData interframe = gop.getInterframe(0);
+        assertNull(gop.getInterframe(1));
+        // a new group drops the frames of the previous one from the cache
+        gop.addKeyframe(frame(0x12, 100), 66, true);
+        assertEquals(100, keyframe.getSize());
+        assertEquals(100, keyframes[0].getSize());
+        assertEquals(10, interframe.getSize());
+        keyframe.release();
+        assertEquals(100, keyframes[0].getSize());
+        keyframes[0].release();
+        assertNull(keyframe.getFrame());
+        interframe.release();
+        assertNull(interframe.getFrame());
+        // frames still in the cache stay readable after a reader released its reference
+        FrameData current = gop.getKeyframe();
+        assertEquals(66, current.getTimestamp());
+        current.release();
+        assertNotNull(current.getFrame());
+    }
+
+    @Test
+    public void testLimits() {
+        GopCache gop = new GopCache(3, 1024);
+        assertFalse(gop.addInterframe(frame(0x22, 10), 0));
+        gop.addKeyframe(frame(0x12, 100), 0, true);
+        assertTrue(gop.addInterframe(frame(0x22, 10), 33));
+        assertTrue(gop.addInterframe(frame(0x22, 10), 66));
+        assertFalse(gop.addInterframe(frame(0x22, 10), 99));
+        assertTrue(gop.isFull());
+        assertEquals(2, gop.getInterframeCount());
+        // slices of the keyframe picture start over once interframes followed
+        gop.addKeyframe(frame(0x12, 100), 0, false);
+        assertEquals(1, gop.getKeyframeCount());
+        assertEquals(0, gop.getInterframeCount());
+        assertFalse(gop.isFull());
+        gop = new GopCache(10, 120);
+        gop.addKeyframe(frame(0x12, 100), 0, true);
+        assertTrue(gop.addInterframe(frame(0x22, 20), 33));
+        assertFalse(gop.addInterframe(frame(0x22, 1), 66));
+        assertEquals(120, gop.getSize());
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+package org.red5.io;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.Assert;
+import org.junit.Test;
+import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
+
+public class BinaryKeyFrameMetaCacheTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        File f = File.createTempFile("red5", "BinaryMetaCacheTest");
+        f.deleteOnExit();
+        f.setLastModified(1481275039000L);
+        KeyFrameMeta meta = meta(1000);
+        new BinaryKeyFrameMetaCache().saveKeyFrameMeta(f, meta);
+        Assert.assertTrue(new File(f.getAbsolutePath() + BinaryKeyFrameMetaCache.EXTENSION).exists());
+        // a fresh cache has to read the index from disk
+        BinaryKeyFrameMetaCache cache = new BinaryKeyFrameMetaCache();
+        KeyFrameMeta loaded = cache.loadKeyFrameMeta(f);
+        assertMetaEquals(meta, loaded);
+        Assert.assertSame(loaded, cache.loadKeyFrameMeta(f));
+        Assert.assertEquals(1, cache.getHits());
+        // stale once the media changes
+        f.setLastModified(1481275040000L);
+        Assert.assertNull(cache.loadKeyFrameMeta(f));
+        cache.removeKeyFrameMeta(f);
+        Assert.assertFalse(new File(f.getAbsolutePath() + BinaryKeyFrameMetaCache.EXTENSION).exists());
+    }
+
+    @Test
+    public void testXmlMigration() throws IOException {
+        File f = File.createTempFile("red5", "BinaryMetaCacheTest");
+        f.deleteOnExit();
+        f.setLastModified(1481275039000L);
+        KeyFrameMeta meta = meta(10);
+        new FileKeyFrameMetaCache().saveKeyFrameMeta(f, meta);
+        BinaryKeyFrameMetaCache cache = new BinaryKeyFrameMetaCache();
+        assertMetaEquals(meta, cache.loadKeyFrameMeta(f));
+        Assert.assertTrue(new File(f.getAbsolutePath() + BinaryKeyFrameMetaCache.EXTENSION).exists());
+        cache.removeKeyFrameMeta(f);
+        Assert.assertFalse(new File(f.getAbsolutePath() + ".meta").exists());
+    }
+
+    @Test
+    public void testKeyFrameBound() throws IOException {
+        BinaryKeyFrameMetaCache cache = new BinaryKeyFrameMetaCache();
+        cache.setMaxCacheKeyFrames(250);
+        for (int i = 0; i < 10; i++) {
+            File f = File.createTempFile("red5", "BinaryMetaCacheTest");
+            f.deleteOnExit();
+            cache.saveKeyFrameMeta(f, meta(100));
+            Assert.assertNotNull(cache.loadKeyFrameMeta(f));
+            new File(f.getAbsolutePath() + BinaryKeyFrameMetaCache.EXTENSION).deleteOnExit();
+        }
+        Assert.assertTrue(cache.getCachedKeyFrames() <= 250);
+        Assert.assertEquals(2, cache.getCacheSize());
+    }
+
+    private static KeyFrameMeta meta(int count) {
+        KeyFrameMeta meta = new KeyFrameMeta();
+        meta.duration = count * 2000L;
+        meta.videoCodecId = 7;
+        meta.audioCodecId = 10;
+        meta.positions = new long[count];
+        meta.timestamps = new int[count];
+        for (int i = 0; i < count; i++) {
+            meta.positions[i] = 13L + (i * 65536L);
+            meta.timestamps[i] = i * 2000;
+        }
+        return meta;
+    }
+
+    private static void assertMetaEquals(KeyFrameMeta expected, KeyFrameMeta actual) {
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected.duration, actual.duration);
+        Assert.assertEquals(expected.audioOnly, actual.audioOnly);
+        Assert.assertArrayEquals(expected.positions, actual.positions);
+        Assert.assertArrayEquals(expected.timestamps, actual.timestamps);
+    }
+}
@@ -0,0 +1,169 @@
+package org.red5.io.flv.impl;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Test;
+import org.red5.io.ITag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class FLVWriterTest {
+
+    private static Logger log = LoggerFactory.getLogger(FLVWriterTest.class);
+
+    private Path dir;
+
+    @After
+    public void tearDown() throws IOException {
+        if (dir != null) {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testFinalizationModesProduceSameData() throws IOException {
+        log.info("\n testFinalizationModesProduceSameData");
+        dir = Files.createTempDirectory("flvwriter");
+        int tags = 500, bodySize = 1000;
+        byte[] zeroCopy = record(dir.resolve("zerocopy.flv"), true, tags, bodySize);
+        byte[] buffered = record(dir.resolve("buffered.flv"), false, tags, bodySize);
+        // metadata carries the recording date, so only compare the stream data which follows it
+        int dataLength = tags * (11 + bodySize + 4);
+        assertTrue(zeroCopy.length > dataLength);
+        assertArrayEquals(Arrays.copyOfRange(buffered, buffered.length - dataLength, buffered.length), Arrays.copyOfRange(zeroCopy, zeroCopy.length - dataLength, zeroCopy.length));
+        // the data file is removed once merged into the flv
+        assertFalse(Files.exists(dir.resolve("zerocopy.flv.ser")));
+        assertFalse(Files.exists(dir.resolve("buffered.flv.ser")));
+    }
+
+    @Test
+    public void testConfigFlagsFollowWrite() throws Exception {
+        log.info("\n testConfigFlagsFollowWrite");
+        dir = Files.createTempDirectory("flvwriter");
+        FLVWriter writer = new FLVWriter(dir.resolve("config.flv"), false);
+        // the first write of the aac configuration fails
+        Field field = FLVWriter.class.getDeclaredField("dataChannel");
+        field.setAccessible(true);
+        SeekableByteChannel channel = (SeekableByteChannel) field.get(writer);
+        field.set(writer, new FailingChannel(channel));
+        try {
+            writer.writeTag(tag(ITag.TYPE_AUDIO, 0, 0xaf, 0));
+            fail("Write should have failed");
+        } catch (IOException e) {
+            // expected
+        }
+        // data isn't written ahead of its configuration
+        assertFalse(writer.writeTag(tag(ITag.TYPE_AUDIO, 20, 0xaf, 1)));
+        // configuration and data in one batch are both written
+        List<ITag> tags = new ArrayList<>();
+        tags.add(tag(ITag.TYPE_AUDIO, 40, 0xaf, 0));
+        tags.add(tag(ITag.TYPE_AUDIO, 60, 0xaf, 1));
+        tags.add(tag(ITag.TYPE_VIDEO, 60, 0x27, 1));
+        tags.add(tag(ITag.TYPE_VIDEO, 60, 0x17, 0));
+        tags.add(tag(ITag.TYPE_VIDEO, 60, 0x17, 1));
+        assertEquals(4, writer.writeTags(tags));
+        assertTrue(writer.writeTag(tag(ITag.TYPE_AUDIO, 80, 0xaf, 1)));
+        writer.close();
+    }
+
+    private static ITag tag(byte dataType, int timestamp, int codec, int packetType) {
+        IoBuffer body = IoBuffer.allocate(8);
+        body.put((byte) codec);
+        body.put((byte) packetType);
+        body.put(new byte[6]);
+        body.flip();
+        return new Tag(dataType, timestamp, 8, body, 0);
+    }
+
+    /** Channel failing its first write. */
+    private static class FailingChannel implements SeekableByteChannel {
+
+        private final SeekableByteChannel channel;
+
+        private boolean failed;
+
+        FailingChannel(SeekableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!failed) {
+                failed = true;
+                throw new IOException("Disk full");
+            }
+            return channel.write(src);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private byte[] record(Path path, boolean zeroCopyFinalization, int tags, int bodySize) throws IOException {
+        FLVWriter writer = new FLVWriter(path, false);
+        writer.setZeroCopyFinalization(zeroCopyFinalization);
+        int previousTagSize = 0;
+        for (int t = 0; t < tags; t++) {
+            IoBuffer body = IoBuffer.allocate(bodySize);
+            // sorenson inter frame, which needs no configuration tag
+            body.put((byte) 0x22);
+            while (body.hasRemaining()) {
+                body.put((byte) t);
+            }
+            body.flip();
+            assertTrue(writer.writeTag(new Tag(ITag.TYPE_VIDEO, t * 33, bodySize, body, previousTagSize)));
+            previousTagSize = 11 + bodySize;
+        }
+        writer.close();
+        return Files.readAllBytes(path);
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.matroska;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.red5.io.matroska.dtd.CompoundTag;
+import org.red5.io.matroska.dtd.StringTag;
+import org.red5.io.matroska.dtd.Tag;
+import org.red5.io.matroska.dtd.UnsignedIntegerTag;
+import org.red5.io.matroska.parser.SimpleMatroskaParser;
+import org.red5.io.matroska.parser.TagCrawler;
+import org.red5.io.matroska.parser.TagHandler;
+
+/** Class to test reading EBML in place with {@link EbmlCursor} */
+public class EbmlCursorTest {
+
+    // EBML header holding EBMLVersion = 1 and DocType = "webm", followed by a Segment of unknown size
+    // holding a Void element of 2 bytes and an element missing from the dtd
+    static final byte[] fileBytes = { 0x1A, 0x45, (byte) 0xdf, (byte) 0xa3, (byte) 0x8b, 0x42, (byte) 0x86, (byte) 0x81, 0x01, 0x42, (byte) 0x82, (byte) 0x84, 0x77, 0x65, 0x62, 0x6d, 0x18, 0x53, (byte) 0x80, 0x67, 0x01, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xec, (byte) 0x82, 0x00, 0x00, 0x4f, (byte) 0xff, (byte) 0x81, 0x00 };
+
+    /**
+     * tests if element headers and children are walked as expected
+     *
+     * @throws IOException - in case of any IO errors
+     */
+    @Test
+    public void testWalk() throws IOException {
+        EbmlCursor cursor = new EbmlCursor(ByteBuffer.wrap(fileBytes));
+        assertTrue(cursor.next(cursor.length()));
+        assertEquals(0x1a45dfa3, cursor.getId());
+        assertEquals(11, cursor.getSize());
+        assertEquals(5, cursor.getHeaderLength());
+        long end = cursor.getEnd(cursor.length());
+        // children are read on from the data of their parent
+        assertTrue(cursor.next(end));
+        assertEquals(0x4286, cursor.getId());
+        assertEquals(1, cursor.readUnsigned((int) cursor.getSize()));
+        assertTrue(cursor.next(end));
+        assertEquals(0x4282, cursor.getId());
+        assertEquals("webm", cursor.readString((int) cursor.getSize()));
+        assertFalse(cursor.next(end));
+        // segment of unknown size ends with its parent
+        assertTrue(cursor.next(cursor.length()));
+        assertEquals(0x18538067, cursor.getId());
+        assertEquals(EbmlCursor.UNKNOWN_SIZE, cursor.getSize());
+        assertEquals(fileBytes.length, cursor.getEnd(cursor.length()));
+        cursor.skip();
+        assertTrue(cursor.next(cursor.length()));
+        assertEquals(0xec, cursor.getId());
+        cursor.skip();
+        assertEquals(32, cursor.position());
+    }
+
+    /**
+     * tests if signed VINTs of EBML lacing are decoded as expected
+     *
+     * @throws IOException - in case of any IO errors
+     */
+    @Test
+    public void testSignedVint() throws IOException {
+        EbmlCursor cursor = new EbmlCursor(ByteBuffer.wrap(new byte[] { (byte) 0xbf, (byte) 0x80, (byte) 0xff, 0x40, 0x00, 0x60, 0x00 }));
+        assertEquals(0, cursor.readSignedVint());
+        assertEquals(-63, cursor.readSignedVint());
+        assertEquals(64, cursor.readSignedVint());
+        assertEquals(-8191, cursor.readSignedVint());
+        assertEquals(1, cursor.readSignedVint());
+        assertFalse(cursor.hasRemaining());
+    }
+
+    /**
+     * tests if tags parsed from the cursor are the ones parsed from a stream
+     *
+     * @throws IOException - in case of any IO errors
+     * @throws ConverterException - in case of any errors during conversion
+     */
+    @Test
+    public void testParseTag() throws IOException, ConverterException {
+        EbmlCursor cursor = new EbmlCursor(ByteBuffer.wrap(fileBytes));
+        Tag ebml = ParserUtils.parseTag(cursor);
+        assertEquals("EBML", ebml.getName());
+        assertEquals(0x1a45dfa3, ebml.getId());
+        List<Tag> children = ParserUtils.parseMasterElement(cursor, ebml.getSize());
+        assertEquals(2, children.size());
+        Tag version = children.get(0);
+        assertEquals(0x4286, version.getId());
+        version.parse();
+        assertEquals(1, ((UnsignedIntegerTag) version).getValue());
+        children.get(1).parse();
+        assertEquals("webm", ((StringTag) children.get(1)).getValue());
+        Tag segment = ParserUtils.parseTag(cursor);
+        assertEquals("Segment", segment.getName());
+        assertEquals(0xffffffffffffffL, segment.getSize());
+
+        List<Tag> tags = new SimpleMatroskaParser().parse(new EbmlCursor(ByteBuffer.wrap(fileBytes)));
+        assertEquals("EBML", tags.get(0).getName());
+        assertEquals("Segment", tags.get(1).getName());
+    }
+
+    /**
+     * tests if compound sub elements get their own sub elements instead of returning them as siblings
+     *
+     * @throws IOException - in case of any IO errors
+     * @throws ConverterException - in case of any errors during conversion
+     */
+    @Test
+    public void testParseNestedMasterElement() throws IOException, ConverterException {
+        // Tracks holding a TrackEntry with TrackNumber = 1 and CodecID = "V_VP8", an element missing from the dtd, then Info holding TimecodeScale = 1000000
+        byte[] data = { 0x16, 0x54, (byte) 0xae, 0x6b, (byte) 0x8b, (byte) 0xae, (byte) 0x89, (byte) 0xd7, (byte) 0x81, 0x01, (byte) 0x86, (byte) 0x84, 0x56, 0x5f, 0x56, 0x50, 0x4f, (byte) 0xff, (byte) 0x81, 0x00, 0x15, 0x49, (byte) 0xa9, 0x66, (byte) 0x87, 0x2a, (byte) 0xd7, (byte) 0xb1, (byte) 0x83, 0x0f, 0x42, 0x40 };
+        EbmlCursor cursor = new EbmlCursor(ByteBuffer.wrap(data));
+        List<Tag> tags = ParserUtils.parseMasterElement(cursor, data.length);
+        assertEquals(2, tags.size());
+        assertEquals(data.length, cursor.position());
+        CompoundTag tracks = (CompoundTag) tags.get(0);
+        assertEquals("Tracks", tracks.getName());
+        assertEquals(1, tracks.getNumberOfSubElements());
+        CompoundTag entry = (CompoundTag) tracks.get("TrackEntry");
+        assertEquals(2, entry.getNumberOfSubElements());
+        Tag number = entry.get("TrackNumber");
+        number.parse();
+        assertEquals(1, ((UnsignedIntegerTag) number).getValue());
+        Tag codec = entry.get("CodecID");
+        codec.parse();
+        assertEquals("V_VP", ((StringTag) codec).getValue());
+        CompoundTag info = (CompoundTag) tags.get(1);
+        assertEquals("Info", info.getName());
+        Tag scale = info.get("TimecodeScale");
+        scale.parse();
+        assertEquals(1000000, ((UnsignedIntegerTag) scale).getValue());
+    }
+
+    /**
+     * tests if jumps back stay in the current region or go back to the previous one instead of mapping again
+     *
+     * @throws IOException - in case of any IO errors
+     */
+    @Test
+    public void testRegionReuse() throws IOException {
+        File file = File.createTempFile("ebmlcursor", ".bin");
+        try {
+            // sparse, so nothing but the marker bytes is written
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(3 * EbmlCursor.REGION_SIZE);
+                for (long pos : new long[] { 10, EbmlCursor.REGION_SIZE + 5, EbmlCursor.REGION_SIZE + 10, 2 * EbmlCursor.REGION_SIZE + 10 }) {
+                    raf.seek(pos);
+                    raf.write((int) (pos % 251));
+                }
+            }
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                EbmlCursor cursor = EbmlCursor.map(channel);
+                assertEquals((EbmlCursor.REGION_SIZE + 10) % 251, readAt(cursor, EbmlCursor.REGION_SIZE + 10));
+                assertEquals(1, cursor.getMapCount());
+                // back within the aligned region
+                assertEquals((EbmlCursor.REGION_SIZE + 5) % 251, readAt(cursor, EbmlCursor.REGION_SIZE + 5));
+                assertEquals(1, cursor.getMapCount());
+                assertEquals(10, readAt(cursor, 10));
+                assertEquals(2, cursor.getMapCount());
+                // back and forth between the current and the previous region
+                assertEquals((EbmlCursor.REGION_SIZE + 10) % 251, readAt(cursor, EbmlCursor.REGION_SIZE + 10));
+                assertEquals(10, readAt(cursor, 10));
+                assertEquals(2, cursor.getMapCount());
+                assertEquals((2 * EbmlCursor.REGION_SIZE + 10) % 251, readAt(cursor, 2 * EbmlCursor.REGION_SIZE + 10));
+                assertEquals(3, cursor.getMapCount());
+                // reads crossing the end of a region
+                byte[] dst = new byte[(int) EbmlCursor.REGION_ALIGNMENT];
+                cursor.position(EbmlCursor.REGION_SIZE + 5 - dst.length / 2);
+                cursor.read(dst, 0, dst.length);
+                assertEquals((EbmlCursor.REGION_SIZE + 5) % 251, dst[dst.length / 2] & 0xff);
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static int readAt(EbmlCursor cursor, long position) throws IOException {
+        cursor.position(position);
+        return cursor.readByte();
+    }
+
+    /**
+     * tests if a mapped file is crawled in place, skipping the tags missing from the dtd
+     *
+     * @throws IOException - in case of any IO errors
+     * @throws ConverterException - in case of any errors during conversion
+     */
+    @Test
+    public void testCrawlMappedFile() throws IOException, ConverterException {
+        File file = File.createTempFile("ebmlcursor", ".webm");
+        try {
+            Files.write(file.toPath(), fileBytes);
+            final List<String> names = new ArrayList<>();
+            final AtomicLong version = new AtomicLong();
+            TagCrawler crawler = new TagCrawler() {
+                @Override
+                public TagHandler getHandler(Tag tag) {
+                    return new TagHandler() {
+                        @Override
+                        public void handle(Tag tag, InputStream input) throws IOException, ConverterException {
+                            names.add(tag.getName());
+                            if ("EBMLVersion".equals(tag.getName())) {
+                                tag.parse();
+                                version.set(((UnsignedIntegerTag) tag).getValue());
+                            }
+                        }
+                    };
+                }
+            };
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                crawler.process(EbmlCursor.map(channel));
+            }
+            assertEquals("[EBML, EBMLVersion, DocType, Segment, Void]", names.toString());
+            assertEquals(1, version.get());
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package org.red5.io.mp4.impl;
+
+import java.io.File;
+import junit.framework.TestCase;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.io.SeekableByteChannel;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** Tests for MP4SampleTableCache class. */
+public class MP4SampleTableCacheTest extends TestCase {
+
+    private static Logger log = LoggerFactory.getLogger(MP4SampleTableCacheTest.class);
+
+    @Test
+    public void testSharedTable() throws Exception {
+        File file = new File("target/test-classes/fixtures/sample.mp4");
+        if (!file.exists()) {
+            log.warn("Fixture missing: {}", file.getAbsolutePath());
+            return;
+        }
+        MP4SampleTableCache cache = new MP4SampleTableCache();
+        MP4SampleTable first, second;
+        try (SeekableByteChannel channel = NIOUtils.readableChannel(file)) {
+            first = cache.get(file, channel);
+        }
+        try (SeekableByteChannel channel = NIOUtils.readableChannel(file)) {
+            second = cache.get(file, channel);
+        }
+        assertSame(first, second);
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getHits());
+        assertEquals(first.getMemorySize(), cache.getSize());
+        // the tables of the track info are held as long as the sample columns
+        assertTrue(first.getMemorySize() > first.getTrackInfo().getMemorySize());
+        assertTrue(first.getTrackInfo().getMemorySize() > 0);
+        // samples are in time order
+        for (int i = 1; i < first.size(); i++) {
+            assertTrue(first.getTime(i - 1) <= first.getTime(i));
+        }
+        // a table larger than the cache isn't kept
+        cache.clear();
+        cache.setMaxSize(first.getMemorySize() - 1);
+        try (SeekableByteChannel channel = NIOUtils.readableChannel(file)) {
+            cache.get(file, channel);
+        }
+        assertEquals(0, cache.getCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testReadersKeepTheirCodecIds() throws Exception {
+        File file = new File("target/test-classes/fixtures/sample.mp4");
+        if (!file.exists()) {
+            log.warn("Fixture missing: {}", file.getAbsolutePath());
+            return;
+        }
+        MP4Reader first = new MP4Reader(file);
+        MP4Reader second = new MP4Reader(file);
+        try {
+            String videoCodecId = second.getVideoCodecId();
+            first.setVideoCodecId("hev1");
+            assertEquals("hev1", first.getVideoCodecId());
+            assertEquals(videoCodecId, second.getVideoCodecId());
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+}
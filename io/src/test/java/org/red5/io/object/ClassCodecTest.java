@@ -0,0 +1,108 @@
+package org.red5.io.object;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.red5.annotations.Anonymous;
+import org.red5.annotations.DontSerialize;
+
+public class ClassCodecTest {
+
+    @Test
+    public void testBeanProperties() {
+        ClassCodec codec = ClassCodec.forClass(Bean.class);
+        assertSame(codec, ClassCodec.forClass(Bean.class));
+        assertFalse(codec.isAnonymous());
+        List<String> names = new ArrayList<>();
+        for (ClassCodec.Property property : codec.getProperties()) {
+            names.add(property.getName());
+            assertArrayEquals(property.getName().getBytes(StandardCharsets.UTF_8), property.getEncodedName());
+        }
+        // transient fields and @DontSerialize fields or getters are skipped
+        assertEquals(List.of("count", "name"), names);
+        Bean bean = new Bean();
+        assertEquals(7, codec.getProperties().get(0).get(bean));
+        assertEquals("red5", codec.getProperties().get(1).get(bean));
+    }
+
+    @Test
+    public void testSetProperty() {
+        ClassCodec codec = ClassCodec.forClass(Bean.class);
+        Bean bean = new Bean();
+        // numbers arrive as doubles
+        assertTrue(codec.setProperty(bean, "count", 42d));
+        assertEquals(42, bean.getCount());
+        assertTrue(codec.setProperty(bean, "name", "test"));
+        assertEquals("test", bean.getName());
+        assertFalse(codec.setProperty(bean, "unknown", "test"));
+        assertEquals(int.class, codec.getPropertyType("count"));
+        assertEquals(Object.class, codec.getPropertyType("unknown"));
+    }
+
+    @Test
+    public void testPublicFields() {
+        ClassCodec codec = ClassCodec.forClass(Fields.class);
+        assertTrue(codec.isAnonymous());
+        assertEquals(1, codec.getProperties().size());
+        Fields fields = new Fields();
+        assertEquals("value", codec.getProperties().get(0).get(fields));
+        assertTrue(codec.setProperty(fields, "value", "changed"));
+        assertEquals("changed", fields.value);
+    }
+
+    public static class Bean {
+
+        private int count = 7;
+
+        private String name = "red5";
+
+        private transient String cached = "cached";
+
+        @DontSerialize
+        private String secret = "secret";
+
+        public int getCount() {
+            return count;
+        }
+
+        public void setCount(int count) {
+            this.count = count;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public String getCached() {
+            return cached;
+        }
+
+        public String getSecret() {
+            return secret;
+        }
+
+        @DontSerialize
+        public String getComputed() {
+            return name + count;
+        }
+    }
+
+    @Anonymous
+    public static class Fields {
+
+        public String value = "value";
+
+        public transient String skipped = "skipped";
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.webm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.red5.io.ITag;
+import org.red5.io.IoConstants;
+import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
+
+public class WebmTagReaderTest {
+
+    private File file;
+
+    @After
+    public void tearDown() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testReadTags() throws IOException {
+        file = write(true, false);
+        WebmTagReader reader = new WebmTagReader(file);
+        try {
+            assertTrue(reader.hasVideo());
+            assertEquals(4000, reader.getDuration());
+            ITag meta = reader.readTag();
+            assertEquals(IoConstants.TYPE_METADATA, meta.getDataType());
+            List<ITag> tags = readAll(reader);
+            // 2 clusters of 2 video frames and 2 audio blocks, the last one laced with 3 frames
+            assertEquals(10, tags.size());
+            ITag key = tags.get(0);
+            assertEquals(IoConstants.TYPE_VIDEO, key.getDataType());
+            assertEquals(0, key.getTimestamp());
+            assertEquals(0x18, key.getBody().get(0));
+            assertEquals(0x01, key.getBody().get(1));
+            assertEquals(100 + 2, key.getBodySize());
+            ITag opus = tags.get(1);
+            assertEquals(IoConstants.TYPE_AUDIO, opus.getDataType());
+            assertEquals((byte) 0xd0, opus.getBody().get(0));
+            assertEquals(20, opus.getTimestamp());
+            ITag inter = tags.get(2);
+            assertEquals(40, inter.getTimestamp());
+            assertEquals(0x28, inter.getBody().get(0));
+            // block group with a reference block in the second cluster
+            ITag grouped = tags.get(6);
+            assertEquals(2040, grouped.getTimestamp());
+            assertEquals(0x28, grouped.getBody().get(0));
+            // laced frames 20 ms apart, sizes 10, 20 and 30
+            assertEquals(2060, tags.get(7).getTimestamp());
+            assertEquals(2080, tags.get(8).getTimestamp());
+            assertEquals(2100, tags.get(9).getTimestamp());
+            assertEquals(2 + 30, tags.get(9).getBodySize());
+            assertFalse(reader.hasMoreTags());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testSeekWithCues() throws IOException {
+        file = write(true, false);
+        WebmTagReader reader = new WebmTagReader(file);
+        try {
+            KeyFrameMeta meta = reader.analyzeKeyFrames();
+            assertTrue(reader.hasCues());
+            assertArrayEquals(new int[] { 0, 2000 }, meta.timestamps);
+            reader.position(meta.positions[1]);
+            ITag tag = reader.readTag();
+            assertEquals(IoConstants.TYPE_VIDEO, tag.getDataType());
+            assertEquals(2000, tag.getTimestamp());
+            assertEquals(0x18, tag.getBody().get(0));
+            reader.position(Long.MAX_VALUE);
+            assertFalse(reader.hasMoreTags());
+            assertNull(reader.readTag());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testSeekWithoutCues() throws IOException {
+        file = write(false, true);
+        WebmTagReader reader = new WebmTagReader(file);
+        try {
+            KeyFrameMeta meta = reader.analyzeKeyFrames();
+            assertFalse(reader.hasCues());
+            assertArrayEquals(new int[] { 0, 2000 }, meta.timestamps);
+            reader.position(meta.positions[1]);
+            assertEquals(2000, reader.readTag().getTimestamp());
+            // back to the start
+            reader.position(meta.positions[0]);
+            List<ITag> tags = readAll(reader);
+            assertEquals(10, tags.size());
+            assertEquals(0, tags.get(0).getTimestamp());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testConfigTags() throws IOException {
+        byte[] vpcC = { 1, 0, 0, 0, 0, 10, 8, 0x10 };
+        byte[] opusHead = concat("OpusHead".getBytes(), new byte[] { 1, 2, 0x38, 1, (byte) 0x80, (byte) 0xbb, 0, 0, 0, 0, 0 });
+        file = write(true, false, "V_VP9", vpcC, opusHead);
+        WebmTagReader reader = new WebmTagReader(file);
+        try {
+            assertEquals(IoConstants.TYPE_METADATA, reader.readTag().getDataType());
+            List<ITag> tags = readAll(reader);
+            assertEquals(12, tags.size());
+            // the configurations come first, as packets of type 0 with the codec private data after the prefix
+            ITag video = tags.get(0);
+            assertEquals(IoConstants.TYPE_VIDEO, video.getDataType());
+            assertEquals(0x19, video.getBody().get(0));
+            assertEquals(0, video.getBody().get(1));
+            assertEquals(2 + vpcC.length, video.getBodySize());
+            assertEquals(0x10, video.getBody().get(2 + 7));
+            ITag audio = tags.get(1);
+            assertEquals(IoConstants.TYPE_AUDIO, audio.getDataType());
+            assertEquals((byte) 0xd0, audio.getBody().get(0));
+            assertEquals(0, audio.getBody().get(1));
+            assertEquals(2 + opusHead.length, audio.getBodySize());
+            assertEquals('O', audio.getBody().get(2));
+            // then the frames
+            assertEquals(0x19, tags.get(2).getBody().get(0));
+            assertEquals(0x01, tags.get(2).getBody().get(1));
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static List<ITag> readAll(WebmTagReader reader) {
+        List<ITag> tags = new ArrayList<>();
+        while (reader.hasMoreTags()) {
+            ITag tag = reader.readTag();
+            if (tag != null) {
+                tags.add(tag);
+            }
+        }
+        return tags;
+    }
+
+    /** Writes a VP8 / Opus file of two clusters of 2 seconds. */
+    private static File write(boolean cues, boolean unknownClusterSize) throws IOException {
+        return write(cues, unknownClusterSize, "V_VP8", null, null);
+    }
+
+    /** Writes a file of two clusters of 2 seconds with the given video codec and Opus, with the codec private data when not null. */
+    private static File write(boolean cues, boolean unknownClusterSize, String videoCodec, byte[] videoPrivate, byte[] audioPrivate) throws IOException {
+        byte[] tracks = element(WebmTagReader.ID_TRACKS, concat(
+                element(WebmTagReader.ID_TRACKENTRY, concat(uint(WebmTagReader.ID_TRACKNUMBER, 1), uint(WebmTagReader.ID_TRACKTYPE, 1), string(WebmTagReader.ID_CODECID, videoCodec), codecPrivate(videoPrivate), element(WebmTagReader.ID_VIDEO, concat(uint(WebmTagReader.ID_PIXELWIDTH, 320), uint(WebmTagReader.ID_PIXELHEIGHT, 240))))),
+                element(WebmTagReader.ID_TRACKENTRY, concat(uint(WebmTagReader.ID_TRACKNUMBER, 2), uint(WebmTagReader.ID_TRACKTYPE, 2), string(WebmTagReader.ID_CODECID, "A_OPUS"), codecPrivate(audioPrivate), uint(WebmTagReader.ID_DEFAULTDURATION, 20000000L), element(WebmTagReader.ID_AUDIO, concat(floating(WebmTagReader.ID_SAMPLINGFREQUENCY, 48000d), uint(WebmTagReader.ID_CHANNELS, 2)))))));
+        byte[] info = element(WebmTagReader.ID_INFO, concat(uint(WebmTagReader.ID_TIMECODESCALE, 1000000L), floating(WebmTagReader.ID_DURATION, 4000d)));
+        byte[] cluster1 = cluster(0, unknownClusterSize, concat(simpleBlock(1, 0, true, 100), simpleBlock(2, 20, true, 50), simpleBlock(1, 40, false, 60), simpleBlock(2, 40, true, 50)));
+        byte[] group = element(WebmTagReader.ID_BLOCKGROUP, concat(element(WebmTagReader.ID_BLOCK, block(1, 40, 0, new byte[60])), sint(WebmTagReader.ID_REFERENCEBLOCK, -40)));
+        // xiph lacing: count - 1, sizes of all but the last frame
+        byte[] laced = element(WebmTagReader.ID_SIMPLEBLOCK, block(2, 60, 0x80 | 0x02, concat(new byte[] { 2, 10, 20 }, new byte[60])));
+        byte[] cluster2 = cluster(2000, unknownClusterSize, concat(simpleBlock(1, 0, true, 100), simpleBlock(2, 20, true, 50), group, laced));
+        // seek head with a fixed size position, so it can be written before the position is known
+        int seekHeadSize = element(WebmTagReader.ID_SEEKHEAD, element(WebmTagReader.ID_SEEK, concat(element(WebmTagReader.ID_SEEKID, id(WebmTagReader.ID_CUES)), element(WebmTagReader.ID_SEEKPOSITION, new byte[8])))).length;
+        long infoPosition = seekHeadSize;
+        long cluster1Position = seekHeadSize + info.length + tracks.length;
+        long cluster2Position = cluster1Position + cluster1.length;
+        long cuesPosition = cluster2Position + cluster2.length;
+        byte[] seekHead = element(WebmTagReader.ID_SEEKHEAD, element(WebmTagReader.ID_SEEK, concat(element(WebmTagReader.ID_SEEKID, id(cues ? WebmTagReader.ID_CUES : WebmTagReader.ID_INFO)), element(WebmTagReader.ID_SEEKPOSITION, ByteBuffer.allocate(8).putLong(cues ? cuesPosition : infoPosition).array()))));
+        byte[] segment = concat(seekHead, info, tracks, cluster1, cluster2);
+        if (cues) {
+            segment = concat(segment, element(WebmTagReader.ID_CUES, concat(cuePoint(0, cluster1Position), cuePoint(2000, cluster2Position))));
+        } else {
+            segment = concat(segment, element(0xEC, new byte[16]));
+        }
+        byte[] ebml = element(WebmTagReader.ID_EBML, string(WebmTagReader.ID_DOCTYPE, "webm"));
+        File file = File.createTempFile("webmreader", ".webm");
+        Files.write(file.toPath(), concat(ebml, element(WebmTagReader.ID_SEGMENT, segment)));
+        return file;
+    }
+
+    private static byte[] codecPrivate(byte[] data) {
+        return data == null ? new byte[0] : element(WebmTagReader.ID_CODECPRIVATE, data);
+    }
+
+    private static byte[] cluster(long timecode, boolean unknownSize, byte[] blocks) {
+        byte[] children = concat(uint(WebmTagReader.ID_TIMECODE, timecode), blocks);
+        if (unknownSize) {
+            return concat(id(WebmTagReader.ID_CLUSTER), new byte[] { (byte) 0x01, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff }, children);
+        }
+        return element(WebmTagReader.ID_CLUSTER, children);
+    }
+
+    private static byte[] cuePoint(long time, long clusterPosition) {
+        return element(WebmTagReader.ID_CUEPOINT, concat(uint(WebmTagReader.ID_CUETIME, time), element(WebmTagReader.ID_CUETRACKPOSITIONS, concat(uint(WebmTagReader.ID_CUETRACK, 1), uint(WebmTagReader.ID_CUECLUSTERPOSITION, clusterPosition)))));
+    }
+
+    private static byte[] simpleBlock(int track, int time, boolean key, int size) {
+        return element(WebmTagReader.ID_SIMPLEBLOCK, block(track, time, key ? 0x80 : 0, new byte[size]));
+    }
+
+    private static byte[] block(int track, int time, int flags, byte[] data) {
+        return concat(new byte[] { (byte) (0x80 | track), (byte) (time >> 8), (byte) time, (byte) flags }, data);
+    }
+
+    private static byte[] uint(int id, long value) {
+        return element(id, ByteBuffer.allocate(8).putLong(value).array());
+    }
+
+    private static byte[] sint(int id, long value) {
+        return uint(id, value);
+    }
+
+    private static byte[] floating(int id, double value) {
+        return element(id, ByteBuffer.allocate(8).putDouble(value).array());
+    }
+
+    private static byte[] string(int id, String value) {
+        return element(id, value.getBytes());
+    }
+
+    private static byte[] element(int id, byte[] payload) {
+        // sizes written on 4 bytes
+        int size = payload.length;
+        return concat(id(id), new byte[] { (byte) (0x10 | (size >> 24)), (byte) (size >> 16), (byte) (size >> 8), (byte) size }, payload);
+    }
+
+    private static byte[] id(int id) {
+        int length = id > 0xffffff ? 4 : id > 0xffff ? 3 : id > 0xff ? 2 : 1;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (id >> (8 * (length - i - 1)));
+        }
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+}
@@ -11,6 +11,7 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -18,20 +19,23 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.stream.Stream;
 import javax.websocket.CloseReason;
 import javax.websocket.CloseReason.CloseCode;
 import javax.websocket.CloseReason.CloseCodes;
 import javax.websocket.Extension;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.tomcat.websocket.Constants;
 import org.apache.tomcat.websocket.WsSession;
+import org.red5.net.websocket.model.PreparedFrame;
 import org.red5.server.AttributeStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -51,11 +55,28 @@ public class WebSocketConnection extends AttributeStore implements Comparable<We
 
   private static final boolean isDebug = log.isDebugEnabled();
 
+  /** What a connection does with a message that arrives while its send queue is full. */
+  public enum OverflowPolicy {
+    /** Never drop, the queue grows without limit */
+    UNBOUNDED,
+    /** Drop the oldest queued message to make room */
+    DROP_OLDEST,
+    /** Drop the arriving message */
+    DROP_NEWEST,
+    /** Close the connection, the client can't keep up */
+    DISCONNECT
+  }
+
   // Sending async on windows times out
   private static boolean useAsync;
 
   private static long sendTimeout = 8000L, readTimeout = 30000L;
 
+  // messages queued per connection behind the one being sent, unless the queue is unbounded
+  private static int maxQueueSize = 256;
+
+  private static OverflowPolicy overflowPolicy = OverflowPolicy.UNBOUNDED;
+
   private static final AtomicLongFieldUpdater<WebSocketConnection> readBytesUpdater =
       AtomicLongFieldUpdater.newUpdater(WebSocketConnection.class, "readBytes");
 
@@ -98,8 +119,15 @@ public class WebSocketConnection extends AttributeStore implements Comparable<We
   // stats
   private volatile long readBytes, writtenBytes;
 
-  // send future for when async is enabled
-  private Future<Void> sendFuture;
+  // messages waiting for the one being sent, guarded by itself
+  private final ArrayDeque<PreparedFrame> sendQueue = new ArrayDeque<>();
+
+  // whether a message is being sent, guarded by sendQueue
+  private boolean sending;
+
+  private final AtomicLong droppedFrames = new AtomicLong();
+
+  private final SendHandler sendHandler = this::onSendResult;
 
   public WebSocketConnection(WebSocketScope scope, Session session) {
     log.debug("New WebSocket - scope: {} session: {}", scope, session);
@@ -192,23 +220,7 @@ public class WebSocketConnection extends AttributeStore implements Comparable<We
       if (!wsSession.isClosed()) {
         try {
           if (useAsync) {
-            if (sendFuture != null && !sendFuture.isDone()) {
-              try {
-                sendFuture.get(sendTimeout, TimeUnit.MILLISECONDS);
-              } catch (TimeoutException e) {
-                log.warn("Send timed out {}", wsSessionId);
-                // if the session is not open, cancel the future
-                if (!wsSession.isOpen()) {
-                  sendFuture.cancel(true);
-                  return;
-                }
-              }
-            }
-            synchronized (wsSessionId) {
-              int lengthToWrite = data.getBytes().length;
-              sendFuture = wsSession.getAsyncRemote().sendText(data);
-              updateWriteBytes(lengthToWrite);
-            }
+            send(PreparedFrame.text(data));
           } else {
             synchronized (wsSessionId) {
               int lengthToWrite = data.getBytes().length;
@@ -241,21 +253,7 @@ public class WebSocketConnection extends AttributeStore implements Comparable<We
       try {
         // send the bytes
         if (useAsync) {
-          if (sendFuture != null && !sendFuture.isDone()) {
-            try {
-              sendFuture.get(sendTimeout, TimeUnit.MILLISECONDS);
-            } catch (TimeoutException e) {
-              log.warn("Send timed out {}", wsSessionId);
-              if (!isConnected()) {
-                sendFuture.cancel(true);
-                return;
-              }
-            }
-          }
-          synchronized (wsSessionId) {
-            sendFuture = wsSession.getAsyncRemote().sendBinary(ByteBuffer.wrap(buf));
-            updateWriteBytes(buf.length);
-          }
+          send(PreparedFrame.binary(buf));
         } else {
           synchronized (wsSessionId) {
             wsSession.getBasicRemote().sendBinary(ByteBuffer.wrap(buf));
@@ -270,6 +268,89 @@ public class WebSocketConnection extends AttributeStore implements Comparable<We
     }
   }
 
+  /**
+   * Queues a message for the client. With async sends, messages are sent one after the other with
+   * the async remote and the caller never waits on the client; when the queue is full the overflow
+   * policy applies. Otherwise the message is sent right away with the basic remote.
+   *
+   * @param frame prepared message
+   * @return true if the message was queued or sent, false if it was dropped or failed
+   */
+  public boolean send(PreparedFrame frame) {
+    if (wsSession.isClosed()) {
+      return false;
+    }
+    if (!useAsync) {
+      try {
+        synchronized (wsSessionId) {
+          frame.send(wsSession.getBasicRemote());
+          updateWriteBytes(frame.getLength());
+        }
+        return true;
+      } catch (Exception e) {
+        log.warn("Send exception {}", wsSessionId, e);
+        return false;
+      }
+    }
+    synchronized (sendQueue) {
+      if (sending) {
+        if (overflowPolicy == OverflowPolicy.UNBOUNDED || sendQueue.size() < maxQueueSize) {
+          sendQueue.add(frame);
+          return true;
+        }
+        droppedFrames.incrementAndGet();
+        switch (overflowPolicy) {
+          case DROP_OLDEST:
+            sendQueue.poll();
+            sendQueue.add(frame);
+            return true;
+          case DROP_NEWEST:
+            return false;
+          default:
+            log.warn("Send queue full, disconnecting {}", wsSessionId);
+            // closing sends a close frame, which must not hold up the caller either
+            WebSocketPlugin.submit(() -> close(CloseCodes.TRY_AGAIN_LATER, "Send queue overflow"));
+            return false;
+        }
+      }
+      sending = true;
+    }
+    write(frame);
+    return true;
+  }
+
+  private void write(PreparedFrame frame) {
+    try {
+      RemoteEndpoint.Async remote = wsSession.getAsyncRemote();
+      // a send the client doesn't take within the timeout fails and the queue moves on
+      remote.setSendTimeout(sendTimeout);
+      frame.send(remote, sendHandler);
+      updateWriteBytes(frame.getLength());
+    } catch (Exception e) {
+      log.warn("Send exception {}", wsSessionId, e);
+      onSendResult(new SendResult(e));
+    }
+  }
+
+  /** Sends the next queued message once the previous one completed. */
+  private void onSendResult(SendResult result) {
+    if (!result.isOK()) {
+      log.debug("Send failed {}", wsSessionId, result.getException());
+    }
+    PreparedFrame next;
+    synchronized (sendQueue) {
+      if (!wsSession.isOpen()) {
+        sendQueue.clear();
+      }
+      next = sendQueue.poll();
+      if (next == null) {
+        sending = false;
+        return;
+      }
+    }
+    write(next);
+  }
+
   /**
    * Sends a ping to the client.
    *
@@ -346,6 +427,9 @@ public class WebSocketConnection extends AttributeStore implements Comparable<We
       } catch (Exception e) {
         log.debug("Exception closing session", e);
       }
+      synchronized (sendQueue) {
+        sendQueue.clear();
+      }
       // clean up our props
       attributes.clear();
       if (querystringParameters != null) {
@@ -626,10 +710,42 @@ public class WebSocketConnection extends AttributeStore implements Comparable<We
     return sendTimeout;
   }
 
+  /**
+   * Sets the time in milliseconds a queued send may take before it fails and the next one starts.
+   *
+   * @param sendTimeout timeout in milliseconds
+   */
   public static void setSendTimeout(long sendTimeout) {
     WebSocketConnection.sendTimeout = sendTimeout;
   }
 
+  public static int getMaxQueueSize() {
+    return maxQueueSize;
+  }
+
+  /**
+   * Sets the number of messages queued per connection behind the one being sent; it doesn't apply
+   * to the unbounded overflow policy.
+   *
+   * @param maxQueueSize queue size
+   */
+  public static void setMaxQueueSize(int maxQueueSize) {
+    WebSocketConnection.maxQueueSize = maxQueueSize;
+  }
+
+  public static OverflowPolicy getOverflowPolicy() {
+    return overflowPolicy;
+  }
+
+  /**
+   * Sets what happens to a message that arrives while the send queue of a connection is full.
+   *
+   * @param overflowPolicy policy
+   */
+  public static void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+    WebSocketConnection.overflowPolicy = overflowPolicy;
+  }
+
   public static long getReadTimeout() {
     return readTimeout;
   }
@@ -683,6 +799,26 @@ public class WebSocketConnection extends AttributeStore implements Comparable<We
     // write time is updated on WsSession by WsRemoteEndpointImplBase when the write is performed
   }
 
+  /**
+   * Returns the number of messages waiting to be sent.
+   *
+   * @return queue depth
+   */
+  public int getQueueSize() {
+    synchronized (sendQueue) {
+      return sendQueue.size();
+    }
+  }
+
+  /**
+   * Returns the number of messages dropped because the send queue was full.
+   *
+   * @return dropped messages
+   */
+  public long getDroppedFrames() {
+    return droppedFrames.get();
+  }
+
   public String getWsSessionId() {
     return wsSessionId;
   }
@@ -0,0 +1,227 @@
+/*
+ * RED5 Open Source Flash Server - https://github.com/red5 Copyright 2006-2018 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.net.websocket;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Set of the connections of a scope, indexed by session id and split into shards by the hash of the
+ * id. Lookup, add and remove are a single map operation on one shard; broadcasts can walk the
+ * shards in parallel. Iteration is weakly consistent, like that of the concurrent collections.
+ *
+ * @author The Red5 Project
+ */
+public class WebSocketConnectionSet extends AbstractSet<WebSocketConnection> {
+
+  private final ConcurrentHashMap<String, WebSocketConnection>[] shards;
+
+  private final int mask;
+
+  /** Creates a set with two shards per available processor. */
+  public WebSocketConnectionSet() {
+    this(Runtime.getRuntime().availableProcessors() * 2);
+  }
+
+  /**
+   * Creates a set with the given number of shards, rounded up to a power of two.
+   *
+   * @param shardCount number of shards
+   */
+  @SuppressWarnings("unchecked")
+  public WebSocketConnectionSet(int shardCount) {
+    int count = shardCount <= 1 ? 1 : Integer.highestOneBit(shardCount - 1) << 1;
+    shards = new ConcurrentHashMap[count];
+    for (int i = 0; i < count; i++) {
+      shards[i] = new ConcurrentHashMap<>();
+    }
+    mask = count - 1;
+  }
+
+  private ConcurrentHashMap<String, WebSocketConnection> shard(String sessionId) {
+    int h = sessionId.hashCode();
+    return shards[(h ^ (h >>> 16)) & mask];
+  }
+
+  /**
+   * Returns the connection with the given session id.
+   *
+   * @param sessionId websocket session id
+   * @return connection or null if not found
+   */
+  public WebSocketConnection get(String sessionId) {
+    return shard(sessionId).get(sessionId);
+  }
+
+  @Override
+  public boolean add(WebSocketConnection conn) {
+    String sessionId = conn.getSessionId();
+    return shard(sessionId).putIfAbsent(sessionId, conn) == null;
+  }
+
+  @Override
+  public boolean remove(Object obj) {
+    if (obj instanceof WebSocketConnection) {
+      WebSocketConnection conn = (WebSocketConnection) obj;
+      String sessionId = conn.getSessionId();
+      return shard(sessionId).remove(sessionId, conn);
+    }
+    return false;
+  }
+
+  @Override
+  public boolean contains(Object obj) {
+    if (obj instanceof WebSocketConnection) {
+      WebSocketConnection conn = (WebSocketConnection) obj;
+      return conn.equals(get(conn.getSessionId()));
+    }
+    return false;
+  }
+
+  @Override
+  public int size() {
+    int size = 0;
+    for (ConcurrentHashMap<String, WebSocketConnection> shard : shards) {
+      size += shard.size();
+    }
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    for (ConcurrentHashMap<String, WebSocketConnection> shard : shards) {
+      if (!shard.isEmpty()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void clear() {
+    for (ConcurrentHashMap<String, WebSocketConnection> shard : shards) {
+      shard.clear();
+    }
+  }
+
+  @Override
+  public void forEach(Consumer<? super WebSocketConnection> action) {
+    for (ConcurrentHashMap<String, WebSocketConnection> shard : shards) {
+      shard.values().forEach(action);
+    }
+  }
+
+  /**
+   * Performs the action for every connection, the shards being walked in parallel on the given
+   * executor, the calling thread walking the first one. Returns once all connections were visited;
+   * a shard the executor rejects is walked by the calling thread.
+   *
+   * @param action action, called concurrently for connections of different shards
+   * @param executor executor walking the shards
+   */
+  public void forEachParallel(Consumer<? super WebSocketConnection> action, Executor executor) {
+    CountDownLatch done = new CountDownLatch(shards.length);
+    AtomicReference<RuntimeException> failure = new AtomicReference<>();
+    Runnable[] walks = new Runnable[shards.length];
+    for (int i = 0; i < shards.length; i++) {
+      ConcurrentHashMap<String, WebSocketConnection> shard = shards[i];
+      walks[i] =
+          () -> {
+            try {
+              shard.values().forEach(action);
+            } catch (RuntimeException e) {
+              failure.compareAndSet(null, e);
+            } finally {
+              done.countDown();
+            }
+          };
+    }
+    for (int i = 1; i < walks.length; i++) {
+      try {
+        executor.execute(walks[i]);
+      } catch (RejectedExecutionException e) {
+        walks[i].run();
+      }
+    }
+    walks[0].run();
+    boolean interrupted = false;
+    while (true) {
+      try {
+        done.await();
+        break;
+      } catch (InterruptedException e) {
+        // the action may reference state of the caller, don't return before it's done
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    if (failure.get() != null) {
+      throw failure.get();
+    }
+  }
+
+  /**
+   * Returns the number of shards.
+   *
+   * @return shard count
+   */
+  public int getShardCount() {
+    return shards.length;
+  }
+
+  @Override
+  public Iterator<WebSocketConnection> iterator() {
+    return new Iterator<WebSocketConnection>() {
+
+      private int index;
+
+      private Iterator<WebSocketConnection> current = shards[0].values().iterator();
+
+      // iterator that returned the last element, hasNext may have moved on to the next shard
+      private Iterator<WebSocketConnection> last;
+
+      @Override
+      public boolean hasNext() {
+        while (!current.hasNext()) {
+          if (++index >= shards.length) {
+            return false;
+          }
+          current = shards[index].values().iterator();
+        }
+        return true;
+      }
+
+      @Override
+      public WebSocketConnection next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        last = current;
+        return current.next();
+      }
+
+      @Override
+      public void remove() {
+        if (last == null) {
+          throw new IllegalStateException();
+        }
+        last.remove();
+        last = null;
+      }
+    };
+  }
+}
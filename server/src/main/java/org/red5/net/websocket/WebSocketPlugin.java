@@ -15,9 +15,12 @@ import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpSessionEvent;
@@ -57,6 +60,23 @@ public class WebSocketPlugin extends Red5Plugin {
   // Shared executor
   private static ExecutorService executor = Executors.newCachedThreadPool();
 
+  // Walks the connection shards of large broadcasts, one thread per processor
+  private static ExecutorService broadcastExecutor =
+      Executors.newFixedThreadPool(
+          Runtime.getRuntime().availableProcessors(),
+          new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread t =
+                  new Thread(r, String.format("WebSocketBroadcast-%d", count.incrementAndGet()));
+              t.setDaemon(true);
+              return t;
+            }
+          });
+
   // Same origin policy enable/disabled
   private static boolean sameOriginPolicy;
 
@@ -146,6 +166,7 @@ public class WebSocketPlugin extends Red5Plugin {
             });
     managerMap.clear();
     executor.shutdownNow();
+    broadcastExecutor.shutdownNow();
   }
 
   /**
@@ -222,6 +243,16 @@ public class WebSocketPlugin extends Red5Plugin {
     return executor.submit(task);
   }
 
+  /**
+   * Returns the executor of parallel broadcasts, kept apart from the shared executor and the common
+   * fork-join pool so that a broadcast neither waits behind other tasks nor holds them up.
+   *
+   * @return broadcast executor
+   */
+  public static Executor getBroadcastExecutor() {
+    return broadcastExecutor;
+  }
+
   /** {@inheritDoc} */
   @Override
   public String getName() {
@@ -9,12 +9,13 @@ package org.red5.net.websocket;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import javax.websocket.CloseReason.CloseCodes;
 import org.red5.net.websocket.listener.IWebSocketDataListener;
+import org.red5.net.websocket.model.PreparedFrame;
 import org.red5.net.websocket.model.WSMessage;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.plugin.PluginRegistry;
@@ -36,7 +37,11 @@ public class WebSocketScope implements InitializingBean, DisposableBean {
 
   private WebSocketScopeManager manager;
 
-  protected ConcurrentSkipListSet<WebSocketConnection> conns = new ConcurrentSkipListSet<>();
+  // broadcasts to at least this many connections walk the connection shards in parallel
+  private static int parallelBroadcastThreshold = 1000;
+
+  // any set works here, the sharded one gives lookups by id and parallel broadcasts
+  protected Set<WebSocketConnection> conns = new WebSocketConnectionSet();
 
   // this has very few entries, possibly only one, COWAS is fine here and won't incur Comparable
   // requirements
@@ -109,12 +114,10 @@ public class WebSocketScope implements InitializingBean, DisposableBean {
    */
   public WebSocketConnection getConnectionBySessionId(String id) {
     log.debug("getConnectionBySessionId: {}", id);
-    Optional<WebSocketConnection> opt =
-        conns.stream().filter(conn -> id.equals(conn.getSessionId())).findFirst();
-    if (opt.isPresent()) {
-      return opt.get();
+    if (conns instanceof WebSocketConnectionSet) {
+      return ((WebSocketConnectionSet) conns).get(id);
     }
-    return null;
+    return conns.stream().filter(conn -> id.equals(conn.getSessionId())).findFirst().orElse(null);
   }
 
   /**
@@ -269,6 +272,73 @@ public class WebSocketScope implements InitializingBean, DisposableBean {
     return (conns.size() + listeners.size()) > 0;
   }
 
+  /**
+   * Sends text to every connection of the scope. The message is prepared once and queued on each
+   * connection; with async sends a slow client doesn't hold up the others.
+   *
+   * @param data string / text data
+   * @return number of connections the message was queued on
+   */
+  public int broadcast(String data) {
+    return broadcast(PreparedFrame.text(data));
+  }
+
+  /**
+   * Sends binary data to every connection of the scope. The payload is shared by all connections
+   * and must not be modified afterwards.
+   *
+   * @param data binary data
+   * @return number of connections the message was queued on
+   */
+  public int broadcast(byte[] data) {
+    return broadcast(PreparedFrame.binary(data));
+  }
+
+  /**
+   * Queues a prepared message on every connection of the scope, or sends it right away when async
+   * sends are disabled.
+   *
+   * @param frame prepared message
+   * @return number of connections the message was queued on
+   */
+  public int broadcast(PreparedFrame frame) {
+    LongAdder count = new LongAdder();
+    Consumer<WebSocketConnection> send =
+        conn -> {
+          if (conn.send(frame)) {
+            count.increment();
+          }
+        };
+    if (conns instanceof WebSocketConnectionSet && conns.size() >= parallelBroadcastThreshold) {
+      ((WebSocketConnectionSet) conns)
+          .forEachParallel(send, WebSocketPlugin.getBroadcastExecutor());
+    } else {
+      conns.forEach(send);
+    }
+    int queued = count.intValue();
+    log.trace("Broadcast queued on {} connections", queued);
+    return queued;
+  }
+
+  /**
+   * Returns the number of messages waiting to be sent to the connections of the scope.
+   *
+   * @return queued messages
+   */
+  public long getQueuedFrames() {
+    return conns.stream().mapToLong(WebSocketConnection::getQueueSize).sum();
+  }
+
+  /**
+   * Returns the number of messages the connections of the scope dropped because their send queue
+   * was full.
+   *
+   * @return dropped messages
+   */
+  public long getDroppedFrames() {
+    return conns.stream().mapToLong(WebSocketConnection::getDroppedFrames).sum();
+  }
+
   /**
    * Message received from client and passed on to the listeners.
    *
@@ -286,6 +356,20 @@ public class WebSocketScope implements InitializingBean, DisposableBean {
         });
   }
 
+  public static int getParallelBroadcastThreshold() {
+    return parallelBroadcastThreshold;
+  }
+
+  /**
+   * Sets the number of connections from which broadcasts fan out over the connection shards in
+   * parallel.
+   *
+   * @param parallelBroadcastThreshold connection count
+   */
+  public static void setParallelBroadcastThreshold(int parallelBroadcastThreshold) {
+    WebSocketScope.parallelBroadcastThreshold = parallelBroadcastThreshold;
+  }
+
   @Override
   public int hashCode() {
     final int prime = 31;
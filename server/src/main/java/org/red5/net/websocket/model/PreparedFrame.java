@@ -0,0 +1,103 @@
+/*
+ * RED5 Open Source Flash Server - https://github.com/red5 Copyright 2006-2018 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.net.websocket.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import org.red5.net.websocket.model.WSMessage.MessageType;
+
+/**
+ * An outgoing text or binary message, prepared once and queued on any number of connections. A
+ * binary payload is shared, every send works on its own view of it. The views stay writable since
+ * permessage-deflate reads the backing array of the payload; the sends only read it.
+ *
+ * @author The Red5 Project
+ */
+public final class PreparedFrame {
+
+  private final MessageType type;
+
+  private final String text;
+
+  private final ByteBuffer binary;
+
+  // payload length in bytes
+  private final int length;
+
+  private PreparedFrame(MessageType type, String text, ByteBuffer binary, int length) {
+    this.type = type;
+    this.text = text;
+    this.binary = binary;
+    this.length = length;
+  }
+
+  /**
+   * Prepares a text message.
+   *
+   * @param text string / text data
+   * @return frame
+   */
+  public static PreparedFrame text(String text) {
+    return new PreparedFrame(
+        MessageType.TEXT, text, null, text.getBytes(StandardCharsets.UTF_8).length);
+  }
+
+  /**
+   * Prepares a binary message; the array must not be modified afterwards.
+   *
+   * @param data binary data
+   * @return frame
+   */
+  public static PreparedFrame binary(byte[] data) {
+    return new PreparedFrame(MessageType.BINARY, null, ByteBuffer.wrap(data), data.length);
+  }
+
+  /**
+   * Sends the message on a remote endpoint.
+   *
+   * @param remote async remote endpoint of a session
+   * @param handler notified when the message was sent or failed
+   */
+  public void send(RemoteEndpoint.Async remote, SendHandler handler) {
+    if (type == MessageType.TEXT) {
+      remote.sendText(text, handler);
+    } else {
+      remote.sendBinary(binary.duplicate(), handler);
+    }
+  }
+
+  /**
+   * Sends the message on a remote endpoint, blocking until it was sent.
+   *
+   * @param remote basic remote endpoint of a session
+   * @throws IOException if the message could not be sent
+   */
+  public void send(RemoteEndpoint.Basic remote) throws IOException {
+    if (type == MessageType.TEXT) {
+      remote.sendText(text);
+    } else {
+      remote.sendBinary(binary.duplicate());
+    }
+  }
+
+  public MessageType getType() {
+    return type;
+  }
+
+  /**
+   * Returns the payload length.
+   *
+   * @return length in bytes
+   */
+  public int getLength() {
+    return length;
+  }
+}
@@ -74,6 +74,24 @@ public class InboundHandshake extends RTMPHandshake {
    * @return server response S0+S1
    */
   public IoBuffer decodeClientRequest1(IoBuffer in) {
+    long start = System.nanoTime();
+    try {
+      return generateResponse1(in);
+    } finally {
+      HandshakeKeyPool pool = HandshakeKeyPool.getInstance();
+      if (pool != null) {
+        pool.recordHandshake(System.nanoTime() - start);
+      }
+    }
+  }
+
+  /**
+   * Validates C1 and creates S0+S1+S2, setting up encryption if requested.
+   *
+   * @param in incoming handshake C1
+   * @return server response S0+S1
+   */
+  private IoBuffer generateResponse1(IoBuffer in) {
     if (log.isTraceEnabled()) {
       log.debug("decodeClientRequest1: {}", Hex.encodeHexString(in.array()));
     }
@@ -378,6 +396,17 @@ public class InboundHandshake extends RTMPHandshake {
     }
   }
 
+  /**
+   * Takes the key pair from the servers {@link HandshakeKeyPool}, if there is one.
+   *
+   * @return dh keypair or null if generation failed
+   */
+  @Override
+  protected KeyPair createKeyPair() {
+    HandshakeKeyPool pool = HandshakeKeyPool.getInstance();
+    return pool != null ? pool.take() : super.createKeyPair();
+  }
+
   /**
    * Determines the validation scheme for given input.
    *
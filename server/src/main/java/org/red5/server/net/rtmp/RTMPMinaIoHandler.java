@@ -53,6 +53,9 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter {
   /** RTMP events handler */
   protected IRTMPHandler handler;
 
+  /** Whether the connection is bound to its session, sparing the codec a lookup per message */
+  protected boolean bindConnection;
+
   /** {@inheritDoc} */
   @Override
   public void sessionCreated(IoSession session) throws Exception {
@@ -83,6 +86,7 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter {
       sessionId = conn.getSessionId();
       // add the connections session id for look up using the connection manager
       session.setAttribute(RTMPConnection.RTMP_SESSION_ID, sessionId);
+      bindConnection(session, conn);
       // create an inbound handshake
       InboundHandshake handshake = new InboundHandshake();
       // set whether or not unverified will be allowed
@@ -222,6 +226,12 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter {
           case RTMP.STATE_CONNECTED:
             if (message instanceof Packet) {
               handler.messageSent(conn, (Packet) message);
+            } else if (message instanceof OutboundQueue.Batch) {
+              for (Object batched : (OutboundQueue.Batch) message) {
+                if (batched instanceof Packet) {
+                  handler.messageSent(conn, (Packet) batched);
+                }
+              }
             } else if (isDebug) {
               log.debug(
                   "Message was not of Packet type; its type: {}",
@@ -339,6 +349,33 @@ public class RTMPMinaIoHandler extends IoHandlerAdapter {
     this.handler = handler;
   }
 
+  /**
+   * Binds the connection to its session, if enabled.
+   *
+   * @param session session
+   * @param conn connection of the session
+   */
+  protected void bindConnection(IoSession session, RTMPConnection conn) {
+    if (bindConnection) {
+      session.setAttribute(RTMPConnection.RTMP_CONNECTION, conn);
+    }
+  }
+
+  /**
+   * Sets whether the connection is bound to its session when created. The codec then takes it from
+   * the session instead of looking it up by session id, and encodes media without setting the
+   * connection local.
+   *
+   * @param bindConnection true to bind the connection
+   */
+  public void setBindConnection(boolean bindConnection) {
+    this.bindConnection = bindConnection;
+  }
+
+  public boolean isBindConnection() {
+    return bindConnection;
+  }
+
   /**
    * @param codecFactory the codecFactory to set
    */
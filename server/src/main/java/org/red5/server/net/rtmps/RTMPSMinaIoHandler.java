@@ -161,6 +161,7 @@ public class RTMPSMinaIoHandler extends RTMPMinaIoHandler {
     conn.setHandler(handler);
     // add the connections session id for look up using the connection manager
     session.setAttribute(RTMPConnection.RTMP_SESSION_ID, conn.getSessionId());
+    bindConnection(session, conn);
     // create an inbound handshake
     InboundHandshake handshake = new InboundHandshake();
     // set whether or not unverified will be allowed
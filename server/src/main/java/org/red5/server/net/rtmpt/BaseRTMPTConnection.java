@@ -7,14 +7,13 @@
 
 package org.red5.server.net.rtmpt;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.server.api.Red5;
 import org.red5.server.net.rtmp.RTMPConnection;
@@ -192,14 +191,8 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
           log.debug("Adding outgoing message packet");
           PendingData pendingData = new PendingData(data, packet);
           try {
-            int attempt = 0;
-            while (!pendingOutMessages.offer(
-                pendingData, maxQueueOfferTime, TimeUnit.MILLISECONDS)) {
-              log.trace("Packet was not added to out queue");
-              attempt++;
-              if (attempt >= maxQueueOfferAttempts) {
-                break;
-              }
+            if (offerPendingData(pendingData)) {
+              onPendingData();
             }
           } catch (InterruptedException ex) {
             log.warn("Offering packet to out queue failed", ex);
@@ -225,44 +218,81 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
     }
     PendingData pendingData = new PendingData(packet);
     try {
-      int attempt = 0;
-      while (!pendingOutMessages.offer(pendingData, maxQueueOfferTime, TimeUnit.MILLISECONDS)) {
-        log.trace("Packet was not added to out queue");
-        attempt++;
-        if (attempt >= maxQueueOfferAttempts) {
-          break;
-        }
+      if (offerPendingData(pendingData)) {
+        onPendingData();
       }
     } catch (InterruptedException ex) {
       log.warn("Offering io buffer to out queue failed", ex);
     }
   }
 
+  /**
+   * Adds data to the outgoing queue, waiting up to the configured attempts for room.
+   *
+   * @param pendingData data to add
+   * @return true if the data was queued
+   * @throws InterruptedException if interrupted while waiting for room
+   */
+  private boolean offerPendingData(PendingData pendingData) throws InterruptedException {
+    int attempt = 0;
+    while (!pendingOutMessages.offer(pendingData, maxQueueOfferTime, TimeUnit.MILLISECONDS)) {
+      log.trace("Packet was not added to out queue");
+      attempt++;
+      if (attempt >= maxQueueOfferAttempts) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Called after outgoing data was queued. Connections holding a request open until there is data
+   * to return override this to answer it.
+   */
+  protected void onPendingData() {}
+
+  /**
+   * Takes the pending messages off the queue and notifies the handler that they were sent. The
+   * buffers are the ones that were queued, nothing is copied.
+   *
+   * @return encoded messages in send order, empty if no messages are pending
+   */
+  protected List<IoBuffer> drainPendingMessages() {
+    if (pendingOutMessages.isEmpty()) {
+      return Collections.emptyList();
+    }
+    int available = pendingOutMessages.size();
+    // create list to hold outgoing data
+    LinkedList<PendingData> sendList = new LinkedList<PendingData>();
+    pendingOutMessages.drainTo(sendList, Math.min(164, available));
+    List<IoBuffer> chunks = new ArrayList<>(sendList.size());
+    for (PendingData pendingMessage : sendList) {
+      chunks.add(pendingMessage.getBuffer());
+      Packet packet = pendingMessage.getPacket();
+      if (packet != null) {
+        try {
+          handler.messageSent(this, packet);
+          // mark packet as being written
+          writingMessage(packet);
+        } catch (Exception e) {
+          log.error("Could not notify stream subsystem about sent message", e);
+        }
+      } else {
+        log.trace("Pending message did not have a packet");
+      }
+    }
+    return chunks;
+  }
+
   protected IoBuffer foldPendingMessages(int targetSize) {
     log.debug("foldPendingMessages - target size: {}", targetSize);
     IoBuffer result = null;
-    if (!pendingOutMessages.isEmpty()) {
-      int available = pendingOutMessages.size();
-      // create list to hold outgoing data
-      LinkedList<PendingData> sendList = new LinkedList<PendingData>();
-      pendingOutMessages.drainTo(sendList, Math.min(164, available));
+    List<IoBuffer> chunks = drainPendingMessages();
+    if (!chunks.isEmpty()) {
       result = IoBuffer.allocate(targetSize).setAutoExpand(true);
-      for (PendingData pendingMessage : sendList) {
-        result.put(pendingMessage.getBuffer());
-        Packet packet = pendingMessage.getPacket();
-        if (packet != null) {
-          try {
-            handler.messageSent(this, packet);
-            // mark packet as being written
-            writingMessage(packet);
-          } catch (Exception e) {
-            log.error("Could not notify stream subsystem about sent message", e);
-          }
-        } else {
-          log.trace("Pending message did not have a packet");
-        }
+      for (IoBuffer chunk : chunks) {
+        result.put(chunk);
       }
-      sendList.clear();
       result.flip();
       // send byte length
       if (log.isDebugEnabled()) {
@@ -307,34 +337,23 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
     // simple packet
     private final Packet packet;
 
-    // encoded packet data
-    private final byte[] byteBuffer;
+    // encoded packet data, owned by the queue once added
+    private final IoBuffer buffer;
 
     private PendingData(IoBuffer buffer, Packet packet) {
-      int size = buffer.limit();
-      this.byteBuffer = new byte[size];
-      buffer.get(byteBuffer);
+      this.buffer = buffer;
       this.packet = packet;
       if (log.isTraceEnabled()) {
-        log.trace("Buffer: {}", Arrays.toString(ArrayUtils.subarray(byteBuffer, 0, 32)));
+        log.trace("Buffer: {}", buffer.getHexDump(32));
       }
     }
 
     private PendingData(IoBuffer buffer) {
-      int size = buffer.limit();
-      this.byteBuffer = new byte[size];
-      buffer.get(byteBuffer);
-      this.packet = null;
-      if (log.isTraceEnabled()) {
-        log.trace("Buffer: {}", Arrays.toString(ArrayUtils.subarray(byteBuffer, 0, 32)));
-      }
+      this(buffer, null);
     }
 
-    public byte[] getBuffer() {
-      if (log.isTraceEnabled()) {
-        log.trace("Get buffer: {}", Arrays.toString(ArrayUtils.subarray(byteBuffer, 0, 32)));
-      }
-      return byteBuffer;
+    public IoBuffer getBuffer() {
+      return buffer;
     }
 
     public Packet getPacket() {
@@ -343,10 +362,7 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
 
     @SuppressWarnings("unused")
     public int getBufferSize() {
-      if (byteBuffer != null) {
-        return byteBuffer.length;
-      }
-      return 0;
+      return buffer.remaining();
     }
   }
 }
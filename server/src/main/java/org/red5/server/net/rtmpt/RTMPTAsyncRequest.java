@@ -0,0 +1,269 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmpt;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.logging.Red5LoggerFactory;
+import org.red5.server.api.Red5;
+import org.slf4j.Logger;
+
+/**
+ * A send or idle request served with servlet async I/O. The body is read as the container reports
+ * it available and the pending messages are written chunk by chunk as the response accepts them,
+ * so no thread waits on the client. An idle request with nothing to return is parked on its
+ * connection and answered when data is queued, the connection closes or the idle wait passes.
+ *
+ * @author The Red5 Project
+ */
+final class RTMPTAsyncRequest implements ReadListener, WriteListener, AsyncListener {
+
+  private static final Logger log = Red5LoggerFactory.getLogger(RTMPTAsyncRequest.class);
+
+  /** Sink for the bodies of idle requests; they are discarded, so sharing it is harmless */
+  private static final byte[] DISCARD = new byte[1024];
+
+  private static final int READ_SIZE = 4096;
+
+  private final RTMPTServlet servlet;
+
+  private final RTMPTConnection conn;
+
+  private final AsyncContext context;
+
+  /** Data of a send request, null for idle requests */
+  private final IoBuffer body;
+
+  private final AtomicBoolean responded = new AtomicBoolean();
+
+  private ServletInputStream input;
+
+  private ServletOutputStream output;
+
+  private int readBytes;
+
+  /** Polling delay or close notification written ahead of the data */
+  private byte header;
+
+  private boolean headerWritten;
+
+  private List<IoBuffer> chunks;
+
+  private int nextChunk;
+
+  private int contentLength;
+
+  RTMPTAsyncRequest(RTMPTServlet servlet, RTMPTConnection conn, AsyncContext context, boolean send) {
+    this.servlet = servlet;
+    this.conn = conn;
+    this.context = context;
+    if (send) {
+      int length = context.getRequest().getContentLength();
+      body = IoBuffer.allocate(length > 0 ? length : READ_SIZE, false);
+    } else {
+      body = null;
+    }
+  }
+
+  /**
+   * Starts reading the request body.
+   *
+   * @throws IOException on I/O error
+   */
+  void start() throws IOException {
+    context.addListener(this);
+    input = context.getRequest().getInputStream();
+    input.setReadListener(this);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onDataAvailable() throws IOException {
+    while (input.isReady() && !input.isFinished()) {
+      int read;
+      if (body != null) {
+        if (!body.hasRemaining()) {
+          body.expand(READ_SIZE);
+        }
+        read = input.read(body.array(), body.arrayOffset() + body.position(), body.remaining());
+        if (read > 0) {
+          body.position(body.position() + read);
+        }
+      } else {
+        read = input.read(DISCARD);
+      }
+      if (read < 0) {
+        break;
+      }
+      readBytes += read;
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onAllDataRead() throws IOException {
+    log.trace("Read {} bytes", readBytes);
+    conn.dataReceived();
+    conn.updateReadBytes(readBytes);
+    if (body != null) {
+      body.flip();
+      Red5.setConnectionLocal(conn);
+      try {
+        servlet.handleReceived(conn, body);
+      } finally {
+        Red5.setConnectionLocal(null);
+        body.free();
+      }
+      respond();
+    } else if (!responded.get()) {
+      conn.parkRequest(this);
+    }
+  }
+
+  /**
+   * Writes the pending messages, called when the request can be answered. Only the first call
+   * answers, later ones return right away.
+   */
+  void respond() {
+    if (prepareResponse()) {
+      try {
+        output.setWriteListener(this);
+      } catch (IllegalStateException e) {
+        onError(e);
+      }
+    }
+  }
+
+  /**
+   * Takes the pending messages and sets the response headers, unless the request was answered
+   * already.
+   *
+   * @return true if this call is answering the request
+   */
+  private boolean prepareResponse() {
+    if (!responded.compareAndSet(false, true)) {
+      return false;
+    }
+    conn.unparkRequest(this);
+    chunks = conn.getPendingChunks();
+    contentLength = 1;
+    for (IoBuffer chunk : chunks) {
+      contentLength += chunk.remaining();
+    }
+    if (chunks.isEmpty() && conn.isClosing()) {
+      log.debug("Client is closing, send close notification");
+      header = 0;
+    } else {
+      header = conn.getPollingDelay();
+    }
+    log.debug("Sending {} bytes; polling delay: {}", contentLength - 1, header);
+    HttpServletResponse resp = (HttpServletResponse) context.getResponse();
+    resp.setStatus(HttpServletResponse.SC_OK);
+    resp.setHeader("Connection", "Keep-Alive");
+    resp.setHeader("Cache-Control", "no-cache");
+    resp.setContentType(RTMPTServlet.CONTENT_TYPE);
+    resp.setContentLength(contentLength);
+    try {
+      output = resp.getOutputStream();
+    } catch (IOException e) {
+      onError(e);
+      return false;
+    }
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onWritePossible() throws IOException {
+    while (output.isReady()) {
+      if (!headerWritten) {
+        output.write(header);
+        headerWritten = true;
+      } else if (nextChunk < chunks.size()) {
+        write(chunks.get(nextChunk++));
+      } else {
+        conn.updateWrittenBytes(contentLength);
+        complete();
+        return;
+      }
+    }
+  }
+
+  private void write(IoBuffer chunk) throws IOException {
+    if (chunk.hasArray()) {
+      output.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+    } else {
+      byte[] data = new byte[chunk.remaining()];
+      chunk.get(data);
+      output.write(data);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onError(Throwable t) {
+    // using "Throwable" is meant to catch any exception that would occur when doing a write
+    // this can be an IOException or a container specific one like ClientAbortException from
+    // catalina
+    log.warn("Exception serving async request", t);
+    if (output != null) {
+      conn.close();
+    }
+    complete();
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onTimeout(AsyncEvent event) throws IOException {
+    // the container expects the request to be completed before this returns, so the idle answer,
+    // a single byte unless data raced the timeout, is written blocking
+    if (body == null && prepareResponse()) {
+      output.write(header);
+      for (IoBuffer chunk : chunks) {
+        write(chunk);
+      }
+      conn.updateWrittenBytes(contentLength);
+    }
+    complete();
+  }
+
+  private void complete() {
+    conn.unparkRequest(this);
+    try {
+      context.complete();
+    } catch (IllegalStateException e) {
+      log.trace("Request was already completed", e);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onComplete(AsyncEvent event) throws IOException {
+    conn.unparkRequest(this);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onError(AsyncEvent event) throws IOException {
+    onError(event.getThrowable());
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void onStartAsync(AsyncEvent event) throws IOException {}
+}
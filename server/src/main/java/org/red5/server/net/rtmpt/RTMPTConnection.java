@@ -7,7 +7,9 @@
 
 package org.red5.server.net.rtmpt;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.servlet.http.HttpServletRequest;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.DummySession;
@@ -60,6 +62,10 @@ public class RTMPTConnection extends BaseRTMPTConnection {
 
   private transient IoSession ioSession;
 
+  /** Idle request held open until there is outgoing data, used by the async servlet mode */
+  private final transient AtomicReference<RTMPTAsyncRequest> parkedRequest =
+      new AtomicReference<>();
+
   /** Constructs a new RTMPTConnection */
   RTMPTConnection() {
     super(IConnection.Type.POLLING.name().toLowerCase());
@@ -102,6 +108,8 @@ public class RTMPTConnection extends BaseRTMPTConnection {
       }
       // now close
       super.close();
+      // answer a held idle request with the close notification
+      wakeParkedRequest();
       if (servlet != null) {
         servlet = null;
       }
@@ -221,6 +229,23 @@ public class RTMPTConnection extends BaseRTMPTConnection {
   /** {@inheritDoc} */
   @Override
   public IoBuffer getPendingMessages(int targetSize) {
+    updatePollingDelay();
+    return foldPendingMessages(targetSize);
+  }
+
+  /**
+   * Return the pending messages as the buffers they were queued in, for writing them to the
+   * response one by one.
+   *
+   * @return encoded messages, empty if no messages are pending
+   */
+  public List<IoBuffer> getPendingChunks() {
+    updatePollingDelay();
+    return drainPendingMessages();
+  }
+
+  /** Resets the polling delay when there is data to send, increases it after empty polls. */
+  private void updatePollingDelay() {
     if (log.isTraceEnabled()) {
       log.trace("Pending messages out: {}", pendingOutMessages.size());
     }
@@ -240,7 +265,45 @@ public class RTMPTConnection extends BaseRTMPTConnection {
         }
       }
     }
-    return foldPendingMessages(targetSize);
+  }
+
+  /**
+   * Holds an idle request until data is queued or the connection closes. A request held earlier is
+   * answered right away, a client has only one poll outstanding.
+   *
+   * @param request idle request without data to return
+   */
+  void parkRequest(RTMPTAsyncRequest request) {
+    RTMPTAsyncRequest previous = parkedRequest.getAndSet(request);
+    if (previous != null) {
+      previous.respond();
+    }
+    // data may have been queued before the request was parked
+    if (!pendingOutMessages.isEmpty() || isClosing()) {
+      wakeParkedRequest();
+    }
+  }
+
+  /**
+   * Releases a held request that was answered or timed out.
+   *
+   * @param request idle request
+   */
+  void unparkRequest(RTMPTAsyncRequest request) {
+    parkedRequest.compareAndSet(request, null);
+  }
+
+  private void wakeParkedRequest() {
+    RTMPTAsyncRequest request = parkedRequest.getAndSet(null);
+    if (request != null) {
+      request.respond();
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  protected void onPendingData() {
+    wakeParkedRequest();
   }
 
   /** Register timestamp that data was received */
@@ -11,7 +11,9 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
+import javax.servlet.AsyncContext;
 import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
@@ -56,7 +58,7 @@ public class RTMPTServlet extends HttpServlet {
   private static final String REQUEST_METHOD = "POST";
 
   /** Content-Type to use for RTMPT requests / responses. */
-  private static final String CONTENT_TYPE = "application/x-fcs";
+  static final String CONTENT_TYPE = "application/x-fcs";
 
   /** Connection manager. */
   private static RTMPConnManager manager;
@@ -67,6 +69,15 @@ public class RTMPTServlet extends HttpServlet {
    */
   private static int targetResponseSize = Short.MAX_VALUE + 1;
 
+  /**
+   * Serve send and idle requests with servlet async I/O. Idle requests without data to return are
+   * then held, without a thread, until there is data or the idle wait passed.
+   */
+  private static boolean async;
+
+  /** Time in milliseconds an idle request is held in async mode before answering it empty. */
+  private static long maxIdleWait = 1000L;
+
   /** Reference to RTMPT handler; */
   private static RTMPTHandler handler;
 
@@ -82,6 +93,17 @@ public class RTMPTServlet extends HttpServlet {
   /** Web app context */
   protected transient WebApplicationContext applicationContext;
 
+  /** {@inheritDoc} */
+  @Override
+  public void init() throws ServletException {
+    super.init();
+    String asyncParam = getInitParameter("async");
+    if (asyncParam != null) {
+      async = Boolean.parseBoolean(asyncParam);
+    }
+    log.debug("Async mode: {}", async);
+  }
+
   /**
    * Return an error message to the client.
    *
@@ -347,92 +369,13 @@ public class RTMPTServlet extends HttpServlet {
     log.debug("handleSend");
     final RTMPTConnection conn = getConnection();
     if (conn != null) {
-      IoSession session = conn.getIoSession();
-      // get the handshake from the session
-      InboundHandshake handshake = null;
       // put the received data in a ByteBuffer
       int length = req.getContentLength();
       log.trace("Request content length: {}", length);
       final IoBuffer message = IoBuffer.allocate(length);
       ServletUtils.copy(req, message.asOutputStream());
       message.flip();
-      RTMP rtmp = conn.getState();
-      int connectionState = rtmp.getState();
-      switch (connectionState) {
-        case RTMP.STATE_CONNECT:
-          // we're expecting C0+C1 here
-          // log.trace("C0C1 byte order: {}", message.order());
-          log.debug("decodeHandshakeC0C1 - buffer: {}", message);
-          // we want 1537 bytes for C0C1
-          if (message.remaining() >= (Constants.HANDSHAKE_SIZE + 1)) {
-            // get the connection type byte, may want to set this on the conn in the future
-            byte connectionType = message.get();
-            log.trace("Incoming C0 connection type: {}", connectionType);
-            // add the in-bound handshake, defaults to non-encrypted mode
-            handshake = new InboundHandshake(connectionType);
-            handshake.setUnvalidatedConnectionAllowed(handler.isUnvalidatedConnectionAllowed());
-            session.setAttribute(RTMPConnection.RTMP_HANDSHAKE, handshake);
-            // create array for decode
-            byte[] dst = new byte[Constants.HANDSHAKE_SIZE];
-            // copy out 1536 bytes
-            message.get(dst);
-            // log.debug("C1 - buffer: {}", Hex.encodeHexString(dst));
-            // set state to indicate we're waiting for C2
-            rtmp.setState(RTMP.STATE_HANDSHAKE);
-            IoBuffer s1 = handshake.decodeClientRequest1(IoBuffer.wrap(dst));
-            if (s1 != null) {
-              // log.trace("S1 byte order: {}", s1.order());
-              conn.writeRaw(s1);
-            } else {
-              log.warn("Client was rejected due to invalid handshake");
-              conn.close();
-            }
-          }
-          break;
-        case RTMP.STATE_HANDSHAKE:
-          // we're expecting C2 here
-          // log.trace("C2 byte order: {}", message.order());
-          log.debug("decodeHandshakeC2 - buffer: {}", message);
-          // no connection type byte is supposed to be in C2 data
-          if (message.remaining() >= Constants.HANDSHAKE_SIZE) {
-            // get the handshake
-            handshake = (InboundHandshake) session.getAttribute(RTMPConnection.RTMP_HANDSHAKE);
-            // create array for decode
-            byte[] dst = new byte[Constants.HANDSHAKE_SIZE];
-            // copy
-            message.get(dst);
-            log.trace("Copied {}", Hex.encodeHexString(dst));
-            // if (log.isTraceEnabled()) {
-            //    log.trace("C2 - buffer: {}", Hex.encodeHexString(dst));
-            // }
-            if (handshake.decodeClientRequest2(IoBuffer.wrap(dst))) {
-              log.debug("Connected, removing handshake data and adding rtmp protocol filter");
-              // set state to indicate we're connected
-              rtmp.setState(RTMP.STATE_CONNECTED);
-              // remove handshake from session now that we are connected
-              session.removeAttribute(RTMPConnection.RTMP_HANDSHAKE);
-            } else {
-              log.warn("Client was rejected due to invalid handshake");
-              conn.close();
-            }
-          }
-        // let the logic flow into connected to catch the remaining bytes that probably contain
-        // the connect call
-        case RTMP.STATE_CONNECTED:
-          // decode the objects and pass to received; messages should all be Packet type
-          for (Object obj : conn.decode(message)) {
-            conn.handleMessageReceived(obj);
-          }
-          break;
-        case RTMP.STATE_ERROR:
-        case RTMP.STATE_DISCONNECTING:
-        case RTMP.STATE_DISCONNECTED:
-          // do nothing, really
-          log.debug("Nothing to do, connection state: {}", RTMP.states[connectionState]);
-          break;
-        default:
-          throw new IllegalStateException("Invalid RTMP state: " + connectionState);
-      }
+      handleReceived(conn, message);
       conn.dataReceived();
       conn.updateReadBytes(length);
       message.clear();
@@ -446,6 +389,95 @@ public class RTMPTServlet extends HttpServlet {
     }
   }
 
+  /**
+   * Decode data sent by the client: the handshake while connecting and RTMP messages after.
+   *
+   * @param conn RTMPT connection
+   * @param message data sent by the client
+   */
+  protected void handleReceived(RTMPTConnection conn, IoBuffer message) {
+    IoSession session = conn.getIoSession();
+    // get the handshake from the session
+    InboundHandshake handshake = null;
+    RTMP rtmp = conn.getState();
+    int connectionState = rtmp.getState();
+    switch (connectionState) {
+      case RTMP.STATE_CONNECT:
+        // we're expecting C0+C1 here
+        // log.trace("C0C1 byte order: {}", message.order());
+        log.debug("decodeHandshakeC0C1 - buffer: {}", message);
+        // we want 1537 bytes for C0C1
+        if (message.remaining() >= (Constants.HANDSHAKE_SIZE + 1)) {
+          // get the connection type byte, may want to set this on the conn in the future
+          byte connectionType = message.get();
+          log.trace("Incoming C0 connection type: {}", connectionType);
+          // add the in-bound handshake, defaults to non-encrypted mode
+          handshake = new InboundHandshake(connectionType);
+          handshake.setUnvalidatedConnectionAllowed(handler.isUnvalidatedConnectionAllowed());
+          session.setAttribute(RTMPConnection.RTMP_HANDSHAKE, handshake);
+          // create array for decode
+          byte[] dst = new byte[Constants.HANDSHAKE_SIZE];
+          // copy out 1536 bytes
+          message.get(dst);
+          // log.debug("C1 - buffer: {}", Hex.encodeHexString(dst));
+          // set state to indicate we're waiting for C2
+          rtmp.setState(RTMP.STATE_HANDSHAKE);
+          IoBuffer s1 = handshake.decodeClientRequest1(IoBuffer.wrap(dst));
+          if (s1 != null) {
+            // log.trace("S1 byte order: {}", s1.order());
+            conn.writeRaw(s1);
+          } else {
+            log.warn("Client was rejected due to invalid handshake");
+            conn.close();
+          }
+        }
+        break;
+      case RTMP.STATE_HANDSHAKE:
+        // we're expecting C2 here
+        // log.trace("C2 byte order: {}", message.order());
+        log.debug("decodeHandshakeC2 - buffer: {}", message);
+        // no connection type byte is supposed to be in C2 data
+        if (message.remaining() >= Constants.HANDSHAKE_SIZE) {
+          // get the handshake
+          handshake = (InboundHandshake) session.getAttribute(RTMPConnection.RTMP_HANDSHAKE);
+          // create array for decode
+          byte[] dst = new byte[Constants.HANDSHAKE_SIZE];
+          // copy
+          message.get(dst);
+          log.trace("Copied {}", Hex.encodeHexString(dst));
+          // if (log.isTraceEnabled()) {
+          //    log.trace("C2 - buffer: {}", Hex.encodeHexString(dst));
+          // }
+          if (handshake.decodeClientRequest2(IoBuffer.wrap(dst))) {
+            log.debug("Connected, removing handshake data and adding rtmp protocol filter");
+            // set state to indicate we're connected
+            rtmp.setState(RTMP.STATE_CONNECTED);
+            // remove handshake from session now that we are connected
+            session.removeAttribute(RTMPConnection.RTMP_HANDSHAKE);
+          } else {
+            log.warn("Client was rejected due to invalid handshake");
+            conn.close();
+          }
+        }
+      // let the logic flow into connected to catch the remaining bytes that probably contain
+      // the connect call
+      case RTMP.STATE_CONNECTED:
+        // decode the objects and pass to received; messages should all be Packet type
+        for (Object obj : conn.decode(message)) {
+          conn.handleMessageReceived(obj);
+        }
+        break;
+      case RTMP.STATE_ERROR:
+      case RTMP.STATE_DISCONNECTING:
+      case RTMP.STATE_DISCONNECTED:
+        // do nothing, really
+        log.debug("Nothing to do, connection state: {}", RTMP.states[connectionState]);
+        break;
+      default:
+        throw new IllegalStateException("Invalid RTMP state: " + connectionState);
+    }
+  }
+
   /**
    * Poll RTMPT session for updates.
    *
@@ -471,6 +503,36 @@ public class RTMPTServlet extends HttpServlet {
     }
   }
 
+  /**
+   * Serve a send or idle request with async I/O. The request body is read and the response written
+   * by listeners called by the container, an idle request with nothing to return is held by the
+   * connection until there is data.
+   *
+   * @param req Servlet request
+   * @param resp Servlet response
+   * @param send true for a send request, false for an idle request
+   * @throws IOException I/O exception
+   */
+  protected void handleAsync(HttpServletRequest req, HttpServletResponse resp, boolean send)
+      throws IOException {
+    log.debug("handleAsync - send: {}", send);
+    RTMPTConnection conn = getConnection();
+    if (conn != null) {
+      AsyncContext context = req.startAsync();
+      // only idle requests are held, sends are answered once their data is decoded
+      if (!send) {
+        context.setTimeout(maxIdleWait);
+      }
+      new RTMPTAsyncRequest(this, conn, context, send).start();
+    } else {
+      handleBadRequest(
+          String.format(
+              "%s: unknown client session: %s",
+              send ? "Send" : "Idle", requestInfo.get().getSessionId()),
+          resp);
+    }
+  }
+
   /**
    * Main entry point for the servlet.
    *
@@ -538,12 +600,20 @@ public class RTMPTServlet extends HttpServlet {
         break;
       case 's': // SEND_REQUEST
         setRequestInfo(req);
-        handleSend(req, resp);
+        if (async && req.isAsyncSupported()) {
+          handleAsync(req, resp, true);
+        } else {
+          handleSend(req, resp);
+        }
         requestInfo.remove();
         break;
       case 'i': // IDLE_REQUEST
         setRequestInfo(req);
-        handleIdle(req, resp);
+        if (async && req.isAsyncSupported()) {
+          handleAsync(req, resp, false);
+        } else {
+          handleIdle(req, resp);
+        }
         requestInfo.remove();
         break;
       case 'f': // HTTPIdent request (ident and ident2)
@@ -651,6 +721,24 @@ public class RTMPTServlet extends HttpServlet {
     RTMPTServlet.ident2 = ident2;
   }
 
+  /**
+   * Set the connection manager used to create and look up RTMPT connections.
+   *
+   * @param manager connection manager
+   */
+  public void setRtmpConnManager(RTMPConnManager manager) {
+    RTMPTServlet.manager = manager;
+  }
+
+  /**
+   * Returns the target size for responses
+   *
+   * @return the targetResponseSize
+   */
+  static int getTargetResponseSize() {
+    return targetResponseSize;
+  }
+
   /**
    * Sets the target size for responses
    *
@@ -660,6 +748,32 @@ public class RTMPTServlet extends HttpServlet {
     RTMPTServlet.targetResponseSize = targetResponseSize;
   }
 
+  /**
+   * @return whether send and idle requests are served with async I/O
+   */
+  public boolean isAsync() {
+    return async;
+  }
+
+  /**
+   * Serve send and idle requests with servlet async I/O. The servlet has to be registered as
+   * supporting async, requests which don't are served blocking.
+   *
+   * @param async true to use async I/O
+   */
+  public void setAsync(boolean async) {
+    RTMPTServlet.async = async;
+  }
+
+  /**
+   * Sets the time an idle request is held in async mode when there is nothing to return.
+   *
+   * @param maxIdleWait time in milliseconds
+   */
+  public void setMaxIdleWait(long maxIdleWait) {
+    RTMPTServlet.maxIdleWait = maxIdleWait;
+  }
+
   /**
    * @return the enforceContentTypeCheck
    */
@@ -82,18 +82,33 @@ public class FilePersistence extends RamPersistence {
    * @param scope Scope
    */
   public FilePersistence(IScope scope) {
+    this(scope, true);
+  }
+
+  /**
+   * Create file persistence object for given scope, optionally without the job writing modified
+   * objects; for stores which write their objects themselves.
+   *
+   * @param scope Scope
+   * @param scheduled whether or not modified objects are written by a scheduled job
+   */
+  protected FilePersistence(IScope scope, boolean scheduled) {
     super(scope);
     setPath(path);
-    IContext ctx = scope.getContext();
-    if (ctx.hasBean(ISchedulingService.BEAN_NAME)) {
-      schedulingService = (ISchedulingService) ctx.getBean(ISchedulingService.BEAN_NAME);
-    } else {
-      // try the parent
-      schedulingService =
-          (ISchedulingService) scope.getParent().getContext().getBean(ISchedulingService.BEAN_NAME);
+    if (scheduled) {
+      IContext ctx = scope.getContext();
+      if (ctx.hasBean(ISchedulingService.BEAN_NAME)) {
+        schedulingService = (ISchedulingService) ctx.getBean(ISchedulingService.BEAN_NAME);
+      } else {
+        // try the parent
+        schedulingService =
+            (ISchedulingService)
+                scope.getParent().getContext().getBean(ISchedulingService.BEAN_NAME);
+      }
+      // add the job
+      storeJobName =
+          schedulingService.addScheduledJob(persistenceInterval, new FilePersistenceJob());
     }
-    // add the job
-    storeJobName = schedulingService.addScheduledJob(persistenceInterval, new FilePersistenceJob());
   }
 
   /**
@@ -185,6 +200,20 @@ public class FilePersistence extends RamPersistence {
     }
   }
 
+  /**
+   * Returns the directory the objects are persisted in.
+   *
+   * @return persistence directory
+   * @throws IOException if the directory cannot be resolved
+   */
+  protected File getPersistenceDirectory() throws IOException {
+    Resource rootFile = resources.getResource(path);
+    if (rootFile.exists()) {
+      return rootFile.getFile();
+    }
+    return new File(rootDir, path);
+  }
+
   /**
    * Setter for extension.
    *
@@ -607,6 +636,16 @@ public class FilePersistence extends RamPersistence {
   @Override
   public boolean remove(String name) {
     super.remove(name);
+    return removeFile(name);
+  }
+
+  /**
+   * Deletes the file of the object with the given name, leaving the object in memory.
+   *
+   * @param name object name
+   * @return true if there was no file or it was deleted
+   */
+  protected boolean removeFile(String name) {
     boolean result = true;
     String filename = path + '/' + name + extension;
     Resource resFile = resources.getResource(filename);
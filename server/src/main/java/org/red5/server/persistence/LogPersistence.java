@@ -0,0 +1,311 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.amf.Input;
+import org.red5.io.amf.Output;
+import org.red5.io.object.Deserializer;
+import org.red5.server.api.persistence.IPersistable;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.so.SharedObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.support.ResourcePatternResolver;
+
+/**
+ * Persistence backed by a segmented append-only log instead of one file per object. Saves only mark
+ * an object as modified; the log writer serializes the latest state of every modified object and
+ * commits them together, so a busy shared object costs one record per commit instead of one file
+ * rewrite per change. All stores using the same persistence directory share one log.
+ *
+ * <p>Drop-in replacement for {@link FilePersistence}: use this class name wherever a persistence
+ * class is configured. Existing <i>.red5</i> files are still read when an object isn't in the log.
+ *
+ * @author The Red5 Project
+ */
+public class LogPersistence extends FilePersistence {
+
+  private Logger log = LoggerFactory.getLogger(LogPersistence.class);
+
+  /** Directory name of the log under the persistence directory */
+  private static final String LOG_DIR = "log";
+
+  private static long segmentSize = 16 * 1024 * 1024;
+
+  private static long commitDelay = 10;
+
+  private static boolean sync = true;
+
+  private static double compactionRatio = 0.5d;
+
+  private static long compactionInterval = 60000;
+
+  /** Log of this store, null once the store is closed */
+  private volatile PersistenceLog persistenceLog;
+
+  /**
+   * Create log persistence object from given resource pattern resolver
+   *
+   * @param resolver Resource pattern resolver and loader
+   */
+  public LogPersistence(ResourcePatternResolver resolver) {
+    super(resolver);
+    openLog();
+  }
+
+  /**
+   * Create log persistence object for given scope
+   *
+   * @param scope Scope
+   */
+  public LogPersistence(IScope scope) {
+    // objects are written by the log writer, not by the file persistence job
+    super(scope, false);
+    openLog();
+  }
+
+  private void openLog() {
+    try {
+      File dir = new File(getPersistenceDirectory(), LOG_DIR);
+      persistenceLog =
+          PersistenceLog.acquire(
+              dir, segmentSize, commitDelay, sync, compactionRatio, compactionInterval);
+    } catch (IOException err) {
+      log.error("Could not open persistence log", err);
+      throw new RuntimeException(err);
+    }
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean save(IPersistable object) {
+    PersistenceLog persistenceLog = this.persistenceLog;
+    if (persistenceLog == null) {
+      log.warn("Persistence log is closed, not saving {}", object);
+      return false;
+    }
+    final String key = getObjectId(object);
+    objects.put(key, object);
+    if (object instanceof SharedObject && ((SharedObject) object).getAttributes().isEmpty()) {
+      // nothing worth keeping, nor in a file from file persistence which load would fall back to
+      persistenceLog.delete(key);
+      removeFile(key);
+    } else {
+      persistenceLog.put(key, () -> serialize(object));
+    }
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public IPersistable load(String name) {
+    log.debug("load - name: {}", name);
+    IPersistable result = objects.get(name);
+    if (result != null) {
+      // Object has already been loaded
+      return result;
+    }
+    PersistenceLog persistenceLog = this.persistenceLog;
+    if (persistenceLog != null && persistenceLog.contains(name)) {
+      return doLoad(persistenceLog, name, null);
+    }
+    return super.load(name);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean load(IPersistable object) {
+    log.debug("load - name: {}", object);
+    if (object.isPersistent()) {
+      // already loaded
+      return true;
+    }
+    String key = getObjectId(object);
+    PersistenceLog persistenceLog = this.persistenceLog;
+    if (persistenceLog != null && persistenceLog.contains(key)) {
+      return doLoad(persistenceLog, key, object) != null;
+    }
+    return super.load(object);
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean remove(String name) {
+    PersistenceLog persistenceLog = this.persistenceLog;
+    if (persistenceLog != null) {
+      persistenceLog.delete(name);
+    }
+    // removes the object from memory and any file left over from file persistence
+    super.remove(name);
+    return true;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public boolean remove(IPersistable object) {
+    return remove(getObjectId(object));
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void notifyClose() {
+    PersistenceLog persistenceLog = this.persistenceLog;
+    if (persistenceLog != null) {
+      this.persistenceLog = null;
+      persistenceLog.release();
+    }
+    super.notifyClose();
+  }
+
+  /**
+   * Serializes an object the same way file persistence does: class name followed by the object.
+   *
+   * @param object persistable
+   * @return serialized object
+   */
+  private byte[] serialize(IPersistable object) {
+    IoBuffer buf = IoBuffer.allocate(1024);
+    buf.setAutoExpand(true);
+    try {
+      Output out = new Output(buf);
+      out.writeString(object.getClass().getName());
+      object.serialize(out);
+      buf.flip();
+      byte[] data = new byte[buf.limit()];
+      buf.get(data);
+      return data;
+    } catch (IOException e) {
+      log.error("Could not serialize {}", object, e);
+      return null;
+    } finally {
+      buf.free();
+    }
+  }
+
+  /**
+   * Loads the object with the given key from the log and attaches it to the persistable object.
+   *
+   * @param persistenceLog log to read from
+   * @param key object id
+   * @param object object to initialize or null to create one
+   * @return persistable object or null
+   */
+  @SuppressWarnings("deprecation")
+  private IPersistable doLoad(PersistenceLog persistenceLog, String key, IPersistable object) {
+    IPersistable result = object;
+    byte[] data;
+    try {
+      data = persistenceLog.get(key);
+    } catch (IOException e) {
+      log.error("Could not read {} from persistence log", key, e);
+      return null;
+    }
+    if (data == null) {
+      return null;
+    }
+    IoBuffer buf = IoBuffer.wrap(data);
+    try {
+      Input in = new Input(buf);
+      String className = Deserializer.deserialize(in, String.class);
+      if (result == null) {
+        Class<?> theClass = Class.forName(className);
+        Constructor<?> constructor = null;
+        for (Class<?> interfaceClass : in.getClass().getInterfaces()) {
+          try {
+            constructor = theClass.getConstructor(new Class[] {interfaceClass});
+            break;
+          } catch (NoSuchMethodException e) {
+            // try the next one
+          }
+        }
+        if (constructor != null) {
+          result = (IPersistable) constructor.newInstance(in);
+        } else {
+          result = (IPersistable) theClass.newInstance();
+          result.deserialize(in);
+        }
+        result.setPath(getObjectPath(key, result.getName()));
+      } else {
+        String resultClass = result.getClass().getName();
+        if (!resultClass.equals(className)) {
+          log.error("The classes differ: {} != {}", resultClass, className);
+          return null;
+        }
+        result.deserialize(in);
+      }
+    } catch (Exception e) {
+      log.error("Could not load {} from persistence log", key, e);
+      return null;
+    }
+    if (result.getStore() != this) {
+      result.setStore(this);
+    }
+    objects.put(getObjectId(result), result);
+    log.debug("Loaded persistent object {} from log", result);
+    return result;
+  }
+
+  /**
+   * Returns the number of commits of the log used by this store.
+   *
+   * @return commits
+   */
+  public long getCommits() {
+    PersistenceLog persistenceLog = this.persistenceLog;
+    return persistenceLog != null ? persistenceLog.getCommits() : 0;
+  }
+
+  /**
+   * Returns the number of records written by the log used by this store.
+   *
+   * @return records
+   */
+  public long getCommittedRecords() {
+    PersistenceLog persistenceLog = this.persistenceLog;
+    return persistenceLog != null ? persistenceLog.getCommittedRecords() : 0;
+  }
+
+  /**
+   * @param segmentSize size in bytes after which logs opened afterwards start a new segment
+   */
+  public static void setSegmentSize(long segmentSize) {
+    LogPersistence.segmentSize = segmentSize;
+  }
+
+  /**
+   * @param commitDelay milliseconds the log writer waits for further updates before committing
+   */
+  public static void setCommitDelay(long commitDelay) {
+    LogPersistence.commitDelay = commitDelay;
+  }
+
+  /**
+   * @param sync whether or not commits are forced to disk
+   */
+  public static void setSync(boolean sync) {
+    LogPersistence.sync = sync;
+  }
+
+  /**
+   * @param compactionRatio garbage ratio of the sealed segments at which they are compacted
+   */
+  public static void setCompactionRatio(double compactionRatio) {
+    LogPersistence.compactionRatio = compactionRatio;
+  }
+
+  /**
+   * @param compactionInterval milliseconds between compaction checks
+   */
+  public static void setCompactionInterval(long compactionInterval) {
+    LogPersistence.compactionInterval = compactionInterval;
+  }
+}
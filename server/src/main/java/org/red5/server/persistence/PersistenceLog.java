@@ -0,0 +1,697 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.persistence;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Segmented, append-only log of serialized persistable objects with an in-memory index of the
+ * latest record for each key. A single writer thread per log directory collects every update made
+ * since its last commit, keeps only the latest state of each key, appends them with one gathering
+ * write and forces them to disk once (group commit). On open the segments are replayed to rebuild
+ * the index and a torn record at the tail is truncated. Once the sealed segments hold more garbage
+ * than live data, their live records are copied to the active segment and the sealed segments are
+ * deleted.
+ *
+ * <p>Record layout: int length, int crc32, byte op, short key length, key (utf-8), payload; the
+ * length and crc cover everything after the crc.
+ *
+ * @author The Red5 Project
+ */
+class PersistenceLog {
+
+  private static Logger log = LoggerFactory.getLogger(PersistenceLog.class);
+
+  private static final ConcurrentMap<File, PersistenceLog> logs = new ConcurrentHashMap<>();
+
+  private static final String SUFFIX = ".log";
+
+  private static final byte OP_PUT = 1;
+
+  private static final byte OP_DELETE = 2;
+
+  private static final int RECORD_HEADER = 8;
+
+  /** Marks a pending delete */
+  private static final Object TOMBSTONE = new Object();
+
+  private final File dir;
+
+  /** Segments by id, oldest first; modified by the writer thread only */
+  private final TreeMap<Long, Segment> segments = new TreeMap<>();
+
+  /** Location of the latest record of each live key */
+  private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<>();
+
+  /** Latest uncommitted state per key, either a payload supplier or the tombstone */
+  private final ConcurrentHashMap<String, Object> pending = new ConcurrentHashMap<>();
+
+  private final Object monitor = new Object();
+
+  private final AtomicLong commits = new AtomicLong();
+
+  private final AtomicLong committedRecords = new AtomicLong();
+
+  private final AtomicLong compactions = new AtomicLong();
+
+  private long flushRequested;
+
+  private long flushed;
+
+  private int references;
+
+  private volatile boolean running;
+
+  private Thread writer;
+
+  private Segment active;
+
+  private final long segmentSize;
+
+  private final long commitDelay;
+
+  private final boolean sync;
+
+  private final double compactionRatio;
+
+  private final long compactionInterval;
+
+  private long lastCompactionCheck = System.currentTimeMillis();
+
+  PersistenceLog(
+      File dir,
+      long segmentSize,
+      long commitDelay,
+      boolean sync,
+      double compactionRatio,
+      long compactionInterval) {
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    this.commitDelay = commitDelay;
+    this.sync = sync;
+    this.compactionRatio = compactionRatio;
+    this.compactionInterval = compactionInterval;
+  }
+
+  /**
+   * Returns the log for the given directory, opening it on first use. Each call must be paired with
+   * a call to {@link #release()}.
+   *
+   * @param dir log directory
+   * @param segmentSize size after which a new segment is started
+   * @param commitDelay milliseconds the writer waits for more updates before a commit
+   * @param sync whether or not commits are forced to disk
+   * @param compactionRatio garbage ratio of the sealed segments which triggers compaction
+   * @param compactionInterval milliseconds between compaction checks
+   * @return log
+   * @throws IOException if the log could not be opened
+   */
+  static PersistenceLog acquire(
+      File dir,
+      long segmentSize,
+      long commitDelay,
+      boolean sync,
+      double compactionRatio,
+      long compactionInterval)
+      throws IOException {
+    File key = dir.getCanonicalFile();
+    synchronized (logs) {
+      PersistenceLog plog = logs.get(key);
+      if (plog == null) {
+        plog =
+            new PersistenceLog(
+                key, segmentSize, commitDelay, sync, compactionRatio, compactionInterval);
+        plog.open();
+        logs.put(key, plog);
+      }
+      plog.references++;
+      return plog;
+    }
+  }
+
+  /** Releases a reference to this log, closing it when it was the last one. */
+  void release() {
+    synchronized (logs) {
+      if (--references > 0) {
+        return;
+      }
+      logs.remove(dir);
+    }
+    close();
+  }
+
+  /**
+   * Replays the segments and starts the writer.
+   *
+   * @throws IOException on failure to read the segments
+   */
+  void open() throws IOException {
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create log directory " + dir);
+    }
+    long start = System.nanoTime();
+    File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+    if (files != null) {
+      Arrays.sort(files);
+      for (File file : files) {
+        String name = file.getName();
+        try {
+          long id = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+          segments.put(id, new Segment(id, file));
+        } catch (NumberFormatException e) {
+          log.warn("Ignoring unexpected file in persistence log: {}", file);
+        }
+      }
+    }
+    for (Segment segment : segments.values()) {
+      replay(segment, segment == segments.lastEntry().getValue());
+    }
+    if (segments.isEmpty()) {
+      roll();
+    } else {
+      active = segments.lastEntry().getValue();
+    }
+    log.info(
+        "Opened persistence log {} with {} keys in {} segments in {} ms",
+        dir,
+        index.size(),
+        segments.size(),
+        (System.nanoTime() - start) / 1000000L);
+    running = true;
+    writer = new Thread(this::write, "PersistenceLog-" + dir.getName());
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /** Commits everything pending and closes the segments. */
+  void close() {
+    flush();
+    running = false;
+    synchronized (monitor) {
+      monitor.notifyAll();
+    }
+    try {
+      writer.join(10000L);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (Segment segment : segments.values()) {
+      segment.close();
+    }
+  }
+
+  /**
+   * Records a new state for the key. The payload is created by the writer thread when it commits,
+   * so repeated updates between two commits are only serialized once.
+   *
+   * @param key key
+   * @param payload payload supplier; a null result drops the update
+   */
+  void put(String key, Supplier<byte[]> payload) {
+    pending.put(key, payload);
+    signal();
+  }
+
+  /**
+   * Records the removal of the key.
+   *
+   * @param key key
+   */
+  void delete(String key) {
+    if (index.containsKey(key) || pending.containsKey(key)) {
+      pending.put(key, TOMBSTONE);
+      signal();
+    }
+  }
+
+  /**
+   * Returns whether or not the log holds a state for the key.
+   *
+   * @param key key
+   * @return true if the key is live
+   */
+  boolean contains(String key) {
+    Object state = pending.get(key);
+    if (state != null) {
+      return state != TOMBSTONE;
+    }
+    return index.containsKey(key);
+  }
+
+  /**
+   * Returns the latest committed payload for the key.
+   *
+   * @param key key
+   * @return payload or null if the key isn't live
+   * @throws IOException on read failure
+   */
+  byte[] get(String key) throws IOException {
+    if (pending.get(key) == TOMBSTONE) {
+      return null;
+    }
+    for (int attempt = 0; ; attempt++) {
+      Location location = index.get(key);
+      if (location == null) {
+        return null;
+      }
+      try {
+        ByteBuffer record = location.segment.read(location.offset, location.length);
+        return payload(record);
+      } catch (ClosedChannelException e) {
+        // the segment was compacted away in the meantime, the index points to the copy
+        if (attempt > 0) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the keys of all live records.
+   *
+   * @return keys
+   */
+  Set<String> keys() {
+    return index.keySet();
+  }
+
+  /** Waits for everything recorded before the call to be committed. */
+  void flush() {
+    synchronized (monitor) {
+      long requested = ++flushRequested;
+      monitor.notifyAll();
+      long deadline = System.currentTimeMillis() + 10000L;
+      while (flushed < requested && running) {
+        long wait = deadline - System.currentTimeMillis();
+        if (wait <= 0) {
+          log.warn("Timed out waiting for persistence log flush: {}", dir);
+          break;
+        }
+        try {
+          monitor.wait(wait);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    }
+  }
+
+  long getCommits() {
+    return commits.get();
+  }
+
+  long getCommittedRecords() {
+    return committedRecords.get();
+  }
+
+  long getCompactions() {
+    return compactions.get();
+  }
+
+  int getSegmentCount() {
+    return segments.size();
+  }
+
+  private void signal() {
+    synchronized (monitor) {
+      monitor.notifyAll();
+    }
+  }
+
+  /** Writer loop */
+  private void write() {
+    while (running) {
+      long served;
+      synchronized (monitor) {
+        while (running && pending.isEmpty() && flushed == flushRequested) {
+          try {
+            monitor.wait(compactionInterval);
+          } catch (InterruptedException e) {
+            running = false;
+          }
+          if (System.currentTimeMillis() - lastCompactionCheck >= compactionInterval) {
+            break;
+          }
+        }
+        served = flushRequested;
+      }
+      if (served == flushed && commitDelay > 0 && running) {
+        // give other updates the chance to join this commit
+        try {
+          Thread.sleep(commitDelay);
+        } catch (InterruptedException e) {
+          running = false;
+        }
+        synchronized (monitor) {
+          served = flushRequested;
+        }
+      }
+      try {
+        commit();
+        if (System.currentTimeMillis() - lastCompactionCheck >= compactionInterval) {
+          lastCompactionCheck = System.currentTimeMillis();
+          compact();
+        }
+      } catch (Throwable t) {
+        log.error("Persistence log write failed: {}", dir, t);
+      }
+      synchronized (monitor) {
+        flushed = served;
+        monitor.notifyAll();
+      }
+    }
+    // commit anything left
+    try {
+      commit();
+    } catch (IOException e) {
+      log.error("Persistence log write failed: {}", dir, e);
+    }
+  }
+
+  /**
+   * Appends the latest state of every pending key as one batch.
+   *
+   * @throws IOException on write failure
+   */
+  @SuppressWarnings("unchecked")
+  private void commit() throws IOException {
+    if (pending.isEmpty()) {
+      return;
+    }
+    List<String> keys = new ArrayList<>(pending.keySet());
+    List<ByteBuffer> records = new ArrayList<>(keys.size());
+    List<String> recordKeys = new ArrayList<>(keys.size());
+    long batchSize = 0;
+    for (String key : keys) {
+      Object state = pending.remove(key);
+      if (state == null) {
+        continue;
+      }
+      byte[] payload = null;
+      if (state != TOMBSTONE) {
+        try {
+          payload = ((Supplier<byte[]>) state).get();
+        } catch (Throwable t) {
+          log.error("Could not serialize {}", key, t);
+        }
+        if (payload == null) {
+          continue;
+        }
+      }
+      ByteBuffer record = encode(key, payload);
+      records.add(record);
+      recordKeys.add(key);
+      batchSize += record.remaining();
+    }
+    if (records.isEmpty()) {
+      return;
+    }
+    if (active.size > 0 && active.size + batchSize > segmentSize) {
+      roll();
+    }
+    long offset = active.append(records.toArray(new ByteBuffer[0]), sync);
+    for (int i = 0; i < records.size(); i++) {
+      ByteBuffer record = records.get(i);
+      int length = record.limit();
+      apply(recordKeys.get(i), record.get(RECORD_HEADER), active, offset, length);
+      offset += length;
+    }
+    commits.incrementAndGet();
+    committedRecords.addAndGet(records.size());
+  }
+
+  /** Copies the live records of the sealed segments to the active one and drops the sealed ones. */
+  private void compact() throws IOException {
+    long sealedSize = 0, sealedLive = 0;
+    List<Segment> sealed = new ArrayList<>();
+    for (Segment segment : segments.values()) {
+      if (segment != active) {
+        sealed.add(segment);
+        sealedSize += segment.size;
+        sealedLive += segment.live.get();
+      }
+    }
+    if (sealed.isEmpty() || sealedSize == 0) {
+      return;
+    }
+    double garbage = 1d - (sealedLive / (double) sealedSize);
+    if (garbage < compactionRatio) {
+      return;
+    }
+    log.debug("Compacting {} segments of {} with {} garbage", sealed.size(), dir, garbage);
+    // start with a fresh segment so the copies never land in a segment being compacted
+    roll();
+    for (Map.Entry<String, Location> entry : index.entrySet()) {
+      Location location = entry.getValue();
+      if (location.segment != active && sealed.contains(location.segment)) {
+        ByteBuffer record = location.segment.read(location.offset, location.length);
+        if (active.size > 0 && active.size + record.remaining() > segmentSize) {
+          roll();
+        }
+        long offset = active.append(new ByteBuffer[] {record}, false);
+        apply(entry.getKey(), OP_PUT, active, offset, location.length);
+      }
+    }
+    if (sync) {
+      active.channel.force(false);
+    }
+    for (Segment segment : sealed) {
+      segments.remove(segment.id);
+      segment.close();
+      if (!segment.file.delete()) {
+        log.warn("Could not delete compacted segment {}", segment.file);
+      }
+    }
+    compactions.incrementAndGet();
+  }
+
+  /**
+   * Updates the index with a record.
+   *
+   * @param key key
+   * @param op record operation
+   * @param segment segment holding the record
+   * @param offset record offset
+   * @param length record length including its header
+   */
+  private void apply(String key, byte op, Segment segment, long offset, int length) {
+    Location previous;
+    if (op == OP_PUT) {
+      previous = index.put(key, new Location(segment, offset, length));
+      segment.live.addAndGet(length);
+    } else {
+      previous = index.remove(key);
+    }
+    if (previous != null) {
+      previous.segment.live.addAndGet(-previous.length);
+    }
+  }
+
+  /**
+   * Reads all valid records of a segment into the index, truncating a torn tail of the last segment.
+   *
+   * @param segment segment
+   * @param last whether or not it's the last segment
+   * @throws IOException on read failure
+   */
+  private void replay(Segment segment, boolean last) throws IOException {
+    long size = segment.channel.size();
+    long position = 0;
+    ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+    while (position + RECORD_HEADER <= size) {
+      header.clear();
+      segment.readFully(header, position);
+      header.flip();
+      int length = header.getInt();
+      int crc = header.getInt();
+      if (length < 3 || position + RECORD_HEADER + length > size) {
+        break;
+      }
+      ByteBuffer body = ByteBuffer.allocate(length);
+      segment.readFully(body, position + RECORD_HEADER);
+      body.flip();
+      if (crc(body) != crc) {
+        break;
+      }
+      byte op = body.get();
+      int keyLength = body.getShort() & 0xffff;
+      String key = new String(body.array(), 3, keyLength, StandardCharsets.UTF_8);
+      apply(key, op, segment, position, RECORD_HEADER + length);
+      position += RECORD_HEADER + length;
+    }
+    if (position < size) {
+      if (last) {
+        log.warn("Truncating {} bytes of incomplete records from {}", size - position, segment.file);
+        segment.channel.truncate(position);
+      } else {
+        log.warn("Ignoring {} bytes of invalid records in {}", size - position, segment.file);
+      }
+    }
+    segment.size = position;
+  }
+
+  /** Seals the active segment and starts a new one. */
+  private void roll() throws IOException {
+    long id = segments.isEmpty() ? 1L : segments.lastKey() + 1;
+    if (active != null && sync) {
+      active.channel.force(false);
+    }
+    active = new Segment(id, new File(dir, String.format("%020d%s", id, SUFFIX)));
+    segments.put(id, active);
+  }
+
+  private static ByteBuffer encode(String key, byte[] payload) {
+    byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+    int length = 1 + 2 + keyBytes.length + (payload != null ? payload.length : 0);
+    ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + length);
+    record.position(RECORD_HEADER);
+    record.put(payload != null ? OP_PUT : OP_DELETE);
+    record.putShort((short) keyBytes.length);
+    record.put(keyBytes);
+    if (payload != null) {
+      record.put(payload);
+    }
+    record.flip();
+    record.position(RECORD_HEADER);
+    int crc = crc(record);
+    record.putInt(0, length);
+    record.putInt(4, crc);
+    record.rewind();
+    return record;
+  }
+
+  private static byte[] payload(ByteBuffer record) throws IOException {
+    int length = record.getInt();
+    int crc = record.getInt();
+    if (length != record.remaining() || crc(record) != crc) {
+      throw new IOException("Corrupt persistence log record");
+    }
+    record.get();
+    int keyLength = record.getShort() & 0xffff;
+    record.position(record.position() + keyLength);
+    byte[] payload = new byte[record.remaining()];
+    record.get(payload);
+    return payload;
+  }
+
+  /** Computes the crc of the remaining bytes, leaving the position unchanged. */
+  private static int crc(ByteBuffer buf) {
+    CRC32 crc = new CRC32();
+    crc.update(buf.duplicate());
+    return (int) crc.getValue();
+  }
+
+  /** Location of a record */
+  private static final class Location {
+
+    final Segment segment;
+
+    final long offset;
+
+    final int length;
+
+    Location(Segment segment, long offset, int length) {
+      this.segment = segment;
+      this.offset = offset;
+      this.length = length;
+    }
+  }
+
+  /** Log segment file */
+  private static final class Segment {
+
+    final long id;
+
+    final File file;
+
+    final FileChannel channel;
+
+    /** Bytes of records which are still the latest for their key */
+    final AtomicLong live = new AtomicLong();
+
+    /** Bytes of valid records, written by the writer thread */
+    volatile long size;
+
+    Segment(long id, File file) throws IOException {
+      this.id = id;
+      this.file = file;
+      this.channel =
+          FileChannel.open(
+              file.toPath(),
+              StandardOpenOption.CREATE,
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Appends the records with a gathering write.
+     *
+     * @return offset of the first record
+     */
+    long append(ByteBuffer[] records, boolean force) throws IOException {
+      long offset = size;
+      long length = 0;
+      for (ByteBuffer record : records) {
+        length += record.remaining();
+      }
+      channel.position(offset);
+      long remaining = length;
+      while (remaining > 0) {
+        remaining -= channel.write(records);
+      }
+      if (force) {
+        channel.force(false);
+      }
+      size = offset + length;
+      return offset;
+    }
+
+    ByteBuffer read(long offset, int length) throws IOException {
+      ByteBuffer buf = ByteBuffer.allocate(length);
+      readFully(buf, offset);
+      buf.flip();
+      return buf;
+    }
+
+    void readFully(ByteBuffer buf, long offset) throws IOException {
+      while (buf.hasRemaining()) {
+        if (channel.read(buf, offset + buf.position()) < 0) {
+          throw new IOException("Unexpected end of segment " + file);
+        }
+      }
+    }
+
+    void close() {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        log.warn("Could not close segment {}", file, e);
+      }
+    }
+  }
+}
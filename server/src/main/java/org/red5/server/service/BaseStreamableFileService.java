@@ -43,15 +43,25 @@ public abstract class BaseStreamableFileService implements IStreamableFileServic
     if (name.startsWith(prefix)) {
       name = name.substring(prefix.length());
       // if there is no extension on the file add the first one
-      log.debug(
-          "prepareFilename - lastIndexOf: {} length: {}", name.lastIndexOf('.'), name.length());
-      if (name.lastIndexOf('.') != name.length() - 4) {
+      log.debug("prepareFilename - name: {} extensions: {}", name, getExtension());
+      if (!hasExtension(name)) {
         name = name + getExtension().split(",")[0];
       }
     }
     return name;
   }
 
+  /** Whether the name ends with one of the extensions, which may be longer than three chars. */
+  private boolean hasExtension(String name) {
+    String lowerName = name.toLowerCase();
+    for (String ext : getExtension().split(",")) {
+      if (lowerName.endsWith(ext)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /** {@inheritDoc} */
   public boolean canHandle(File file) {
     boolean valid = false;
@@ -0,0 +1,61 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.service.webm.impl;
+
+import java.io.File;
+import java.io.IOException;
+import org.red5.io.IStreamableFile;
+import org.red5.io.webm.Webm;
+import org.red5.server.service.BaseStreamableFileService;
+import org.red5.server.service.webm.IWebmService;
+
+/**
+ * A WebmService sets up the service and hands out Webm objects to its callers.
+ *
+ * @author The Red5 Project
+ */
+public class WebmService extends BaseStreamableFileService implements IWebmService {
+
+  /**
+   * File extensions handled by this service. If there are more than one, they are comma separated.
+   * '.webm' must be the first on the list because it is the default file extension for webm files.
+   */
+  private static String extension = ".webm,.mkv,.mka";
+
+  private static String prefix = "webm";
+
+  /** {@inheritDoc} */
+  @Override
+  public void setPrefix(String prefix) {
+    WebmService.prefix = prefix;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getPrefix() {
+    return prefix;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public void setExtension(String extension) {
+    WebmService.extension = extension;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public String getExtension() {
+    return extension;
+  }
+
+  /** {@inheritDoc} */
+  @Override
+  public IStreamableFile getStreamableFile(File file) throws IOException {
+    return new Webm(file);
+  }
+}
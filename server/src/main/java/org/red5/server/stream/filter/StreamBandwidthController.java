@@ -7,6 +7,13 @@
 
 package org.red5.server.stream.filter;
 
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.server.messaging.IFilter;
 import org.red5.server.messaging.IMessage;
 import org.red5.server.messaging.IMessageComponent;
@@ -14,11 +21,22 @@ import org.red5.server.messaging.IPipe;
 import org.red5.server.messaging.IPipeConnectionListener;
 import org.red5.server.messaging.OOBControlMessage;
 import org.red5.server.messaging.PipeConnectionEvent;
+import org.red5.server.stream.IStreamData;
+import org.red5.server.stream.ITokenBucket;
+import org.red5.server.stream.ITokenBucket.ITokenBucketCallback;
+import org.red5.server.stream.message.RTMPMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Controls stream bandwidth */
-public class StreamBandwidthController implements IFilter, IPipeConnectionListener, Runnable {
+/**
+ * Controls stream bandwidth. Messages are pulled from the provider and pushed to the consumer by a
+ * pump that runs on a scheduler shared by all controllers, a batch of messages per run, instead of
+ * a thread per stream. The pump is woken when {@link #wake()} signals that the provider has data,
+ * when the tokens of a waiting message become available and, while the provider has nothing,
+ * after the idle delay.
+ */
+public class StreamBandwidthController
+    implements IFilter, IPipeConnectionListener, Runnable, ITokenBucketCallback {
 
   /** Logger */
   private static final Logger log = LoggerFactory.getLogger(StreamBandwidthController.class);
@@ -32,12 +50,53 @@ public class StreamBandwidthController implements IFilter, IPipeConnectionListen
   /** Stream consumer pipe */
   private IPipe consumerPipe;
 
-  /** Daemon thread that pulls data from provider and pushes to consumer, using this controller */
-  private Thread puller;
+  /** Scheduler running the pump, the shared default one unless set */
+  private ScheduledExecutorService scheduler;
+
+  /** Bucket the pushed messages take their size from, if any */
+  private ITokenBucket bucket;
+
+  /** Maximum number of messages moved per run */
+  private int batchSize = 16;
+
+  /** Milliseconds until the provider is pulled again once it had nothing */
+  private long idleDelay = 10;
 
   /** Start state */
   private volatile boolean isStarted;
 
+  /** Whether a run of the pump is queued or running */
+  private final AtomicBoolean scheduled = new AtomicBoolean();
+
+  /** Whether the pump was woken while scheduled, so the run needs to look again */
+  private volatile boolean woken;
+
+  /** Message pulled but waiting for tokens; only touched by the holder of the scheduled flag */
+  private IMessage pending;
+
+  /** Whether the bucket is to call back for the tokens of the pending message */
+  private volatile boolean awaitingTokens;
+
+  /** Scheduler shared by the controllers which weren't given one */
+  private static final class SharedScheduler {
+
+    static final ScheduledExecutorService INSTANCE;
+
+    static {
+      AtomicInteger count = new AtomicInteger();
+      INSTANCE =
+          Executors.newScheduledThreadPool(
+              Runtime.getRuntime().availableProcessors(),
+              r -> {
+                Thread t =
+                    new Thread(
+                        r, String.format("StreamBandwidthController-%d", count.incrementAndGet()));
+                t.setDaemon(true);
+                return t;
+              });
+    }
+  }
+
   /** {@inheritDoc} */
   public void onPipeConnectionEvent(PipeConnectionEvent event) {
     switch (event.getType()) {
@@ -70,40 +129,186 @@ public class StreamBandwidthController implements IFilter, IPipeConnectionListen
   public void onOOBControlMessage(
       IMessageComponent source, IPipe pipe, OOBControlMessage oobCtrlMsg) {}
 
-  /** {@inheritDoc} */
+  /** Moves a batch of messages from the provider to the consumer. */
   public void run() {
-    while (isStarted && providerPipe != null && consumerPipe != null) {
+    woken = false;
+    boolean more = false;
+    long idle = -1;
+    try {
+      for (int i = 0; i < batchSize; i++) {
+        IPipe provider = providerPipe;
+        IPipe consumer = consumerPipe;
+        if (!isStarted || provider == null || consumer == null) {
+          isStarted = false;
+          return;
+        }
+        if (pending == null) {
+          pending = provider.pullMessage();
+          if (pending == null) {
+            // nothing to send, look again later unless woken before
+            idle = idleDelay;
+            break;
+          }
+          if (log.isDebugEnabled()) {
+            log.debug("got message: {}", pending);
+          }
+        }
+        if (bucket != null) {
+          if (awaitingTokens) {
+            // woken by the provider, the tokens are still missing
+            break;
+          }
+          // set before asking, the callback may clear it before the call returns
+          awaitingTokens = true;
+          if (!bucket.acquireTokenNonblocking(size(pending), this)) {
+            // the bucket calls back when the tokens are available
+            break;
+          }
+          awaitingTokens = false;
+        }
+        IMessage message = pending;
+        pending = null;
+        consumer.pushMessage(message);
+        more = i == batchSize - 1;
+      }
+    } catch (Exception e) {
+      log.warn("Exception in pull and push", e);
+      isStarted = false;
+    } finally {
+      scheduled.set(false);
+    }
+    if (!isStarted) {
+      dropPending();
+    } else if (more || woken) {
+      // yield to the other pumps between batches
+      wake();
+    } else if (idle >= 0) {
+      schedule(idle);
+    }
+  }
+
+  /**
+   * Wakes the pump; called when the provider has data to be pulled. Does nothing if the pump is
+   * already scheduled, except making the scheduled run look again.
+   */
+  public void wake() {
+    woken = true;
+    if (isStarted && scheduled.compareAndSet(false, true)) {
       try {
-        IMessage message = providerPipe.pullMessage();
-        if (log.isDebugEnabled()) {
-          log.debug("got message: {}", message);
+        getScheduler().execute(this);
+      } catch (RejectedExecutionException e) {
+        log.warn("Pump could not be scheduled", e);
+        scheduled.set(false);
+      }
+    }
+  }
+
+  private void schedule(long delay) {
+    try {
+      getScheduler().schedule(this::wake, delay, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      log.warn("Pump could not be scheduled", e);
+    }
+  }
+
+  /** {@inheritDoc} */
+  public void available(ITokenBucket bucket, long tokenCount) {
+    awaitingTokens = false;
+    wake();
+  }
+
+  /** {@inheritDoc} */
+  public void reset(ITokenBucket bucket, long tokenCount) {
+    // the bucket was reset, ask again
+    awaitingTokens = false;
+    wake();
+  }
+
+  private static long size(IMessage message) {
+    if (message instanceof RTMPMessage) {
+      Object body = ((RTMPMessage) message).getBody();
+      if (body instanceof IStreamData) {
+        IoBuffer data = ((IStreamData<?>) body).getData();
+        if (data != null) {
+          return data.limit();
         }
-        consumerPipe.pushMessage(message);
-      } catch (Exception e) {
-        log.warn("Exception in pull and push", e);
-        break;
       }
     }
-    isStarted = false;
+    return 0;
   }
 
   /** Start pulling (streaming) */
   public void start() {
-    startThread();
+    if (!isStarted && providerPipe != null && consumerPipe != null) {
+      isStarted = true;
+      wake();
+    }
   }
 
   /** Stop pulling, close stream */
   public void close() {
     isStarted = false;
+    // a run in progress drops the pending message itself once it sees the controller closed
+    dropPending();
   }
 
-  /** Start puller thread */
-  private void startThread() {
-    if (!isStarted && providerPipe != null && consumerPipe != null) {
-      puller = new Thread(this, KEY);
-      puller.setDaemon(true);
-      isStarted = true;
-      puller.start();
+  /** Drops the pending message unless a run of the pump holds it. */
+  private void dropPending() {
+    if (scheduled.compareAndSet(false, true)) {
+      pending = null;
+      scheduled.set(false);
+      // started again while the flag was held
+      if (isStarted) {
+        wake();
+      }
     }
   }
+
+  private ScheduledExecutorService getScheduler() {
+    return scheduler != null ? scheduler : SharedScheduler.INSTANCE;
+  }
+
+  /**
+   * Sets the scheduler running the pump; by default a scheduler shared by all controllers.
+   *
+   * @param scheduler scheduler
+   */
+  public void setScheduler(ScheduledExecutorService scheduler) {
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Sets the bucket messages take their size in tokens from before they are pushed.
+   *
+   * @param bucket token bucket or null for no limit
+   */
+  public void setTokenBucket(ITokenBucket bucket) {
+    this.bucket = bucket;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets the maximum number of messages moved per run of the pump.
+   *
+   * @param batchSize messages per run
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = Math.max(batchSize, 1);
+  }
+
+  public long getIdleDelay() {
+    return idleDelay;
+  }
+
+  /**
+   * Sets how long the pump waits before pulling again when the provider had nothing.
+   *
+   * @param idleDelay milliseconds
+   */
+  public void setIdleDelay(long idleDelay) {
+    this.idleDelay = idleDelay;
+  }
 }
@@ -10,6 +10,7 @@ package org.red5.server.stream.provider;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import org.red5.io.IStreamableFile;
 import org.red5.io.ITag;
 import org.red5.io.ITagReader;
@@ -247,14 +248,16 @@ public class FileProvider
       reader.position(Long.MAX_VALUE);
       return (int) keyFrameMeta.duration;
     }
-    int frame = -1;
-    for (int i = 0; i < keyFrameMeta.positions.length; i++) {
-      if (keyFrameMeta.timestamps[i] >= ts) {
-        frame = i;
-        break;
+    // first keyframe at or after the time, the timestamps are ascending
+    int frame = Arrays.binarySearch(keyFrameMeta.timestamps, ts);
+    if (frame < 0) {
+      frame = -frame - 1;
+    } else {
+      while (frame > 0 && keyFrameMeta.timestamps[frame - 1] == ts) {
+        frame--;
       }
     }
-    if (frame > -1) {
+    if (frame < keyFrameMeta.timestamps.length) {
       reader.position(keyFrameMeta.positions[frame]);
       return keyFrameMeta.timestamps[frame];
     } else {
@@ -101,6 +101,8 @@ public class RTMPSLoader extends RTMPTLoader {
     StandardWrapper wrapper = new StandardWrapper();
     wrapper.setServletName("RTMPTServlet");
     wrapper.setServletClass("org.red5.server.net.rtmpt.RTMPTServlet");
+    // allows the servlet to serve send and idle requests with async I/O when enabled
+    wrapper.setAsyncSupported(true);
     ctx.addChild(wrapper);
 
     // add servlet mappings
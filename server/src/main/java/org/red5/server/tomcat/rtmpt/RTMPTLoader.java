@@ -111,6 +111,8 @@ public class RTMPTLoader extends TomcatLoader {
     StandardWrapper wrapper = (StandardWrapper) ctx.createWrapper();
     wrapper.setServletName("RTMPTServlet");
     wrapper.setServletClass("org.red5.server.net.rtmpt.RTMPTServlet");
+    // allows the servlet to serve send and idle requests with async I/O when enabled
+    wrapper.setAsyncSupported(true);
     ctx.addChild(wrapper);
 
     // add servlet mappings
@@ -0,0 +1,169 @@
+/*
+ * RED5 Open Source Flash Server - https://github.com/red5 Copyright 2006-2018 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.net.websocket;
+
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import javax.websocket.ClientEndpointConfig;
+import javax.websocket.CloseReason;
+import javax.websocket.DeploymentException;
+import javax.websocket.Endpoint;
+import javax.websocket.EndpointConfig;
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+import org.apache.tomcat.websocket.WsRemoteEndpointImplClient;
+import org.apache.tomcat.websocket.WsSession;
+import org.apache.tomcat.websocket.WsWebSocketContainer;
+
+/**
+ * Session whose remote endpoints record the messages sent on them instead of writing them to a
+ * socket. Async sends stay pending until the test completes them, like those to a slow client.
+ *
+ * @author The Red5 Project
+ */
+class TestWsSession extends WsSession {
+
+  /** Messages sent with the basic remote */
+  final List<String> basicSent = Collections.synchronizedList(new ArrayList<>());
+
+  /** Messages sent with the async remote */
+  final List<String> asyncSent = Collections.synchronizedList(new ArrayList<>());
+
+  /** Handlers of the async sends not completed yet */
+  private final ArrayDeque<SendHandler> pending = new ArrayDeque<>();
+
+  final CountDownLatch closed = new CountDownLatch(1);
+
+  volatile CloseReason closeReason;
+
+  /** Send timeout last set on the async remote */
+  volatile long asyncSendTimeout = -1;
+
+  @SuppressWarnings("deprecation")
+  TestWsSession() throws DeploymentException {
+    super(
+        new Endpoint() {
+          @Override
+          public void onOpen(Session session, EndpointConfig config) {}
+        },
+        new WsRemoteEndpointImplClient(null),
+        new WsWebSocketContainer(),
+        URI.create("ws://localhost/test"),
+        Collections.emptyMap(),
+        null,
+        null,
+        null,
+        Collections.emptyList(),
+        null,
+        Collections.emptyMap(),
+        false,
+        ClientEndpointConfig.Builder.create().build());
+  }
+
+  /**
+   * Completes the oldest pending async send.
+   *
+   * @return true if a send was pending
+   */
+  boolean completeSend() {
+    SendHandler handler;
+    synchronized (pending) {
+      handler = pending.poll();
+    }
+    if (handler == null) {
+      return false;
+    }
+    handler.onResult(new SendResult());
+    return true;
+  }
+
+  /** Completes pending async sends, including those the completions start, until none is left. */
+  void completeAll() {
+    while (completeSend()) {}
+  }
+
+  @Override
+  public RemoteEndpoint.Async getAsyncRemote() {
+    return (RemoteEndpoint.Async)
+        Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {RemoteEndpoint.Async.class},
+            (proxy, method, args) -> {
+              if (method.getName().startsWith("send") && args.length == 2) {
+                asyncSent.add(payload(args[0]));
+                synchronized (pending) {
+                  pending.add((SendHandler) args[1]);
+                }
+                return null;
+              } else if ("setSendTimeout".equals(method.getName())) {
+                asyncSendTimeout = (Long) args[0];
+                return null;
+              }
+              throw new UnsupportedOperationException(method.getName());
+            });
+  }
+
+  @Override
+  public RemoteEndpoint.Basic getBasicRemote() {
+    return (RemoteEndpoint.Basic)
+        Proxy.newProxyInstance(
+            getClass().getClassLoader(),
+            new Class<?>[] {RemoteEndpoint.Basic.class},
+            (proxy, method, args) -> {
+              if (method.getName().startsWith("send") && args.length == 1) {
+                basicSent.add(payload(args[0]));
+                return null;
+              }
+              throw new UnsupportedOperationException(method.getName());
+            });
+  }
+
+  @Override
+  public boolean isOpen() {
+    return closeReason == null;
+  }
+
+  @Override
+  public boolean isClosed() {
+    return closeReason != null;
+  }
+
+  @Override
+  public void close(CloseReason closeReason) {
+    this.closeReason = closeReason;
+    closed.countDown();
+  }
+
+  /**
+   * Returns the payload as a string. Binary payloads are read from their backing array, as the
+   * permessage-deflate extension does, which fails on read-only buffers.
+   */
+  private static String payload(Object data) {
+    if (data instanceof ByteBuffer) {
+      ByteBuffer buf = (ByteBuffer) data;
+      String payload =
+          new String(
+              buf.array(),
+              buf.arrayOffset() + buf.position(),
+              buf.remaining(),
+              StandardCharsets.UTF_8);
+      buf.position(buf.limit());
+      return payload;
+    }
+    return (String) data;
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * RED5 Open Source Flash Server - https://github.com/red5 Copyright 2006-2018 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.net.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.After;
+import org.junit.Test;
+
+/** Tests for {@link WebSocketConnectionSet}. */
+public class WebSocketConnectionSetTest {
+
+  private final WebSocketScope scope = new WebSocketScope();
+
+  private final ExecutorService executor =
+      Executors.newFixedThreadPool(
+          2,
+          r -> {
+            Thread t = new Thread(r, "broadcast-test");
+            t.setDaemon(true);
+            return t;
+          });
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  private List<WebSocketConnection> connections(int count) throws Exception {
+    List<WebSocketConnection> conns = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      conns.add(new WebSocketConnection(scope, new TestWsSession()));
+    }
+    return conns;
+  }
+
+  @Test
+  public void testAddGetRemove() throws Exception {
+    WebSocketConnectionSet set = new WebSocketConnectionSet(3);
+    // rounded up to a power of two
+    assertEquals(4, set.getShardCount());
+    List<WebSocketConnection> conns = connections(10);
+    for (WebSocketConnection conn : conns) {
+      assertTrue(set.add(conn));
+    }
+    assertFalse(set.add(conns.get(0)));
+    assertEquals(10, set.size());
+    for (WebSocketConnection conn : conns) {
+      assertSame(conn, set.get(conn.getSessionId()));
+      assertTrue(set.contains(conn));
+    }
+    assertTrue(set.remove(conns.get(0)));
+    assertFalse(set.remove(conns.get(0)));
+    assertFalse(set.remove("not a connection"));
+    assertNull(set.get(conns.get(0).getSessionId()));
+    assertFalse(set.contains(conns.get(0)));
+    assertEquals(9, set.size());
+    set.clear();
+    assertTrue(set.isEmpty());
+  }
+
+  @Test
+  public void testIteratorRemove() throws Exception {
+    WebSocketConnectionSet set = new WebSocketConnectionSet(4);
+    set.addAll(connections(20));
+    Iterator<WebSocketConnection> it = set.iterator();
+    try {
+      it.remove();
+      fail("remove before next");
+    } catch (IllegalStateException e) {
+    }
+    Set<WebSocketConnection> kept = new HashSet<>();
+    boolean remove = true;
+    while (it.hasNext()) {
+      WebSocketConnection conn = it.next();
+      // hasNext moves on to the next shard, the removal still goes to the shard of the element
+      it.hasNext();
+      if (remove) {
+        it.remove();
+        try {
+          it.remove();
+          fail("second remove");
+        } catch (IllegalStateException e) {
+        }
+      } else {
+        kept.add(conn);
+      }
+      remove = !remove;
+    }
+    assertEquals(10, set.size());
+    assertEquals(kept, new HashSet<>(set));
+  }
+
+  @Test
+  public void testForEachParallel() throws Exception {
+    WebSocketConnectionSet set = new WebSocketConnectionSet(8);
+    set.addAll(connections(100));
+    ConcurrentHashMap<WebSocketConnection, Integer> visits = new ConcurrentHashMap<>();
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+    set.forEachParallel(
+        conn -> {
+          visits.merge(conn, 1, Integer::sum);
+          threads.add(Thread.currentThread().getName());
+        },
+        executor);
+    assertEquals(100, visits.size());
+    assertTrue(visits.values().stream().allMatch(count -> count == 1));
+    assertTrue(threads.contains(Thread.currentThread().getName()));
+    assertTrue(threads.contains("broadcast-test"));
+    // shards the executor rejects are walked by the caller
+    visits.clear();
+    threads.clear();
+    set.forEachParallel(
+        conn -> {
+          visits.merge(conn, 1, Integer::sum);
+          threads.add(Thread.currentThread().getName());
+        },
+        task -> {
+          throw new RejectedExecutionException();
+        });
+    assertEquals(100, visits.size());
+    assertEquals(1, threads.size());
+    assertTrue(threads.contains(Thread.currentThread().getName()));
+  }
+
+  @Test
+  public void testForEachParallelFailure() throws Exception {
+    WebSocketConnectionSet set = new WebSocketConnectionSet(8);
+    set.addAll(connections(50));
+    ConcurrentHashMap<WebSocketConnection, Integer> visits = new ConcurrentHashMap<>();
+    try {
+      set.forEachParallel(
+          conn -> {
+            visits.merge(conn, 1, Integer::sum);
+            throw new IllegalStateException("action failed");
+          },
+          executor);
+      fail("failure not rethrown");
+    } catch (IllegalStateException e) {
+      assertEquals("action failed", e.getMessage());
+    }
+    // each shard stopped at its first failure
+    assertTrue(visits.size() <= 8);
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * RED5 Open Source Flash Server - https://github.com/red5 Copyright 2006-2018 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.net.websocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import javax.websocket.CloseReason.CloseCodes;
+import org.junit.After;
+import org.junit.Test;
+import org.red5.net.websocket.WebSocketConnection.OverflowPolicy;
+import org.red5.net.websocket.model.PreparedFrame;
+
+/** Tests for the send queue of {@link WebSocketConnection} and for broadcasts of a scope. */
+public class WebSocketConnectionTest {
+
+  private final WebSocketScope scope = new WebSocketScope();
+
+  @After
+  public void tearDown() {
+    WebSocketConnection.setUseAsync(false);
+    WebSocketConnection.setMaxQueueSize(256);
+    WebSocketConnection.setOverflowPolicy(OverflowPolicy.UNBOUNDED);
+  }
+
+  private static void useQueue(OverflowPolicy overflowPolicy) {
+    WebSocketConnection.setUseAsync(true);
+    WebSocketConnection.setMaxQueueSize(2);
+    WebSocketConnection.setOverflowPolicy(overflowPolicy);
+  }
+
+  private boolean[] send(WebSocketConnection conn, String... messages) {
+    boolean[] results = new boolean[messages.length];
+    for (int i = 0; i < messages.length; i++) {
+      results[i] = conn.send(PreparedFrame.text(messages[i]));
+    }
+    return results;
+  }
+
+  @Test
+  public void testQueuedInOrder() throws Exception {
+    useQueue(OverflowPolicy.UNBOUNDED);
+    TestWsSession session = new TestWsSession();
+    WebSocketConnection conn = new WebSocketConnection(scope, session);
+    send(conn, "a", "b");
+    conn.send(PreparedFrame.binary("c".getBytes()));
+    // one message at a time is handed to the remote, the others wait for it
+    assertEquals(Arrays.asList("a"), session.asyncSent);
+    assertEquals(2, conn.getQueueSize());
+    assertTrue(session.completeSend());
+    assertEquals(Arrays.asList("a", "b"), session.asyncSent);
+    session.completeAll();
+    assertEquals(Arrays.asList("a", "b", "c"), session.asyncSent);
+    assertEquals(0, conn.getQueueSize());
+    assertEquals(3, conn.getWrittenBytes());
+  }
+
+  @Test
+  public void testUnboundedNeverDrops() throws Exception {
+    useQueue(OverflowPolicy.UNBOUNDED);
+    TestWsSession session = new TestWsSession();
+    WebSocketConnection conn = new WebSocketConnection(scope, session);
+    boolean[] results = send(conn, "a", "b", "c", "d", "e");
+    assertEquals("[true, true, true, true, true]", Arrays.toString(results));
+    assertEquals(4, conn.getQueueSize());
+    assertEquals(0, conn.getDroppedFrames());
+    session.completeAll();
+    assertEquals(Arrays.asList("a", "b", "c", "d", "e"), session.asyncSent);
+  }
+
+  @Test
+  public void testDropOldest() throws Exception {
+    useQueue(OverflowPolicy.DROP_OLDEST);
+    TestWsSession session = new TestWsSession();
+    WebSocketConnection conn = new WebSocketConnection(scope, session);
+    boolean[] results = send(conn, "a", "b", "c", "d");
+    assertEquals("[true, true, true, true]", Arrays.toString(results));
+    assertEquals(1, conn.getDroppedFrames());
+    session.completeAll();
+    assertEquals(Arrays.asList("a", "c", "d"), session.asyncSent);
+  }
+
+  @Test
+  public void testDropNewest() throws Exception {
+    useQueue(OverflowPolicy.DROP_NEWEST);
+    TestWsSession session = new TestWsSession();
+    WebSocketConnection conn = new WebSocketConnection(scope, session);
+    boolean[] results = send(conn, "a", "b", "c", "d");
+    assertEquals("[true, true, true, false]", Arrays.toString(results));
+    assertEquals(1, conn.getDroppedFrames());
+    session.completeAll();
+    assertEquals(Arrays.asList("a", "b", "c"), session.asyncSent);
+  }
+
+  @Test
+  public void testDisconnect() throws Exception {
+    useQueue(OverflowPolicy.DISCONNECT);
+    TestWsSession session = new TestWsSession();
+    WebSocketConnection conn = new WebSocketConnection(scope, session);
+    conn.setConnected();
+    boolean[] results = send(conn, "a", "b", "c", "d");
+    assertEquals("[true, true, true, false]", Arrays.toString(results));
+    // the connection is closed off the sending thread
+    assertTrue(session.closed.await(5, TimeUnit.SECONDS));
+    assertEquals(CloseCodes.TRY_AGAIN_LATER, session.closeReason.getCloseCode());
+    assertFalse(conn.send(PreparedFrame.text("e")));
+  }
+
+  @Test
+  public void testSyncSend() throws Exception {
+    TestWsSession session = new TestWsSession();
+    WebSocketConnection conn = new WebSocketConnection(scope, session);
+    assertTrue(conn.send(PreparedFrame.text("a")));
+    assertTrue(conn.send(PreparedFrame.binary("b".getBytes())));
+    // sent right away with the basic remote, nothing is queued
+    assertEquals(Arrays.asList("a", "b"), session.basicSent);
+    assertTrue(session.asyncSent.isEmpty());
+    assertEquals(0, conn.getQueueSize());
+  }
+
+  @Test
+  public void testBinaryPayloadArray() throws Exception {
+    PreparedFrame frame = PreparedFrame.binary("abc".getBytes());
+    TestWsSession first = new TestWsSession();
+    TestWsSession second = new TestWsSession();
+    WebSocketConnection.setSendTimeout(1234L);
+    try {
+      // the sessions read the backing array like permessage-deflate, every send gets its own view
+      assertTrue(new WebSocketConnection(scope, first).send(frame));
+      useQueue(OverflowPolicy.UNBOUNDED);
+      assertTrue(new WebSocketConnection(scope, second).send(frame));
+      assertTrue(new WebSocketConnection(scope, second).send(frame));
+      second.completeAll();
+      assertEquals(Arrays.asList("abc"), first.basicSent);
+      assertEquals(Arrays.asList("abc", "abc"), second.asyncSent);
+      // queued sends are bounded by the send timeout
+      assertEquals(1234L, second.asyncSendTimeout);
+    } finally {
+      WebSocketConnection.setSendTimeout(8000L);
+    }
+  }
+
+  @Test
+  public void testBroadcast() throws Exception {
+    TestWsSession first = new TestWsSession();
+    TestWsSession second = new TestWsSession();
+    scope.addConnection(new WebSocketConnection(scope, first));
+    scope.addConnection(new WebSocketConnection(scope, second));
+    assertEquals(2, scope.broadcast("a"));
+    assertEquals(Arrays.asList("a"), first.basicSent);
+    assertEquals(Arrays.asList("a"), second.basicSent);
+    // with async sends a client which hasn't completed a message doesn't hold up the other
+    useQueue(OverflowPolicy.UNBOUNDED);
+    assertEquals(2, scope.broadcast("b"));
+    assertEquals(2, scope.broadcast("c".getBytes()));
+    second.completeAll();
+    assertEquals(Arrays.asList("b"), first.asyncSent);
+    assertEquals(Arrays.asList("b", "c"), second.asyncSent);
+    assertEquals(1, scope.getQueuedFrames());
+    first.completeAll();
+    assertEquals(Arrays.asList("b", "c"), first.asyncSent);
+    assertEquals(0, scope.getQueuedFrames());
+  }
+}
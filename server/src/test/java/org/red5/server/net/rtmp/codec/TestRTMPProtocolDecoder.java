@@ -3,6 +3,7 @@ package org.red5.server.net.rtmp.codec;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
 import java.io.File;
@@ -19,6 +20,7 @@ import org.red5.server.net.rtmp.IRTMPHandler;
 import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.RTMPMinaConnection;
 import org.red5.server.net.rtmp.RTMPUtils;
+import org.red5.server.net.rtmp.event.AudioData;
 import org.red5.server.net.rtmp.event.Invoke;
 import org.red5.server.net.rtmp.message.ChunkHeader;
 import org.red5.server.net.rtmp.message.Header;
@@ -401,6 +403,68 @@ public class TestRTMPProtocolDecoder implements IRTMPHandler {
     Red5.setConnectionLocal(null);
   }
 
+  @Test
+  public void testPooledDecodingInPieces() {
+    log.debug("\n testPooledDecodingInPieces");
+    RTMPProtocolDecoder.setPooledDecoding(true);
+    try {
+      RTMPProtocolDecoder dec = new RTMPProtocolDecoder();
+      RTMPConnection conn = new RTMPMinaConnection();
+      conn.getState().setState(RTMP.STATE_CONNECTED);
+      conn.setHandler(this);
+      // three 300 byte audio messages on channel 4 at the default chunk size of 128, the first with
+      // a full header and the others with a time delta of 20
+      IoBuffer stream = IoBuffer.allocate(1024);
+      stream.setAutoExpand(true);
+      for (int m = 0; m < 3; m++) {
+        if (m == 0) {
+          stream.put(IOUtils.hexStringToByteArray("0400006400012c0801000000"));
+        } else {
+          stream.put(IOUtils.hexStringToByteArray("84000014"));
+        }
+        for (int i = 0; i < 300; i++) {
+          if (i > 0 && i % 128 == 0) {
+            stream.put((byte) 0xc4);
+          }
+          stream.put((byte) (m + i));
+        }
+      }
+      stream.flip();
+      // feed it in odd sized pieces, keeping only what couldn't be decoded like the mina decoder
+      List<Object> objects = conn.getDecoderState().getDecodedObjects();
+      IoBuffer leftover = IoBuffer.allocate(16);
+      leftover.setAutoExpand(true);
+      while (stream.hasRemaining()) {
+        int length = Math.min(stream.remaining(), 7);
+        IoBuffer in = IoBuffer.wrap(new byte[length]);
+        stream.get(in.array());
+        if (leftover.position() == 0) {
+          dec.decodeBuffer(conn, in, objects);
+          leftover.put(in);
+        } else {
+          leftover.put(in);
+          leftover.flip();
+          dec.decodeBuffer(conn, leftover, objects);
+          leftover.compact();
+        }
+      }
+      assertEquals(0, leftover.position());
+      assertEquals(3, objects.size());
+      for (int m = 0; m < 3; m++) {
+        Packet packet = (Packet) objects.get(m);
+        assertTrue(packet.getMessage() instanceof AudioData);
+        assertEquals(100 + m * 20, packet.getMessage().getTimestamp());
+        IoBuffer data = ((AudioData) packet.getMessage()).getData();
+        assertEquals(300, data.remaining());
+        for (int i = 0; i < 300; i++) {
+          assertEquals((byte) (m + i), data.get());
+        }
+      }
+    } finally {
+      RTMPProtocolDecoder.setPooledDecoding(false);
+    }
+  }
+
   @Override
   public void connectionOpened(RTMPConnection conn) {
     log.debug("connectionOpened - conn: {}", conn);
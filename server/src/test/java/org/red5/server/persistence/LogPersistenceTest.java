@@ -0,0 +1,42 @@
+package org.red5.server.persistence;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import org.junit.Test;
+import org.red5.server.so.SharedObject;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.FileSystemResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+public class LogPersistenceTest {
+
+  private static LogPersistence open(File root) {
+    return new LogPersistence(
+        new PathMatchingResourcePatternResolver(
+            new FileSystemResourceLoader() {
+              @Override
+              protected Resource getResourceByPath(String path) {
+                return new FileSystemResource(new File(root, path));
+              }
+            }));
+  }
+
+  @Test
+  public void testClosedStore() throws IOException {
+    File root = Files.createTempDirectory("logpersistence").toFile();
+    LogPersistence store = open(root);
+    store.notifyClose();
+    assertEquals(0, store.getCommits());
+    // calls after close neither fail nor reach the released log
+    assertFalse(store.save(new SharedObject()));
+    assertNull(store.load("missing"));
+    assertTrue(store.remove("missing"));
+  }
+}
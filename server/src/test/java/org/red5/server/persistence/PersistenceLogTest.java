@@ -0,0 +1,104 @@
+package org.red5.server.persistence;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class PersistenceLogTest {
+
+  private static PersistenceLog open(File dir, long segmentSize) throws IOException {
+    return PersistenceLog.acquire(dir, segmentSize, 1, false, 0.5d, 60000);
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testRecovery() throws IOException {
+    File dir = Files.createTempDirectory("plog").toFile();
+    PersistenceLog plog = open(dir, 1024 * 1024);
+    for (int i = 0; i < 100; i++) {
+      final int version = i;
+      plog.put("SharedObject/app/so" + (i % 10), () -> bytes("v" + version));
+      plog.flush();
+    }
+    plog.delete("SharedObject/app/so0");
+    plog.release();
+    // a torn record at the tail is dropped on recovery
+    File segment = dir.listFiles()[0];
+    try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+      raf.seek(raf.length());
+      raf.write(new byte[] {0, 0, 0, 99, 1, 2});
+    }
+    plog = open(dir, 1024 * 1024);
+    assertEquals(9, plog.keys().size());
+    assertNull(plog.get("SharedObject/app/so0"));
+    assertArrayEquals(bytes("v99"), plog.get("SharedObject/app/so9"));
+    assertArrayEquals(bytes("v91"), plog.get("SharedObject/app/so1"));
+    plog.release();
+  }
+
+  @Test
+  public void testGroupCommitKeepsLatestState() throws Exception {
+    File dir = Files.createTempDirectory("plog").toFile();
+    PersistenceLog plog = PersistenceLog.acquire(dir, 1024 * 1024, 0, false, 0.5d, 60000);
+    // hold the writer in a commit, so every update below waits for the next one
+    final CountDownLatch committing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    plog.put(
+        "SharedObject/app/gate",
+        () -> {
+          committing.countDown();
+          try {
+            release.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          return bytes("gate");
+        });
+    assertTrue(committing.await(10, TimeUnit.SECONDS));
+    for (int i = 0; i < 1000; i++) {
+      final int version = i;
+      plog.put("SharedObject/app/busy", () -> bytes("v" + version));
+    }
+    release.countDown();
+    plog.flush();
+    assertEquals(2, plog.getCommits());
+    assertEquals(2, plog.getCommittedRecords());
+    assertArrayEquals(bytes("v999"), plog.get("SharedObject/app/busy"));
+    plog.release();
+  }
+
+  @Test
+  public void testCompaction() throws IOException {
+    File dir = Files.createTempDirectory("plog").toFile();
+    // small segments and an immediate compaction check
+    PersistenceLog plog = PersistenceLog.acquire(dir, 4096, 0, false, 0.5d, 1);
+    for (int i = 0; i < 500; i++) {
+      final int version = i;
+      plog.put("SharedObject/app/so" + (i % 5), () -> bytes("value-" + version));
+      plog.flush();
+    }
+    assertTrue(plog.getCompactions() > 0);
+    plog.release();
+    plog = open(dir, 4096);
+    assertEquals(5, plog.keys().size());
+    for (int i = 0; i < 5; i++) {
+      assertArrayEquals(bytes("value-" + (495 + i)), plog.get("SharedObject/app/so" + i));
+    }
+    assertFalse(plog.getSegmentCount() > 3);
+    plog.release();
+  }
+}
@@ -1,7 +1,10 @@
 package org.red5.server.scope;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -100,6 +103,18 @@ public class ScopeTest extends AbstractJUnit4SpringContextTests {
     // check again after stream added alias
     stream1Scope = appScope.getBasicScope(ScopeType.BROADCAST, "streamA");
     log.debug(">>>>>>>>>>>> Stream#1: {}", stream1Scope);
+    assertSame(stream1, stream1Scope);
+    // lookups and counts by type
+    assertSame(stream1, appScope.getBasicScope("stream1"));
+    assertNull(appScope.getBasicScope(ScopeType.ROOM, "stream1"));
+    assertTrue(appScope.getBasicScopeNames(ScopeType.BROADCAST).contains("stream1"));
+    int broadcasts = appScope.getBasicScopeCount(ScopeType.BROADCAST);
+    Set<String> names = appScope.getScopeNames();
+    appScope.removeChildScope(stream1);
+    assertFalse(appScope.hasChildScope("stream1"));
+    // the names are a copy, not a view
+    assertTrue(names.contains("stream1"));
+    assertEquals(broadcasts - 1, appScope.getBasicScopeCount(ScopeType.BROADCAST));
     // XXX to test adding rooms etc, uncomment this section
     /*
     // test runnables represent worker threads creating scopes
@@ -0,0 +1,36 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.service;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.red5.server.service.flv.impl.FLVService;
+import org.red5.server.service.webm.impl.WebmService;
+
+public class BaseStreamableFileServiceTest {
+
+  @Test
+  public void testPrepareFilename() {
+    WebmService webm = new WebmService();
+    // extensions longer than three chars are kept, not doubled
+    assertEquals("movie.webm", webm.prepareFilename("webm:movie.webm"));
+    assertEquals("movie.mkv", webm.prepareFilename("webm:movie.mkv"));
+    assertEquals("sound.mka", webm.prepareFilename("webm:sound.mka"));
+    assertEquals("MOVIE.WEBM", webm.prepareFilename("webm:MOVIE.WEBM"));
+    // the first extension is the default one
+    assertEquals("movie.webm", webm.prepareFilename("webm:movie"));
+    assertEquals("movie.flv.webm", webm.prepareFilename("webm:movie.flv"));
+    // names without the prefix are left alone
+    assertEquals("movie", webm.prepareFilename("movie"));
+    FLVService flv = new FLVService();
+    assertEquals("movie.flv", flv.prepareFilename("flv:movie.flv"));
+    assertEquals("movie.flv", flv.prepareFilename("flv:movie"));
+    assertEquals("dir.name/movie.flv", flv.prepareFilename("flv:dir.name/movie"));
+  }
+}
@@ -0,0 +1,84 @@
+package org.red5.server.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationTargetException;
+import org.junit.Test;
+import org.red5.server.api.service.IServiceCall;
+
+public class ServiceMethodCacheTest {
+
+  @Test
+  public void testCachedDispatch() throws Exception {
+    ServiceMethodCache cache = new ServiceMethodCache();
+    CalcService service = new CalcService();
+    IServiceCall call = new PendingCall("calc.add", new Object[] {1d, 2d});
+    Object[] first = ReflectionUtils.findServiceMethod(null, call, service, "add");
+    assertNotNull(first[0]);
+    assertEquals(1, cache.getMisses());
+    ServiceMethod method = (ServiceMethod) first[0];
+    // doubles from the wire are converted to the int parameters
+    assertEquals(ServiceMethod.Binding.CONVERT, method.getBinding());
+    assertEquals(3, method.invoke(service, (Object[]) first[1]));
+    // the same signature is served from the cache
+    call = new PendingCall("calc.add", new Object[] {5d, 6d});
+    Object[] second = ReflectionUtils.findServiceMethod(null, call, service, "add");
+    assertSame(method, second[0]);
+    assertEquals(1, cache.getHits());
+    assertEquals(11, method.invoke(service, (Object[]) second[1]));
+    // other argument classes are a different signature
+    call = new PendingCall("calc.add", new Object[] {1, 2});
+    Object[] third = ReflectionUtils.findServiceMethod(null, call, service, "add");
+    assertEquals(3, ((ServiceMethod) third[0]).invoke(service, (Object[]) third[1]));
+    assertEquals(2, cache.getMisses());
+    // after invalidation the method is resolved again
+    cache.invalidate(CalcService.class);
+    ReflectionUtils.findServiceMethod(null, call, service, "add");
+    assertEquals(3, cache.getMisses());
+  }
+
+  @Test
+  public void testOnlyMethodExceptionsAreWrapped() throws Exception {
+    CalcService service = new CalcService();
+    ServiceMethod divide =
+        new ServiceMethod(
+            CalcService.class.getMethod("divide", int.class, int.class),
+            ServiceMethod.Binding.CONVERT,
+            new Class<?>[] {Integer.class, Integer.class});
+    assertEquals(2, divide.invoke(service, new Object[] {4, 2}));
+    try {
+      divide.invoke(service, new Object[] {4, 0});
+      fail("Division by zero expected");
+    } catch (InvocationTargetException e) {
+      assertTrue(e.getCause() instanceof ArithmeticException);
+    }
+    // parameters which don't fit never reach the method
+    try {
+      divide.invoke(service, new Object[] {"4", 2});
+      fail("Wrong parameter type expected");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getCause() instanceof ClassCastException);
+    }
+    try {
+      divide.invoke(service, new Object[] {null, 2});
+      fail("Null primitive expected");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getCause() instanceof NullPointerException);
+    }
+  }
+
+  public static class CalcService {
+
+    public int add(int a, int b) {
+      return a + b;
+    }
+
+    public int divide(int a, int b) {
+      return a / b;
+    }
+  }
+}
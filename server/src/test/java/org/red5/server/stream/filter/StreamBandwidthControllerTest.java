@@ -0,0 +1,240 @@
+package org.red5.server.stream.filter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.messaging.AbstractPipe;
+import org.red5.server.messaging.IConsumer;
+import org.red5.server.messaging.IMessage;
+import org.red5.server.messaging.IProvider;
+import org.red5.server.messaging.PipeConnectionEvent;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.stream.ITokenBucket;
+import org.red5.server.stream.ITokenBucket.ITokenBucketCallback;
+import org.red5.server.stream.message.RTMPMessage;
+
+public class StreamBandwidthControllerTest {
+
+  /** Runs queued with execute, in order */
+  private final Deque<Runnable> tasks = new ArrayDeque<>();
+
+  /** Runs queued with schedule, their delays aren't waited for */
+  private final Deque<Runnable> delayed = new ArrayDeque<>();
+
+  private final TestPipe provider = new TestPipe();
+
+  private final TestPipe consumer = new TestPipe();
+
+  private StreamBandwidthController controller;
+
+  @Before
+  public void setUp() {
+    // scheduler driven by the test
+    ScheduledExecutorService scheduler =
+        (ScheduledExecutorService)
+            Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] {ScheduledExecutorService.class},
+                (proxy, method, args) -> {
+                  switch (method.getName()) {
+                    case "execute":
+                      tasks.add((Runnable) args[0]);
+                      return null;
+                    case "schedule":
+                      delayed.add((Runnable) args[0]);
+                      return null;
+                  }
+                  throw new UnsupportedOperationException(method.getName());
+                });
+    controller = new StreamBandwidthController();
+    controller.setScheduler(scheduler);
+    controller.onPipeConnectionEvent(
+        PipeConnectionEvent.build(
+            provider, PipeConnectionEvent.EventType.PROVIDER_CONNECT_PULL, (IProvider) null, null));
+    controller.onPipeConnectionEvent(
+        PipeConnectionEvent.build(
+            consumer, PipeConnectionEvent.EventType.CONSUMER_CONNECT_PUSH, (IConsumer) null, null));
+  }
+
+  private static IMessage message(int size) {
+    IoBuffer data = IoBuffer.allocate(size);
+    data.fill(size);
+    data.flip();
+    return RTMPMessage.build(new VideoData(data));
+  }
+
+  /** Runs the next queued run of the pump. */
+  private void runNext() {
+    assertTrue("no run queued", !tasks.isEmpty());
+    tasks.poll().run();
+  }
+
+  @Test
+  public void testBatchLimit() {
+    controller.setBatchSize(4);
+    for (int i = 0; i < 10; i++) {
+      provider.messages.add(message(10));
+    }
+    controller.start();
+    runNext();
+    assertEquals(4, consumer.pushed.size());
+    // a full batch yields and queues the next run
+    assertEquals(1, tasks.size());
+    runNext();
+    assertEquals(8, consumer.pushed.size());
+    runNext();
+    assertEquals(10, consumer.pushed.size());
+    // the provider ran dry, it is pulled again after the idle delay
+    assertTrue(tasks.isEmpty());
+    assertEquals(1, delayed.size());
+  }
+
+  @Test
+  public void testIdleRepoll() {
+    controller.start();
+    runNext();
+    assertEquals(0, consumer.pushed.size());
+    assertTrue(tasks.isEmpty());
+    assertEquals(1, delayed.size());
+    provider.messages.add(message(10));
+    // the idle delay elapses
+    delayed.poll().run();
+    runNext();
+    assertEquals(1, consumer.pushed.size());
+    // nothing more, pulled again later
+    assertEquals(1, delayed.size());
+  }
+
+  @Test
+  public void testTokenCallbackWakeup() {
+    TestBucket bucket = new TestBucket();
+    controller.setTokenBucket(bucket.proxy);
+    provider.messages.add(message(10));
+    provider.messages.add(message(10));
+    // the tokens arrive while the bucket is still being asked
+    bucket.grant = false;
+    bucket.callBackWhileAsked = true;
+    controller.start();
+    runNext();
+    assertEquals(0, consumer.pushed.size());
+    // the callback came before the refusal returned, the pump looks again
+    assertEquals(1, tasks.size());
+    bucket.grant = true;
+    runNext();
+    assertEquals(2, consumer.pushed.size());
+  }
+
+  @Test
+  public void testTokenCallback() {
+    TestBucket bucket = new TestBucket();
+    controller.setTokenBucket(bucket.proxy);
+    provider.messages.add(message(10));
+    bucket.grant = false;
+    controller.start();
+    runNext();
+    assertEquals(0, consumer.pushed.size());
+    assertTrue(tasks.isEmpty());
+    // woken by the provider, the tokens are still missing
+    controller.wake();
+    runNext();
+    assertEquals(1, bucket.asked);
+    assertEquals(0, consumer.pushed.size());
+    bucket.grant = true;
+    bucket.callback.available(bucket.proxy, 10);
+    runNext();
+    assertEquals(1, consumer.pushed.size());
+  }
+
+  @Test
+  public void testCloseDuringRun() {
+    TestBucket bucket = new TestBucket();
+    controller.setTokenBucket(bucket.proxy);
+    IMessage first = message(10);
+    IMessage second = message(10);
+    provider.messages.add(first);
+    provider.messages.add(second);
+    // closed while the run asks for the tokens of the first message
+    bucket.grant = false;
+    bucket.whileAsked = controller::close;
+    controller.start();
+    runNext();
+    assertTrue(tasks.isEmpty());
+    assertTrue(delayed.isEmpty());
+    // the run dropped the message it held, a restart goes on with the next one
+    bucket.whileAsked = null;
+    bucket.grant = true;
+    bucket.callback.reset(bucket.proxy, 10);
+    controller.start();
+    runNext();
+    assertEquals(1, consumer.pushed.size());
+    assertSame(second, consumer.pushed.get(0));
+  }
+
+  /** Pipe handing out queued messages and collecting the pushed ones. */
+  private static class TestPipe extends AbstractPipe {
+
+    final Deque<IMessage> messages = new ArrayDeque<>();
+
+    final List<IMessage> pushed = new ArrayList<>();
+
+    public IMessage pullMessage() {
+      return messages.poll();
+    }
+
+    public IMessage pullMessage(long wait) {
+      return messages.poll();
+    }
+
+    public void pushMessage(IMessage message) {
+      pushed.add(message);
+    }
+  }
+
+  /** Bucket granting or refusing tokens as told. */
+  private static class TestBucket {
+
+    boolean grant = true;
+
+    boolean callBackWhileAsked;
+
+    Runnable whileAsked;
+
+    int asked;
+
+    ITokenBucketCallback callback;
+
+    final ITokenBucket proxy =
+        (ITokenBucket)
+            Proxy.newProxyInstance(
+                getClass().getClassLoader(),
+                new Class<?>[] {ITokenBucket.class},
+                (proxy, method, args) -> {
+                  if ("acquireTokenNonblocking".equals(method.getName())) {
+                    asked++;
+                    if (whileAsked != null) {
+                      whileAsked.run();
+                    }
+                    if (grant) {
+                      return true;
+                    }
+                    callback = (ITokenBucketCallback) args[1];
+                    if (callBackWhileAsked) {
+                      callBackWhileAsked = false;
+                      callback.available((ITokenBucket) proxy, (Long) args[0]);
+                    }
+                    return false;
+                  }
+                  throw new UnsupportedOperationException(method.getName());
+                });
+  }
+}